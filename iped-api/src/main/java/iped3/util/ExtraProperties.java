@@ -105,6 +105,14 @@ public class ExtraProperties {
 
     public static final String PARENT_VIEW_POSITION = "parentViewPosition"; //$NON-NLS-1$
 
+    /**
+     * Offset and length of a subitem which is a contiguous range of its container,
+     * so its content is not copied.
+     */
+    public static final String EMBEDDED_OFFSET = "IpedEmbeddedOffset"; //$NON-NLS-1$
+
+    public static final String EMBEDDED_LENGTH = "IpedEmbeddedLength"; //$NON-NLS-1$
+
     public static final String CARVEDBY_METADATA_NAME = "CarvedBy"; //$NON-NLS-1$
 
     public static final Property CARVEDOFFSET_METADATA_NAME = Property.internalInteger("CarvedOffset"); //$NON-NLS-1$
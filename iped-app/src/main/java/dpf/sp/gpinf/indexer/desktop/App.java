@@ -42,9 +42,11 @@
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
 
 import javax.swing.BorderFactory;
 import javax.swing.BoxLayout;
@@ -168,6 +170,10 @@ public class App extends JFrame implements WindowListener, IMultiSearchResultPro
     HitsTable subItemTable, duplicatesTable;
     JTree tree, bookmarksTree, categoryTree;
     MetadataPanel metadataPanel;
+    // regex with values selected in the metadata panel and the values, whose hits
+    // are taken by the text viewer from the case regex hits
+    volatile String highlightRegex;
+    volatile Set<String> highlightRegexValues = Collections.emptySet();
     JScrollPane categoriesPanel, bookmarksPanel;
     JPanel evidencePanel;
     TreeListener treeListener;
@@ -196,6 +202,7 @@ public class App extends JFrame implements WindowListener, IMultiSearchResultPro
 
     public ResultTableModel resultsModel;
     List resultSortKeys;
+    boolean ipedResultWithoutScores;
     SubitemTableModel subItemModel = new SubitemTableModel();
     ParentTableModel parentItemModel = new ParentTableModel();
     DuplicatesTableModel duplicatesModel = new DuplicatesTableModel();
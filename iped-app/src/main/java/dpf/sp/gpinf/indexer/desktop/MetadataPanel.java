@@ -757,6 +757,19 @@ public Set<String> getHighlightTerms() throws ParseException, QueryNodeException
 
     }
 
+    /**
+     * @return the name of the regex with values selected, or null
+     */
+    public String getHighlightRegex() {
+
+        String field = (String) props.getSelectedItem();
+        if (field == null || !field.trim().startsWith(RegexTask.REGEX_PREFIX) || list.isSelectionEmpty())
+            return null;
+
+        return field.trim().substring(RegexTask.REGEX_PREFIX.length());
+
+    }
+
     public Query getHighlightQuery() throws ParseException, QueryNodeException {
 
         String field = (String) props.getSelectedItem();
@@ -62,6 +62,7 @@ public class PesquisarIndice extends CancelableWorker<MultiSearchResult, Object>
     String queryText;
     Query query;
     IPEDSearcher searcher;
+    boolean noScoring = false;
 
     public PesquisarIndice(String queryText) {
         this.queryText = queryText;
@@ -74,6 +75,9 @@ public PesquisarIndice(Query query) {
     }
 
     public void applyUIQueryFilters() {
+        // scores are slow with big results and only computed if they are sorted by score
+        noScoring = !ResultTableModel.isSortedByScore(App.get().resultSortKeys);
+        searcher.setNoScoring(noScoring);
         try {
             searcher.setQuery(getQueryWithUIFilter());
 
@@ -274,6 +278,9 @@ private void saveHighlightTerms() throws ParseException, QueryNodeException {
         // System.out.println("highlightTerm: " + str);
         App.get().getSearchParams().highlightTerms = highlightTerms;
 
+        App.get().highlightRegexValues = App.get().metadataPanel.getHighlightTerms();
+        App.get().highlightRegex = App.get().metadataPanel.getHighlightRegex();
+
         Query highlightQuery = App.get().metadataPanel.getHighlightQuery();
         if (highlightQuery != null) {
             BooleanQuery.Builder boolQuery = new BooleanQuery.Builder();
@@ -294,6 +301,7 @@ public void done() {
         if (!this.isCancelled())
             try {
                 App.get().ipedResult = this.get();
+                App.get().ipedResultWithoutScores = noScoring;
 
                 App.get().resultsTable.getColumnModel().getColumn(0).setHeaderValue(this.get().getLength());
                 App.get().resultsTable.getTableHeader().repaint();
@@ -30,6 +30,7 @@
 import java.util.List;
 import java.util.TimeZone;
 
+import javax.swing.RowSorter.SortKey;
 import javax.swing.SwingUtilities;
 import javax.swing.table.AbstractTableModel;
 import javax.swing.table.TableColumn;
@@ -129,6 +130,24 @@ public int getRowCount() {
         return App.get().ipedResult.getLength();
     }
 
+    public static boolean isScoreColumn(int col) {
+        int fCol = col - fixedCols.length;
+        return fCol >= 0 && fCol < fields.length && SCORE_COL.equals(fields[fCol]);
+    }
+
+    /**
+     * @return if results are sorted by score, or not sorted and shown in score
+     *         order
+     */
+    public static boolean isSortedByScore(List<? extends SortKey> sortKeys) {
+        if (sortKeys == null || sortKeys.isEmpty())
+            return true;
+        for (SortKey sortKey : sortKeys)
+            if (isScoreColumn(sortKey.getColumn()))
+                return true;
+        return false;
+    }
+
     @Override
     public String getColumnName(int col) {
         if (col == 0) {
@@ -62,6 +62,12 @@ public void setSortKeys(final List<? extends SortKey> sortKeys) {
         if (sortKeys == null) {
             super.setSortKeys(null);
             App.get().resultsModel.fireTableDataChanged();
+        } else if (App.get().ipedResultWithoutScores && !sortKeys.isEmpty()
+                && ResultTableModel.isSortedByScore(sortKeys)) {
+            // results were searched without scores, search again computing them
+            super.setSortKeys(null);
+            App.get().resultSortKeys = sortKeys;
+            App.get().appletListener.updateFileListing();
         } else {
             BackgroundSort backgroundSort = new BackgroundSort(sortKeys);
             backgroundSort.execute();
@@ -19,6 +19,7 @@
 package dpf.sp.gpinf.indexer.desktop;
 
 import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.InterruptedIOException;
 import java.io.RandomAccessFile;
@@ -26,6 +27,8 @@
 import java.nio.channels.ClosedByInterruptException;
 import java.nio.channels.FileChannel;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Set;
 import java.util.TreeMap;
 
 import org.apache.commons.io.input.CountingInputStream;
@@ -42,6 +45,7 @@
 import dpf.sp.gpinf.indexer.parsers.util.MetadataUtil;
 import dpf.sp.gpinf.indexer.process.IndexItem;
 import dpf.sp.gpinf.indexer.process.task.ParsingTask;
+import dpf.sp.gpinf.indexer.process.task.regex.RegexHitReader;
 import dpf.sp.gpinf.indexer.search.IPEDSource;
 import dpf.sp.gpinf.indexer.ui.fileViewer.frames.ATextViewer;
 import dpf.sp.gpinf.indexer.ui.fileViewer.util.AppSearchParams;
@@ -201,6 +205,65 @@ private ParseContext getTikaContext(IItem item) throws Exception {
         return context;
     }
 
+    /**
+     * @return sorted text offsets of the hits of the regex values selected in the
+     *         metadata panel, saved by RegexTask, so their fragments are hits
+     *         without being found by the highlight query
+     */
+    private long[] getRegexHitOffsets() throws IOException {
+        String regexName = App.get().highlightRegex;
+        Set<String> values = App.get().highlightRegexValues;
+        if (regexName == null || !(appSearchParams.lastSelectedSource instanceof IPEDSource))
+            return new long[0];
+
+        RegexHitReader regexHits = ((IPEDSource) appSearchParams.lastSelectedSource).getRegexHits();
+        if (regexHits == null)
+            return new long[0];
+
+        long[] offsets = new long[0];
+        for (String value : regexHits.getValues(item.getId(), regexName)) {
+            // the panel shows the normalized doc values
+            if (values.contains(IndexItem.normalize(value))) {
+                long[] valueOffsets = regexHits.getOffsets(item.getId(), regexName, value);
+                int n = offsets.length;
+                offsets = Arrays.copyOf(offsets, n + valueOffsets.length);
+                System.arraycopy(valueOffsets, 0, offsets, n, valueOffsets.length);
+            }
+        }
+        Arrays.sort(offsets);
+        return offsets;
+    }
+
+    private static boolean hasOffsetIn(long[] offsets, long start, long end) {
+        int i = Arrays.binarySearch(offsets, start);
+        if (i < 0)
+            i = -i - 1;
+        return i < offsets.length && offsets[i] < end;
+    }
+
+    /**
+     * @return length of the text of a highlighted fragment, without the highlight
+     *         tags and the html encoding
+     */
+    private int getTextLength(String fragment) {
+        String startTag = appSearchParams.HIGHLIGHT_START_TAG;
+        String endTag = appSearchParams.HIGHLIGHT_END_TAG;
+        int length = 0;
+        for (int i = 0; i < fragment.length(); i++) {
+            if (fragment.startsWith(startTag, i)) {
+                i += startTag.length() - 1;
+            } else if (fragment.startsWith(endTag, i)) {
+                i += endTag.length() - 1;
+            } else {
+                // & is only written by LuceneSimpleHTMLEncoder as an entity
+                if (fragment.charAt(i) == '&' && fragment.indexOf(';', i) != -1)
+                    i = fragment.indexOf(';', i);
+                length++;
+            }
+        }
+        return length;
+    }
+
     private class CountInputStream extends CountingInputStream {
 
         public CountInputStream(InputStream in) {
@@ -223,6 +286,8 @@ public void parseText() {
             // Metadata metadata = item.getMetadata();
             Metadata metadata = MetadataUtil.clone(item.getMetadata());
 
+            long[] regexHitOffsets = getRegexHitOffsets();
+
             ParsingTask.fillMetadata(item, metadata);
 
             ParseContext context = getTikaContext(item);
@@ -257,6 +322,7 @@ public void parseText() {
 
                 char[] buf = new char[App.TEXT_BREAK_SIZE];
                 int off = 0;
+                long fragStart = totalRead;
                 while (!this.isCancelled() && off != buf.length
                         && (read = textReader.read(buf, off, buf.length - off)) != -1) {
                     off += read;
@@ -275,6 +341,11 @@ public void parseText() {
                 if (lastRowInserted == -1) {
                     int lastIndex = contents.length() - 1;
                     if (lastIndex > 0) {
+                        // offsets of the regex hits are in the text not trimmed
+                        int leading = 0;
+                        while (leading < lastIndex && contents.charAt(leading) <= ' ')
+                            leading++;
+                        fragStart += leading;
                         contents = contents.substring(0, lastIndex).trim() + contents.charAt(lastIndex);
                     }
                 }
@@ -297,6 +368,9 @@ public void parseText() {
 
                     // grava texto em disco
                     String fragment = frag.toString();
+                    long fragEnd = fragStart;
+                    if (regexHitOffsets.length > 0)
+                        fragEnd += getTextLength(fragment);
                     byte data[] = fragment.getBytes(ATextViewer.TEXT_ENCODING);
                     long startPos = parsedFile.position();
                     ByteBuffer out = ByteBuffer.wrap(data);
@@ -329,7 +403,8 @@ public void parseText() {
 
                     // adiciona hit
                     int numHits = hits.size();
-                    if (numHits < App.MAX_HITS && frag.getScore() > 0) {
+                    if (numHits < App.MAX_HITS
+                            && (frag.getScore() > 0 || hasOffsetIn(regexHitOffsets, fragStart, fragEnd))) {
                         int[] hit = new int[3];
                         hit[0] = data.length;
                         hit[1] = startRow;
@@ -355,6 +430,8 @@ public void parseText() {
                         this.firePropertyChange("hits", numHits, numHits + 1); //$NON-NLS-1$
                     }
 
+                    fragStart = fragEnd;
+
                     // adiciona linha no viewer para o fragmento
                     if (!lineBreak && viewRows.size() - 1 < App.MAX_LINES) {
                         viewRows.add(parsedFile.position());
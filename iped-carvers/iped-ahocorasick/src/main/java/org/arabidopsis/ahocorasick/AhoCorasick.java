@@ -67,6 +67,7 @@
 public class AhoCorasick {
     public State root;
     private boolean prepared;
+    private volatile CompiledAhoCorasick compiled;
 
     public AhoCorasick() {
         this.root = new State(0);
@@ -94,6 +95,22 @@ public void prepare() {
         this.prepared = true;
     }
 
+    /**
+     * Returns this automaton compiled to flat arrays, which is faster to search.
+     * It is built on the first call, after prepare().
+     */
+    public CompiledAhoCorasick compile() {
+        if (!this.prepared)
+            throw new IllegalStateException("can't compile until prepare()");
+        if (compiled == null) {
+            synchronized (this) {
+                if (compiled == null)
+                    compiled = new CompiledAhoCorasick(this.root);
+            }
+        }
+        return compiled;
+    }
+
     /**
      * Starts a new search, and returns an Iterator of SearchResults.
      */
@@ -130,7 +147,7 @@ private void prepareFailTransitions() {
                 // s.getOutputs().addAll(r.get(a).getOutputs());
                 if (r.get(a).getOutputs() != null)
                     for (Object o : r.get(a).getOutputs())
-                        s.getOutputs().add(o);
+                        s.addOutput(o);
             }
         }
     }
@@ -192,6 +209,7 @@ public SearchResult continueSearch(SearchResult lastResult) {
                 return new SearchResult(state, bytes, i + 1);
         }
 
+        lastResult.endState = state;
         return null;
     }
 }
@@ -0,0 +1,255 @@
+package org.arabidopsis.ahocorasick;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+/**
+ * <p>
+ * Aho-Corasick automaton compiled to flat int arrays from a prepared
+ * {@link AhoCorasick} tree, for searching large amounts of data.
+ * </p>
+ *
+ * <p>
+ * Following State objects costs a few dependent memory loads per searched
+ * byte. Here the states of the upper levels of the tree, where the search
+ * spends almost all its time, have a full transition row of 256 entries with
+ * the fail transitions already resolved, so each byte costs one table lookup.
+ * The deeper states keep only their children, in a double-array trie
+ * (base/check), and fall back to their fail state on a miss. The outputs of
+ * each state are a range of a single int array, and are reported in the same
+ * order as {@link SearchResult#getOutputs()}.
+ * </p>
+ *
+ * <p>
+ * Instances are immutable and can be shared by searching threads. The state of
+ * a search is a plain int, so a search can be continued over the next buffer
+ * of a stream.
+ * </p>
+ */
+public final class CompiledAhoCorasick {
+
+    /**
+     * Receives the matches of a search.
+     */
+    public interface MatchHandler {
+
+        /**
+         * @param end
+         *            the index one byte after the last matching byte
+         * @param output
+         *            one of the outputs of the matched keyword
+         */
+        void match(int end, Object output);
+    }
+
+    private static final int ROOT = 0;
+    private static final int HOT_DEPTH = 2;
+    private static final int MAX_HOT_STATES = 1024;
+
+    private final int hotStates;
+    private final int[] table;
+    private final int[] fail;
+    private final int[] base;
+    private final int[] check;
+    private final int[] target;
+    private final int[] outStart;
+    private final int[] outIds;
+    private final Object[] outValues;
+
+    CompiledAhoCorasick(State root) {
+        // numbers the states in breadth first order, so fail states come first
+        List<State> states = new ArrayList<State>();
+        IdentityHashMap<State, Integer> ids = new IdentityHashMap<State, Integer>();
+        int[] depth = new int[16];
+        states.add(root);
+        ids.put(root, ROOT);
+        int hot = 0;
+        for (int i = 0; i < states.size(); i++) {
+            State state = states.get(i);
+            if (depth[i] <= HOT_DEPTH && hot < MAX_HOT_STATES) {
+                hot++;
+            }
+            for (byte b : state.keys()) {
+                State child = state.get(b);
+                if (child != root) {
+                    if (states.size() == depth.length) {
+                        depth = Arrays.copyOf(depth, depth.length * 2);
+                    }
+                    depth[states.size()] = depth[i] + 1;
+                    ids.put(child, states.size());
+                    states.add(child);
+                }
+            }
+        }
+        int numStates = states.size();
+        this.hotStates = hot;
+
+        fail = new int[numStates];
+        for (int i = 1; i < numStates; i++) {
+            fail[i] = ids.get(states.get(i).getFail());
+        }
+
+        table = new int[hotStates << 8];
+        for (int i = 0; i < hotStates; i++) {
+            State state = states.get(i);
+            for (int b = 0; b < 256; b++) {
+                State child = state.get((byte) b);
+                if (child != null) {
+                    table[(i << 8) | b] = ids.get(child);
+                } else {
+                    table[(i << 8) | b] = table[(fail[i] << 8) | b];
+                }
+            }
+        }
+
+        base = new int[numStates];
+        Arrays.fill(base, -1);
+        int[] check = new int[1024];
+        int[] target = new int[1024];
+        Arrays.fill(check, -1);
+        int firstFree = 0, slotsEnd = 0;
+        for (int i = hotStates; i < numStates; i++) {
+            byte[] keys = states.get(i).keys();
+            if (keys.length == 0) {
+                continue;
+            }
+            int first = keys[0] & 0xFF;
+            int b = Math.max(0, firstFree - first);
+            while (!fits(check, b, keys)) {
+                b++;
+            }
+            int end = b + (keys[keys.length - 1] & 0xFF) + 1;
+            if (end + 256 > check.length) {
+                int oldLen = check.length;
+                check = Arrays.copyOf(check, Math.max(oldLen * 2, end + 256));
+                target = Arrays.copyOf(target, check.length);
+                Arrays.fill(check, oldLen, check.length, -1);
+            }
+            base[i] = b;
+            for (byte key : keys) {
+                int slot = b + (key & 0xFF);
+                check[slot] = i;
+                target[slot] = ids.get(states.get(i).get(key));
+            }
+            while (firstFree < check.length && check[firstFree] != -1) {
+                firstFree++;
+            }
+            slotsEnd = Math.max(slotsEnd, end);
+        }
+        // any base + byte of a state stays inside the arrays
+        this.check = Arrays.copyOf(check, slotsEnd + 256);
+        this.target = Arrays.copyOf(target, slotsEnd + 256);
+
+        IdentityHashMap<Object, Integer> valueIds = new IdentityHashMap<Object, Integer>();
+        List<Object> values = new ArrayList<Object>();
+        outStart = new int[numStates + 1];
+        int numOutputs = 0;
+        for (State state : states) {
+            if (state.getOutputs() != null) {
+                numOutputs += state.getOutputs().size();
+            }
+        }
+        outIds = new int[numOutputs];
+        int o = 0;
+        for (int i = 0; i < numStates; i++) {
+            outStart[i] = o;
+            List<Object> outputs = states.get(i).getOutputs();
+            if (outputs != null) {
+                for (Object value : outputs) {
+                    Integer id = valueIds.get(value);
+                    if (id == null) {
+                        id = values.size();
+                        valueIds.put(value, id);
+                        values.add(value);
+                    }
+                    outIds[o++] = id;
+                }
+            }
+        }
+        outStart[numStates] = o;
+        outValues = values.toArray();
+    }
+
+    private static boolean fits(int[] check, int base, byte[] keys) {
+        for (byte key : keys) {
+            int slot = base + (key & 0xFF);
+            if (slot < check.length && check[slot] != -1) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the initial state of a search.
+     */
+    public int getRoot() {
+        return ROOT;
+    }
+
+    /**
+     * Searches bytes[from, to), starting from the given state, and reports each
+     * match to the handler, in the order they end.
+     *
+     * @return the state after the last byte, to continue the search over the
+     *         next bytes of the same stream
+     */
+    public int search(int state, byte[] bytes, int from, int to, MatchHandler handler) {
+        final int hotStates = this.hotStates;
+        final int[] table = this.table, base = this.base, check = this.check, target = this.target;
+        for (int i = from; i < to; i++) {
+            int b = bytes[i] & 0xFF;
+            int s = state;
+            int next = -1;
+            while (s >= hotStates) {
+                int slot = base[s] + b;
+                if (base[s] >= 0 && check[slot] == s) {
+                    next = target[slot];
+                    break;
+                }
+                s = fail[s];
+            }
+            state = next != -1 ? next : table[(s << 8) | b];
+
+            int o = outStart[state], end = outStart[state + 1];
+            for (; o < end; o++) {
+                handler.match(i + 1, outValues[outIds[o]]);
+            }
+        }
+        return state;
+    }
+
+    /**
+     * Same as {@link #search(int, byte[], int, int, MatchHandler)}, reading the
+     * bytes with absolute gets from a buffer, e.g. a mapped file, without copying
+     * them to an array.
+     */
+    public int search(int state, ByteBuffer bytes, int from, int to, MatchHandler handler) {
+        final int hotStates = this.hotStates;
+        final int[] table = this.table, base = this.base, check = this.check, target = this.target;
+        for (int i = from; i < to; i++) {
+            int b = bytes.get(i) & 0xFF;
+            int s = state;
+            int next = -1;
+            while (s >= hotStates) {
+                int slot = base[s] + b;
+                if (base[s] >= 0 && check[slot] == s) {
+                    next = target[slot];
+                    break;
+                }
+                s = fail[s];
+            }
+            state = next != -1 ? next : table[(s << 8) | b];
+
+            int o = outStart[state], end = outStart[state + 1];
+            for (; o < end; o++) {
+                handler.match(i + 1, outValues[outIds[o]]);
+            }
+        }
+        return state;
+    }
+
+}
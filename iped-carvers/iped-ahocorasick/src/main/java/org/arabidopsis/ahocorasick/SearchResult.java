@@ -47,11 +47,13 @@ public class SearchResult {
     public State lastMatchedState;
     byte[] bytes;
     int lastIndex;
+    State endState;
 
     public SearchResult(State s, byte[] bs, int i) {
         this.lastMatchedState = s;
         this.bytes = bs;
         this.lastIndex = i;
+        this.endState = s;
     }
 
     /**
@@ -68,4 +70,14 @@ public List<Object> getOutputs() {
     public int getLastIndex() {
         return lastIndex;
     }
+
+    /**
+     * Returns the state reached after the last byte, once the search continued
+     * from this result got to the end of the bytes without another match (before
+     * that, the state of this result). A search over the next buffer of a stream
+     * must start from this state, not from the last matched one.
+     */
+    public State getEndState() {
+        return endState;
+    }
 }
@@ -0,0 +1,111 @@
+package org.arabidopsis.ahocorasick;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.Random;
+
+/**
+ * Compares the search over the State graph with the compiled automaton, with
+ * carving signatures from the default CarverConfig.xml, over synthetic
+ * unallocated-like data: zeroed areas, random bytes, text and embedded file
+ * headers and footers. Usage: AhoCorasickBenchmark [sizeInMB] [iterations]
+ */
+public class AhoCorasickBenchmark {
+
+    private static final String[] SIGNATURES = { "%PDF-", "%%EOF", "<HTML", "</HTML>", "<html", "</html>", "<?xml", //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$ //$NON-NLS-7$
+            "</plist>", "BEGIN:VCARD", "END:VCARD", "end:vcard", "Client UrlCache MMF Ver ", "GIF87a", "GIF89a", //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$ //$NON-NLS-7$
+            "Message-ID: <", "Received: by", "Received: from", "Return-Path: ", "RIFF", "AVI LIST", "WAVEfmt", //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$ //$NON-NLS-7$
+            "WEBP", "BM", "\01\00\18\00", "\01\00\20\00", "II\u002a\00", "MM\00\u002a", "PK\03\04", "PK\05\06", //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$ //$NON-NLS-7$ //$NON-NLS-8$
+            "FLV\01\01\00\00\00", "\00\00\01\u00b3", "\00\00\01\u00b7", "\00\00\01\u00ba\u0021\00", "\00\u003b", //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
+            "\u0052\u0061\u0072\u0021\u001a\u0007", "\u0089PNG\r\n\u001a\n", "IEND\u00ae\u0042\u0060\u0082", //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+            "\u00ff\u00d8\u00ff\u00db", "\u00ff\u00d8\u00ff\u00e0", "\u00ff\u00d8\u00ff\u00e1", "\u00ff\u00d9" }; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+
+    private static long matches;
+
+    public static void main(String[] args) throws Exception {
+        int size = (args.length > 0 ? Integer.parseInt(args[0]) : 256) << 20;
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+        AhoCorasick tree = new AhoCorasick();
+        for (String sig : SIGNATURES) {
+            tree.add(sig.getBytes(StandardCharsets.ISO_8859_1), sig);
+        }
+        tree.prepare();
+        CompiledAhoCorasick compiled = tree.compile();
+
+        byte[] data = createData(size);
+        byte[] buf = new byte[1 << 20];
+        for (int i = 0; i < iterations; i++) {
+            long t = System.nanoTime();
+            long graphMatches = searchGraph(tree, data, buf);
+            long tg = System.nanoTime() - t;
+
+            t = System.nanoTime();
+            long compiledMatches = searchCompiled(compiled, data);
+            long tc = System.nanoTime() - t;
+
+            System.out.println("Iteration " + i + ": State graph " + (size * 1000L / tg) + " MB/s, compiled " //$NON-NLS-1$ //$NON-NLS-2$
+                    + (size * 1000L / tc) + " MB/s, matches " + graphMatches + "/" + compiledMatches); //$NON-NLS-1$ //$NON-NLS-2$
+        }
+    }
+
+    // searches 1MB buffers, like CarverTask did
+    private static long searchGraph(AhoCorasick tree, byte[] data, byte[] buf) {
+        long count = 0;
+        SearchResult lastResult = new SearchResult(tree.root, null, 0);
+        for (int pos = 0; pos < data.length; pos += buf.length) {
+            System.arraycopy(data, pos, buf, 0, buf.length);
+            lastResult = new SearchResult(lastResult.getEndState(), buf, 0);
+            Iterator<SearchResult> searcher = new Searcher(tree, tree.continueSearch(lastResult));
+            while (searcher.hasNext()) {
+                lastResult = searcher.next();
+                count += lastResult.getOutputs().size();
+            }
+        }
+        return count;
+    }
+
+    private static long searchCompiled(CompiledAhoCorasick tree, byte[] data) {
+        matches = 0;
+        int state = tree.getRoot();
+        for (int pos = 0; pos < data.length; pos += 1 << 20) {
+            state = tree.search(state, data, pos, pos + (1 << 20), (end, output) -> matches++);
+        }
+        return matches;
+    }
+
+    private static byte[] createData(int size) throws Exception {
+        Random random = new Random(0);
+        byte[] text = ("The quick brown fox jumps over the lazy dog. 0123456789 " //$NON-NLS-1$
+                + "C:\\Windows\\System32\\drivers\\etc\\hosts http://example.com/index.html ").getBytes( //$NON-NLS-1$
+                        StandardCharsets.ISO_8859_1);
+        ByteArrayOutputStream data = new ByteArrayOutputStream(size);
+        while (data.size() < size) {
+            int len = 512 + random.nextInt(8192);
+            byte[] block = new byte[len];
+            switch (random.nextInt(4)) {
+                case 0:
+                    // zeros
+                    break;
+                case 1:
+                    // compressed data, like most file content
+                    random.nextBytes(block);
+                    break;
+                case 2:
+                    for (int i = 0; i < len; i++)
+                        block[i] = text[i % text.length];
+                    break;
+                default:
+                    random.nextBytes(block);
+                    byte[] sig = SIGNATURES[random.nextInt(SIGNATURES.length)].getBytes(StandardCharsets.ISO_8859_1);
+                    System.arraycopy(sig, 0, block, 0, sig.length);
+            }
+            data.write(block);
+        }
+        byte[] result = new byte[size];
+        System.arraycopy(data.toByteArray(), 0, result, 0, size);
+        return result;
+    }
+
+}
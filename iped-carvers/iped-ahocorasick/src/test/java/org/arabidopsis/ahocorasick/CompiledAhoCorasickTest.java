@@ -0,0 +1,153 @@
+package org.arabidopsis.ahocorasick;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Compares the compiled automaton with the search over the State graph, on
+ * random patterns and data, searched in random sized chunks continued from the
+ * previous state.
+ */
+public class CompiledAhoCorasickTest {
+
+    @Test
+    public void testSmallAlphabets() {
+        Random random = new Random(0);
+        for (int n = 0; n < 100; n++) {
+            // few symbols give many overlapping and nested matches
+            byte[] alphabet = createAlphabet(random, 2 + random.nextInt(6));
+            compare(random, alphabet, 1 + random.nextInt(100), 1 + random.nextInt(12), 5000);
+        }
+    }
+
+    @Test
+    public void testManyStates() {
+        Random random = new Random(1);
+        for (int n = 0; n < 10; n++) {
+            // more states than fit in the full transition table
+            byte[] alphabet = createAlphabet(random, 256);
+            compare(random, alphabet, 1000 + random.nextInt(500), 2 + random.nextInt(9), 200000);
+        }
+    }
+
+    private static void compare(Random random, byte[] alphabet, int numPatterns, int maxLen, int dataLen) {
+        List<byte[]> patterns = new ArrayList<>();
+        AhoCorasick tree = new AhoCorasick();
+        for (int i = 0; i < numPatterns; i++) {
+            byte[] pattern;
+            if (!patterns.isEmpty() && random.nextInt(10) == 0) {
+                // same keyword with another output
+                pattern = patterns.get(random.nextInt(patterns.size()));
+            } else {
+                pattern = randomBytes(random, alphabet, 1 + random.nextInt(maxLen));
+                patterns.add(pattern);
+            }
+            tree.add(pattern, "out" + i); //$NON-NLS-1$
+        }
+        tree.prepare();
+
+        byte[] data = randomBytes(random, alphabet, dataLen);
+        for (int i = 0; i < dataLen / 50; i++) {
+            byte[] pattern = patterns.get(random.nextInt(patterns.size()));
+            int pos = random.nextInt(dataLen);
+            System.arraycopy(pattern, 0, data, pos, Math.min(pattern.length, dataLen - pos));
+        }
+        int[] chunkEnds = createChunks(random, dataLen);
+
+        List<String> expected = searchGraph(tree, data, chunkEnds);
+        assertFalse(expected.isEmpty());
+        assertEquals(expected, searchCompiled(tree.compile(), data, chunkEnds));
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect(dataLen);
+        buffer.put(data);
+        assertEquals(expected, searchCompiled(tree.compile(), buffer, chunkEnds));
+    }
+
+    private static List<String> searchGraph(AhoCorasick tree, byte[] data, int[] chunkEnds) {
+        List<String> matches = new ArrayList<>();
+        SearchResult lastResult = new SearchResult(tree.root, null, 0);
+        int start = 0;
+        for (int end : chunkEnds) {
+            byte[] chunk = Arrays.copyOfRange(data, start, end);
+            lastResult = new SearchResult(lastResult.getEndState(), chunk, 0);
+            Iterator<SearchResult> searcher = new Searcher(tree, tree.continueSearch(lastResult));
+            while (searcher.hasNext()) {
+                lastResult = searcher.next();
+                for (Object output : lastResult.getOutputs()) {
+                    matches.add(start + lastResult.getLastIndex() + " " + output); //$NON-NLS-1$
+                }
+            }
+            start = end;
+        }
+        return matches;
+    }
+
+    private static List<String> searchCompiled(CompiledAhoCorasick compiled, byte[] data, int[] chunkEnds) {
+        List<String> matches = new ArrayList<>();
+        int state = compiled.getRoot();
+        int start = 0;
+        for (int end : chunkEnds) {
+            state = compiled.search(state, data, start, end, (i, output) -> matches.add(i + " " + output)); //$NON-NLS-1$
+            start = end;
+        }
+        return matches;
+    }
+
+    private static List<String> searchCompiled(CompiledAhoCorasick compiled, ByteBuffer data, int[] chunkEnds) {
+        List<String> matches = new ArrayList<>();
+        int state = compiled.getRoot();
+        int start = 0;
+        for (int end : chunkEnds) {
+            state = compiled.search(state, data, start, end, (i, output) -> matches.add(i + " " + output)); //$NON-NLS-1$
+            start = end;
+        }
+        return matches;
+    }
+
+    private static int[] createChunks(Random random, int dataLen) {
+        List<Integer> ends = new ArrayList<>();
+        int end = 0;
+        while (end < dataLen) {
+            // includes empty and single byte chunks
+            end = Math.min(dataLen, end + random.nextInt(random.nextBoolean() ? 3 : 4000));
+            ends.add(end);
+        }
+        int[] result = new int[ends.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = ends.get(i);
+        }
+        return result;
+    }
+
+    private static byte[] createAlphabet(Random random, int size) {
+        List<Byte> all = new ArrayList<>();
+        for (int b = 0; b < 256; b++) {
+            all.add((byte) b);
+        }
+        Collections.shuffle(all, random);
+        byte[] alphabet = new byte[size];
+        for (int i = 0; i < size; i++) {
+            alphabet[i] = all.get(i);
+        }
+        return alphabet;
+    }
+
+    private static byte[] randomBytes(Random random, byte[] alphabet, int len) {
+        byte[] bytes = new byte[len];
+        for (int i = 0; i < len; i++) {
+            bytes[i] = alphabet[random.nextInt(alphabet.length)];
+        }
+        return bytes;
+    }
+
+}
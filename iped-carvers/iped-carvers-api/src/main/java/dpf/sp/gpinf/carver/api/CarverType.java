@@ -17,6 +17,7 @@ public class CarverType {
     // public Signature[] sigs = new Signature[2];
     boolean bigendian;
     int sizePos = -1, sizeBytes;
+    long lengthAdd = 0;
     ArrayList<Signature> signatures = new ArrayList<Signature>();
     private Long minLength = null, maxLength = null;
     boolean hasFooter = false;
@@ -189,6 +190,18 @@ public void setSizeBytes(int sizeBytes) {
         this.sizeBytes = sizeBytes;
     }
 
+    /**
+     * @return value added to the length field read from the header, e.g. the size
+     *         of the fields before the data counted by it
+     */
+    public long getLengthAdd() {
+        return lengthAdd;
+    }
+
+    public void setLengthAdd(long lengthAdd) {
+        this.lengthAdd = lengthAdd;
+    }
+
     public ArrayList<Signature> getSignatures() {
         return signatures;
     }
@@ -1,10 +1,13 @@
 package dpf.sp.gpinf.carving;
 
+import dpf.sp.gpinf.carver.api.CarverType;
 import dpf.sp.gpinf.carver.api.Hit;
 import iped3.IItem;
 import iped3.io.SeekableInputStream;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 
 public class DefaultCarver extends AbstractCarver {
 
@@ -24,40 +27,54 @@ public long getDefaultLengthFromHeader(IItem parentEvidence, Hit header) throws
             return header.getSignature().getCarverType().getMaxLength();
         }
 
+        CarverType type = header.getSignature().getCarverType();
+        ByteBuffer field = readHitBytes(parentEvidence, header, type.getSizePos(), type.getSizeBytes());
+        long length = 0;
+        for (int j = 0; j < type.getSizeBytes(); j++) {
+            if (!type.isBigendian()) {
+                length |= (long) (field.get(j) & 0xff) << (8 * j);
+            } else {
+                length |= (long) (field.get(j) & 0xff) << (8 * (type.getSizeBytes() - j - 1));
+            }
+        }
+        length += type.getLengthAdd();
+
+        if (header.getSignature().getCarverType().getName().startsWith("RIFF")) { //$NON-NLS-1$
+            length += 8;
+        }
+
+        long evidenceLen = parentEvidence.getLength();
+        // se a informaÃ§Ã£o de tamanho indicar que o arquivo termina em posiÃ§Ã£o maior
+        // que
+        // o tamanho da evidÃªncia
+        if (header.getOffset() + length > evidenceLen) {
+            // retorna como tamanho o tamanho entre o inicio do cabecalho e o tamanho fim da
+            // evidencia.
+            length = evidenceLen - header.getOffset();
+        }
+
+        return length;
+    }
+
+    /**
+     * Reads len bytes of the parent item, starting pos bytes after the hit, in a
+     * buffer with the byte order of the carver type. Scripts can read header
+     * fields from it with getInt(), getShort() etc. Bytes after the end of the
+     * parent are zero.
+     */
+    public ByteBuffer readHitBytes(IItem parentEvidence, Hit hit, int pos, int len) throws IOException {
+        byte[] buf = new byte[len];
         try (SeekableInputStream is = parentEvidence.getStream()) {
-            is.seek(header.getOffset() + header.getSignature().getCarverType().getSizePos());
-            byte buf[] = new byte[header.getSignature().getCarverType().getSizeBytes()];
+            is.seek(hit.getOffset() + pos);
             int i = 0, off = 0;
             do {
                 i = is.read(buf, off, buf.length - off);
             } while (i != -1 && (off += i) < buf.length);
-
-            long length = 0;
-            for (int j = 0; j < header.getSignature().getCarverType().getSizeBytes(); j++) {
-                if (!header.getSignature().getCarverType().isBigendian()) {
-                    length |= (long) (buf[j] & 0xff) << (8 * j);
-                } else {
-                    length |= (long) (buf[j] & 0xff) << (8
-                            * (header.getSignature().getCarverType().getSizeBytes() - j - 1));
-                }
-            }
-
-            if (header.getSignature().getCarverType().getName().startsWith("RIFF")) { //$NON-NLS-1$
-                length += 8;
-            }
-
-            long evidenceLen = parentEvidence.getLength();
-            // se a informaÃ§Ã£o de tamanho indicar que o arquivo termina em posiÃ§Ã£o maior
-            // que
-            // o tamanho da evidÃªncia
-            if (header.getOffset() + length > evidenceLen) {
-                // retorna como tamanho o tamanho entre o inicio do cabecalho e o tamanho fim da
-                // evidencia.
-                length = evidenceLen - header.getOffset();
-            }
-
-            return length;
         }
+        ByteBuffer buffer = ByteBuffer.wrap(buf);
+        buffer.order(hit.getSignature().getCarverType().isBigendian() ? ByteOrder.BIG_ENDIAN
+                : ByteOrder.LITTLE_ENDIAN);
+        return buffer;
     }
 
 }
\ No newline at end of file
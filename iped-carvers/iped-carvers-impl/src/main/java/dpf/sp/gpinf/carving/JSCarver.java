@@ -5,39 +5,103 @@
 import dpf.sp.gpinf.carver.api.InvalidCarvedObjectException;
 import iped3.IItem;
 
+import javax.script.Bindings;
+import javax.script.Compilable;
+import javax.script.CompiledScript;
 import javax.script.Invocable;
+import javax.script.ScriptContext;
 import javax.script.ScriptEngine;
 import javax.script.ScriptEngineManager;
 import javax.script.ScriptException;
 import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.security.cert.Certificate;
+import java.util.ArrayList;
+import java.util.HashMap;
 
+/**
+ * Carver implemented by a script. The script is compiled once per thread, and
+ * each carver instance evaluates it in its own global scope, so script globals
+ * still start fresh for each carved item. Functions not defined by the script
+ * fall back to the DefaultCarver behaviour without calling the engine.
+ *
+ * Besides the per hit notifyHit(parentEvidence, hit), a script can define
+ * notifyHits(parentEvidence, hits), which receives the hits in arrays of up to
+ * HITS_BATCH_SIZE, in order, all of them before notifyEnd. The script global
+ * "carver" is this carver, e.g. to read header fields from
+ * carver.readHitBytes(parentEvidence, hit, pos, len).
+ */
 public class JSCarver extends DefaultCarver {
+
+    private static final int HITS_BATCH_SIZE = 1000;
+
+    private static final ThreadLocal<HashMap<String, CompiledCarverScript>> compiledScripts = ThreadLocal
+            .withInitial(HashMap::new);
+
     ScriptEngine engine;
     Invocable inv;
+    private Bindings bindings;
+    private ArrayList<Hit> pendingHits = new ArrayList<>();
+
+    private static class CompiledCarverScript {
+
+        private final ScriptEngine engine;
+        private final CompiledScript compiled;
+        private final String source;
+
+        private CompiledCarverScript(File scriptFile) throws IOException, ScriptException {
+            ScriptEngineManager manager = new ScriptEngineManager();
+            String ext = scriptFile.getName().substring(scriptFile.getName().lastIndexOf('.') + 1); // $NON-NLS-1$
+            this.engine = manager.getEngineByExtension(ext); // $NON-NLS-1$
+            this.source = new String(Files.readAllBytes(scriptFile.toPath()), StandardCharsets.UTF_8);
+            this.compiled = engine instanceof Compilable ? ((Compilable) engine).compile(source) : null;
+        }
+
+        private void eval(Bindings bindings) throws ScriptException {
+            if (compiled != null) {
+                compiled.eval(bindings);
+            } else {
+                engine.eval(source, bindings);
+            }
+        }
+    }
 
     // inicializa um default carver com script
     public JSCarver(File scriptFile)
             throws UnsupportedEncodingException, FileNotFoundException, IOException, ScriptException {
-        ScriptEngineManager manager = new ScriptEngineManager();
-        String ext = scriptFile.getName().substring(scriptFile.getName().lastIndexOf('.') + 1); // $NON-NLS-1$
-        this.engine = manager.getEngineByExtension(ext); // $NON-NLS-1$
-        try (InputStreamReader reader = new InputStreamReader(new FileInputStream(scriptFile), "UTF-8")) {
-            engine.eval(reader);
+        HashMap<String, CompiledCarverScript> scripts = compiledScripts.get();
+        CompiledCarverScript script = scripts.get(scriptFile.getAbsolutePath());
+        if (script == null) {
+            script = new CompiledCarverScript(scriptFile);
+            scripts.put(scriptFile.getAbsolutePath(), script);
         }
+        this.engine = script.engine;
         this.inv = (Invocable) engine;
+        this.bindings = engine.createBindings();
+        this.bindings.put("carver", this); //$NON-NLS-1$
+        script.eval(bindings);
+    }
+
+    private boolean hasFunction(String name) {
+        return bindings.get(name) != null;
+    }
+
+    private Object invoke(String name, Object... args) throws ScriptException, NoSuchMethodException {
+        // the engine is shared by the carvers of this thread, each one with its globals
+        engine.setBindings(bindings, ScriptContext.ENGINE_SCOPE);
+        return inv.invokeFunction(name, args);
     }
 
     @Override
     public long getLengthFromHit(IItem parentEvidence, Hit header) throws IOException {
+        if (!hasFunction("getLengthFromHeader")) { //$NON-NLS-1$
+            // se o método não for implementado assume o comportamento padrão
+            return super.getDefaultLengthFromHeader(parentEvidence, header);
+        }
         try {
-            Double l = (Double) inv.invokeFunction("getLengthFromHeader", parentEvidence, header);
+            Number l = (Number) invoke("getLengthFromHeader", parentEvidence, header); //$NON-NLS-1$
             return l.longValue();
-        } catch (ScriptException e) {
-            throw new IOException(e);
-        } catch (NoSuchMethodException e) {
-            return super.getDefaultLengthFromHeader(parentEvidence, header); // se o método não for implementado assume
-            // o comportamento padrão
         } catch (Exception e) {
             // caso uma exceção ocorra dentro do script
             throw new IOException(e);
@@ -47,74 +111,101 @@ public long getLengthFromHit(IItem parentEvidence, Hit header) throws IOExceptio
     @Override
     public Object validateCarvedObject(IItem parentEvidence, Hit header, long length)
             throws InvalidCarvedObjectException {
+        if (!hasFunction("validateCarvedObject")) { //$NON-NLS-1$
+            // se o método de validação não for implementado considera o objeto válido
+            return super.validateCarvedObject(parentEvidence, header, length);
+        }
         try {
-            Certificate cert = (Certificate) inv.invokeFunction("validateCarvedObject", parentEvidence, header, length);
+            Certificate cert = (Certificate) invoke("validateCarvedObject", parentEvidence, header, length); //$NON-NLS-1$
             return cert;
-        } catch (ScriptException e) {
+        } catch (ScriptException | NoSuchMethodException e) {
             throw new InvalidCarvedObjectException(e);
-        } catch (NoSuchMethodException e) {
-            return super.validateCarvedObject(parentEvidence, header, length); // se o método de validação não for
-            // implementado considera o objeto
-            // válido
         }
     }
 
     @Override
     public IItem carveFromHeader(IItem parentEvidence, Hit header) throws IOException {
+        if (!hasFunction("carveFromHeader")) { //$NON-NLS-1$
+            return super.carveFromHeader(parentEvidence, header);
+        }
         try {
-            IItem e = (IItem) inv.invokeFunction("carveFromHeader", parentEvidence, header);
+            IItem e = (IItem) invoke("carveFromHeader", parentEvidence, header); //$NON-NLS-1$
             return e;
-        } catch (ScriptException e) {
+        } catch (ScriptException | NoSuchMethodException e) {
             throw new IOException(e);
-        } catch (NoSuchMethodException e) {
-            return super.carveFromHeader(parentEvidence, header); // se o método de validação não for implementado
-            // considera o objeto válido
         }
     }
 
     @Override
     public IItem carveFromFooter(IItem parentEvidence, Hit footer) throws IOException {
+        if (!hasFunction("carveFromFooter")) { //$NON-NLS-1$
+            return super.carveFromFooter(parentEvidence, footer);
+        }
         try {
-            IItem e = (IItem) inv.invokeFunction("carveFromFooter", parentEvidence, footer);
+            IItem e = (IItem) invoke("carveFromFooter", parentEvidence, footer); //$NON-NLS-1$
             return e;
-        } catch (ScriptException e) {
+        } catch (ScriptException | NoSuchMethodException e) {
             throw new IOException(e);
-        } catch (NoSuchMethodException e) {
-            return super.carveFromFooter(parentEvidence, footer);
         }
     }
 
     @Override
     public CarverType[] getCarverTypes() {
+        if (!hasFunction("getCarverTypes")) { //$NON-NLS-1$
+            return super.getCarverTypes();
+        }
         try {
-            CarverType[] cts = (CarverType[]) inv.invokeFunction("getCarverTypes");
+            CarverType[] cts = (CarverType[]) invoke("getCarverTypes"); //$NON-NLS-1$
             return cts;
-        } catch (ScriptException e) {
+        } catch (ScriptException | NoSuchMethodException e) {
             return null;
-        } catch (NoSuchMethodException e) {
-            return super.getCarverTypes();
         }
     }
 
     @Override
     public void notifyHit(IItem parentEvidence, Hit hit) throws IOException {
+        if (hasFunction("notifyHits")) { //$NON-NLS-1$
+            pendingHits.add(hit);
+            if (pendingHits.size() >= HITS_BATCH_SIZE) {
+                flushHits(parentEvidence);
+            }
+            return;
+        }
+        if (!hasFunction("notifyHit")) { //$NON-NLS-1$
+            super.notifyHit(parentEvidence, hit);
+            return;
+        }
         try {
-            inv.invokeFunction("notifyHit", parentEvidence, hit);
-        } catch (ScriptException e) {
+            invoke("notifyHit", parentEvidence, hit); //$NON-NLS-1$
+        } catch (ScriptException | NoSuchMethodException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private void flushHits(IItem parentEvidence) throws IOException {
+        if (pendingHits.isEmpty()) {
+            return;
+        }
+        Hit[] hits = pendingHits.toArray(new Hit[pendingHits.size()]);
+        pendingHits.clear();
+        try {
+            invoke("notifyHits", parentEvidence, hits); //$NON-NLS-1$
+        } catch (ScriptException | NoSuchMethodException e) {
             throw new IOException(e);
-        } catch (NoSuchMethodException e) {
-            super.notifyHit(parentEvidence, hit);
         }
     }
 
     @Override
     public void notifyEnd(IItem parentEvidence) throws IOException {
+        flushHits(parentEvidence);
+        if (!hasFunction("notifyEnd")) { //$NON-NLS-1$
+            super.notifyEnd(parentEvidence);
+            return;
+        }
         try {
-            inv.invokeFunction("notifyEnd", parentEvidence);
-        } catch (ScriptException e) {
+            invoke("notifyEnd", parentEvidence); //$NON-NLS-1$
+        } catch (ScriptException | NoSuchMethodException e) {
             throw new IOException(e);
-        } catch (NoSuchMethodException e) {
-            super.notifyEnd(parentEvidence);
         }
     }
 }
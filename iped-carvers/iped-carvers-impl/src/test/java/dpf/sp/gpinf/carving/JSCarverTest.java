@@ -0,0 +1,242 @@
+package dpf.sp.gpinf.carving;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assume.assumeNotNull;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import javax.script.Invocable;
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineManager;
+import javax.script.ScriptException;
+
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.mime.MediaType;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import dpf.sp.gpinf.carver.api.Carver;
+import dpf.sp.gpinf.carver.api.CarverType;
+import dpf.sp.gpinf.carver.api.Hit;
+import dpf.sp.gpinf.carver.api.Signature;
+import dpf.sp.gpinf.carving.carvers.DERCarver;
+import dpf.sp.gpinf.indexer.util.SeekableFileInputStream;
+import iped3.IItem;
+
+/**
+ * Runs the shipped DER script carver on a small sample and compares the carved
+ * items with the previous script path, a new engine per carver invoking every
+ * function, and with the Java DERCarver.
+ */
+public class JSCarverTest {
+
+    private static final File SCRIPT = new File(
+            "../../iped-app/resources/config/conf/carvers/DERCarver.js"); //$NON-NLS-1$
+
+    private File sample;
+    private CarverType type;
+
+    @Before
+    public void setUp() throws Exception {
+        assumeTrue(SCRIPT.exists());
+        // JDKs from 15 on have no javascript engine
+        assumeNotNull(new ScriptEngineManager().getEngineByExtension("js")); //$NON-NLS-1$
+
+        sample = File.createTempFile("carving", ".bin"); //$NON-NLS-1$ //$NON-NLS-2$
+        Files.write(sample.toPath(), createSample());
+        type = new DERCarver().getCarverTypes()[0];
+        type.setCarverScript(SCRIPT.getName());
+    }
+
+    @After
+    public void tearDown() {
+        if (sample != null) {
+            sample.delete();
+        }
+    }
+
+    @Test
+    public void testSameItemsAsOldPath() throws Exception {
+        List<String> expected = carve(new OldJSCarver(SCRIPT));
+        assertFalse(expected.isEmpty());
+        assertEquals(expected, carve(new DERCarver()));
+        // twice, the second with the script already compiled by this thread
+        assertEquals(expected, carve(new JSCarver(SCRIPT)));
+        assertEquals(expected, carve(new JSCarver(SCRIPT)));
+    }
+
+    /**
+     * @return the carved items as "offset length"
+     */
+    private List<String> carve(Carver carver) throws IOException {
+        List<String> carved = new ArrayList<>();
+        // the script does not validate the carved bytes, nor does the test data
+        carver.setIgnoreCorrupted(false);
+        carver.registerCarvedItemListener(
+                (parent, item, offset) -> carved.add(offset + " " + item.getLength())); //$NON-NLS-1$
+        IItem parent = createItem(null);
+        Signature header = type.getSignatures().get(0);
+        byte[] data = Files.readAllBytes(sample.toPath());
+        for (int i = 0; i + 6 <= data.length; i++) {
+            if (data[i] == 0x30 && data[i + 1] == (byte) 0x82 && data[i + 4] == 0x30 && data[i + 5] == (byte) 0x82) {
+                carver.notifyHit(parent, new Hit(header, i));
+            }
+        }
+        carver.notifyEnd(parent);
+        return carved;
+    }
+
+    /**
+     * Parent item backed by the sample file, or a carved item of it.
+     */
+    private IItem createItem(IItem parentItem) {
+        Map<String, Object> values = new HashMap<>();
+        Metadata metadata = new Metadata();
+        return (IItem) Proxy.newProxyInstance(IItem.class.getClassLoader(), new Class<?>[] { IItem.class },
+                (proxy, method, args) -> {
+                    String name = method.getName();
+                    switch (name) {
+                        case "getStream": //$NON-NLS-1$
+                            return new SeekableFileInputStream(sample);
+                        case "getLength": //$NON-NLS-1$
+                            return parentItem == null ? sample.length() : values.get(name);
+                        case "getFileOffset": //$NON-NLS-1$
+                            return parentItem == null ? -1L : values.get(name);
+                        case "getPath": //$NON-NLS-1$
+                            return parentItem == null ? "sample" : values.get(name); //$NON-NLS-1$
+                        case "getMediaType": //$NON-NLS-1$
+                            return parentItem == null ? MediaType.OCTET_STREAM : values.get(name);
+                        case "getMetadata": //$NON-NLS-1$
+                            return metadata;
+                        case "createChildItem": //$NON-NLS-1$
+                            return createItem((IItem) proxy);
+                        case "hashCode": //$NON-NLS-1$
+                            return System.identityHashCode(proxy);
+                        case "equals": //$NON-NLS-1$
+                            return proxy == args[0];
+                        default:
+                            if (name.startsWith("set") && args.length == 1) { //$NON-NLS-1$
+                                values.put("get" + name.substring(3), args[0]); //$NON-NLS-1$
+                                return null;
+                            }
+                            throw new UnsupportedOperationException(name);
+                    }
+                });
+    }
+
+    /**
+     * Random bytes with DER headers of several lengths, some smaller than the
+     * minimum length of the type and one going past the end of the sample.
+     */
+    private static byte[] createSample() {
+        Random random = new Random(0);
+        byte[] data = new byte[200000];
+        random.nextBytes(data);
+        for (int i = 0; i < data.length - 1; i++) {
+            if (data[i] == 0x30 && data[i + 1] == (byte) 0x82) {
+                data[i + 1] = 0;
+            }
+        }
+        int pos = 100;
+        while (pos < data.length - 10) {
+            int len = 500 + random.nextInt(8000);
+            data[pos] = 0x30;
+            data[pos + 1] = (byte) 0x82;
+            data[pos + 2] = (byte) (len >> 8);
+            data[pos + 3] = (byte) len;
+            data[pos + 4] = 0x30;
+            data[pos + 5] = (byte) 0x82;
+            pos += Math.min(len, 3000) + random.nextInt(2000);
+        }
+        return data;
+    }
+
+    /**
+     * Script carver before scripts were compiled once per thread: a new engine
+     * per carver, every function invoked and missing ones detected by
+     * NoSuchMethodException. The length is read as a Number, like now, as the
+     * engine may return an Integer.
+     */
+    private static class OldJSCarver extends DefaultCarver {
+
+        private final Invocable inv;
+
+        private OldJSCarver(File scriptFile) throws IOException, ScriptException {
+            ScriptEngine engine = new ScriptEngineManager().getEngineByExtension("js"); //$NON-NLS-1$
+            try (InputStreamReader reader = new InputStreamReader(new FileInputStream(scriptFile), "UTF-8")) { //$NON-NLS-1$
+                engine.eval(reader);
+            }
+            this.inv = (Invocable) engine;
+        }
+
+        @Override
+        public long getLengthFromHit(IItem parentEvidence, Hit header) throws IOException {
+            try {
+                Number l = (Number) inv.invokeFunction("getLengthFromHeader", parentEvidence, header); //$NON-NLS-1$
+                return l.longValue();
+            } catch (NoSuchMethodException e) {
+                return super.getDefaultLengthFromHeader(parentEvidence, header);
+            } catch (Exception e) {
+                throw new IOException(e);
+            }
+        }
+
+        @Override
+        public Object validateCarvedObject(IItem parentEvidence, Hit header, long length) {
+            try {
+                return inv.invokeFunction("validateCarvedObject", parentEvidence, header, length); //$NON-NLS-1$
+            } catch (NoSuchMethodException e) {
+                return null;
+            } catch (ScriptException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        @Override
+        public IItem carveFromHeader(IItem parentEvidence, Hit header) throws IOException {
+            try {
+                return (IItem) inv.invokeFunction("carveFromHeader", parentEvidence, header); //$NON-NLS-1$
+            } catch (NoSuchMethodException e) {
+                return super.carveFromHeader(parentEvidence, header);
+            } catch (ScriptException e) {
+                throw new IOException(e);
+            }
+        }
+
+        @Override
+        public void notifyHit(IItem parentEvidence, Hit hit) throws IOException {
+            try {
+                inv.invokeFunction("notifyHit", parentEvidence, hit); //$NON-NLS-1$
+            } catch (NoSuchMethodException e) {
+                super.notifyHit(parentEvidence, hit);
+            } catch (ScriptException e) {
+                throw new IOException(e);
+            }
+        }
+
+        @Override
+        public void notifyEnd(IItem parentEvidence) throws IOException {
+            try {
+                inv.invokeFunction("notifyEnd", parentEvidence); //$NON-NLS-1$
+            } catch (NoSuchMethodException e) {
+                super.notifyEnd(parentEvidence);
+            } catch (ScriptException e) {
+                throw new IOException(e);
+            }
+        }
+    }
+
+}
@@ -11,26 +11,22 @@
 import dpf.sp.gpinf.indexer.config.ConfigurationManager;
 import dpf.sp.gpinf.indexer.config.IPEDConfig;
 import dpf.sp.gpinf.indexer.process.task.BaseCarveTask;
-import dpf.sp.gpinf.indexer.util.IOUtil;
 import gpinf.dev.data.Item;
 import iped3.IItem;
 
 import org.apache.tika.config.TikaConfig;
 import org.apache.tika.mime.MediaType;
 import org.apache.tika.mime.MediaTypeRegistry;
-import org.arabidopsis.ahocorasick.AhoCorasick;
-import org.arabidopsis.ahocorasick.SearchResult;
-import org.arabidopsis.ahocorasick.Searcher;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.Properties;
 import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * Classe responsável pelo Data Carving. Utiliza o algoritmo aho-corasick, o
@@ -49,6 +45,18 @@ public class CarverTask extends BaseCarveTask {
     private static Logger LOGGER = LoggerFactory.getLogger(CarverTask.class);
     private static int largestPatternLen = 100;
 
+    /**
+     * Itens maiores que SEGMENTED_MIN_LENGTH têm a busca de assinaturas dividida
+     * em segmentos de SEGMENT_SIZE, pesquisados em paralelo.
+     */
+    private static final int SEGMENT_SIZE = 32 * 1024 * 1024;
+    private static final long SEGMENTED_MIN_LENGTH = 4L * SEGMENT_SIZE;
+    private static final int SEGMENT_THREADS = Runtime.getRuntime().availableProcessors();
+    private static ExecutorService segmentExecutor;
+
+    // maior sequência de bytes inserida na árvore aho-corasick
+    private static int maxSeqLen = 0;
+
     private CarvedItemListener carvedItemListener = null;
 
     private static MediaTypeRegistry registry;
@@ -56,9 +64,6 @@ public class CarverTask extends BaseCarveTask {
     IItem evidence;
 
     long prevLen = 0;
-    int len = 0, k = 0;
-    byte[] buf = new byte[1024 * 1024];
-    byte[] cBuf;
 
     public CarverTask() {
         if (registry == null)
@@ -101,117 +106,110 @@ private void safeProcess(IItem evidence) {
             return;
         }
 
-        InputStream tis = null;
         try {
             MediaType type = evidence.getMediaType();
-
-            tis = evidence.getBufferedStream();
+            long skipped = 0;
 
             // faz um loop na hierarquia de tipos mime
             while (!MediaType.OCTET_STREAM.equals(type)) {
                 if (carverConfig.isToNotProcess(type)) {
-                    tis.close();
                     return;
                 }
                 // avança 1 byte para não recuperar o próprio arquivo analisado
                 if (carverConfig.isToCarve(type)) {
-                    prevLen = (int) tis.skip(1);
+                    prevLen = 1;
+                    skipped++;
                     // break;
                 }
 
                 type = registry.getSupertype(type);
             }
 
-            findSig(tis);
+            findSig(skipped);
 
         } catch (Exception t) {
             LOGGER.warn("{} Error carving on {} {}", Thread.currentThread().getName(), evidence.getPath(), //$NON-NLS-1$
                     t.toString());
             t.printStackTrace();
-
-        } finally {
-            IOUtil.closeQuietly(tis);
-        }
-
-    }
-
-    private void fillBuf(InputStream in) throws IOException {
-        prevLen += len;
-        len = 0;
-        k = 0;
-        while (k != -1 && (len += k) < buf.length) {
-            k = in.read(buf, len, buf.length - len);
         }
 
-        cBuf = new byte[len];
-        System.arraycopy(buf, 0, cBuf, 0, len);
-
     }
 
-    private Hit findSig(InputStream in) throws Exception {
+    private HashMap<CarverType, TreeMap<Long, Integer>> createSplitSigMap() {
         HashMap<CarverType, TreeMap<Long, Integer>> map = new HashMap<>();
         for (int i = 0; i < carverTypes.length; i++) {
             map.put(carverTypes[i], new TreeMap<Long, Integer>());
         }
+        return map;
+    }
 
-        AhoCorasick tree = carverConfig.getPopulatedTree();
-        SearchResult lastResult = new SearchResult(tree.root, null, 0);
-        do {
-            fillBuf(in);
-            lastResult = new SearchResult(lastResult.lastMatchedState, cBuf, 0);
-            Iterator<SearchResult> searcher = new Searcher(tree, tree.continueSearch(lastResult));
-
-            while (searcher.hasNext()) {
-                lastResult = searcher.next();
-
-                for (Object out : lastResult.getOutputs()) {
-                    Object[] oarray = (Object[]) out;
-                    Signature sig = (Signature) oarray[0];
-                    int seq = (int) oarray[1];
-                    int i = lastResult.getLastIndex() - sig.seqEndPos[seq];
-
-                    // tratamento para assinaturas com ? (divididas)
-                    if (sig.seqs.length > 1) {
-                        Integer hits = (Integer) map.get(sig.getCarverType()).get(prevLen + i);
-                        if (hits == null) {
-                            hits = 0;
-                        }
-                        if (hits != seq) {
-                            continue;
-                        }
-                        map.get(sig.getCarverType()).put(prevLen + i, ++hits);
-                        if (map.get(sig.getCarverType()).size() > largestPatternLen) {
-                            map.get(sig.getCarverType()).remove(map.get(sig.getCarverType()).firstKey());
-                        }
+    private void findSig(long dataStart) throws Exception {
+        HashMap<CarverType, TreeMap<Long, Integer>> map = createSplitSigMap();
+        SignatureSearch search = new SignatureSearch(carverConfig.getPopulatedTree().compile(), maxSeqLen);
+        long base = prevLen;
+        SignatureSearch.HitHandler handler = (sig, seq, offset) -> processHit(map, sig, seq, base + offset);
+
+        Long length = evidence.getLength();
+        if (SEGMENT_THREADS > 1 && length != null && length - dataStart >= SEGMENTED_MIN_LENGTH) {
+            search.searchSegmented(evidence, dataStart, length - dataStart, SEGMENT_SIZE, getSegmentExecutor(),
+                    SEGMENT_THREADS, handler);
+        } else {
+            search.search(evidence, dataStart, handler);
+        }
 
-                        if (hits < sig.seqs.length) {
-                            continue;
-                        }
-                    }
+        notifyEnd();
+    }
 
-                    Hit hit = null;
-                    hit = new Hit(sig, prevLen + i);
+    private void notifyEnd() throws IOException {
+        for (Carver carver : registeredCarvers.values()) {
+            carver.notifyEnd(this.evidence);
+        }
+    }
 
-                    Carver carver = getCarver(sig.getCarverType());
+    private void processHit(HashMap<CarverType, TreeMap<Long, Integer>> map, Signature sig, int seq, long offset) {
+        // tratamento para assinaturas com ? (divididas)
+        if (sig.seqs.length > 1) {
+            Integer hits = (Integer) map.get(sig.getCarverType()).get(offset);
+            if (hits == null) {
+                hits = 0;
+            }
+            if (hits != seq) {
+                return;
+            }
+            map.get(sig.getCarverType()).put(offset, ++hits);
+            if (map.get(sig.getCarverType()).size() > largestPatternLen) {
+                map.get(sig.getCarverType()).remove(map.get(sig.getCarverType()).firstKey());
+            }
 
-                    try {
-                        carver.notifyHit(this.evidence, hit);
-                    } catch (Exception e) {
-                        LOGGER.warn("{} Skipping unexpected error carving on hit {} {} - CarverClass {}", //$NON-NLS-1$
-                                Thread.currentThread().getName(), evidence.getPath(), hit.getOffset(),
-                                carver.getClass().getName());
-                        e.printStackTrace();
-                    }
-                }
+            if (hits < sig.seqs.length) {
+                return;
             }
+        }
 
-        } while (k != -1);
+        Hit hit = null;
+        hit = new Hit(sig, offset);
 
-        for (Carver carver : registeredCarvers.values()) {
-            carver.notifyEnd(this.evidence);
+        Carver carver = getCarver(sig.getCarverType());
+
+        try {
+            carver.notifyHit(this.evidence, hit);
+        } catch (Exception e) {
+            LOGGER.warn("{} Skipping unexpected error carving on hit {} {} - CarverClass {}", //$NON-NLS-1$
+                    Thread.currentThread().getName(), evidence.getPath(), hit.getOffset(),
+                    carver.getClass().getName());
+            e.printStackTrace();
         }
+    }
 
-        return null;
+    private static synchronized ExecutorService getSegmentExecutor() {
+        if (segmentExecutor == null) {
+            segmentExecutor = Executors.newFixedThreadPool(SEGMENT_THREADS, r -> {
+                Thread t = new Thread(r, "CarverSegmentScanner"); //$NON-NLS-1$
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        return segmentExecutor;
     }
 
     @Override
@@ -234,6 +232,15 @@ public void init(Properties confProps, File confDir) throws Exception {
             carverConfig = ctConfig.getCarverConfiguration();
             carverConfig.configTask(confDir, carvedItemListener);
             carverTypes = carverConfig.getCarverTypes();
+            for (CarverType type : carverTypes) {
+                for (Signature sig : type.getSignatures()) {
+                    if (sig.seqs != null) {
+                        for (byte[] seq : sig.seqs) {
+                            maxSeqLen = Math.max(maxSeqLen, seq.length);
+                        }
+                    }
+                }
+            }
             ignoreCorrupted = carverConfig.isToIgnoreCorrupted();
         }
     }
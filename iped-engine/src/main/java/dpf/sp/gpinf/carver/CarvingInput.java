@@ -0,0 +1,149 @@
+package dpf.sp.gpinf.carver;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.StandardOpenOption;
+
+import org.arabidopsis.ahocorasick.CompiledAhoCorasick;
+import org.arabidopsis.ahocorasick.CompiledAhoCorasick.MatchHandler;
+
+import dpf.sp.gpinf.indexer.util.IOUtil;
+import gpinf.dev.data.Item;
+import iped3.IItem;
+import iped3.io.SeekableInputStream;
+
+/**
+ * Item content read by blocks for the signature search. When the content is a
+ * local file, e.g. items from folders or dd images processed as files, or items
+ * already exported to a temp file, the blocks are windows of the mapped file
+ * and are searched where they are, without being copied. Otherwise the item
+ * stream is read into a buffer.
+ */
+abstract class CarvingInput implements Closeable {
+
+    private static final int STREAM_BLOCK_SIZE = 1024 * 1024;
+    private static final int MAPPED_BLOCK_SIZE = 64 * 1024 * 1024;
+
+    /**
+     * Opens the item content starting at position.
+     */
+    static CarvingInput open(IItem item, long position) throws IOException {
+        File file = getLocalFile(item);
+        if (file != null && IOUtil.canMapFile(file)) {
+            return new Mapped(file, position);
+        }
+        SeekableInputStream in = item.getStream();
+        try {
+            in.seek(position);
+        } catch (IOException | RuntimeException e) {
+            in.close();
+            throw e;
+        }
+        return new Streamed(in);
+    }
+
+    private static File getLocalFile(IItem item) throws IOException {
+        if (item instanceof Item) {
+            Item it = (Item) item;
+            File file = null;
+            if (it.hasFile()) {
+                file = it.getFile();
+            } else if (it.hasTmpFile()) {
+                file = it.getTempFile();
+            }
+            if (file != null && file.isFile()) {
+                return file;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Loads the next block of at most maxLen bytes.
+     *
+     * @return the block length, 0 at the end of the content
+     */
+    abstract int nextBlock(long maxLen) throws IOException;
+
+    /**
+     * Searches the current block, reporting match ends relative to its start.
+     *
+     * @return the state after the block
+     */
+    abstract int search(CompiledAhoCorasick tree, int state, MatchHandler handler);
+
+    private static class Streamed extends CarvingInput {
+
+        private final InputStream in;
+        private final byte[] buf = new byte[STREAM_BLOCK_SIZE];
+        private int len;
+
+        private Streamed(InputStream in) {
+            this.in = in;
+        }
+
+        @Override
+        int nextBlock(long maxLen) throws IOException {
+            int max = (int) Math.min(buf.length, maxLen);
+            int k = 0;
+            len = 0;
+            while (k != -1 && (len += k) < max) {
+                k = in.read(buf, len, max - len);
+            }
+            return len;
+        }
+
+        @Override
+        int search(CompiledAhoCorasick tree, int state, MatchHandler handler) {
+            return tree.search(state, buf, 0, len, handler);
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    private static class Mapped extends CarvingInput {
+
+        private final FileChannel channel;
+        private final long size;
+        private long position;
+        private MappedByteBuffer block;
+
+        private Mapped(File file, long position) throws IOException {
+            this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+            this.size = channel.size();
+            this.position = position;
+        }
+
+        @Override
+        int nextBlock(long maxLen) throws IOException {
+            int len = (int) Math.min(MAPPED_BLOCK_SIZE, Math.min(maxLen, size - position));
+            if (len <= 0) {
+                block = null;
+                return 0;
+            }
+            block = channel.map(MapMode.READ_ONLY, position, len);
+            position += len;
+            return len;
+        }
+
+        @Override
+        int search(CompiledAhoCorasick tree, int state, MatchHandler handler) {
+            return tree.search(state, block, 0, block.limit(), handler);
+        }
+
+        @Override
+        public void close() throws IOException {
+            block = null;
+            channel.close();
+        }
+    }
+
+}
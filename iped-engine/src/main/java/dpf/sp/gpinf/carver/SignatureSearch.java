@@ -0,0 +1,181 @@
+package dpf.sp.gpinf.carver;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.arabidopsis.ahocorasick.CompiledAhoCorasick;
+import org.arabidopsis.ahocorasick.CompiledAhoCorasick.MatchHandler;
+
+import dpf.sp.gpinf.carver.api.Signature;
+import iped3.IItem;
+
+/**
+ * Busca aho-corasick das assinaturas de carving no conteúdo de um item, a
+ * partir de dataStart. Os offsets das ocorrências são relativos a dataStart.
+ */
+class SignatureSearch {
+
+    interface HitHandler {
+        void hit(Signature sig, int seq, long offset);
+    }
+
+    private final CompiledAhoCorasick tree;
+    private final int maxSeqLen;
+
+    /**
+     * @param maxSeqLen
+     *            maior sequência de bytes inserida na árvore
+     */
+    SignatureSearch(CompiledAhoCorasick tree, int maxSeqLen) {
+        this.tree = tree;
+        this.maxSeqLen = maxSeqLen;
+    }
+
+    void search(IItem item, long dataStart, HitHandler handler) throws IOException {
+        try (CarvingInput input = CarvingInput.open(item, dataStart)) {
+            int state = tree.getRoot();
+            long pos = 0;
+            int len;
+            while ((len = input.nextBlock(Long.MAX_VALUE)) > 0) {
+                state = input.search(tree, state, toMatchHandler(pos, 0, handler));
+                pos += len;
+            }
+        }
+    }
+
+    /**
+     * Versão paralela de search() para itens grandes. Somente a busca aho-corasick
+     * é paralela: cada segmento é pesquisado por outra thread, a partir da raiz da
+     * árvore, com uma sobreposição de maxSeqLen bytes antes do início do segmento.
+     * Assim o estado da árvore ao entrar no segmento é igual ao da busca
+     * sequencial e cada segmento reporta somente as ocorrências que terminam
+     * dentro dele. As ocorrências são repassadas ao handler nesta thread, na ordem
+     * dos segmentos, logo o resultado é idêntico ao de search(), inclusive para
+     * assinaturas divididas ou que cruzam segmentos. No máximo maxPending
+     * segmentos ficam em memória, pesquisados ou aguardando.
+     */
+    void searchSegmented(IItem item, long dataStart, long dataLength, int segmentSize, ExecutorService executor,
+            int maxPending, HitHandler handler) throws Exception {
+
+        long numSegments = (dataLength + segmentSize - 1) / segmentSize;
+        ArrayDeque<Future<List<SegmentHit>>> pending = new ArrayDeque<>();
+        AtomicBoolean aborted = new AtomicBoolean();
+        long nextSegment = 0;
+        try {
+            while (nextSegment < numSegments || !pending.isEmpty()) {
+                while (nextSegment < numSegments && pending.size() < maxPending) {
+                    long start = nextSegment * segmentSize;
+                    // o último segmento vai até o fim do stream, como search()
+                    long end = ++nextSegment == numSegments ? Long.MAX_VALUE : start + segmentSize;
+                    pending.add(executor.submit(new SegmentScan(item, dataStart, start, end, aborted)));
+                }
+                List<SegmentHit> hits;
+                try {
+                    hits = pending.poll().get();
+                } catch (ExecutionException e) {
+                    throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+                }
+                for (SegmentHit hit : hits) {
+                    handler.hit(hit.sig, hit.seq, hit.offset);
+                }
+            }
+        } finally {
+            // os segmentos leem o item com seus próprios streams, então devem terminar
+            // antes do item ser liberado
+            aborted.set(true);
+            for (Future<List<SegmentHit>> future : pending) {
+                awaitQuietly(future);
+            }
+        }
+    }
+
+    private static void awaitQuietly(Future<?> future) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                future.get();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            } catch (ExecutionException | CancellationException e) {
+                break;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Reports the matches ending after minEnd, relative to the data start.
+     */
+    private static MatchHandler toMatchHandler(long blockStart, long minEnd, HitHandler handler) {
+        return (blockEnd, out) -> {
+            if (blockStart + blockEnd > minEnd) {
+                Object[] oarray = (Object[]) out;
+                Signature sig = (Signature) oarray[0];
+                int seq = (int) oarray[1];
+                handler.hit(sig, seq, blockStart + blockEnd - sig.seqEndPos[seq]);
+            }
+        };
+    }
+
+    private static class SegmentHit {
+
+        private final Signature sig;
+        private final int seq;
+        private final long offset;
+
+        private SegmentHit(Signature sig, int seq, long offset) {
+            this.sig = sig;
+            this.seq = seq;
+            this.offset = offset;
+        }
+    }
+
+    /**
+     * Pesquisa as assinaturas que terminam no intervalo (start, end] dos dados.
+     */
+    private class SegmentScan implements Callable<List<SegmentHit>> {
+
+        private final IItem item;
+        private final long dataStart, start, end;
+        private final AtomicBoolean aborted;
+
+        private SegmentScan(IItem item, long dataStart, long start, long end, AtomicBoolean aborted) {
+            this.item = item;
+            this.dataStart = dataStart;
+            this.start = start;
+            this.end = end;
+            this.aborted = aborted;
+        }
+
+        @Override
+        public List<SegmentHit> call() throws Exception {
+            List<SegmentHit> hits = new ArrayList<>();
+            if (aborted.get()) {
+                return hits;
+            }
+            HitHandler handler = (sig, seq, offset) -> hits.add(new SegmentHit(sig, seq, offset));
+            long pos = Math.max(0, start - maxSeqLen);
+            try (CarvingInput input = CarvingInput.open(item, dataStart + pos)) {
+                int state = tree.getRoot();
+                int len;
+                while (!aborted.get() && pos < end && (len = input.nextBlock(end - pos)) > 0) {
+                    state = input.search(tree, state, toMatchHandler(pos, start, handler));
+                    pos += len;
+                }
+            }
+            return hits;
+        }
+    }
+
+}
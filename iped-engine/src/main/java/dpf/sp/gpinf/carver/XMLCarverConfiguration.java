@@ -201,6 +201,7 @@ private void configCarverType(CarverType ct, Element carverTypeEl, String script
         Element lengthOffset = XMLUtil.getFirstElement(carverTypeEl, "lengthOffset");
         Element lengthSizeBytes = XMLUtil.getFirstElement(carverTypeEl, "lengthSizeBytes");
         Element lengthBigEndian = XMLUtil.getFirstElement(carverTypeEl, "lengthBigEndian");
+        Element lengthAdd = XMLUtil.getFirstElement(carverTypeEl, "lengthAdd");
         Element minLength = XMLUtil.getFirstElement(carverTypeEl, "minLength");
         Element maxLength = XMLUtil.getFirstElement(carverTypeEl, "maxLength");
         Element carverScriptFile = XMLUtil.getFirstElement(carverTypeEl, "carverScriptFile");
@@ -222,6 +223,9 @@ private void configCarverType(CarverType ct, Element carverTypeEl, String script
         } else {
             ct.setBigendian(false);
         }
+        if (lengthAdd != null) {
+            ct.setLengthAdd(Long.parseLong(lengthAdd.getTextContent().trim()));
+        }
         if (minLength != null) {
             ct.setMinLength(Integer.parseInt(minLength.getTextContent().trim()));
         }
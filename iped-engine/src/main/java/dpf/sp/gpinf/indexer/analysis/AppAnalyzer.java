@@ -64,6 +64,11 @@ public static Analyzer get() {
         defaultAnalyzer.setMaxTokenLength(advancedConfig.getMaxTokenLength());
         defaultAnalyzer.setFilterNonLatinChars(advancedConfig.isFilterNonLatinChars());
         defaultAnalyzer.setConvertCharsToAscii(advancedConfig.isConvertCharsToAscii());
+
+        NGramAnalyzer ngramAnalyzer = new NGramAnalyzer(advancedConfig.isConvertCharsToAscii());
+        for (String field : advancedConfig.getNGramFields()) {
+            analyzerPerField.put(NGramAnalyzer.getField(field), ngramAnalyzer);
+        }
         return new PerFieldAnalyzerWrapper(defaultAnalyzer, analyzerPerField);
     }
 
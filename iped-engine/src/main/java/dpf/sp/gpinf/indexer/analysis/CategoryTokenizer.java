@@ -18,13 +18,11 @@
  */
 package dpf.sp.gpinf.indexer.analysis;
 
-import org.apache.lucene.analysis.util.CharTokenizer;
-
 /*
  * Tokenizador específico para a propriedade 'categoria'. Um item pode ver várias categorias,
  * as quais são separadas pelo caracter SEPARATOR.
  */
-public class CategoryTokenizer extends CharTokenizer {
+public class CategoryTokenizer extends FastCharTokenizer {
 
     public static final char SEPARATOR = 0x00;
 
@@ -33,17 +31,12 @@ public CategoryTokenizer() {
     }
 
     @Override
-    protected boolean isTokenChar(int c) {
+    protected int normalizeTokenChar(int c) {
         if (c == SEPARATOR) {
-            return false;
+            return -1;
         } else {
-            return true;
+            return Character.toLowerCase(c);
         }
     }
 
-    @Override
-    protected int normalize(int c) {
-        return Character.toLowerCase(c);
-    }
-
 }
@@ -126,8 +126,13 @@ public boolean incrementToken() throws IOException {
             for (int i = 0; i < length; ++i) {
                 final char c = buffer[i];
                 if (c >= '\u0080') {
-                    foldToASCII(buffer, length);
-                    termAtt.copyBuffer(output, 0, outputPos);
+                    if (preserveOriginal) {
+                        foldToASCII(buffer, length);
+                        termAtt.copyBuffer(output, 0, outputPos);
+                    } else {
+                        // each char is folded to one char, so it is done in place
+                        foldToASCII(buffer, i, buffer, i, length - i);
+                    }
                     break;
                 }
             }
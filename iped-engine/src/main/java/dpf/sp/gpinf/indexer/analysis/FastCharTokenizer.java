@@ -0,0 +1,128 @@
+package dpf.sp.gpinf.indexer.analysis;
+
+import java.io.IOException;
+
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
+import org.apache.lucene.analysis.util.CharTokenizer;
+
+/**
+ * Tokenizer with the same tokens and offsets of Lucene's CharTokenizer, but
+ * which decides and normalizes each char with a single call, reading the text
+ * by blocks straight into its char array. Chars of the Basic Multilingual Plane
+ * are copied to the term without code point conversions.
+ */
+public abstract class FastCharTokenizer extends Tokenizer {
+
+    private static final int MAX_WORD_LEN = CharTokenizer.DEFAULT_MAX_WORD_LEN;
+
+    private static final int IO_BUFFER_SIZE = 4096;
+
+    private final CharTermAttribute termAtt = addAttribute(CharTermAttribute.class);
+    private final OffsetAttribute offsetAtt = addAttribute(OffsetAttribute.class);
+
+    private final char[] ioBuffer = new char[IO_BUFFER_SIZE];
+    private char trailingHighSurrogate;
+    private int offset = 0, bufferIndex = 0, dataLen = 0, finalOffset = 0;
+
+    /**
+     * @return the normalized char, or -1 if c is not a token char
+     */
+    protected abstract int normalizeTokenChar(int c);
+
+    /**
+     * Reads a full block, unless the text ends, keeping a trailing high surrogate
+     * for the next block, like CharacterUtils.fill().
+     */
+    private int fill() throws IOException {
+        int len = 0;
+        if (trailingHighSurrogate != 0) {
+            ioBuffer[len++] = trailingHighSurrogate;
+            trailingHighSurrogate = 0;
+        }
+        int k;
+        while (len < ioBuffer.length && (k = input.read(ioBuffer, len, ioBuffer.length - len)) != -1) {
+            len += k;
+        }
+        if (len == ioBuffer.length && Character.isHighSurrogate(ioBuffer[len - 1])) {
+            trailingHighSurrogate = ioBuffer[--len];
+        }
+        return len;
+    }
+
+    @Override
+    public final boolean incrementToken() throws IOException {
+        clearAttributes();
+        int length = 0;
+        int start = -1;
+        int end = -1;
+        char[] buffer = termAtt.buffer();
+        while (true) {
+            if (bufferIndex >= dataLen) {
+                offset += dataLen;
+                dataLen = fill();
+                bufferIndex = 0;
+                if (dataLen == 0) {
+                    if (length > 0) {
+                        break;
+                    } else {
+                        finalOffset = correctOffset(offset);
+                        return false;
+                    }
+                }
+            }
+            int c = ioBuffer[bufferIndex];
+            int charCount = 1;
+            if (Character.isHighSurrogate((char) c) && bufferIndex + 1 < dataLen
+                    && Character.isLowSurrogate(ioBuffer[bufferIndex + 1])) {
+                c = Character.toCodePoint((char) c, ioBuffer[bufferIndex + 1]);
+                charCount = 2;
+            }
+            bufferIndex += charCount;
+
+            int normalized = normalizeTokenChar(c);
+            if (normalized != -1) {
+                if (length == 0) {
+                    start = offset + bufferIndex - charCount;
+                    end = start;
+                } else if (length >= buffer.length - 1) {
+                    // make sure a supplementary fits in the buffer
+                    buffer = termAtt.resizeBuffer(2 + length);
+                }
+                end += charCount;
+                if (normalized < Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+                    buffer[length++] = (char) normalized;
+                } else {
+                    length += Character.toChars(normalized, buffer, length);
+                }
+                if (length >= MAX_WORD_LEN) {
+                    break;
+                }
+            } else if (length > 0) {
+                break;
+            }
+        }
+
+        termAtt.setLength(length);
+        offsetAtt.setOffset(correctOffset(start), finalOffset = correctOffset(end));
+        return true;
+    }
+
+    @Override
+    public final void end() throws IOException {
+        super.end();
+        offsetAtt.setOffset(finalOffset, finalOffset);
+    }
+
+    @Override
+    public void reset() throws IOException {
+        super.reset();
+        bufferIndex = 0;
+        offset = 0;
+        dataLen = 0;
+        finalOffset = 0;
+        trailingHighSurrogate = 0;
+    }
+
+}
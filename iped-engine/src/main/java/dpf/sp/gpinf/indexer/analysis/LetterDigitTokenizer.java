@@ -18,24 +18,74 @@
 import java.io.IOException;
 import java.util.ArrayList;
 
-import org.apache.lucene.analysis.util.CharTokenizer;
-
 /*
  * Tokenizador que divide o texto em caracteres diferentes de letras e números.
  * Também converte os caracteres para minúsculas.
  * Assim a indexação tem comportamento similar ao FTK
  */
-public class LetterDigitTokenizer extends CharTokenizer {
+public class LetterDigitTokenizer extends FastCharTokenizer {
 
     public static boolean convertCharsToLowerCase = true;
 
     private static int[] extraCodePoints;
 
+    private static final char NOT_TOKEN_CHAR = '\uFFFF';
+
+    /**
+     * Normalized BMP chars, except U+FFFF which marks non token chars, for the
+     * current configuration.
+     */
+    private static volatile CharMap charMap;
+
+    private char[] bmpMap;
+
+    private static class CharMap {
+
+        private final boolean lowerCase = convertCharsToLowerCase;
+        private final int[] extra = extraCodePoints;
+        private final char[] map = new char[NOT_TOKEN_CHAR];
+
+        private CharMap(LetterDigitTokenizer tokenizer) {
+            for (int c = 0; c < map.length; c++) {
+                map[c] = tokenizer.isTokenChar(c) ? (char) tokenizer.normalize(c) : NOT_TOKEN_CHAR;
+            }
+        }
+
+        private boolean isCurrent() {
+            return lowerCase == convertCharsToLowerCase && extra == extraCodePoints;
+        }
+    }
+
     /**
      * Construct a new LetterTokenizer.
      */
     public LetterDigitTokenizer() {
         super();
+        bmpMap = getBmpMap(this);
+    }
+
+    private static char[] getBmpMap(LetterDigitTokenizer tokenizer) {
+        CharMap map = charMap;
+        if (map == null || !map.isCurrent()) {
+            charMap = map = new CharMap(tokenizer);
+        }
+        return map.map;
+    }
+
+    @Override
+    public void reset() throws IOException {
+        super.reset();
+        // the configuration may have been loaded after this was created
+        bmpMap = getBmpMap(this);
+    }
+
+    @Override
+    protected int normalizeTokenChar(int c) {
+        if (c < NOT_TOKEN_CHAR) {
+            char n = bmpMap[c];
+            return n == NOT_TOKEN_CHAR ? -1 : n;
+        }
+        return isTokenChar(c) ? normalize(c) : -1;
     }
 
     private static final boolean[] isChar = getCharMap();
@@ -56,7 +106,6 @@ private static boolean[] getCharMap() {
     /**
      * Collects only characters which satisfy {@link Character#isLetter(char)}.
      */
-    @Override
     protected boolean isTokenChar(int c) {
         // return Character.isLetterOrDigit(c) || (extraCodePoints != null &&
         // isExtraCodePoints(c));
@@ -95,7 +144,6 @@ private static final boolean isExtraCodePoints(int c) {
     /**
      * Converts char to lower case {@link Character#toLowerCase(char)}.
      */
-    @Override
     protected int normalize(int c) {
         if (convertCharsToLowerCase) {
             return Character.toLowerCase(c);
@@ -0,0 +1,87 @@
+package dpf.sp.gpinf.indexer.analysis;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.analysis.core.KeywordTokenizer;
+import org.apache.lucene.analysis.core.LowerCaseFilter;
+import org.apache.lucene.analysis.ngram.NGramTokenFilter;
+
+/**
+ * Analyzer of the n-gram side fields, indexed for the properties configured in
+ * ngramFields. The whole value is converted to lower case and to ascii like the
+ * words of the main field, and broken into n-grams of GRAM_SIZE chars, so
+ * leading wildcard queries can find their candidates from the n-grams of their
+ * literal parts, instead of expanding over all terms of the property.
+ */
+public class NGramAnalyzer extends Analyzer {
+
+    public static final int GRAM_SIZE = 3;
+
+    private static final String FIELD_PREFIX = "_ngram_"; //$NON-NLS-1$
+
+    private final boolean convertCharsToAscii;
+
+    public NGramAnalyzer(boolean convertCharsToAscii) {
+        this.convertCharsToAscii = convertCharsToAscii;
+    }
+
+    /**
+     * @return the name of the n-gram side field of a property
+     */
+    public static String getField(String field) {
+        return FIELD_PREFIX + field;
+    }
+
+    public static boolean isNGramField(String field) {
+        return field.startsWith(FIELD_PREFIX);
+    }
+
+    /**
+     * Converts a value like the indexed ones, before they are broken into n-grams.
+     */
+    public static String normalize(String value, boolean convertCharsToAscii) {
+        if (LetterDigitTokenizer.convertCharsToLowerCase) {
+            StringBuilder sb = new StringBuilder(value.length());
+            value.codePoints().forEach(c -> sb.appendCodePoint(Character.toLowerCase(c)));
+            value = sb.toString();
+        }
+        char[] chars = value.toCharArray();
+        if (convertCharsToAscii) {
+            FastASCIIFoldingFilter.foldToASCII(chars, 0, chars, 0, chars.length);
+        }
+        return new String(chars);
+    }
+
+    /**
+     * @return the distinct n-grams of a literal part of a query, which must have
+     *         been normalized like the indexed values
+     */
+    public static Set<String> getGrams(String literal) {
+        Set<String> grams = new LinkedHashSet<>();
+        int numCodePoints = literal.codePointCount(0, literal.length());
+        int start = 0;
+        for (int i = 0; i + GRAM_SIZE <= numCodePoints; i++) {
+            int end = literal.offsetByCodePoints(start, GRAM_SIZE);
+            grams.add(literal.substring(start, end));
+            start = literal.offsetByCodePoints(start, 1);
+        }
+        return grams;
+    }
+
+    @Override
+    protected TokenStreamComponents createComponents(String fieldName) {
+        Tokenizer tokenizer = new KeywordTokenizer();
+        TokenStream tok = tokenizer;
+        if (LetterDigitTokenizer.convertCharsToLowerCase)
+            tok = new LowerCaseFilter(tok);
+        if (convertCharsToAscii)
+            tok = new FastASCIIFoldingFilter(tok);
+        tok = new NGramTokenFilter(tok, GRAM_SIZE, GRAM_SIZE);
+        return new TokenStreamComponents(tokenizer, tok);
+    }
+
+}
@@ -4,6 +4,9 @@
 import java.nio.file.DirectoryStream;
 import java.nio.file.DirectoryStream.Filter;
 import java.nio.file.Path;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
 
 import org.apache.tika.fork.ForkParser2;
 
@@ -22,6 +25,7 @@ public class AdvancedIPEDConfig extends AbstractPropertiesConfigurable {
     long minItemSizeToFragment = 100 * 1024 * 1024;
 
     boolean forceMerge = false;
+    private boolean sortIndex = false;
     int timeOut = 180;
     int timeOutPerMB = 2;
     boolean embutirLibreOffice = true;
@@ -32,6 +36,7 @@ public class AdvancedIPEDConfig extends AbstractPropertiesConfigurable {
     boolean storeTermVectors = true;
     boolean filterNonLatinChars = false;
     boolean convertCharsToAscii = true;
+    private Set<String> ngramFields = Collections.emptySet();
     int maxTokenLength = 255;
     boolean preOpenImagesOnSleuth = false;
     boolean openImagesCacheWarmUpEnabled = false;
@@ -41,6 +46,7 @@ public class AdvancedIPEDConfig extends AbstractPropertiesConfigurable {
     private boolean storeTextCacheOnDisk = true;
     private static int textSplitSize = 10485760;
     private static int textOverlapSize = 10000;
+    private int maxParallelTextFragments = 1;
 
     public static final String CONFIG_FILE = "conf/AdvancedConfig.txt"; //$NON-NLS-1$
 
@@ -109,6 +115,11 @@ public void processConfig(Path resource) throws IOException {
             forceMerge = false;
         }
 
+        value = properties.getProperty("sortIndex"); //$NON-NLS-1$
+        if (value != null && !value.trim().isEmpty()) {
+            sortIndex = Boolean.valueOf(value.trim());
+        }
+
         value = properties.getProperty("timeOut"); //$NON-NLS-1$
         if (value != null) {
             value = value.trim();
@@ -170,6 +181,17 @@ public void processConfig(Path resource) throws IOException {
             convertCharsToAscii = Boolean.valueOf(value.trim());
         }
 
+        value = properties.getProperty("ngramFields"); //$NON-NLS-1$
+        if (value != null && !value.trim().isEmpty()) {
+            Set<String> fields = new LinkedHashSet<>();
+            for (String field : value.split(";")) { //$NON-NLS-1$
+                if (!field.trim().isEmpty()) {
+                    fields.add(field.trim());
+                }
+            }
+            ngramFields = Collections.unmodifiableSet(fields);
+        }
+
         value = properties.getProperty("minOrphanSizeToIgnore"); //$NON-NLS-1$
         if (value != null) {
             value = value.trim();
@@ -220,6 +242,11 @@ public void processConfig(Path resource) throws IOException {
         FragmentingReader.setTextSplitSize(textSplitSize);
         FragmentingReader.setTextOverlapSize(textOverlapSize);
 
+        value = properties.getProperty("maxParallelTextFragments"); //$NON-NLS-1$
+        if (value != null && !value.trim().isEmpty()) {
+            maxParallelTextFragments = Integer.parseInt(value.trim());
+        }
+
         value = properties.getProperty("storeTextCacheOnDisk"); //$NON-NLS-1$
         if (value != null && !value.trim().isEmpty()) {
             storeTextCacheOnDisk = Boolean.valueOf(value.trim());
@@ -285,6 +312,10 @@ public boolean isForceMerge() {
         return forceMerge;
     }
 
+    public boolean isSortIndex() {
+        return sortIndex;
+    }
+
     public int getTimeOut() {
         return timeOut;
     }
@@ -321,6 +352,10 @@ public static int getTextOverlapSize() {
         return textOverlapSize;
     }
 
+    public int getMaxParallelTextFragments() {
+        return maxParallelTextFragments;
+    }
+
     public boolean isStoreTermVectors() {
         return storeTermVectors;
     }
@@ -333,6 +368,10 @@ public boolean isConvertCharsToAscii() {
         return convertCharsToAscii;
     }
 
+    public Set<String> getNGramFields() {
+        return ngramFields;
+    }
+
     public int getMaxTokenLength() {
         return maxTokenLength;
     }
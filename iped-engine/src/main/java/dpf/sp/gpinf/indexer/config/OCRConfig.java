@@ -5,6 +5,9 @@
 import java.nio.file.DirectoryStream;
 import java.nio.file.Path;
 
+import org.slf4j.Logger;
+
+import dpf.sp.gpinf.indexer.Configuration;
 import dpf.sp.gpinf.indexer.parsers.OCRParser;
 
 public class OCRConfig extends AbstractPropertiesConfigurable {
@@ -12,6 +15,8 @@ public class OCRConfig extends AbstractPropertiesConfigurable {
     public static final String minFileSize2OCR = "minFileSize2OCR";
     public static final String maxFileSize2OCR = "maxFileSize2OCR";
     public static final String pageSegMode = "pageSegMode";
+    public static final String maxOCRProcesses = "maxOCRProcesses";
+    public static final String pagesPerOCRBatch = "pagesPerOCRBatch";
 
     public static final String CONFIG_FILE = "conf/AdvancedConfig.txt"; //$NON-NLS-1$
 
@@ -61,6 +66,29 @@ public void processConfig(Path resource) throws IOException {
             System.setProperty(OCRParser.PAGE_SEGMODE_PROP, value.trim());
         }
 
+        setPositiveInt(maxOCRProcesses, OCRParser.MAX_PROCESSES_PROP);
+
+        setPositiveInt(pagesPerOCRBatch, OCRParser.PAGES_PER_BATCH_PROP);
+
+    }
+
+    /**
+     * Values lower than 1 would divide by zero or leave no permits to run
+     * tesseract, so they are ignored and the parser default is used.
+     */
+    private void setPositiveInt(String key, String sysProp) {
+        String value = properties.getProperty(key);
+        if (value == null || value.trim().isEmpty()) {
+            return;
+        }
+        value = value.trim();
+        if (Integer.parseInt(value) < 1) {
+            Logger logger = Configuration.getInstance().logger;
+            if (logger != null)
+                logger.warn("Invalid " + key + " = " + value + ", using default value"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+            return;
+        }
+        System.setProperty(sysProp, value);
     }
 
     public Boolean isOCREnabled() {
@@ -51,6 +51,7 @@
 import dpf.sp.gpinf.indexer.parsers.ufed.UFEDChatParser;
 import dpf.sp.gpinf.indexer.process.IndexItem;
 import dpf.sp.gpinf.indexer.process.Manager;
+import dpf.sp.gpinf.indexer.process.task.BlockHashCarveTask;
 import dpf.sp.gpinf.indexer.process.task.DIETask;
 import dpf.sp.gpinf.indexer.process.task.HashTask;
 import dpf.sp.gpinf.indexer.process.task.KFFCarveTask;
@@ -123,6 +124,7 @@ public int read(File file) throws Exception {
         ParsingTask.setExpandContainers(false);
         CarverTask.setEnabled(false);
         KFFCarveTask.setEnabled(false);
+        BlockHashCarveTask.setEnabled(false);
         KFFTask.setEnabled(false);
         LedKFFTask.setEnabled(false);
         DIETask.setEnabled(false);
@@ -45,17 +45,12 @@
 
 import org.apache.lucene.document.BinaryDocValuesField;
 import org.apache.lucene.document.Document;
-import org.apache.lucene.document.DoubleDocValuesField;
-import org.apache.lucene.document.DoublePoint;
 import org.apache.lucene.document.Field;
 import org.apache.lucene.document.FieldType;
-import org.apache.lucene.document.FloatDocValuesField;
-import org.apache.lucene.document.FloatPoint;
 import org.apache.lucene.document.IntPoint;
 import org.apache.lucene.document.LongPoint;
 import org.apache.lucene.document.NumericDocValuesField;
 import org.apache.lucene.document.SortedDocValuesField;
-import org.apache.lucene.document.SortedNumericDocValuesField;
 import org.apache.lucene.document.SortedSetDocValuesField;
 import org.apache.lucene.document.StoredField;
 import org.apache.lucene.document.StringField;
@@ -64,14 +59,13 @@
 import org.apache.lucene.index.IndexableField;
 import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.IOUtils;
-import org.apache.lucene.util.NumericUtils;
 import org.apache.tika.metadata.Metadata;
 import org.apache.tika.metadata.TikaCoreProperties;
 import org.apache.tika.mime.MediaType;
-import org.apache.tika.utils.DateUtils;
 import org.sleuthkit.datamodel.SleuthkitCase;
 
 import dpf.sp.gpinf.indexer.analysis.FastASCIIFoldingFilter;
+import dpf.sp.gpinf.indexer.analysis.NGramAnalyzer;
 import dpf.sp.gpinf.indexer.config.AdvancedIPEDConfig;
 import dpf.sp.gpinf.indexer.config.ConfigurationManager;
 import dpf.sp.gpinf.indexer.parsers.IndexerDefaultParser;
@@ -113,7 +107,7 @@ public class IndexItem extends BasicProps {
 
     private static final String NEW_DATASOURCE_PATH_FILE = "data/newDataSourceLocations.txt";
 
-    private static final int MAX_DOCVALUE_SIZE = 4096;
+    public static final int MAX_DOCVALUE_SIZE = 4096;
 
     static HashSet<String> ignoredMetadata = new HashSet<String>();
 
@@ -134,13 +128,20 @@ public int compare(String o1, String o2) {
     private static Map<String, Class> newtypesMap = new ConcurrentHashMap<String, Class>();
 
     private static FieldType contentField;
-    private static FieldType storedTokenizedNoNormsField = new FieldType();
+    static final FieldType storedTokenizedNoNormsField = new FieldType();
+    static final FieldType ngramField = new FieldType();
+    private static Set<String> ngramFields;
+
+    private static final ThreadLocal<IndexSchema> schemas = ThreadLocal.withInitial(IndexSchema::new);
 
     static {
         storedTokenizedNoNormsField.setIndexOptions(IndexOptions.DOCS_AND_FREQS_AND_POSITIONS);
         storedTokenizedNoNormsField.setOmitNorms(true);
         storedTokenizedNoNormsField.setStored(true);
 
+        ngramField.setIndexOptions(IndexOptions.DOCS);
+        ngramField.setOmitNorms(true);
+
         ignoredMetadata.add(Metadata.CONTENT_TYPE);
         ignoredMetadata.add(Metadata.CONTENT_LENGTH);
         ignoredMetadata.add(Metadata.RESOURCE_NAME_KEY);
@@ -172,6 +173,18 @@ private static final FieldType getContentField() {
         return contentField;
     }
 
+    /**
+     * @return if the property is also indexed in an n-gram side field
+     */
+    static boolean hasNGramField(String field) {
+        if (ngramFields == null) {
+            AdvancedIPEDConfig advancedConfig = (AdvancedIPEDConfig) ConfigurationManager.getInstance()
+                    .findObjects(AdvancedIPEDConfig.class).iterator().next();
+            ngramFields = advancedConfig.getNGramFields();
+        }
+        return ngramFields.contains(field);
+    }
+
     public static Map<String, Class> getMetadataTypes() {
         return Collections.unmodifiableMap(typesMap);
     }
@@ -186,20 +199,38 @@ public static void saveMetadataTypes(File confDir) throws IOException {
         IOUtils.fsync(metadataTypesFile.toPath(), false);
     }
 
+    /**
+     * Loads the metadata types of a case. When many cases are opened together,
+     * keys not seen before are added and the type of known keys is kept, so all
+     * cases use the same indexing schema.
+     */
     public static void loadMetadataTypes(File confDir) throws IOException, ClassNotFoundException {
-        if (typesMap.size() > 0)
-            return;
         File metadataTypesFile = new File(confDir, attrTypesFilename);
         if (metadataTypesFile.exists()) {
             UTF8Properties props = new UTF8Properties();
             props.load(metadataTypesFile);
             for (String key : props.stringPropertyNames()) {
-                typesMap.put(key, Class.forName(props.getProperty(key)));
+                addMetadataTypeIfAbsent(key, Class.forName(props.getProperty(key)));
             }
         }
     }
 
-    private static final String normalize(String value) {
+    private static void putMetadataType(String key, Class type) {
+        if (!type.equals(typesMap.put(key, type))) {
+            IndexSchema.typesChanged();
+        }
+    }
+
+    static void addMetadataTypeIfAbsent(String key, Class type) {
+        synchronized (typesMap) {
+            if (typesMap.containsKey(key))
+                return;
+            typesMap.put(key, type);
+        }
+        IndexSchema.typesChanged();
+    }
+
+    public static final String normalize(String value) {
         return normalize(value, true);
     }
 
@@ -212,7 +243,21 @@ private static final String normalize(String value, boolean toLowerCase) {
         return new String(output).trim();
     }
 
+    /**
+     * Creates the document of the item. Fields of metadata and extra attributes
+     * are reused by the next call in the same thread, so the document must be
+     * indexed before that.
+     */
     public static Document Document(IItem evidence, Reader reader, File output) {
+        return Document(evidence, reader, output, true);
+    }
+
+    /**
+     * @param reuseFields
+     *            false if the document may be indexed by another thread, after
+     *            the next call in this thread
+     */
+    public static Document Document(IItem evidence, Reader reader, File output, boolean reuseFields) {
         Document doc = new Document();
 
         doc.add(new IntPoint(ID, evidence.getId()));
@@ -281,6 +326,9 @@ public static Document Document(IItem evidence, Reader reader, File output) {
         nameField.setBoost(1000.0f);
         doc.add(nameField);
         doc.add(new SortedDocValuesField(NAME, new BytesRef(normalize(value))));
+        if (hasNGramField(NAME)) {
+            doc.add(new Field(NGramAnalyzer.getField(NAME), value, ngramField));
+        }
 
         IEvidenceFileType fileType = evidence.getType();
         if (fileType != null) {
@@ -339,6 +387,9 @@ public static Document Document(IItem evidence, Reader reader, File output) {
             value = ""; //$NON-NLS-1$
         }
         doc.add(new Field(PATH, value, storedTokenizedNoNormsField));
+        if (hasNGramField(PATH)) {
+            doc.add(new Field(NGramAnalyzer.getField(PATH), value, ngramField));
+        }
         if (value.length() > MAX_DOCVALUE_SIZE) {
             value = value.substring(0, MAX_DOCVALUE_SIZE);
         }
@@ -425,17 +476,16 @@ public static Document Document(IItem evidence, Reader reader, File output) {
             guessMetaTypes = true;
         }
 
+        IndexSchema schema = schemas.get();
+        schema.startDocument();
+
         for (Entry<String, Object> entry : evidence.getExtraAttributeMap().entrySet()) {
             if (entry.getValue() instanceof Collection) {
                 for (Object val : (Collection<?>) entry.getValue()) {
-                    if (!typesMap.containsKey(entry.getKey()))
-                        typesMap.put(entry.getKey(), val.getClass());
-                    addExtraAttributeToDoc(doc, entry.getKey(), val, false, true);
+                    schema.addFields(doc, entry.getKey(), val, false, true);
                 }
             } else {
-                if (!typesMap.containsKey(entry.getKey()))
-                    typesMap.put(entry.getKey(), entry.getValue().getClass());
-                addExtraAttributeToDoc(doc, entry.getKey(), entry.getValue(), false, false);
+                schema.addFields(doc, entry.getKey(), entry.getValue(), false, false);
             }
         }
 
@@ -445,99 +495,18 @@ public static Document Document(IItem evidence, Reader reader, File output) {
             if (guessMetaTypes) {
                 guessMetadataTypes(evidence.getMetadata());
             } else {
-                addMetadataToDoc(doc, evidence.getMetadata());
+                addMetadataToDoc(schema, doc, evidence.getMetadata());
             }
         }
 
-        return doc;
-    }
-
-    private static void addExtraAttributeToDoc(Document doc, String key, Object oValue, boolean isMetadataKey,
-            boolean isMultiValued) {
-        boolean isString = false;
-
-        /*
-         * utilizar docvalue de outro tipo com mesmo nome provoca erro, entao usamos um
-         * prefixo no nome para diferenciar
-         */
-        String keyPrefix = ""; //$NON-NLS-1$
-        if (isMetadataKey) {
-            keyPrefix = "_num_"; //$NON-NLS-1$
-        }
-        if (oValue instanceof Date) {
-            String value = DateUtils.formatDate((Date) oValue);
-            // query parser converts range queries to lowercase
-            doc.add(new StringField(key, value.toLowerCase(), Field.Store.YES));
-            if (!isMultiValued)
-                doc.add(new SortedDocValuesField(key, new BytesRef(value)));
-            else
-                doc.add(new SortedSetDocValuesField(key, new BytesRef(value)));
-
-        } else if (oValue instanceof Byte) {
-            doc.add(new IntPoint(key, (Byte) oValue));
-            doc.add(new StoredField(key, (Byte) oValue));
-            if (!isMultiValued)
-                doc.add(new NumericDocValuesField(key, (Byte) oValue));
-            else
-                doc.add(new SortedNumericDocValuesField(key, (Byte) oValue));
-
-        } else if (oValue instanceof Integer) {
-            doc.add(new IntPoint(key, (Integer) oValue));
-            doc.add(new StoredField(key, (Integer) oValue));
-            if (!isMultiValued)
-                doc.add(new NumericDocValuesField(key, (Integer) oValue));
-            else
-                doc.add(new SortedNumericDocValuesField(key, (Integer) oValue));
-
-        } else if (oValue instanceof Long) {
-            doc.add(new LongPoint(key, (Long) oValue));
-            doc.add(new StoredField(key, (Long) oValue));
-            if (!isMultiValued)
-                doc.add(new NumericDocValuesField(key, (Long) oValue));
-            else
-                doc.add(new SortedNumericDocValuesField(key, (Long) oValue));
-
-        } else if (oValue instanceof Float) {
-            doc.add(new FloatPoint(key, (Float) oValue));
-            doc.add(new StoredField(key, (Float) oValue));
-            if (!isMultiValued)
-                doc.add(new FloatDocValuesField(key, (Float) oValue));
-            else
-                doc.add(new SortedNumericDocValuesField(key, NumericUtils.floatToSortableInt((Float) oValue)));
-
-        } else if (oValue instanceof Double) {
-            doc.add(new DoublePoint(key, (Double) oValue));
-            doc.add(new StoredField(key, (Double) oValue));
-            if (!isMultiValued)
-                doc.add(new DoubleDocValuesField(keyPrefix + key, (Double) oValue));
-            else
-                doc.add(new SortedNumericDocValuesField(keyPrefix + key,
-                        NumericUtils.doubleToSortableLong((Double) oValue)));
-        } else {
-            isString = true;
-        }
-
-        if (isString) {
-            doc.add(new Field(key, oValue.toString(), storedTokenizedNoNormsField));
-        }
-
-        if (isMetadataKey || isString) {
-            String value = oValue.toString();
-            if (value.length() > MAX_DOCVALUE_SIZE) {
-                value = value.substring(0, MAX_DOCVALUE_SIZE);
-            }
-            if (isMetadataKey) {
-                keyPrefix = "_"; //$NON-NLS-1$
-            }
-            if (!isMultiValued)
-                doc.add(new SortedDocValuesField(keyPrefix + key, new BytesRef(normalize(value))));
-            else
-                doc.add(new SortedSetDocValuesField(keyPrefix + key, new BytesRef(normalize(value))));
+        if (!reuseFields) {
+            schema.detachFields();
         }
 
+        return doc;
     }
 
-    private static void addMetadataToDoc(Document doc, Metadata metadata) {
+    private static void addMetadataToDoc(IndexSchema schema, Document doc, Metadata metadata) {
         MediaType mimetype = MediaType.parse(metadata.get(Metadata.CONTENT_TYPE));
         if (mimetype != null)
             mimetype = mimetype.getBaseType();
@@ -559,16 +528,16 @@ private static void addMetadataToDoc(Document doc, Metadata metadata) {
             boolean isMultiValued = true;// metadata.getValues(key).length > 1;
             for (String val : metadata.getValues(key)) {
                 if (val != null && !(val = val.trim()).isEmpty())
-                    addMetadataKeyToDoc(doc, key, val, isMultiValued, mimetype);
+                    addMetadataKeyToDoc(schema, doc, key, val, isMultiValued, mimetype);
             }
 
         }
     }
 
-    private static void addMetadataKeyToDoc(Document doc, String key, String value, boolean isMultiValued,
-            MediaType mimetype) {
+    private static void addMetadataKeyToDoc(IndexSchema schema, Document doc, String key, String value,
+            boolean isMultiValued, MediaType mimetype) {
         Object oValue = value;
-        Class type = typesMap.get(key);
+        Class type = schema.getMetadataType(key);
 
         if (type == null && MetadataUtil.isHtmlMediaType(mimetype) && !key.startsWith(ExtraProperties.UFED_META_PREFIX))
             return;
@@ -580,7 +549,7 @@ private static void addMetadataKeyToDoc(Document doc, String key, String value,
                     oValue = Double.valueOf(value);
                     if (type == null) {
                         newtypesMap.put(key, Double.class);
-                        typesMap.put(key, Double.class);
+                        putMetadataType(key, Double.class);
                     }
                 } else if (type.equals(Integer.class)) {
                     oValue = Integer.valueOf(value);
@@ -592,7 +561,7 @@ private static void addMetadataKeyToDoc(Document doc, String key, String value,
 
             } catch (NumberFormatException e) {
                 if (newtypesMap.containsKey(key)) {
-                    typesMap.put(key, String.class);
+                    putMetadataType(key, String.class);
                 }
             }
         }
@@ -600,10 +569,10 @@ private static void addMetadataKeyToDoc(Document doc, String key, String value,
         Date date = DateUtil.tryToParseDate(value);
         if (date != null) {
             oValue = date;
-            typesMap.put(key, Date.class);
+            putMetadataType(key, Date.class);
         }
 
-        addExtraAttributeToDoc(doc, key, oValue, true, isMultiValued);
+        schema.addFields(doc, key, oValue, true, isMultiValued);
     }
 
     private static void guessMetadataTypes(Metadata metadata) {
@@ -613,7 +582,7 @@ private static void guessMetadataTypes(Metadata metadata) {
                 continue;
             }
             if (metadata.getValues(key).length > 1) {
-                typesMap.put(key, String.class);
+                putMetadataType(key, String.class);
 
                 continue;
             }
@@ -627,31 +596,31 @@ private static void guessMetadataTypes(Metadata metadata) {
                             case 0:
                                 if (typesMap.get(key) == null || typesMap.get(key).equals(Integer.class)) {
                                     Integer.parseInt(val);
-                                    typesMap.put(key, Integer.class);
+                                    putMetadataType(key, Integer.class);
                                     break;
                                 }
                             case 1:
                                 if (typesMap.get(key) == null || typesMap.get(key).equals(Integer.class)
                                         || typesMap.get(key).equals(Long.class)) {
                                     Long.parseLong(val);
-                                    typesMap.put(key, Long.class);
+                                    putMetadataType(key, Long.class);
                                     break;
                                 }
                             case 2:
                                 if (typesMap.get(key) == null || typesMap.get(key).equals(Float.class)) {
                                     Float.parseFloat(val);
-                                    typesMap.put(key, Float.class);
+                                    putMetadataType(key, Float.class);
                                     break;
                                 }
                             case 3:
                                 if (typesMap.get(key) == null || typesMap.get(key).equals(Float.class)
                                         || typesMap.get(key).equals(Double.class)) {
                                     Double.parseDouble(val);
-                                    typesMap.put(key, Double.class);
+                                    putMetadataType(key, Double.class);
                                     break;
                                 }
                             case 4:
-                                typesMap.put(key, String.class);
+                                putMetadataType(key, String.class);
                         }
                         type = 100;
 
@@ -0,0 +1,317 @@
+package dpf.sp.gpinf.indexer.process;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.DoubleDocValuesField;
+import org.apache.lucene.document.DoublePoint;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.FloatDocValuesField;
+import org.apache.lucene.document.FloatPoint;
+import org.apache.lucene.document.IntPoint;
+import org.apache.lucene.document.LongPoint;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.SortedDocValuesField;
+import org.apache.lucene.document.SortedNumericDocValuesField;
+import org.apache.lucene.document.SortedSetDocValuesField;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefBuilder;
+import org.apache.lucene.util.NumericUtils;
+import org.apache.tika.utils.DateUtils;
+
+import dpf.sp.gpinf.indexer.analysis.NGramAnalyzer;
+
+/**
+ * Indexing schema of the metadata and extra attributes seen by a thread. Each
+ * key is compiled to a FieldPlan the first time it is seen, with the kind of its
+ * values and the Lucene fields they produce, whose instances are reused by the
+ * next documents built by the same thread. The metadata types used by the
+ * plans are cached here too, and are reloaded when IndexItem changes any type.
+ * As plans only depend on those types, they are persisted with the case in the
+ * metadata types file.
+ */
+class IndexSchema {
+
+    /**
+     * max reused fields of a key, to not keep the fields of huge multivalued
+     * metadata
+     */
+    private static final int MAX_REUSED_VALUES = 64;
+
+    private static final AtomicInteger typesVersion = new AtomicInteger();
+
+    enum Kind {
+        DATE, BYTE, INTEGER, LONG, FLOAT, DOUBLE, STRING;
+
+        static Kind of(Object value) {
+            if (value instanceof Date)
+                return DATE;
+            if (value instanceof Byte)
+                return BYTE;
+            if (value instanceof Integer)
+                return INTEGER;
+            if (value instanceof Long)
+                return LONG;
+            if (value instanceof Float)
+                return FLOAT;
+            if (value instanceof Double)
+                return DOUBLE;
+            return STRING;
+        }
+    }
+
+    /**
+     * Fields of one value, with the buffers of its docvalues.
+     */
+    private static class ValueFields {
+
+        private final Field[] fields;
+        private final BytesRefBuilder[] bytes;
+
+        private ValueFields(Field... fields) {
+            this.fields = fields;
+            this.bytes = new BytesRefBuilder[fields.length];
+        }
+
+        private void setBytes(int i, String value) {
+            if (bytes[i] == null) {
+                bytes[i] = new BytesRefBuilder();
+            }
+            bytes[i].copyChars(value);
+            fields[i].setBytesValue(bytes[i].get());
+        }
+    }
+
+    static class FieldPlan {
+
+        private final String key;
+        private final Kind kind;
+        private final boolean isMetadataKey, isMultiValued;
+        private final boolean hasNGramField;
+
+        private final ArrayList<ValueFields> reused = new ArrayList<>();
+        private int used;
+
+        private FieldPlan(String key, Kind kind, boolean isMetadataKey, boolean isMultiValued) {
+            this.key = key;
+            this.kind = kind;
+            this.isMetadataKey = isMetadataKey;
+            this.isMultiValued = isMultiValued;
+            this.hasNGramField = kind == Kind.STRING && IndexItem.hasNGramField(key);
+        }
+
+        private Field newSortedField(String name) {
+            if (!isMultiValued)
+                return new SortedDocValuesField(name, new BytesRef());
+            else
+                return new SortedSetDocValuesField(name, new BytesRef());
+        }
+
+        /**
+         * utilizar docvalue de outro tipo com mesmo nome provoca erro, entao usamos um
+         * prefixo no nome para diferenciar
+         */
+        private ValueFields newValueFields() {
+            String numPrefix = isMetadataKey ? "_num_" : ""; //$NON-NLS-1$ //$NON-NLS-2$
+            String sortedPrefix = isMetadataKey ? "_" : ""; //$NON-NLS-1$ //$NON-NLS-2$
+            ArrayList<Field> fields = new ArrayList<>(4);
+            switch (kind) {
+                case DATE:
+                    // query parser converts range queries to lowercase
+                    fields.add(new StringField(key, "", Field.Store.YES)); //$NON-NLS-1$
+                    fields.add(newSortedField(key));
+                    break;
+                case BYTE:
+                case INTEGER:
+                    fields.add(new IntPoint(key, 0));
+                    fields.add(new StoredField(key, 0));
+                    fields.add(!isMultiValued ? new NumericDocValuesField(key, 0L)
+                            : new SortedNumericDocValuesField(key, 0L));
+                    break;
+                case LONG:
+                    fields.add(new LongPoint(key, 0L));
+                    fields.add(new StoredField(key, 0L));
+                    fields.add(!isMultiValued ? new NumericDocValuesField(key, 0L)
+                            : new SortedNumericDocValuesField(key, 0L));
+                    break;
+                case FLOAT:
+                    fields.add(new FloatPoint(key, 0f));
+                    fields.add(new StoredField(key, 0f));
+                    fields.add(!isMultiValued ? new FloatDocValuesField(key, 0f)
+                            : new SortedNumericDocValuesField(key, 0L));
+                    break;
+                case DOUBLE:
+                    fields.add(new DoublePoint(key, 0d));
+                    fields.add(new StoredField(key, 0d));
+                    fields.add(!isMultiValued ? new DoubleDocValuesField(numPrefix + key, 0d)
+                            : new SortedNumericDocValuesField(numPrefix + key, 0L));
+                    break;
+                default:
+                    fields.add(new Field(key, "", IndexItem.storedTokenizedNoNormsField)); //$NON-NLS-1$
+                    if (hasNGramField) {
+                        fields.add(new Field(NGramAnalyzer.getField(key), "", IndexItem.ngramField)); //$NON-NLS-1$
+                    }
+            }
+            if (isMetadataKey || kind == Kind.STRING) {
+                fields.add(newSortedField(sortedPrefix + key));
+            }
+            return new ValueFields(fields.toArray(new Field[fields.size()]));
+        }
+
+        private void setValue(ValueFields valueFields, Object oValue) {
+            Field[] fields = valueFields.fields;
+            switch (kind) {
+                case DATE:
+                    String date = DateUtils.formatDate((Date) oValue);
+                    fields[0].setStringValue(date.toLowerCase());
+                    valueFields.setBytes(1, date);
+                    break;
+                case BYTE:
+                case INTEGER:
+                    int i = ((Number) oValue).intValue();
+                    fields[0].setIntValue(i);
+                    fields[1].setIntValue(i);
+                    fields[2].setLongValue(i);
+                    break;
+                case LONG:
+                    long l = (Long) oValue;
+                    fields[0].setLongValue(l);
+                    fields[1].setLongValue(l);
+                    fields[2].setLongValue(l);
+                    break;
+                case FLOAT:
+                    float f = (Float) oValue;
+                    fields[0].setFloatValue(f);
+                    fields[1].setFloatValue(f);
+                    if (!isMultiValued)
+                        fields[2].setFloatValue(f);
+                    else
+                        fields[2].setLongValue(NumericUtils.floatToSortableInt(f));
+                    break;
+                case DOUBLE:
+                    double d = (Double) oValue;
+                    fields[0].setDoubleValue(d);
+                    fields[1].setDoubleValue(d);
+                    if (!isMultiValued)
+                        fields[2].setDoubleValue(d);
+                    else
+                        fields[2].setLongValue(NumericUtils.doubleToSortableLong(d));
+                    break;
+                default:
+                    fields[0].setStringValue(oValue.toString());
+                    if (hasNGramField) {
+                        fields[1].setStringValue(oValue.toString());
+                    }
+            }
+            if (isMetadataKey || kind == Kind.STRING) {
+                String value = oValue.toString();
+                if (value.length() > IndexItem.MAX_DOCVALUE_SIZE) {
+                    value = value.substring(0, IndexItem.MAX_DOCVALUE_SIZE);
+                }
+                valueFields.setBytes(fields.length - 1, IndexItem.normalize(value));
+            }
+        }
+
+        private void addFields(Document doc, Object oValue) {
+            ValueFields valueFields;
+            if (used < reused.size()) {
+                valueFields = reused.get(used++);
+            } else {
+                valueFields = newValueFields();
+                if (reused.size() < MAX_REUSED_VALUES) {
+                    reused.add(valueFields);
+                    used++;
+                }
+            }
+            setValue(valueFields, oValue);
+            for (Field field : valueFields.fields) {
+                doc.add(field);
+            }
+        }
+    }
+
+    private final HashMap<String, FieldPlan> extraAttrPlans = new HashMap<>();
+    private final HashMap<String, FieldPlan> metadataPlans = new HashMap<>();
+    private final HashMap<String, Class<?>> metadataTypes = new HashMap<>();
+    private int metadataTypesVersion = -1;
+
+    private final ArrayList<FieldPlan> usedPlans = new ArrayList<>();
+
+    /**
+     * Must be called after a metadata type is changed, so all threads reload the
+     * types used by their plans.
+     */
+    static void typesChanged() {
+        typesVersion.incrementAndGet();
+    }
+
+    /**
+     * Starts a new document, reusing the fields added to the previous one, which
+     * must have been already indexed.
+     */
+    void startDocument() {
+        for (FieldPlan plan : usedPlans) {
+            plan.used = 0;
+        }
+        usedPlans.clear();
+    }
+
+    /**
+     * Keeps the fields added to the current document out of the next ones.
+     */
+    void detachFields() {
+        for (FieldPlan plan : usedPlans) {
+            plan.reused.subList(0, plan.used).clear();
+            plan.used = 0;
+        }
+        usedPlans.clear();
+    }
+
+    /**
+     * @return the type of the metadata key, or null if it is unknown yet
+     */
+    Class<?> getMetadataType(String key) {
+        int version = typesVersion.get();
+        if (version != metadataTypesVersion) {
+            metadataTypes.clear();
+            metadataTypesVersion = version;
+        }
+        Class<?> type = metadataTypes.get(key);
+        if (type == null && !metadataTypes.containsKey(key)) {
+            type = IndexItem.getMetadataTypes().get(key);
+            metadataTypes.put(key, type);
+        }
+        return type;
+    }
+
+    private FieldPlan getPlan(String key, Object oValue, boolean isMetadataKey, boolean isMultiValued) {
+        HashMap<String, FieldPlan> plans = isMetadataKey ? metadataPlans : extraAttrPlans;
+        Kind kind = Kind.of(oValue);
+        FieldPlan plan = plans.get(key);
+        if (plan == null || plan.kind != kind || plan.isMultiValued != isMultiValued) {
+            if (plan == null && !isMetadataKey) {
+                IndexItem.addMetadataTypeIfAbsent(key, oValue.getClass());
+            }
+            plan = new FieldPlan(key, kind, isMetadataKey, isMultiValued);
+            plans.put(key, plan);
+        }
+        return plan;
+    }
+
+    /**
+     * Adds the fields of a value of a metadata or extra attribute to the document.
+     */
+    void addFields(Document doc, String key, Object oValue, boolean isMetadataKey, boolean isMultiValued) {
+        FieldPlan plan = getPlan(key, oValue, isMetadataKey, isMultiValued);
+        if (plan.used == 0) {
+            usedPlans.add(plan);
+        }
+        plan.addFields(doc, oValue);
+    }
+
+}
@@ -0,0 +1,112 @@
+package dpf.sp.gpinf.indexer.process;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.lucene.index.CodecReader;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.MergePolicy;
+import org.apache.lucene.index.SegmentReader;
+import org.apache.lucene.index.SlowCodecReaderWrapper;
+import org.apache.lucene.index.TieredMergePolicy;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.store.Directory;
+
+import dpf.sp.gpinf.indexer.util.IOUtil;
+import iped3.util.BasicProps;
+
+/**
+ * Rewrites an index sorted by evidence and path, so items of the same folder
+ * or container, usually browsed, listed and exported together, have close
+ * lucene ids. Ids of items do not change and the id to lucene id maps are
+ * created when the case is opened.
+ */
+class IndexSorter {
+
+    static final Sort SORT = new Sort(new SortField(BasicProps.EVIDENCE_UUID, SortField.Type.STRING),
+            new SortField(BasicProps.PATH, SortField.Type.STRING),
+            new SortField(BasicProps.ID, SortField.Type.INT));
+
+    /**
+     * Copies the segments of an index to an empty directory, sorted. Deleted items
+     * are dropped. Segments are sorted in groups up to the max segment size of the
+     * merge policy, or all together if forceMerge is enabled.
+     */
+    static void copySorted(Directory directory, Directory sortedDirectory, IndexWriterConfig config,
+            boolean forceMerge) throws IOException {
+
+        config.setOpenMode(IndexWriterConfig.OpenMode.CREATE);
+        config.setIndexSort(SORT);
+        long maxSegmentSize = forceMerge ? Long.MAX_VALUE : getMaxSegmentSize(config.getMergePolicy());
+
+        try (DirectoryReader reader = DirectoryReader.open(directory);
+                IndexWriter sortedWriter = new IndexWriter(sortedDirectory, config)) {
+            List<CodecReader> group = new ArrayList<>();
+            long groupSize = 0;
+            for (LeafReaderContext context : reader.leaves()) {
+                LeafReader leafReader = context.reader();
+                // segments of unknown size are sorted alone
+                long size = maxSegmentSize;
+                if (leafReader instanceof SegmentReader) {
+                    size = ((SegmentReader) leafReader).getSegmentInfo().sizeInBytes();
+                }
+                if (!group.isEmpty() && size > maxSegmentSize - groupSize) {
+                    sortedWriter.addIndexes(group.toArray(new CodecReader[group.size()]));
+                    group.clear();
+                    groupSize = 0;
+                }
+                if (leafReader instanceof CodecReader) {
+                    group.add((CodecReader) leafReader);
+                } else {
+                    group.add(SlowCodecReaderWrapper.wrap(leafReader));
+                }
+                groupSize += size;
+            }
+            if (!group.isEmpty()) {
+                sortedWriter.addIndexes(group.toArray(new CodecReader[group.size()]));
+            }
+        }
+    }
+
+    private static long getMaxSegmentSize(MergePolicy mergePolicy) {
+        TieredMergePolicy tieredPolicy;
+        if (mergePolicy instanceof TieredMergePolicy) {
+            tieredPolicy = (TieredMergePolicy) mergePolicy;
+        } else {
+            tieredPolicy = new TieredMergePolicy();
+        }
+        return (long) (tieredPolicy.getMaxMergedSegmentMB() * 1024 * 1024);
+    }
+
+    /**
+     * Replaces the index by the sorted one, moving the index to unsortedIndexDir
+     * while the sorted one is moved to its place. If that fails, the unsorted
+     * index is moved back and the sorted one is deleted.
+     */
+    static void replaceIndex(File indexDir, File sortedIndexDir, File unsortedIndexDir) throws IOException {
+        Files.move(indexDir.toPath(), unsortedIndexDir.toPath());
+        try {
+            Files.move(sortedIndexDir.toPath(), indexDir.toPath());
+
+        } catch (IOException e) {
+            try {
+                Files.move(unsortedIndexDir.toPath(), indexDir.toPath());
+            } catch (IOException e2) {
+                e.addSuppressed(e2);
+                throw e;
+            }
+            IOUtil.deletarDiretorio(sortedIndexDir);
+            throw e;
+        }
+        IOUtil.deletarDiretorio(unsortedIndexDir);
+    }
+
+}
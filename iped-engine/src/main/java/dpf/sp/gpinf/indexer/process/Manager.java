@@ -67,6 +67,7 @@
 import dpf.sp.gpinf.indexer.util.CustomIndexDeletionPolicy;
 import dpf.sp.gpinf.indexer.util.ExeFileFilter;
 import dpf.sp.gpinf.indexer.util.IOUtil;
+import dpf.sp.gpinf.indexer.util.IPEDCodec;
 import dpf.sp.gpinf.indexer.util.IPEDException;
 import dpf.sp.gpinf.indexer.util.SleuthkitClient;
 import dpf.sp.gpinf.indexer.util.Util;
@@ -236,6 +237,8 @@ public void process() throws Exception {
 
         removeEmptyTreeNodes();
 
+        sortIndex();
+
         new P2PBookmarker(caseData).createBookmarksForSharedFiles(output.getParentFile());
 
         updateImagePaths();
@@ -314,6 +317,7 @@ private IndexWriterConfig getIndexWriterConfig() {
         conf.setOpenMode(IndexWriterConfig.OpenMode.CREATE_OR_APPEND);
 
         conf.setCommitOnClose(true);
+        conf.setCodec(new IPEDCodec());
         conf.setSimilarity(new IndexerSimilarity());
         ConcurrentMergeScheduler mergeScheduler = new ConcurrentMergeScheduler();
         mergeScheduler.disableAutoIOThrottle();
@@ -689,6 +693,50 @@ private void removeEmptyTreeNodes() {
 
     }
 
+    /**
+     * Rewrites the index sorted by evidence and path, so items of the same folder
+     * or container, usually browsed, listed and exported together, have close
+     * lucene ids. Ids of items do not change and the id to lucene id maps are
+     * created when the case is opened.
+     */
+    private void sortIndex() {
+
+        if (!advancedConfig.isSortIndex()) {
+            return;
+        }
+
+        WorkerProvider.getInstance().firePropertyChange("mensagem", "", Messages.getString("Manager.SortingIndex")); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+        LOGGER.info("Sorting index..."); //$NON-NLS-1$
+
+        File sortedIndexDir = new File(finalIndexDir.getParentFile(), finalIndexDir.getName() + "_sorted"); //$NON-NLS-1$
+        File unsortedIndexDir = new File(finalIndexDir.getParentFile(), finalIndexDir.getName() + "_unsorted"); //$NON-NLS-1$
+        IOUtil.deletarDiretorio(sortedIndexDir);
+        IOUtil.deletarDiretorio(unsortedIndexDir);
+
+        try (Directory directory = ConfiguredFSDirectory.open(finalIndexDir);
+                Directory sortedDirectory = ConfiguredFSDirectory.open(sortedIndexDir)) {
+            IndexSorter.copySorted(directory, sortedDirectory, getIndexWriterConfig(), advancedConfig.isForceMerge());
+
+        } catch (Exception e) {
+            LOGGER.warn("Error sorting index, keeping it unsorted", e); //$NON-NLS-1$
+            IOUtil.deletarDiretorio(sortedIndexDir);
+            return;
+        }
+
+        try {
+            IndexSorter.replaceIndex(finalIndexDir, sortedIndexDir, unsortedIndexDir);
+
+        } catch (IOException e) {
+            if (finalIndexDir.exists()) {
+                LOGGER.warn("Error replacing index by the sorted one, keeping it unsorted", e); //$NON-NLS-1$
+            } else {
+                LOGGER.error("Error replacing index by the sorted one, the unsorted index is at " //$NON-NLS-1$
+                        + unsortedIndexDir.getAbsolutePath(), e);
+            }
+        }
+
+    }
+
     private void prepareOutputFolder() throws Exception {
         if (output.exists() && !args.isAppendIndex() && !args.isContinue() && !args.isRestart()
                 && args.getEvidenceToRemove() == null) {
@@ -0,0 +1,141 @@
+package dpf.sp.gpinf.indexer.process;
+
+import java.io.IOException;
+import java.util.concurrent.Semaphore;
+
+import org.apache.tika.config.TikaConfig;
+import org.apache.tika.detect.Detector;
+import org.apache.tika.fork.ForkParser2;
+import org.apache.tika.io.TikaInputStream;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.mime.MediaType;
+
+import dpf.sp.gpinf.indexer.parsers.util.ItemContentStream;
+import dpf.sp.gpinf.indexer.process.Worker.ProcessTime;
+import dpf.sp.gpinf.indexer.process.task.AbstractTask;
+import dpf.sp.gpinf.indexer.process.task.ParsingTask;
+import dpf.sp.gpinf.indexer.process.task.PythonTask;
+import dpf.sp.gpinf.indexer.process.task.SignatureTask;
+import iped3.IItem;
+
+/**
+ * Decides where the subitems of a container are processed. Small subitems are
+ * processed by the thread expanding the container, while their data is still
+ * hot. Bigger ones, or containers that will be expanded, are sent to the shared
+ * queue, so any worker can take them and their subitems. Subitems are submitted
+ * before their signature is checked, so the media type set by the parser is
+ * used, or the type is detected here from the data just extracted and kept for
+ * SignatureTask. At most maxInFlight subitems of the same container can wait in
+ * the queue; after that the container thread processes the next ones itself,
+ * so a huge container neither floods the queue nor runs on a single thread.
+ *
+ * Local processing is disabled with external parsing, to avoid deadlocks, and
+ * with python tasks, as their interpreters are bound to the worker thread. In
+ * that case every subitem is sent to the queue, like before.
+ */
+public class SubitemFanOut {
+
+    private static final String IN_FLIGHT_PERMITS = "subitemInFlightPermits"; //$NON-NLS-1$
+
+    private static Detector detector;
+
+    private final Worker worker;
+    private final long maxLocalSize;
+    private final Semaphore inFlight;
+    private final boolean localAllowed;
+
+    public SubitemFanOut(Worker worker, long maxLocalSize, int maxInFlight) {
+        this.worker = worker;
+        this.maxLocalSize = maxLocalSize;
+        this.inFlight = new Semaphore(maxInFlight);
+        this.localAllowed = !ForkParser2.enabled && !hasPythonTasks(worker);
+    }
+
+    private static boolean hasPythonTasks(Worker worker) {
+        for (AbstractTask task : worker.tasks) {
+            if (task instanceof PythonTask && ((PythonTask) task).isEnabled()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public void submit(IItem subItem) {
+        if (localAllowed && isSmall(subItem)) {
+            worker.processNewItem(subItem, ProcessTime.NOW);
+
+        } else if (inFlight.tryAcquire()) {
+            subItem.setTempAttribute(IN_FLIGHT_PERMITS, inFlight);
+            try {
+                worker.processNewItem(subItem, ProcessTime.LATER);
+            } catch (RuntimeException | Error e) {
+                // not queued, so it will never be processed
+                itemProcessed(subItem);
+                throw e;
+            }
+
+        } else {
+            worker.processNewItem(subItem, localAllowed ? ProcessTime.NOW : ProcessTime.LATER);
+        }
+    }
+
+    private boolean isSmall(IItem subItem) {
+        if (subItem.getLength() == null || subItem.getLength() > maxLocalSize || subItem.hasChildren()) {
+            return false;
+        }
+        MediaType type = subItem.getMediaType();
+        if (type == null) {
+            type = detect(subItem);
+        }
+        return type != null && !ParsingTask.isToBeExpanded(type);
+    }
+
+    private static synchronized Detector getDetector() {
+        if (detector == null) {
+            detector = TikaConfig.getDefaultConfig().getDetector();
+        }
+        return detector;
+    }
+
+    /**
+     * @return the type detected from the subitem content, or only from its name if
+     *         signatures are not checked, or null if it could not be detected
+     */
+    private static MediaType detect(IItem subItem) {
+        Metadata metadata = new Metadata();
+        metadata.set(Metadata.RESOURCE_NAME_KEY, subItem.getName());
+        if (!SignatureTask.processFileSignatures) {
+            try {
+                return getDetector().detect(null, metadata).getBaseType();
+            } catch (IOException e) {
+                return null;
+            }
+        }
+        try (TikaInputStream tis = subItem.getTikaStream()) {
+            ItemContentStream.startDetection(subItem, tis);
+            MediaType type = getDetector().detect(tis, metadata).getBaseType();
+            subItem.setTempAttribute(SignatureTask.DETECTED_TYPE, type);
+            return type;
+
+        } catch (IOException | RuntimeException e) {
+            // SignatureTask will try again and log the error
+            return null;
+
+        } finally {
+            ItemContentStream.endDetection();
+        }
+    }
+
+    /**
+     * Frees the queue slot taken by the item, if it was sent to the queue by a
+     * container.
+     */
+    static void itemProcessed(IItem item) {
+        Semaphore permits = (Semaphore) item.getTempAttribute(IN_FLIGHT_PERMITS);
+        if (permits != null) {
+            item.setTempAttribute(IN_FLIGHT_PERMITS, null);
+            permits.release();
+        }
+    }
+
+}
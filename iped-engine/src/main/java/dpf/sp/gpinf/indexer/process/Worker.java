@@ -190,6 +190,9 @@ public void process(IItem evidence) {
                 }
             }
 
+        } finally {
+            // also on errors, otherwise the container loses the queue slot for good
+            SubitemFanOut.itemProcessed(evidence);
         }
 
         this.evidence = prevEvidence;
@@ -149,6 +149,17 @@ private boolean kffCarvedExists(IItem parentEvidence, long off) {
     }
 
     protected void configureOffsetItem(IItem parentItem, Item carvedItem, long offset) {
+        setOffsetSource(parentItem, carvedItem, offset);
+        parentItem.setHasChildren(true);
+
+        Util.generatePersistentId(Util.getPersistentId(parentItem), carvedItem);
+    }
+
+    /**
+     * Configures the item content to be read from its parent content, starting at
+     * offset, without copying it.
+     */
+    static void setOffsetSource(IItem parentItem, Item carvedItem, long offset) {
         if (parentItem.getIdInDataSource() != null) {
             carvedItem.setIdInDataSource(parentItem.getIdInDataSource());
             carvedItem.setInputStreamFactory(parentItem.getInputStreamFactory());
@@ -170,9 +181,6 @@ protected void configureOffsetItem(IItem parentItem, Item carvedItem, long offse
                 // ignore
             }
         }
-        parentItem.setHasChildren(true);
-
-        Util.generatePersistentId(Util.getPersistentId(parentItem), carvedItem);
     }
 
     // adiciona uma evidência já carveada por uma classe que implemente a interface
@@ -0,0 +1,162 @@
+package dpf.sp.gpinf.indexer.process.task;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.text.DecimalFormat;
+import java.text.NumberFormat;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.tika.mime.MediaType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import dpf.sp.gpinf.indexer.util.BlockHashIndex;
+import dpf.sp.gpinf.indexer.util.BlockHashScanner;
+import dpf.sp.gpinf.indexer.util.IOUtil;
+import iped3.IItem;
+
+/**
+ * Finds fragments of known files in unallocated space and raw images by the
+ * hashes of their aligned blocks, looked up in a {@link BlockHashIndex}. Unlike
+ * KFFCarveTask, which needs the beginning of the file, fragments from the
+ * middle of a file are also found. Runs of consecutive blocks of the same
+ * reference file, in the same order, are carved, and the number and density of
+ * block hits are set on the scanned item.
+ */
+public class BlockHashCarveTask extends BaseCarveTask {
+
+    private static Logger logger = LoggerFactory.getLogger(BlockHashCarveTask.class);
+
+    public static final String ENABLE_PARAM = "enableBlockHashCarving"; //$NON-NLS-1$
+    public static final String INDEX_PATH_PARAM = "blockHashIndexPath"; //$NON-NLS-1$
+
+    public static final String BLOCK_HASH_REF = "blockHashRef"; //$NON-NLS-1$
+    public static final String BLOCK_HASH_HITS = "blockHashHits"; //$NON-NLS-1$
+    public static final String BLOCK_HASH_DENSITY = "blockHashDensity"; //$NON-NLS-1$
+
+    /**
+     * Minimum number of consecutive hit blocks to carve a fragment.
+     */
+    private static final int MIN_RUN_BLOCKS = 2;
+
+    private static boolean taskEnabled = false;
+
+    private static final AtomicBoolean init = new AtomicBoolean(false);
+
+    private static final AtomicBoolean finished = new AtomicBoolean(false);
+
+    private static final AtomicInteger numCarvedItems = new AtomicInteger();
+
+    private static final AtomicLong numBlocksTotal = new AtomicLong();
+
+    private static final AtomicLong numBlocksHit = new AtomicLong();
+
+    private static BlockHashIndex index;
+
+    private BlockHashScanner scanner = null;
+
+    @Override
+    public boolean isEnabled() {
+        return taskEnabled;
+    }
+
+    public static void setEnabled(boolean enabled) {
+        taskEnabled = enabled;
+    }
+
+    @Override
+    public void init(Properties confParams, File confDir) throws Exception {
+        synchronized (init) {
+            if (!init.get()) {
+                String value = confParams.getProperty(ENABLE_PARAM);
+                if (value != null && value.trim().equalsIgnoreCase("true")) { //$NON-NLS-1$
+                    String path = confParams.getProperty(INDEX_PATH_PARAM);
+                    File indexFile = path == null || path.trim().isEmpty() ? null : new File(path.trim());
+                    if (indexFile == null || !indexFile.isFile()) {
+                        String msg = indexFile == null ? " not configured." : " not found."; //$NON-NLS-1$ //$NON-NLS-2$
+                        logger.error(INDEX_PATH_PARAM + msg + " Block hash carving will be disabled."); //$NON-NLS-1$
+                    } else {
+                        index = new BlockHashIndex(indexFile);
+                        logger.info("Loaded block hashes: " + index.getNumBlocks() + " of " //$NON-NLS-1$ //$NON-NLS-2$
+                                + index.getBlockSize() + " bytes"); //$NON-NLS-1$
+                        taskEnabled = true;
+                    }
+                }
+                logger.info(taskEnabled ? "Task enabled." : "Task disabled."); //$NON-NLS-1$ //$NON-NLS-2$
+                init.set(true);
+            }
+        }
+        if (taskEnabled)
+            scanner = new BlockHashScanner(index, MIN_RUN_BLOCKS);
+    }
+
+    @Override
+    public void finish() throws Exception {
+        synchronized (finished) {
+            if (taskEnabled && !finished.get()) {
+                index.close();
+                index = null;
+                finished.set(true);
+                NumberFormat nf = new DecimalFormat("#,##0"); //$NON-NLS-1$
+                logger.info("Carved fragments: " + nf.format(numCarvedItems.get())); //$NON-NLS-1$
+                logger.info("Blocks (Hits / Total): " + nf.format(numBlocksHit.get()) + " / " //$NON-NLS-1$ //$NON-NLS-2$
+                        + nf.format(numBlocksTotal.get()));
+            }
+        }
+    }
+
+    @Override
+    protected void process(IItem evidence) throws Exception {
+        if (!taskEnabled || caseData.isIpedReport() || !isAcceptedType(evidence.getMediaType())
+                || !isToProcess(evidence))
+            return;
+
+        BufferedInputStream is = null;
+        int[] cntCarvedItems = { 0 };
+        try {
+            is = evidence.getBufferedStream();
+            scanner.scan(is, (ref, start, length) -> cntCarvedItems[0] += carveRun(evidence, ref, start, length));
+
+        } catch (Exception e) {
+            logger.warn(evidence.toString(), e);
+        } finally {
+            IOUtil.closeQuietly(is);
+        }
+
+        long cntBlocksTotal = scanner.getNumBlocks();
+        long cntBlocksHit = scanner.getNumHits();
+
+        if (cntBlocksHit > 0) {
+            evidence.setExtraAttribute(BLOCK_HASH_HITS, cntBlocksHit);
+            evidence.setExtraAttribute(BLOCK_HASH_DENSITY, (double) cntBlocksHit / cntBlocksTotal);
+        }
+        numCarvedItems.addAndGet(cntCarvedItems[0]);
+        numBlocksHit.addAndGet(cntBlocksHit);
+        numBlocksTotal.addAndGet(cntBlocksTotal);
+    }
+
+    private int carveRun(IItem evidence, int ref, long start, long length) {
+        String refPath = index.getRefPath(ref);
+        String name = "BlockHash-" + start; //$NON-NLS-1$
+        int dot = refPath.lastIndexOf('.');
+        if (dot > Math.max(refPath.lastIndexOf('/'), refPath.lastIndexOf('\\')))
+            name += refPath.substring(dot).toLowerCase();
+        IItem carvedItem = createCarvedFile(evidence, start, length, name, null);
+        if (carvedItem == null)
+            return 0;
+        carvedItem.setExtraAttribute(BLOCK_HASH_REF, refPath);
+        addOffsetFile(carvedItem, evidence);
+        return 1;
+    }
+
+    private static boolean isAcceptedType(MediaType mediaType) {
+        return mediaType.getBaseType().equals(UNALLOCATED_MIMETYPE) || mediaType.getBaseType().equals(mtPageFile)
+                || mediaType.getBaseType().equals(mtDiskImage) || mediaType.getBaseType().equals(mtUnknown)
+                || mediaType.getBaseType().equals(mtVdi) || mediaType.getBaseType().equals(mtVhd)
+                || mediaType.getBaseType().equals(mtVhdx) || mediaType.getBaseType().equals(mtVmdk)
+                || mediaType.getBaseType().equals(mtVolumeShadow);
+    }
+}
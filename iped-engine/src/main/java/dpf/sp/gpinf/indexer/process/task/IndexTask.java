@@ -1,5 +1,6 @@
 package dpf.sp.gpinf.indexer.process.task;
 
+import java.io.CharArrayReader;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
@@ -7,10 +8,14 @@
 import java.io.Reader;
 import java.io.StringReader;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
 
 import org.apache.lucene.document.Document;
 import org.apache.tika.io.TikaInputStream;
@@ -21,6 +26,9 @@
 
 import dpf.sp.gpinf.indexer.CmdLineArgs;
 import dpf.sp.gpinf.indexer.WorkerProvider;
+import dpf.sp.gpinf.indexer.config.AdvancedIPEDConfig;
+import dpf.sp.gpinf.indexer.config.ConfigurationManager;
+import dpf.sp.gpinf.indexer.config.LocalConfig;
 import dpf.sp.gpinf.indexer.io.ParsingReader;
 import dpf.sp.gpinf.indexer.parsers.IndexerDefaultParser;
 import dpf.sp.gpinf.indexer.process.IndexItem;
@@ -56,7 +64,10 @@ public class IndexTask extends AbstractTask {
 
     public static final String extraAttrFilename = "extraAttributes.dat"; //$NON-NLS-1$
 
+    private static ExecutorService fragmentExecutor;
+
     private IndexerDefaultParser autoParser;
+    private int maxParallelFragments;
     private List<IdLenPair> textSizes;
 
     public IndexTask() {
@@ -148,6 +159,8 @@ public void process(IItem evidence) throws IOException {
             fragments = 1;
         }
         String origPersistentId = Util.getPersistentId(evidence);
+        ParallelFragments parallelFrags = null;
+        boolean hasNextFrag;
         try {
             /**
              * breaks very large texts in separate documents to be indexed
@@ -167,8 +180,24 @@ public void process(IItem evidence) throws IOException {
                     LOGGER.info("{} Splitting text of {}", Thread.currentThread().getName(), evidence.getPath()); //$NON-NLS-1$
                 }
 
-                Document doc = IndexItem.Document(evidence, noCloseReader, output);
-                worker.writer.addDocument(doc);
+                if (parallelFrags == null) {
+                    Document doc = IndexItem.Document(evidence, noCloseReader, output);
+                    worker.writer.addDocument(doc);
+                    hasNextFrag = !Thread.currentThread().isInterrupted() && fragReader.nextFragment();
+                    if (hasNextFrag && maxParallelFragments > 1) {
+                        parallelFrags = new ParallelFragments(maxParallelFragments - 1);
+                    }
+                } else {
+                    Reader fragText = parallelFrags.readFragment(noCloseReader);
+                    hasNextFrag = !Thread.currentThread().isInterrupted() && fragReader.nextFragment();
+                    if (hasNextFrag) {
+                        parallelFrags.submit(IndexItem.Document(evidence, fragText, output, false));
+                    } else {
+                        // last fragment is indexed after the others, so it is only commited after them
+                        parallelFrags.waitAll();
+                        worker.writer.addDocument(IndexItem.Document(evidence, fragText, output));
+                    }
+                }
 
                 while (worker.state != STATE.RUNNING) {
                     try {
@@ -179,7 +208,7 @@ public void process(IItem evidence) throws IOException {
                     }
                 }
 
-            } while (!Thread.currentThread().isInterrupted() && fragReader.nextFragment());
+            } while (hasNextFrag);
 
         } catch (IOException e) {
             if (IOUtil.isDiskFull(e))
@@ -188,6 +217,9 @@ public void process(IItem evidence) throws IOException {
             else
                 throw e;
         } finally {
+            if (parallelFrags != null) {
+                parallelFrags.waitAllQuietly();
+            }
             evidence.setExtraAttribute(IndexItem.PERSISTENT_ID, origPersistentId);
             noCloseReader.reallyClose();
         }
@@ -196,6 +228,92 @@ public void process(IItem evidence) throws IOException {
 
     }
 
+    private static synchronized ExecutorService getFragmentExecutor() {
+        if (fragmentExecutor == null) {
+            LocalConfig localConfig = (LocalConfig) ConfigurationManager.getInstance().findObjects(LocalConfig.class)
+                    .iterator().next();
+            fragmentExecutor = Executors.newFixedThreadPool(localConfig.getNumThreads(), r -> {
+                Thread t = new Thread(r, "FragmentIndexer"); //$NON-NLS-1$
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        return fragmentExecutor;
+    }
+
+    /**
+     * Fragments of a huge text indexed by other threads. Each fragment is read
+     * to memory by this worker and only maxInFlight fragments of the item are
+     * waiting or being indexed at once.
+     */
+    private class ParallelFragments {
+
+        private final int maxInFlight;
+        private final Semaphore inFlight;
+        private volatile Throwable error;
+
+        private ParallelFragments(int maxInFlight) {
+            this.maxInFlight = maxInFlight;
+            this.inFlight = new Semaphore(maxInFlight);
+        }
+
+        private Reader readFragment(Reader reader) throws IOException {
+            char[] buf = new char[AdvancedIPEDConfig.getTextSplitSize() + AdvancedIPEDConfig.getTextOverlapSize()];
+            int len = 0, i;
+            while (true) {
+                if (len == buf.length) {
+                    if ((i = reader.read()) == -1)
+                        break;
+                    buf = Arrays.copyOf(buf, len * 2);
+                    buf[len++] = (char) i;
+                }
+                if ((i = reader.read(buf, len, buf.length - len)) == -1)
+                    break;
+                len += i;
+            }
+            return new CharArrayReader(buf, 0, len);
+        }
+
+        private void submit(Document doc) throws IOException {
+            checkError();
+            inFlight.acquireUninterruptibly();
+            try {
+                getFragmentExecutor().execute(() -> {
+                    try {
+                        worker.writer.addDocument(doc);
+                    } catch (Throwable t) {
+                        error = t;
+                    } finally {
+                        inFlight.release();
+                    }
+                });
+            } catch (RuntimeException e) {
+                inFlight.release();
+                throw e;
+            }
+        }
+
+        private void waitAllQuietly() {
+            inFlight.acquireUninterruptibly(maxInFlight);
+            inFlight.release(maxInFlight);
+        }
+
+        private void waitAll() throws IOException {
+            waitAllQuietly();
+            checkError();
+        }
+
+        private void checkError() throws IOException {
+            Throwable t = error;
+            if (t instanceof IOException)
+                throw (IOException) t;
+            if (t instanceof RuntimeException)
+                throw (RuntimeException) t;
+            if (t != null)
+                throw new RuntimeException(t);
+        }
+    }
+
     private Metadata getMetadata(IItem evidence) {
         // new metadata to prevent ConcurrentModificationException while indexing
         Metadata metadata = new Metadata();
@@ -269,6 +387,10 @@ public void init(Properties properties, File confDir) throws Exception {
             }
         }
 
+        AdvancedIPEDConfig advancedConfig = (AdvancedIPEDConfig) ConfigurationManager.getInstance()
+                .findObjects(AdvancedIPEDConfig.class).iterator().next();
+        maxParallelFragments = advancedConfig.getMaxParallelTextFragments();
+
         IndexItem.loadMetadataTypes(new File(output, "conf")); //$NON-NLS-1$
         loadExtraAttributes();
 
@@ -71,14 +71,16 @@
 import dpf.sp.gpinf.indexer.parsers.external.ExternalParser;
 import dpf.sp.gpinf.indexer.parsers.util.EmbeddedItem;
 import dpf.sp.gpinf.indexer.parsers.util.EmbeddedParent;
+import dpf.sp.gpinf.indexer.parsers.util.EmbeddedRangeExtractor;
 import dpf.sp.gpinf.indexer.parsers.util.IgnoreCorruptedCarved;
+import dpf.sp.gpinf.indexer.parsers.util.ItemContentStream;
 import dpf.sp.gpinf.indexer.parsers.util.ItemInfo;
 import dpf.sp.gpinf.indexer.parsers.util.MetadataUtil;
 import dpf.sp.gpinf.indexer.parsers.util.OCROutputFolder;
 import dpf.sp.gpinf.indexer.process.IndexItem;
 import dpf.sp.gpinf.indexer.process.ItemSearcher;
+import dpf.sp.gpinf.indexer.process.SubitemFanOut;
 import dpf.sp.gpinf.indexer.process.Worker;
-import dpf.sp.gpinf.indexer.process.Worker.ProcessTime;
 import dpf.sp.gpinf.indexer.search.IPEDSource;
 import dpf.sp.gpinf.indexer.util.ItemInfoFactory;
 import dpf.sp.gpinf.indexer.util.ParentInfo;
@@ -108,7 +110,7 @@
  * GRANDES NÃO TEM SEU TEXTO EXTRAÍDO ARMAZENADO EM MEMÓRIA, O QUE PODERIA
  * CAUSAR OOM.
  */
-public class ParsingTask extends AbstractTask implements EmbeddedDocumentExtractor {
+public class ParsingTask extends AbstractTask implements EmbeddedRangeExtractor {
 
     private static Logger LOGGER = LoggerFactory.getLogger(ParsingTask.class);
 
@@ -123,6 +125,8 @@ public class ParsingTask extends AbstractTask implements EmbeddedDocumentExtract
 
     private static boolean expandContainers = false;
     private static boolean enableFileParsing = true;
+    private static long maxLocalSubitemSize = 1 << 20;
+    private static int maxSubitemsInFlight = 1000;
 
     public static AtomicInteger subitensDiscovered = new AtomicInteger();
     private static HashSet<String> categoriesToExpand = new HashSet<String>();
@@ -141,6 +145,7 @@ public class ParsingTask extends AbstractTask implements EmbeddedDocumentExtract
     private volatile int depth = 0;
     private Map<Object, ParentInfo> idToItemMap = new HashMap<>();
     private int numSubitems = 0;
+    private SubitemFanOut fanOut;
     private IndexerDefaultParser autoParser;
 
     private static Set<MediaType> getTypesToCheckZipbomb() {
@@ -264,10 +269,22 @@ public static void load(File file) throws FileNotFoundException, IOException {
     }
 
     private static boolean isToAlwaysExpand(IItem item) {
-        return WhatsAppParser.WA_USER_PLIST.equals(item.getMediaType())
-                || WhatsAppParser.WA_USER_XML.equals(item.getMediaType()) 
-                || TelegramParser.TELEGRAM_USER_CONF.equals(item.getMediaType())
-                || TelegramParser.TELEGRAM_DB_IOS.equals(item.getMediaType());
+        return isToAlwaysExpand(item.getMediaType());
+    }
+
+    private static boolean isToAlwaysExpand(MediaType type) {
+        return WhatsAppParser.WA_USER_PLIST.equals(type)
+                || WhatsAppParser.WA_USER_XML.equals(type) 
+                || TelegramParser.TELEGRAM_USER_CONF.equals(type)
+                || TelegramParser.TELEGRAM_DB_IOS.equals(type);
+    }
+
+    /**
+     * @return true if items of this media type are containers to be expanded, by
+     *         the category of the type. Used before the item category is set.
+     */
+    public static boolean isToBeExpanded(MediaType type) {
+        return isToAlwaysExpand(type) || isToBeExpanded(Collections.singleton(SetCategoryTask.get(type)));
     }
 
     private static boolean isToBeExpanded(Collection<String> categories) {
@@ -358,6 +375,7 @@ private void safeProcess(IItem evidence) throws IOException {
         }
 
         context = getTikaContext();
+        context.set(ItemContentStream.class, new ItemContentStream(tis));
         Metadata metadata = evidence.getMetadata();
 
         if (typesToCheckZipBomb.contains(evidence.getMediaType())) {
@@ -597,9 +615,22 @@ public void parseEmbedded(InputStream inputStream, ContentHandler handler, Metad
             subItem.setSubItem(true);
             subItem.setSumVolume(false);
 
-            ExportFileTask extractor = new ExportFileTask();
-            extractor.setWorker(worker);
-            extractor.extractFile(inputStream, subItem, evidence.getLength());
+            String embeddedOffset = metadata.get(ExtraProperties.EMBEDDED_OFFSET);
+            String embeddedLength = metadata.get(ExtraProperties.EMBEDDED_LENGTH);
+            metadata.remove(ExtraProperties.EMBEDDED_OFFSET);
+            metadata.remove(ExtraProperties.EMBEDDED_LENGTH);
+            if (embeddedOffset != null && embeddedLength != null && parentInfo.getId() == evidence.getId()) {
+                // subitem is a range of the container, it is read from there
+                long offset = Long.parseLong(embeddedOffset);
+                long prevOff = evidence.getFileOffset();
+                subItem.setLength(Long.parseLong(embeddedLength));
+                subItem.setFileOffset(prevOff == -1 ? offset : prevOff + offset);
+                BaseCarveTask.setOffsetSource(evidence, subItem, offset);
+            } else {
+                ExportFileTask extractor = new ExportFileTask();
+                extractor.setWorker(worker);
+                extractor.extractFile(inputStream, subItem, evidence.getLength());
+            }
 
             checkRecursiveZipBomb(subItem);
 
@@ -613,18 +644,14 @@ public void parseEmbedded(InputStream inputStream, ContentHandler handler, Metad
             if (reader.setTimeoutPaused(true)) {
                 try {
                     long start = System.nanoTime() / 1000;
-                    // If external parsing is on, items are sent to queue to avoid deadlock
-                    // ProcessTime time = ForkParser2.enabled ? ProcessTime.LATER :
-                    // ProcessTime.AUTO;
-
-                    // Unfortunatelly AUTO value causes issues with JEP (python lib) too,
-                    // because items could be processed by Workers in a different thread (parsing
-                    // thread), instead of Worker default thread. So we are using LATER, which sends
-                    // items to queue and is a bit slower when expanding lots of containers at the
-                    // same time (causes a lot of IO instead mixing IO with CPU used to process
-                    // subitems)
-                    ProcessTime time = ProcessTime.LATER;
-                    worker.processNewItem(subItem, time);
+                    // Small subitems are processed by this thread, containers and bigger ones are
+                    // sent to queue. Local processing is disabled with external parsing, to avoid
+                    // deadlock, or python tasks (JEP interpreters are bound to the Worker thread,
+                    // not to the parsing thread)
+                    if (fanOut == null) {
+                        fanOut = new SubitemFanOut(worker, maxLocalSubitemSize, maxSubitemsInFlight);
+                    }
+                    fanOut.submit(subItem);
                     subitensDiscovered.incrementAndGet();
                     numSubitems++;
 
@@ -718,6 +745,16 @@ public void init(Properties confProps, File confDir) throws Exception {
             enableFileParsing = Boolean.valueOf(value.trim());
         }
 
+        value = confProps.getProperty("maxLocalSubitemSize"); //$NON-NLS-1$
+        if (value != null && !value.trim().isEmpty()) {
+            maxLocalSubitemSize = Long.valueOf(value.trim());
+        }
+
+        value = confProps.getProperty("maxSubitemsInFlight"); //$NON-NLS-1$
+        if (value != null && !value.trim().isEmpty()) {
+            maxSubitemsInFlight = Integer.valueOf(value.trim());
+        }
+
     }
 
     @Override
@@ -91,8 +91,17 @@ public static synchronized void load(File file) throws FileNotFoundException, IO
         }
     }
 
-    private static String get(MediaType type) {
+    /**
+     * @return the category of the media type in CategoriesByTypeConfig.txt, or
+     *         an empty string
+     */
+    public static String get(MediaType type) {
+
+        if (mimetypeToCategoryMap == null) {
+            return ""; //$NON-NLS-1$
+        }
 
+        type = registry.normalize(type);
         String category;
         do {
             category = mimetypeToCategoryMap.get(type.toString());
@@ -12,6 +12,7 @@
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import dpf.sp.gpinf.indexer.parsers.util.ItemContentStream;
 import dpf.sp.gpinf.indexer.util.IOUtil;
 import iped3.IItem;
 
@@ -26,6 +27,12 @@ public class SignatureTask extends AbstractTask {
 
     public static boolean processFileSignatures = true;
 
+    /**
+     * Temp attribute with the type detected from the item content before this
+     * task, like by SubitemFanOut, so it is not detected again.
+     */
+    public static final String DETECTED_TYPE = "detectedMediaType"; //$NON-NLS-1$
+
     private TikaConfig config;
     private Detector detector;
 
@@ -51,9 +58,13 @@ public void process(IItem evidence) {
             metadata.set(Metadata.RESOURCE_NAME_KEY, evidence.getName());
             try {
                 if (processFileSignatures) {
+                    type = (MediaType) evidence.getTempAttribute(DETECTED_TYPE);
+                }
+                if (processFileSignatures && type == null) {
                     TikaInputStream tis = null;
                     try {
                         tis = evidence.getTikaStream();
+                        ItemContentStream.startDetection(evidence, tis);
                         type = detector.detect(tis, metadata).getBaseType();
 
                     } catch (IOException e) {
@@ -61,6 +72,7 @@ public void process(IItem evidence) {
                                 Thread.currentThread().getName(), evidence.getPath(), evidence.getLength(),
                                 e.toString());
                     } finally {
+                        ItemContentStream.endDetection();
                         // Fecha handle p/ renomear subitem p/ hash posteriormente. Demais itens são
                         // fechados via evidence.dispose()
                         if (evidence.isSubItem()) {
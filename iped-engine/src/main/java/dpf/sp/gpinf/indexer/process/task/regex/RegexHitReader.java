@@ -0,0 +1,273 @@
+package dpf.sp.gpinf.indexer.process.task.regex;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/**
+ * Reads the regex hits saved by {@link RegexHitStore}. The dictionaries and the
+ * entries columns are loaded, the text offsets stay in the file and are read
+ * when requested.
+ *
+ * Allows finding the items with a hit value, counting hits by value and
+ * getting the text offsets of the hits of an item without searching its text
+ * again. Thread safe.
+ */
+public class RegexHitReader implements Closeable {
+
+    private final FileChannel channel;
+
+    private final List<String> regexNames = new ArrayList<>();
+    private final HashMap<String, Integer> regexIds = new HashMap<>();
+    private final List<List<String>> values = new ArrayList<>();
+    private final List<HashMap<String, Integer>> valueIds = new ArrayList<>();
+
+    // entries columns, sorted by item
+    private final int numEntries;
+    private final int[] items, regexes, valueOfEntry, numOffsets, numBytes;
+    private final long[] offsetsPos;
+
+    // entries of each value, in item order: value v of regex r has the entries
+    // entriesByValue[valueStart[valueBase[r] + v], valueStart[valueBase[r] + v + 1])
+    private final int[] valueBase, valueStart, entriesByValue;
+
+    public RegexHitReader(File file) throws IOException {
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            CountingInputStream counter = new CountingInputStream(
+                    new BufferedInputStream(Channels.newInputStream(channel), 1 << 16));
+            DataInputStream in = new DataInputStream(counter);
+            List<List<String>> dictionary = RegexHitStore.readDictionary(in, file);
+            valueBase = new int[dictionary.size() + 1];
+            for (int r = 0; r < dictionary.size(); r++) {
+                List<String> list = dictionary.get(r);
+                regexNames.add(list.get(0));
+                regexIds.put(list.get(0), r);
+                List<String> regexValues = list.subList(1, list.size());
+                HashMap<String, Integer> ids = new HashMap<>();
+                for (int v = 0; v < regexValues.size(); v++) {
+                    ids.put(regexValues.get(v), v);
+                }
+                values.add(regexValues);
+                valueIds.add(ids);
+                valueBase[r + 1] = valueBase[r] + regexValues.size();
+            }
+
+            long count = RegexHitStore.readVLong(in);
+            if (count > Integer.MAX_VALUE - 8) {
+                throw new IOException("Too many regex hit entries: " + count); //$NON-NLS-1$
+            }
+            numEntries = (int) count;
+            items = new int[numEntries];
+            regexes = new int[numEntries];
+            valueOfEntry = new int[numEntries];
+            numOffsets = new int[numEntries];
+            numBytes = new int[numEntries];
+            offsetsPos = new long[numEntries];
+            int item = 0;
+            for (int e = 0; e < numEntries; e++) {
+                item += RegexHitStore.readVInt(in);
+                items[e] = item;
+                regexes[e] = RegexHitStore.readVInt(in);
+                valueOfEntry[e] = RegexHitStore.readVInt(in);
+                numOffsets[e] = RegexHitStore.readVInt(in);
+                numBytes[e] = RegexHitStore.readVInt(in);
+                offsetsPos[e] = counter.count;
+                in.skipBytes(numBytes[e]);
+                if (counter.count != offsetsPos[e] + numBytes[e]) {
+                    throw new IOException("Truncated regex hits file: " + file.getAbsolutePath()); //$NON-NLS-1$
+                }
+            }
+
+            // counting sort by value, stable so entries keep the item order
+            int numValues = valueBase[dictionary.size()];
+            valueStart = new int[numValues + 1];
+            for (int e = 0; e < numEntries; e++) {
+                valueStart[valueBase[regexes[e]] + valueOfEntry[e] + 1]++;
+            }
+            for (int v = 0; v < numValues; v++) {
+                valueStart[v + 1] += valueStart[v];
+            }
+            int[] next = Arrays.copyOf(valueStart, numValues);
+            entriesByValue = new int[numEntries];
+            for (int e = 0; e < numEntries; e++) {
+                entriesByValue[next[valueBase[regexes[e]] + valueOfEntry[e]]++] = e;
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public List<String> getRegexNames() {
+        return new ArrayList<>(regexNames);
+    }
+
+    /**
+     * @return the distinct hit values of the regex
+     */
+    public List<String> getValues(String regexName) {
+        Integer regexId = regexIds.get(regexName);
+        return regexId == null ? new ArrayList<>() : new ArrayList<>(values.get(regexId));
+    }
+
+    /**
+     * @return the index of the value in valueStart, or -1
+     */
+    private int findValue(String regexName, String value) {
+        Integer regexId = regexIds.get(regexName);
+        Integer valueId = regexId == null ? null : valueIds.get(regexId).get(value);
+        return valueId == null ? -1 : valueBase[regexId] + valueId;
+    }
+
+    /**
+     * @return the ids of the items with the hit value, in ascending order
+     */
+    public int[] getItemsWithValue(String regexName, String value) {
+        int v = findValue(regexName, value);
+        if (v == -1) {
+            return new int[0];
+        }
+        int[] result = new int[valueStart[v + 1] - valueStart[v]];
+        int n = 0;
+        for (int i = valueStart[v]; i < valueStart[v + 1]; i++) {
+            int item = items[entriesByValue[i]];
+            if (n == 0 || result[n - 1] != item) {
+                result[n++] = item;
+            }
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+    /**
+     * @return the number of occurrences of the hit value in all items
+     */
+    public long getHitCount(String regexName, String value) {
+        int v = findValue(regexName, value);
+        if (v == -1) {
+            return 0;
+        }
+        long count = 0;
+        for (int i = valueStart[v]; i < valueStart[v + 1]; i++) {
+            count += numOffsets[entriesByValue[i]];
+        }
+        return count;
+    }
+
+    /**
+     * @return the first entry of the item, or numEntries if it has none
+     */
+    private int findFirstEntry(int itemId) {
+        int e = Arrays.binarySearch(items, 0, numEntries, itemId);
+        if (e < 0) {
+            return numEntries;
+        }
+        while (e > 0 && items[e - 1] == itemId) {
+            e--;
+        }
+        return e;
+    }
+
+    /**
+     * @return the distinct hit values of the regex in the item
+     */
+    public List<String> getValues(int itemId, String regexName) {
+        Integer regexId = regexIds.get(regexName);
+        if (regexId == null) {
+            return new ArrayList<>();
+        }
+        LinkedHashSet<String> result = new LinkedHashSet<>();
+        for (int e = findFirstEntry(itemId); e < numEntries && items[e] == itemId; e++) {
+            if (regexes[e] == regexId) {
+                result.add(values.get(regexId).get(valueOfEntry[e]));
+            }
+        }
+        return new ArrayList<>(result);
+    }
+
+    /**
+     * @return the text offsets of the hit value in the item
+     */
+    public long[] getOffsets(int itemId, String regexName, String value) throws IOException {
+        int v = findValue(regexName, value);
+        if (v == -1) {
+            return new long[0];
+        }
+        long[] result = new long[0];
+        for (int e = findFirstEntry(itemId); e < numEntries && items[e] == itemId; e++) {
+            if (valueBase[regexes[e]] + valueOfEntry[e] == v) {
+                long[] entryOffsets = readOffsets(e);
+                int n = result.length;
+                result = Arrays.copyOf(result, n + entryOffsets.length);
+                System.arraycopy(entryOffsets, 0, result, n, entryOffsets.length);
+            }
+        }
+        return result;
+    }
+
+    private long[] readOffsets(int e) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(numBytes[e]);
+        long pos = offsetsPos[e];
+        while (buffer.hasRemaining()) {
+            int k = channel.read(buffer, pos + buffer.position());
+            if (k == -1) {
+                throw new IOException("Truncated regex hits file"); //$NON-NLS-1$
+            }
+        }
+        return RegexHitStore.decodeOffsets(new ByteArrayInputStream(buffer.array()), numOffsets[e]);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private static class CountingInputStream extends FilterInputStream {
+
+        private long count;
+
+        private CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int k = super.read(b, off, len);
+            if (k > 0) {
+                count += k;
+            }
+            return k;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long k = super.skip(n);
+            count += k;
+            return k;
+        }
+    }
+
+}
@@ -0,0 +1,424 @@
+package dpf.sp.gpinf.indexer.process.task.regex;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import dpf.sp.gpinf.indexer.util.IOUtil;
+import dpf.sp.gpinf.indexer.util.Util;
+
+/**
+ * Writes the regex hits of all items of a case, stored in columns: the hit
+ * values of each regex are kept once in a dictionary and each (item, regex,
+ * value) entry has its value id and its text offsets. Only the dictionaries
+ * stay in memory: entries are buffered, sorted by item and spilled to run
+ * files, which are merged when saving. When appending to a case, the entries
+ * of the previous file are merged too. The saved file is read by
+ * {@link RegexHitReader}.
+ *
+ * File layout: header, the regex names and their values, the number of entries
+ * and the entries sorted by item, with delta and variable length encoded
+ * numbers. Run files have only the number of entries and the entries.
+ */
+public class RegexHitStore {
+
+    public static final String FILE_NAME = "data/regexHits.dat"; //$NON-NLS-1$
+
+    static final int MAGIC = 0x52474853; // RGHS
+    static final int VERSION = 2;
+
+    private static final int MAX_BUFFERED_OFFSETS = 1 << 22;
+
+    private final File file;
+    private final int maxBufferedOffsets;
+    // the existing file has entries to be merged
+    private boolean hasPrevious;
+    private final List<File> runs = new ArrayList<>();
+
+    private final ArrayList<String> regexNames = new ArrayList<>();
+    private final HashMap<String, Integer> regexIds = new HashMap<>();
+    private final ArrayList<ArrayList<String>> values = new ArrayList<>();
+    private final ArrayList<HashMap<String, Integer>> valueIds = new ArrayList<>();
+
+    // buffered entries columns
+    private int numEntries;
+    private int[] items = new int[1024];
+    private int[] regexes = new int[1024];
+    private int[] valueOfEntry = new int[1024];
+    private int[] offsetStart = new int[1025];
+    private long[] offsets = new long[4096];
+
+    private byte[] scratch = new byte[64];
+
+    /**
+     * @param file
+     *            where the hits are saved. If it exists, its hits are kept.
+     */
+    public RegexHitStore(File file) throws IOException {
+        this(file, MAX_BUFFERED_OFFSETS);
+    }
+
+    RegexHitStore(File file, int maxBufferedOffsets) throws IOException {
+        this.file = file;
+        this.maxBufferedOffsets = maxBufferedOffsets;
+        file.getParentFile().mkdirs();
+        if (file.exists()) {
+            try (DataInputStream in = openInput(file)) {
+                List<List<String>> dictionary = readDictionary(in, file);
+                for (int r = 0; r < dictionary.size(); r++) {
+                    int regexId = getRegexId(dictionary.get(r).get(0), true);
+                    for (String value : dictionary.get(r).subList(1, dictionary.get(r).size())) {
+                        getValueId(regexId, value, true);
+                    }
+                }
+            }
+            hasPrevious = true;
+        }
+    }
+
+    private int getRegexId(String regexName, boolean create) {
+        Integer id = regexIds.get(regexName);
+        if (id == null && create) {
+            id = regexNames.size();
+            regexNames.add(regexName);
+            regexIds.put(regexName, id);
+            values.add(new ArrayList<>());
+            valueIds.add(new HashMap<>());
+        }
+        return id == null ? -1 : id;
+    }
+
+    private int getValueId(int regexId, String value, boolean create) {
+        HashMap<String, Integer> ids = valueIds.get(regexId);
+        Integer id = ids.get(value);
+        if (id == null && create) {
+            id = values.get(regexId).size();
+            values.get(regexId).add(value);
+            ids.put(value, id);
+        }
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * Adds the hits of a regex in an item.
+     */
+    public synchronized void add(int itemId, String regexName, String value, long[] hitOffsets) throws IOException {
+        int regexId = getRegexId(regexName, true);
+        int valueId = getValueId(regexId, value, true);
+        int len = hitOffsets.length;
+        if (numEntries > 0
+                && ((long) offsetStart[numEntries] + len > maxBufferedOffsets || numEntries >= maxBufferedOffsets)) {
+            spill();
+        }
+        if (numEntries == items.length) {
+            int newLen = items.length * 2;
+            items = Arrays.copyOf(items, newLen);
+            regexes = Arrays.copyOf(regexes, newLen);
+            valueOfEntry = Arrays.copyOf(valueOfEntry, newLen);
+            offsetStart = Arrays.copyOf(offsetStart, newLen + 1);
+        }
+        // the buffer holds at most maxBufferedOffsets, or a single bigger entry
+        int start = offsetStart[numEntries];
+        if (start + len > offsets.length) {
+            offsets = Arrays.copyOf(offsets, Math.max(Math.min(offsets.length * 2, maxBufferedOffsets), start + len));
+        }
+        System.arraycopy(hitOffsets, 0, offsets, start, len);
+        items[numEntries] = itemId;
+        regexes[numEntries] = regexId;
+        valueOfEntry[numEntries] = valueId;
+        offsetStart[++numEntries] = start + len;
+    }
+
+    /**
+     * Writes the buffered entries, sorted by item, to a new run file.
+     */
+    private void spill() throws IOException {
+        // item in the upper bits, entry in the lower ones, so entries of an item keep
+        // their order
+        long[] order = new long[numEntries];
+        for (int e = 0; e < numEntries; e++) {
+            order[e] = ((long) items[e] << 32) | e;
+        }
+        Arrays.sort(order);
+
+        File run = new File(file.getPath() + ".run" + runs.size()); //$NON-NLS-1$
+        runs.add(run);
+        try (DataOutputStream out = openOutput(run)) {
+            writeVLong(out, numEntries);
+            int prevItem = 0;
+            for (long key : order) {
+                int e = (int) key;
+                writeVInt(out, items[e] - prevItem);
+                prevItem = items[e];
+                writeVInt(out, regexes[e]);
+                writeVInt(out, valueOfEntry[e]);
+                int numOffsets = offsetStart[e + 1] - offsetStart[e];
+                writeVInt(out, numOffsets);
+                int numBytes = encodeOffsets(offsetStart[e], numOffsets);
+                writeVInt(out, numBytes);
+                out.write(scratch, 0, numBytes);
+            }
+        }
+        numEntries = 0;
+    }
+
+    private int encodeOffsets(int from, int len) {
+        int pos = 0;
+        long prevOffset = 0;
+        for (int o = from; o < from + len; o++) {
+            if (pos + 10 > scratch.length) {
+                scratch = Arrays.copyOf(scratch, scratch.length * 2);
+            }
+            // offsets are not sorted when the item name has hits too
+            pos = putVLong(scratch, pos, zigZag(offsets[o] - prevOffset));
+            prevOffset = offsets[o];
+        }
+        return pos;
+    }
+
+    /**
+     * Merges the entries of the previous file, of the runs and the buffered ones
+     * into the file.
+     */
+    public synchronized void save() throws IOException {
+        if (numEntries > 0 || (runs.isEmpty() && !hasPrevious)) {
+            spill();
+        }
+        File tmp = new File(file.getPath() + ".tmp"); //$NON-NLS-1$
+        List<RunReader> readers = new ArrayList<>();
+        try {
+            if (hasPrevious) {
+                DataInputStream in = openInput(file);
+                readers.add(new RunReader(in, readers.size()));
+                readDictionary(in, file);
+                readers.get(0).start();
+            }
+            for (File run : runs) {
+                RunReader reader = new RunReader(openInput(run), readers.size());
+                readers.add(reader);
+                reader.start();
+            }
+            long total = 0;
+            for (RunReader reader : readers) {
+                total += reader.remaining;
+            }
+            try (DataOutputStream out = openOutput(tmp)) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                writeVInt(out, regexNames.size());
+                for (int r = 0; r < regexNames.size(); r++) {
+                    writeString(out, regexNames.get(r));
+                    writeVInt(out, values.get(r).size());
+                    for (String value : values.get(r)) {
+                        writeString(out, value);
+                    }
+                }
+                writeVLong(out, total);
+                merge(readers, out);
+            }
+        } finally {
+            for (RunReader reader : readers) {
+                IOUtil.closeQuietly(reader);
+            }
+        }
+        Util.fsync(tmp.toPath());
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        for (File run : runs) {
+            run.delete();
+        }
+        runs.clear();
+        hasPrevious = true;
+    }
+
+    private static void merge(List<RunReader> readers, DataOutputStream out) throws IOException {
+        PriorityQueue<RunReader> queue = new PriorityQueue<>((r1, r2) -> {
+            int cmp = Integer.compare(r1.item, r2.item);
+            return cmp != 0 ? cmp : Integer.compare(r1.index, r2.index);
+        });
+        for (RunReader reader : readers) {
+            if (reader.next()) {
+                queue.add(reader);
+            }
+        }
+        int prevItem = 0;
+        while (!queue.isEmpty()) {
+            RunReader reader = queue.poll();
+            writeVInt(out, reader.item - prevItem);
+            prevItem = reader.item;
+            writeVInt(out, reader.regex);
+            writeVInt(out, reader.value);
+            writeVInt(out, reader.numOffsets);
+            writeVInt(out, reader.numBytes);
+            out.write(reader.bytes, 0, reader.numBytes);
+            if (reader.next()) {
+                queue.add(reader);
+            }
+        }
+    }
+
+    /**
+     * Reads the entries of a run, or of the saved file after its dictionary,
+     * keeping the offsets encoded.
+     */
+    private static class RunReader implements Closeable {
+
+        private final DataInputStream in;
+        private final int index;
+        private long remaining;
+
+        private int item, regex, value, numOffsets, numBytes;
+        private byte[] bytes = new byte[64];
+
+        private RunReader(DataInputStream in, int index) {
+            this.in = in;
+            this.index = index;
+        }
+
+        private void start() throws IOException {
+            remaining = readVLong(in);
+        }
+
+        private boolean next() throws IOException {
+            if (remaining == 0) {
+                return false;
+            }
+            remaining--;
+            item += readVInt(in);
+            regex = readVInt(in);
+            value = readVInt(in);
+            numOffsets = readVInt(in);
+            numBytes = readVInt(in);
+            if (numBytes > bytes.length) {
+                bytes = new byte[numBytes];
+            }
+            in.readFully(bytes, 0, numBytes);
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    private static DataInputStream openInput(File file) throws IOException {
+        return new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+    }
+
+    private static DataOutputStream openOutput(File file) throws IOException {
+        return new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+    }
+
+    /**
+     * Reads the header and the dictionary of a saved file.
+     *
+     * @return for each regex, its name followed by its values
+     */
+    static List<List<String>> readDictionary(DataInput in, File file) throws IOException {
+        if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+            throw new IOException("Not a regex hits file: " + file.getAbsolutePath()); //$NON-NLS-1$
+        }
+        int numRegexes = readVInt(in);
+        List<List<String>> dictionary = new ArrayList<>(numRegexes);
+        for (int r = 0; r < numRegexes; r++) {
+            String name = readString(in);
+            int numValues = readVInt(in);
+            List<String> list = new ArrayList<>(numValues + 1);
+            list.add(name);
+            for (int v = 0; v < numValues; v++) {
+                list.add(readString(in));
+            }
+            dictionary.add(list);
+        }
+        return dictionary;
+    }
+
+    // unlike writeUTF, not limited to 64 KB
+    private static void writeString(DataOutput out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        writeVInt(out, bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInput in) throws IOException {
+        byte[] bytes = new byte[readVInt(in)];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    static long zigZag(long l) {
+        return (l << 1) ^ (l >> 63);
+    }
+
+    static long unZigZag(long l) {
+        return (l >>> 1) ^ -(l & 1);
+    }
+
+    private static void writeVInt(DataOutput out, int i) throws IOException {
+        writeVLong(out, i & 0xFFFFFFFFL);
+    }
+
+    private static void writeVLong(DataOutput out, long l) throws IOException {
+        while ((l & ~0x7FL) != 0) {
+            out.writeByte((int) ((l & 0x7F) | 0x80));
+            l >>>= 7;
+        }
+        out.writeByte((int) l);
+    }
+
+    private static int putVLong(byte[] bytes, int pos, long l) {
+        while ((l & ~0x7FL) != 0) {
+            bytes[pos++] = (byte) ((l & 0x7F) | 0x80);
+            l >>>= 7;
+        }
+        bytes[pos++] = (byte) l;
+        return pos;
+    }
+
+    static int readVInt(DataInput in) throws IOException {
+        return (int) readVLong(in);
+    }
+
+    static long readVLong(DataInput in) throws IOException {
+        long l = 0;
+        for (int shift = 0;; shift += 7) {
+            byte b = in.readByte();
+            l |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return l;
+            }
+        }
+    }
+
+    /**
+     * Decodes numOffsets offsets written by the store.
+     */
+    static long[] decodeOffsets(InputStream in, int numOffsets) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        long[] result = new long[numOffsets];
+        long offset = 0;
+        for (int o = 0; o < numOffsets; o++) {
+            offset += unZigZag(readVLong(data));
+            result[o] = offset;
+        }
+        return result;
+    }
+
+}
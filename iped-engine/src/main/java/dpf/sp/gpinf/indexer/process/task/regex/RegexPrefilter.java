@@ -0,0 +1,278 @@
+package dpf.sp.gpinf.indexer.process.task.regex;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import dk.brics.automaton.RunAutomaton;
+
+/**
+ * Chars required by the selective configured regexes, used to skip text where
+ * none of their matches can start. For each regex, a set of trigger chars is
+ * chosen such that every accepted string has a trigger within its first
+ * maxLead + 1 chars, e.g. '@' for e-mails or ':' and 'w' for URLs. Text
+ * positions without a trigger in the next maxLead + 1 chars can not start a
+ * match of a selective regex, so only the other regexes need to run there and
+ * results are the same.
+ *
+ * Trigger sets are chosen greedily, removing first the chars most common in
+ * text. Regexes without a selective trigger set, e.g. one requiring only
+ * letters, are not filtered. Selective regexes are added from the one with the
+ * rarest triggers while the union of the sets stays selective.
+ */
+class RegexPrefilter {
+
+    /**
+     * Maximum distance from the start of a match to its first trigger.
+     */
+    private static final int MAX_LEAD = 256;
+
+    /**
+     * Maximum sum of the char scores of the triggers to use the prefilter.
+     */
+    private static final int MAX_SCORE = 32;
+
+    private final boolean[] triggers;
+    private final int maxLead;
+    private final boolean[] selective;
+
+    private RegexPrefilter(boolean[] triggers, int maxLead, boolean[] selective) {
+        this.triggers = triggers;
+        this.maxLead = maxLead;
+        this.selective = selective;
+    }
+
+    /**
+     * @return if the regex of this index in the list given to create() is
+     *         filtered, otherwise it must run on all the text
+     */
+    boolean isSelective(int regex) {
+        return selective[regex];
+    }
+
+    boolean isTrigger(char c) {
+        return triggers[c];
+    }
+
+    int getMaxLead() {
+        return maxLead;
+    }
+
+    /**
+     * @return the trigger chars, for logging
+     */
+    String getTriggers() {
+        StringBuilder sb = new StringBuilder();
+        for (int c = 0; c < triggers.length; c++) {
+            if (triggers[c]) {
+                sb.append((char) c);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @return the prefilter for the selective regexes, or null if there is none
+     */
+    static RegexPrefilter create(List<RunAutomaton> automata) {
+        // trigger chars and score of each regex, null if not selective
+        boolean[][] regexTriggers = new boolean[automata.size()][];
+        int[] leads = new int[automata.size()];
+        long[] scores = new long[automata.size()];
+        List<Integer> order = new ArrayList<>();
+        for (int r = 0; r < automata.size(); r++) {
+            RunAutomaton automaton = automata.get(r);
+            Analysis analysis = new Analysis(automaton);
+            if (!analysis.chooseTriggers()) {
+                continue;
+            }
+            boolean[] triggers = new boolean[Character.MAX_VALUE + 1];
+            char[] intervals = automaton.getCharIntervals();
+            for (int i = 0; i < intervals.length; i++) {
+                if (analysis.triggers[i]) {
+                    int end = i + 1 < intervals.length ? intervals[i + 1] : Character.MAX_VALUE + 1;
+                    Arrays.fill(triggers, intervals[i], end, true);
+                }
+            }
+            regexTriggers[r] = triggers;
+            leads[r] = analysis.lead;
+            scores[r] = score(triggers);
+            order.add(r);
+        }
+        Collections.sort(order, (a, b) -> Long.compare(scores[a], scores[b]));
+
+        boolean[] triggers = new boolean[Character.MAX_VALUE + 1];
+        boolean[] selective = new boolean[automata.size()];
+        int maxLead = 0;
+        boolean any = false;
+        for (int r : order) {
+            boolean[] union = triggers.clone();
+            for (int c = 0; c < union.length; c++) {
+                union[c] |= regexTriggers[r][c];
+            }
+            if (score(union) > MAX_SCORE) {
+                continue;
+            }
+            triggers = union;
+            selective[r] = any = true;
+            maxLead = Math.max(maxLead, leads[r]);
+        }
+        return any ? new RegexPrefilter(triggers, maxLead, selective) : null;
+    }
+
+    private static long score(boolean[] triggers) {
+        long score = 0;
+        for (int c = 0; c < triggers.length; c++) {
+            if (triggers[c]) {
+                score += score((char) c);
+            }
+        }
+        return score;
+    }
+
+    /**
+     * Rough frequency of a char in text.
+     */
+    private static int score(char c) {
+        if (c == ' ' || (c >= 'a' && c <= 'z')) {
+            return 8;
+        }
+        if ((c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')) {
+            return 2;
+        }
+        return 1;
+    }
+
+    private static class Analysis {
+
+        private final RunAutomaton automaton;
+        private final int size;
+        private final char[] intervals;
+        // transitions by interval, -1 if dead
+        private final int[][] next;
+        private final boolean[] live;
+
+        private boolean[] triggers;
+        private int lead;
+
+        private Analysis(RunAutomaton automaton) {
+            this.automaton = automaton;
+            this.size = automaton.getSize();
+            this.intervals = automaton.getCharIntervals();
+            this.next = new int[size][intervals.length];
+            for (int s = 0; s < size; s++) {
+                for (int i = 0; i < intervals.length; i++) {
+                    next[s][i] = automaton.step(s, intervals[i]);
+                }
+            }
+            this.live = new boolean[size];
+            for (int s = 0; s < size; s++) {
+                live[s] = automaton.isAccept(s);
+            }
+            boolean changed = true;
+            while (changed) {
+                changed = false;
+                for (int s = 0; s < size; s++) {
+                    if (!live[s]) {
+                        for (int t : next[s]) {
+                            if (t != -1 && live[t]) {
+                                live[s] = changed = true;
+                                break;
+                            }
+                        }
+                    }
+                }
+            }
+        }
+
+        private boolean chooseTriggers() {
+            if (automaton.isAccept(automaton.getInitialState())) {
+                return false;
+            }
+            Integer[] order = new Integer[intervals.length];
+            long[] scores = new long[intervals.length];
+            for (int i = 0; i < intervals.length; i++) {
+                order[i] = i;
+                int end = i + 1 < intervals.length ? intervals[i + 1] : Character.MAX_VALUE + 1;
+                for (int c = intervals[i]; c < end; c++) {
+                    scores[i] += score((char) c);
+                }
+            }
+            Arrays.sort(order, (a, b) -> Long.compare(scores[b], scores[a]));
+
+            // all chars are triggers of a nonempty match, then removes the most common
+            triggers = new boolean[intervals.length];
+            Arrays.fill(triggers, true);
+            lead = 0;
+            for (int i : order) {
+                triggers[i] = false;
+                int l = computeLead();
+                if (l == -1) {
+                    triggers[i] = true;
+                } else {
+                    lead = l;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * @return the longest prefix of a match without triggers, or -1 if there
+         *         are matches without triggers or the prefix is longer than
+         *         MAX_LEAD
+         */
+        private int computeLead() {
+            // states reached by prefixes of matches without triggers
+            int[] indegree = new int[size];
+            boolean[] reached = new boolean[size];
+            int[] queue = new int[size];
+            int initial = automaton.getInitialState();
+            reached[initial] = true;
+            queue[0] = initial;
+            int n = 1;
+            for (int q = 0; q < n; q++) {
+                int s = queue[q];
+                if (automaton.isAccept(s)) {
+                    return -1;
+                }
+                for (int i = 0; i < intervals.length; i++) {
+                    int t = next[s][i];
+                    if (!triggers[i] && t != -1 && live[t]) {
+                        indegree[t]++;
+                        if (!reached[t]) {
+                            reached[t] = true;
+                            queue[n++] = t;
+                        }
+                    }
+                }
+            }
+            // longest path in topological order, a cycle means unbounded
+            int[] longest = new int[size];
+            int numOrdered = 0;
+            queue[numOrdered++] = initial;
+            if (indegree[initial] != 0) {
+                return -1;
+            }
+            int max = 0;
+            for (int q = 0; q < numOrdered; q++) {
+                int s = queue[q];
+                max = Math.max(max, longest[s]);
+                if (max > MAX_LEAD) {
+                    return -1;
+                }
+                for (int i = 0; i < intervals.length; i++) {
+                    int t = next[s][i];
+                    if (!triggers[i] && t != -1 && live[t]) {
+                        longest[t] = Math.max(longest[t], longest[s] + 1);
+                        if (--indegree[t] == 0) {
+                            queue[numOrdered++] = t;
+                        }
+                    }
+                }
+            }
+            return numOrdered < n ? -1 : max;
+        }
+    }
+
+}
@@ -13,8 +13,10 @@
 import java.util.Properties;
 import java.util.Set;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import dk.brics.automaton.Automaton;
-import dk.brics.automaton.AutomatonMatcher;
 import dk.brics.automaton.BasicOperations;
 import dk.brics.automaton.DatatypesAutomatonProvider;
 import dk.brics.automaton.RegExp;
@@ -29,6 +31,8 @@
 
 public class RegexTask extends AbstractTask {
 
+    private static Logger logger = LoggerFactory.getLogger(RegexTask.class);
+
     public static final String REGEX_PREFIX = "Regex:"; //$NON-NLS-1$
 
     private static final String REGEX_CONFIG = "RegexConfig.txt"; //$NON-NLS-1$
@@ -43,6 +47,8 @@ public class RegexTask extends AbstractTask {
 
     private static final int MAX_RESULTS = 50000; // OOME protection for files with tons of hits
 
+    private static final String HIT_STORE = RegexHitStore.class.getName();
+
     private static List<Regex> regexList;
 
     private static Regex regexFull;
@@ -53,7 +59,20 @@ public class RegexTask extends AbstractTask {
 
     private boolean enabled = true;
 
-    private char[] cbuf = new char[1 << 20];
+    private static final int READ_SIZE = 1 << 20;
+
+    /**
+     * Limit of the length of matches of regexes accepting unbounded strings.
+     */
+    private static final int MAX_MATCH_LENGTH = 1 << 14;
+
+    private static int maxMatchLength;
+
+    private static RegexPrefilter prefilter;
+
+    private static RunAutomaton unfilteredPattern;
+
+    private StreamingMatcher matcher;
 
     private static RegexValidator regexValidator;
 
@@ -180,10 +199,44 @@ public void init(Properties confParams, File confDir) throws Exception {
                 automatonList.add(regex.automaton);
             Automaton automata = BasicOperations.union(automatonList);
             regexFull = new Regex("FULL", automata); //$NON-NLS-1$
+            maxMatchLength = StreamingMatcher.maxMatchLength(regexFull.pattern, MAX_MATCH_LENGTH);
+
+            ArrayList<RunAutomaton> patterns = new ArrayList<RunAutomaton>();
+            for (Regex regex : regexList)
+                patterns.add(regex.pattern);
+            prefilter = RegexPrefilter.create(patterns);
+            unfilteredPattern = null;
+            if (prefilter != null) {
+                ArrayList<Automaton> unfiltered = new ArrayList<Automaton>();
+                StringBuilder names = new StringBuilder();
+                for (int i = 0; i < regexList.size(); i++) {
+                    if (!prefilter.isSelective(i)) {
+                        unfiltered.add(regexList.get(i).automaton);
+                        names.append(' ').append(regexList.get(i).name);
+                    }
+                }
+                if (!unfiltered.isEmpty())
+                    unfilteredPattern = new RunAutomaton(BasicOperations.union(unfiltered));
+                logger.info("Regex prefilter enabled, trigger chars: " + prefilter.getTriggers() //$NON-NLS-1$
+                        + (names.length() > 0 ? ", not filtered:" + names : "")); //$NON-NLS-1$ //$NON-NLS-2$
+            } else
+                logger.info("Regex prefilter disabled, no selective required chars."); //$NON-NLS-1$
 
             initValidators(confDir);
         }
 
+        if (enabled)
+            initHitStore();
+
+    }
+
+    private void initHitStore() throws IOException {
+        synchronized (RegexTask.class) {
+            if (caseData.getCaseObject(HIT_STORE) == null) {
+                RegexHitStore store = new RegexHitStore(new File(output, RegexHitStore.FILE_NAME));
+                caseData.putCaseObject(HIT_STORE, store);
+            }
+        }
     }
 
     private synchronized void initValidators(File confDir) {
@@ -203,8 +256,15 @@ private static final String replace(String s) {
 
     @Override
     public void finish() throws Exception {
+        RegexHitStore store = (RegexHitStore) caseData.getCaseObject(HIT_STORE);
+        if (store != null) {
+            store.save();
+            caseData.putCaseObject(HIT_STORE, null);
+        }
         regexFull = null;
         regexList = null;
+        prefilter = null;
+        unfilteredPattern = null;
     }
 
     protected void process(IItem item) throws Exception {
@@ -218,81 +278,110 @@ protected void process(IItem item) throws Exception {
             processRegex(evidence, reader);
         }
         processRegex(evidence, new StringReader(evidence.getName()));
+
+        addToHitStore(evidence);
     }
 
     @SuppressWarnings("unchecked")
+    private void addToHitStore(IItem evidence) throws IOException {
+        RegexHitStore store = (RegexHitStore) caseData.getCaseObject(HIT_STORE);
+        Set<String> names = new HashSet<>();
+        for (Regex regex : regexList) {
+            if (!names.add(regex.name))
+                continue;
+            Object hits = evidence.getExtraAttribute(REGEX_PREFIX + regex.name);
+            if (hits instanceof Collection) {
+                for (Object hit : (Collection<Object>) hits) {
+                    if (hit instanceof RegexHits) {
+                        RegexHits regexHits = (RegexHits) hit;
+                        store.add(evidence.getId(), regex.name, regexHits.getHit(), regexHits.getOffsets());
+                    }
+                }
+            }
+        }
+    }
+
     private void processRegex(IItem evidence, Reader reader) throws IOException {
 
-        int k = 0;
-        long totalOffset = 0;
-        while (k != -1) {
-            int off = 0;
-            k = 0;
-            while (k != -1 && (off += k) < cbuf.length)
-                k = reader.read(cbuf, off, cbuf.length - off);
+        if (matcher == null) {
+            matcher = new StreamingMatcher(regexFull.pattern, maxMatchLength, READ_SIZE, prefilter,
+                    unfilteredPattern);
+        }
+        matcher.reset(reader);
 
-            String text = new String(cbuf, 0, off);
+        List<Map<String, RegexHits>> hitList = new ArrayList<Map<String, RegexHits>>(regexList.size());
+        for (int i = 0; i < regexList.size(); i++) {
+            hitList.add(null);
+        }
 
-            List<Map<String, RegexHits>> hitList = new ArrayList<Map<String, RegexHits>>();
-            for (int i = 0; i < regexList.size(); i++) {
-                hitList.add(new HashMap<>());
+        // hits are added to the item by text blocks, like when the text was read by chunks
+        long nextBlock = READ_SIZE;
+        while (matcher.find()) {
+            long start = matcher.start();
+            long end = matcher.end();
+            if (start >= nextBlock) {
+                addHits(evidence, hitList);
+                nextBlock = (start / READ_SIZE + 1) * READ_SIZE;
             }
-
-            AutomatonMatcher fullMatcher = regexFull.pattern.newMatcher(text);
-            while (fullMatcher.find()) {
-                int start = fullMatcher.start();
-                int end = fullMatcher.end();
-                String hit = text.substring(start, end);
-                int i = 0;
-                for (Regex regex : regexList) {
-                    if (regex.pattern.run(hit)) {
-                        hit = hit.substring(regex.prefix, hit.length() - regex.sufix);
-                        if (regex.ignoreCases)
-                            hit = hit.toLowerCase();
-                        if (regexValidator.validate(regex, hit)) {
-                            if (formatRegexMatches) {
-                                hit = regexValidator.format(regex, hit);
-                            }
-                            Map<String, RegexHits> hitMap = hitList.get(i);
-                            RegexHits hits = hitMap.get(hit);
-                            if (hits == null) {
-                                hits = new RegexHits(hit);
-                                hitMap.put(hit, hits);
-                            }
-                            hits.addOffset(totalOffset + start + regex.prefix);
+            int i = 0;
+            for (Regex regex : regexList) {
+                if (matcher.matches(regex.pattern, start, end)) {
+                    String hit = matcher.substring(start + regex.prefix, end - regex.sufix);
+                    if (regex.ignoreCases)
+                        hit = hit.toLowerCase();
+                    if (regexValidator.validate(regex, hit)) {
+                        if (formatRegexMatches) {
+                            hit = regexValidator.format(regex, hit);
                         }
+                        Map<String, RegexHits> hitMap = hitList.get(i);
+                        if (hitMap == null) {
+                            hitMap = new HashMap<>();
+                            hitList.set(i, hitMap);
+                        }
+                        RegexHits hits = hitMap.get(hit);
+                        if (hits == null) {
+                            hits = new RegexHits(hit);
+                            hitMap.put(hit, hits);
+                        }
+                        hits.addOffset(start + regex.prefix);
                     }
-                    i++;
                 }
+                i++;
             }
-            for (int i = 0; i < regexList.size(); i++) {
-                if (hitList.get(i).size() > 0) {
-                    String key = REGEX_PREFIX + regexList.get(i).name;
-                    Collection<RegexHits> prevHits = (Collection<RegexHits>) evidence.getExtraAttribute(key);
-                    Map<String, RegexHits> hitsMap = hitList.get(i);
-                    if (prevHits == null || prevHits.isEmpty() || !(prevHits.iterator().next() instanceof RegexHits)) {
-                        evidence.setExtraAttribute(key, hitsMap.values());
+        }
+        addHits(evidence, hitList);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void addHits(IItem evidence, List<Map<String, RegexHits>> hitList) {
+        for (int i = 0; i < regexList.size(); i++) {
+            Map<String, RegexHits> hitsMap = hitList.get(i);
+            if (hitsMap != null) {
+                // the map values are kept by the item
+                hitList.set(i, null);
+                String key = REGEX_PREFIX + regexList.get(i).name;
+                Collection<RegexHits> prevHits = (Collection<RegexHits>) evidence.getExtraAttribute(key);
+                if (prevHits == null || prevHits.isEmpty() || !(prevHits.iterator().next() instanceof RegexHits)) {
+                    evidence.setExtraAttribute(key, hitsMap.values());
+                } else {
+                    if (prevHits.size() >= MAX_RESULTS) {
+                        evidence.setExtraAttribute("maxHitsReached" + key, "true");
                     } else {
-                        if (prevHits.size() >= MAX_RESULTS) {
-                            evidence.setExtraAttribute("maxHitsReached" + key, "true");
-                        } else {
-                            for (RegexHits hits : prevHits) {
-                                RegexHits prev = hitsMap.get(hits.getHit());
-                                if (prev != null) {
-                                    prev.addAll(hits.getOffsets());
-                                } else {
-                                    hitsMap.put(hits.getHit(), hits);
-                                }
+                        for (RegexHits hits : prevHits) {
+                            RegexHits prev = hitsMap.get(hits.getHit());
+                            if (prev != null) {
+                                prev.addAll(hits.getOffsets());
+                            } else {
+                                hitsMap.put(hits.getHit(), hits);
                             }
-                            evidence.setExtraAttribute(key, hitsMap.values());
                         }
+                        evidence.setExtraAttribute(key, hitsMap.values());
                     }
-
-                    if (regexList.get(i).name.equals(KEYWORDS_NAME))
-                        evidence.setToExtract(true);
                 }
+
+                if (regexList.get(i).name.equals(KEYWORDS_NAME))
+                    evidence.setToExtract(true);
             }
-            totalOffset += off;
         }
     }
 
@@ -0,0 +1,306 @@
+package dpf.sp.gpinf.indexer.process.task.regex;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+import dk.brics.automaton.RunAutomaton;
+
+/**
+ * Finds the matches of a RunAutomaton in text read from a Reader, with the same
+ * leftmost longest semantics of AutomatonMatcher, without loading the whole
+ * text. Text is read into a ring buffer that keeps, after the position being
+ * searched, at least the maximum match length of the automaton, so matches do
+ * not depend on where the reads end. Automata accepting unbounded strings have
+ * their matches limited to a maximum length. Nothing is allocated while
+ * searching, positions are offsets in the whole text.
+ */
+class StreamingMatcher {
+
+    private final RunAutomaton automaton;
+    private final int maxMatchLength;
+    private final RegexPrefilter prefilter;
+    private final RunAutomaton unfiltered;
+    private final char[] buf;
+    private final int mask;
+
+    private Reader reader;
+    private boolean eof;
+
+    // number of chars read from the reader, end of the buffered text
+    private long filled;
+    private long nextStart;
+    private long matchStart = -1, matchEnd = -1;
+    // position of the next trigger char, if not before the search position
+    private long nextTrigger = -1;
+    // text before this position was searched for triggers
+    private long scanned;
+
+    /**
+     * @param maxMatchLength
+     *            from {@link #maxMatchLength(RunAutomaton, int)}
+     * @param readSize
+     *            minimum number of chars buffered besides the match window
+     * @param prefilter
+     *            chars required by the matches of the selective regexes, or null
+     * @param unfiltered
+     *            union of the regexes that are not selective, run where the
+     *            prefilter has no trigger, or null if all of them are selective
+     */
+    StreamingMatcher(RunAutomaton automaton, int maxMatchLength, int readSize, RegexPrefilter prefilter,
+            RunAutomaton unfiltered) {
+        this.automaton = automaton;
+        this.maxMatchLength = maxMatchLength;
+        this.prefilter = prefilter;
+        this.unfiltered = unfiltered;
+        int window = prefilter == null ? maxMatchLength : Math.max(maxMatchLength, prefilter.getMaxLead() + 1);
+        int capacity = Integer.highestOneBit(window + readSize - 1) << 1;
+        this.buf = new char[capacity];
+        this.mask = capacity - 1;
+    }
+
+    void reset(Reader reader) {
+        this.reader = reader;
+        this.eof = false;
+        this.filled = 0;
+        this.nextStart = 0;
+        this.matchStart = this.matchEnd = -1;
+        this.nextTrigger = -1;
+        this.scanned = 0;
+    }
+
+    long start() {
+        return matchStart;
+    }
+
+    long end() {
+        return matchEnd;
+    }
+
+    /**
+     * Reads until text[0, until) is buffered or the text ends, keeping
+     * text[keepFrom, filled) in the buffer.
+     */
+    private void fill(long until, long keepFrom) throws IOException {
+        while (!eof && filled < until) {
+            int idx = (int) (filled & mask);
+            int len = (int) Math.min(buf.length - idx, keepFrom + buf.length - filled);
+            int k = reader.read(buf, idx, len);
+            if (k == -1) {
+                eof = true;
+            } else {
+                filled += k;
+            }
+        }
+    }
+
+    /**
+     * Finds the next match, not overlapping the previous one.
+     */
+    boolean find() throws IOException {
+        if (matchEnd != -1) {
+            // empty matches, if the automaton accepts them, advance one char
+            nextStart = matchEnd > matchStart ? matchEnd : matchEnd + 1;
+        }
+        for (long begin = nextStart;; begin++) {
+            RunAutomaton a = automaton;
+            if (prefilter != null) {
+                if (unfiltered == null) {
+                    begin = skipToCandidate(begin);
+                } else if (!hasTriggerAhead(begin)) {
+                    // no selective regex matches here, so the longest match is of the others
+                    a = unfiltered;
+                }
+            }
+            fill(begin + maxMatchLength, begin);
+            if (begin >= filled) {
+                break;
+            }
+            long end = -1;
+            long limit = Math.min(filled, begin + maxMatchLength);
+            int p = a.getInitialState();
+            for (long i = begin; i < limit; i++) {
+                p = a.step(p, buf[(int) (i & mask)]);
+                if (p == -1) {
+                    break;
+                }
+                if (a.isAccept(p)) {
+                    end = i + 1;
+                }
+            }
+            if (end == -1 && a.isAccept(a.getInitialState())) {
+                end = begin;
+            }
+            if (end != -1) {
+                matchStart = begin;
+                matchEnd = end;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the first position from begin that has a trigger char in its next
+     *         maxLead + 1 chars, or the end of the text
+     */
+    private long skipToCandidate(long begin) throws IOException {
+        int maxLead = prefilter.getMaxLead();
+        if (nextTrigger >= begin) {
+            return Math.max(begin, nextTrigger - maxLead);
+        }
+        long i = begin;
+        while (true) {
+            fill(i + 1, begin);
+            if (i >= filled) {
+                return filled;
+            }
+            for (long end = filled; i < end; i++) {
+                if (prefilter.isTrigger(buf[(int) (i & mask)])) {
+                    nextTrigger = i;
+                    return Math.max(begin, i - maxLead);
+                }
+            }
+            // no match starts before, so those chars can be discarded
+            begin = Math.max(begin, i - maxLead);
+        }
+    }
+
+    /**
+     * @return if there is a trigger char in the next maxLead + 1 chars from begin
+     */
+    private boolean hasTriggerAhead(long begin) throws IOException {
+        long to = begin + prefilter.getMaxLead() + 1;
+        if (nextTrigger >= begin) {
+            return nextTrigger < to;
+        }
+        fill(to, begin);
+        long end = Math.min(filled, to);
+        for (long i = Math.max(begin, scanned); i < end; i++) {
+            if (prefilter.isTrigger(buf[(int) (i & mask)])) {
+                nextTrigger = i;
+                scanned = i + 1;
+                return true;
+            }
+        }
+        scanned = Math.max(scanned, end);
+        return false;
+    }
+
+    /**
+     * @return if the whole text[start, end) of the current match window is
+     *         accepted by the automaton
+     */
+    boolean matches(RunAutomaton a, long start, long end) {
+        int p = a.getInitialState();
+        for (long i = start; i < end; i++) {
+            p = a.step(p, buf[(int) (i & mask)]);
+            if (p == -1) {
+                return false;
+            }
+        }
+        return a.isAccept(p);
+    }
+
+    /**
+     * @return text[start, end), which must be inside the current match
+     */
+    String substring(long start, long end) {
+        int from = (int) (start & mask);
+        int len = (int) (end - start);
+        if (from + len <= buf.length) {
+            return new String(buf, from, len);
+        }
+        char[] chars = new char[len];
+        int first = buf.length - from;
+        System.arraycopy(buf, from, chars, 0, first);
+        System.arraycopy(buf, 0, chars, first, len - first);
+        return new String(chars);
+    }
+
+    /**
+     * Computes the length of the longest string accepted by the automaton, or
+     * returns cap if it is longer or unbounded.
+     */
+    static int maxMatchLength(RunAutomaton automaton, int cap) {
+        int size = automaton.getSize();
+        char[] intervals = automaton.getCharIntervals();
+        int[][] next = new int[size][];
+        int[] succ = new int[intervals.length];
+        for (int s = 0; s < size; s++) {
+            int n = 0;
+            for (char c : intervals) {
+                int t = automaton.step(s, c);
+                if (t != -1) {
+                    succ[n++] = t;
+                }
+            }
+            next[s] = Arrays.copyOf(succ, n);
+        }
+
+        // states from which an accept state can be reached
+        boolean[] live = new boolean[size];
+        boolean changed = true;
+        for (int s = 0; s < size; s++) {
+            live[s] = automaton.isAccept(s);
+        }
+        while (changed) {
+            changed = false;
+            for (int s = 0; s < size; s++) {
+                if (!live[s]) {
+                    for (int t : next[s]) {
+                        if (live[t]) {
+                            live[s] = changed = true;
+                            break;
+                        }
+                    }
+                }
+            }
+        }
+
+        // longest path over live states, in topological order
+        int[] indegree = new int[size];
+        for (int s = 0; s < size; s++) {
+            if (live[s]) {
+                for (int t : next[s]) {
+                    if (live[t]) {
+                        indegree[t]++;
+                    }
+                }
+            }
+        }
+        int[] order = new int[size];
+        int numOrdered = 0, numLive = 0;
+        for (int s = 0; s < size; s++) {
+            if (live[s]) {
+                numLive++;
+                if (indegree[s] == 0) {
+                    order[numOrdered++] = s;
+                }
+            }
+        }
+        for (int i = 0; i < numOrdered; i++) {
+            for (int t : next[order[i]]) {
+                if (live[t] && --indegree[t] == 0) {
+                    order[numOrdered++] = t;
+                }
+            }
+        }
+        if (numOrdered < numLive) {
+            // a cycle, so unbounded matches
+            return cap;
+        }
+        int[] longest = new int[size];
+        for (int i = numOrdered - 1; i >= 0; i--) {
+            int s = order[i];
+            for (int t : next[s]) {
+                if (live[t]) {
+                    longest[s] = Math.max(longest[s], Math.min(cap, longest[t] + 1));
+                }
+            }
+        }
+        int initial = automaton.getInitialState();
+        return live[initial] ? Math.max(1, longest[initial]) : 1;
+    }
+
+}
@@ -18,13 +18,20 @@
  */
 package dpf.sp.gpinf.indexer.search;
 
+import java.io.IOException;
 import java.io.InterruptedIOException;
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.HashSet;
 
+import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
 import org.apache.lucene.search.BooleanClause.Occur;
 import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.BoostQuery;
+import org.apache.lucene.search.ConstantScoreQuery;
+import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.ScoreDoc;
 import org.apache.lucene.search.TermQuery;
@@ -122,16 +129,12 @@ public LuceneSearchResult searchAll() throws Exception {
         if (!treeQuery)
             query = getNonTreeQuery();
 
-        collector = new NoScoringCollector(ipedCase.getReader().maxDoc());
-        try {
-            ipedCase.getSearcher().search(query, collector);
+        BitSet bits = getBits(query);
+        int totalHits = bits.cardinality();
 
-        } catch (InterruptedIOException e) {
-            // e.printStackTrace();
-        }
         // não calcula scores (lento) quando resultado é mto grande
-        if (noScore || collector.getTotalHits() > MAX_SIZE_TO_SCORE || canceled)
-            return collector.getSearchResults();
+        if (noScore || totalHits > MAX_SIZE_TO_SCORE || canceled)
+            return NoScoringCollector.getSearchResults(bits, totalHits);
 
         // obtém resultados calculando score
         LuceneSearchResult searchResult = new LuceneSearchResult(0);
@@ -151,6 +154,84 @@ public LuceneSearchResult searchAll() throws Exception {
         return searchResult;
     }
 
+    /**
+     * Gets the lucene ids matched by the query, combining the cached bitsets of
+     * its boolean clauses, and searching only the clauses not cached yet. The
+     * query is rewritten first, so equivalent clauses share their bitsets.
+     */
+    private BitSet getBits(Query query) throws IOException {
+        IndexSearcher searcher = ipedCase.getSearcher();
+        return getBits(searcher.rewrite(query), searcher, ipedCase.getBitSetCache());
+    }
+
+    BitSet getBits(Query query, IndexSearcher searcher, QueryBitSetCache cache) throws IOException {
+        if (query instanceof BoostQuery)
+            return getBits(((BoostQuery) query).getQuery(), searcher, cache);
+
+        if (query instanceof ConstantScoreQuery)
+            return getBits(((ConstantScoreQuery) query).getQuery(), searcher, cache);
+
+        if (query instanceof BooleanQuery && ((BooleanQuery) query).getMinimumNumberShouldMatch() <= 1) {
+            BooleanQuery boolQuery = (BooleanQuery) query;
+            BitSet required = null, optional = null;
+            for (BooleanClause clause : boolQuery.clauses()) {
+                if (clause.getOccur() == Occur.MUST || clause.getOccur() == Occur.FILTER) {
+                    BitSet bits = getBits(clause.getQuery(), searcher, cache);
+                    if (required == null)
+                        required = (BitSet) bits.clone();
+                    else
+                        required.and(bits);
+
+                } else if (clause.getOccur() == Occur.SHOULD) {
+                    BitSet bits = getBits(clause.getQuery(), searcher, cache);
+                    if (optional == null)
+                        optional = (BitSet) bits.clone();
+                    else
+                        optional.or(bits);
+                }
+            }
+            // SHOULD clauses are optional if there are required ones, unless one must match
+            if (boolQuery.getMinimumNumberShouldMatch() == 1 && optional == null)
+                return new BitSet();
+            if (optional != null && required == null)
+                required = optional;
+            else if (optional != null && boolQuery.getMinimumNumberShouldMatch() == 1)
+                required.and(optional);
+
+            // only MUST_NOT clauses do not match anything
+            if (required == null)
+                return new BitSet();
+
+            for (BooleanClause clause : boolQuery.clauses()) {
+                if (clause.getOccur() == Occur.MUST_NOT)
+                    required.andNot(getBits(clause.getQuery(), searcher, cache));
+            }
+            return required;
+        }
+
+        IndexReader reader = searcher.getIndexReader();
+        BitSet bits = cache.get(reader, query);
+        if (bits != null)
+            return bits;
+
+        if (canceled)
+            return new BitSet();
+
+        collector = new NoScoringCollector(reader.maxDoc());
+        try {
+            searcher.search(query, collector);
+
+        } catch (InterruptedIOException e) {
+            // e.printStackTrace();
+        }
+        bits = collector.getBits();
+        // partial results are not cached
+        if (!canceled)
+            cache.put(reader, query, bits);
+
+        return bits;
+    }
+
     private Query getNonTreeQuery() {
         BooleanQuery.Builder result = new BooleanQuery.Builder();
         result.add(query, Occur.MUST);
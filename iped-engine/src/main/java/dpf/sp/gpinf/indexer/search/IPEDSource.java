@@ -61,6 +61,8 @@
 import dpf.sp.gpinf.indexer.datasource.SleuthkitReader;
 import dpf.sp.gpinf.indexer.process.IndexItem;
 import dpf.sp.gpinf.indexer.process.task.IndexTask;
+import dpf.sp.gpinf.indexer.process.task.regex.RegexHitReader;
+import dpf.sp.gpinf.indexer.process.task.regex.RegexHitStore;
 import dpf.sp.gpinf.indexer.util.ConfiguredFSDirectory;
 import dpf.sp.gpinf.indexer.util.IOUtil;
 import dpf.sp.gpinf.indexer.util.IPEDException;
@@ -100,6 +102,7 @@ public class IPEDSource implements Closeable, IIPEDSource {
     LeafReader atomicReader;
     IndexWriter iw;
     IndexSearcher searcher;
+    QueryBitSetCache bitSetCache;
     Analyzer analyzer;
 
     private ExecutorService searchExecutorService;
@@ -109,6 +112,9 @@ public class IPEDSource implements Closeable, IIPEDSource {
     private IMarcadores marcadores;
     IMultiMarcadores globalMarcadores;
 
+    private RegexHitReader regexHits;
+    private boolean regexHitsOpened = false;
+
     private int[] ids, docs;
     private long[] textSizes;
 
@@ -359,6 +365,7 @@ protected void openSearcher() {
             searcher = new IndexSearcher(reader);
 
         searcher.setSimilarity(new IndexerSimilarity());
+        bitSetCache = new QueryBitSetCache();
     }
 
     @Override
@@ -366,6 +373,11 @@ public void close() {
         try {
             IOUtil.closeQuietly(reader);
 
+            synchronized (this) {
+                IOUtil.closeQuietly(regexHits);
+                regexHits = null;
+            }
+
             if (searchExecutorService != null)
                 searchExecutorService.shutdown();
 
@@ -377,6 +389,24 @@ public void close() {
         }
     }
 
+    /**
+     * @return the regex hits of the case items, or null if the case has none
+     */
+    public synchronized RegexHitReader getRegexHits() {
+        if (!regexHitsOpened) {
+            regexHitsOpened = true;
+            File file = new File(moduleDir, RegexHitStore.FILE_NAME);
+            if (file.exists()) {
+                try {
+                    regexHits = new RegexHitReader(file);
+                } catch (IOException e) {
+                    LOGGER.error("Error opening " + file.getAbsolutePath(), e); //$NON-NLS-1$
+                }
+            }
+        }
+        return regexHits;
+    }
+
     public IItem getItemByLuceneID(int docID) {
         try {
             Document doc = searcher.doc(docID);
@@ -619,6 +649,10 @@ public IndexSearcher getSearcher() {
         return searcher;
     }
 
+    public QueryBitSetCache getBitSetCache() {
+        return bitSetCache;
+    }
+
     public IMarcadores getMarcadores() {
         return marcadores;
     }
@@ -5,6 +5,7 @@
 
 import org.apache.lucene.index.IndexReader;
 
+import dpf.sp.gpinf.indexer.analysis.NGramAnalyzer;
 import dpf.sp.gpinf.indexer.process.IndexItem;
 import iped3.IIPEDSource;
 
@@ -16,7 +17,7 @@ public static String[] getFields(List<? extends IIPEDSource> sources) {
         for (IIPEDSource source : sources) {
             IndexReader leafReader = source.getReader();
             leafReader.leaves().forEach(ctx -> ctx.reader().getFieldInfos().forEach(info -> {
-                if (!IndexItem.CONTENT.equals(info.name))
+                if (!IndexItem.CONTENT.equals(info.name) && !NGramAnalyzer.isNGramField(info.name))
                     names.add(info.name);
             }));
         }
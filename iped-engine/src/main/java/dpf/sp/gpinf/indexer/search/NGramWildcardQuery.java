@@ -0,0 +1,256 @@
+package dpf.sp.gpinf.indexer.search;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.DocValuesType;
+import org.apache.lucene.index.FieldInfo;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.SortedSetDocValues;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause.Occur;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.ConstantScoreScorer;
+import org.apache.lucene.search.ConstantScoreWeight;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TwoPhaseIterator;
+import org.apache.lucene.search.Weight;
+import org.apache.lucene.search.WildcardQuery;
+import org.apache.lucene.util.LongBitSet;
+import org.apache.lucene.util.automaton.CharacterRunAutomaton;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import dpf.sp.gpinf.indexer.analysis.NGramAnalyzer;
+import dpf.sp.gpinf.indexer.process.IndexItem;
+
+/**
+ * Wildcard query on a property with an n-gram side field. Candidates are the
+ * items with all n-grams of the literal parts of the pattern, which are then
+ * verified against the sorted doc values of the property, already converted
+ * like the indexed words: an item matches if a word of a value matches the
+ * pattern, like the WildcardQuery, or if a whole value does, so patterns with
+ * separators like *@corp.com* also find their items. Each distinct value is
+ * verified once per segment. Only values truncated in the doc values, or
+ * properties without them, are verified against the stored values.
+ *
+ * Segments without the side field, like the ones of cases processed without
+ * it, have all their items as candidates, so they return the same results,
+ * though slower.
+ */
+public class NGramWildcardQuery extends Query {
+
+    private static Logger LOGGER = LoggerFactory.getLogger(NGramWildcardQuery.class);
+
+    private static volatile boolean warnedNoSideField = false;
+
+    private final Term term;
+    private final Set<String> grams;
+    private final Analyzer analyzer;
+    private final boolean convertCharsToAscii;
+    private final CharacterRunAutomaton automaton;
+    private final Set<String> fieldsToLoad;
+
+    public NGramWildcardQuery(Term term, Set<String> grams, Analyzer analyzer, boolean convertCharsToAscii) {
+        this.term = term;
+        this.grams = grams;
+        this.analyzer = analyzer;
+        this.convertCharsToAscii = convertCharsToAscii;
+        this.automaton = new CharacterRunAutomaton(WildcardQuery.toAutomaton(term));
+        this.fieldsToLoad = Collections.singleton(term.field());
+    }
+
+    /**
+     * @return the distinct n-grams of the literal parts of a wildcard pattern,
+     *         empty if no part is long enough
+     */
+    public static Set<String> getGrams(Term term) {
+        Set<String> grams = new LinkedHashSet<>();
+        for (String literal : term.text().split("[*?]")) { //$NON-NLS-1$
+            grams.addAll(NGramAnalyzer.getGrams(literal));
+        }
+        return grams;
+    }
+
+    public Term getTerm() {
+        return term;
+    }
+
+    /**
+     * @param value
+     *            value already converted like the indexed values
+     */
+    private boolean matches(String value) throws IOException {
+        if (automaton.run(value)) {
+            return true;
+        }
+        try (TokenStream stream = analyzer.tokenStream(term.field(), value)) {
+            CharTermAttribute termAtt = stream.addAttribute(CharTermAttribute.class);
+            stream.reset();
+            boolean match = false;
+            while (!match && stream.incrementToken()) {
+                match = automaton.run(termAtt.buffer(), 0, termAtt.length());
+            }
+            stream.end();
+            return match;
+        }
+    }
+
+    private boolean matches(Document doc) throws IOException {
+        for (String value : doc.getValues(term.field())) {
+            if (matches(NGramAnalyzer.normalize(value, convertCharsToAscii))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the field with the sorted doc values of the property in the segment,
+     *         prefixed by "_" for metadata, or null
+     */
+    private static String getDocValuesField(LeafReader reader, String field) {
+        for (String name : new String[] { field, "_" + field }) { //$NON-NLS-1$
+            FieldInfo info = reader.getFieldInfos().fieldInfo(name);
+            if (info != null && (info.getDocValuesType() == DocValuesType.SORTED
+                    || info.getDocValuesType() == DocValuesType.SORTED_SET)) {
+                return name;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Verifies the items of a segment by the ordinals of their values, caching the
+     * result of each ordinal.
+     */
+    private class DocValuesMatcher {
+
+        private final LeafReader reader;
+        private final SortedSetDocValues values;
+        private final LongBitSet checked, matched, truncated;
+
+        private DocValuesMatcher(LeafReader reader, String docValuesField) throws IOException {
+            this.reader = reader;
+            this.values = DocValues.getSortedSet(reader, docValuesField);
+            long numValues = values.getValueCount();
+            this.checked = new LongBitSet(numValues);
+            this.matched = new LongBitSet(numValues);
+            this.truncated = new LongBitSet(numValues);
+        }
+
+        private boolean matches(int doc) throws IOException {
+            boolean isTruncated = false;
+            values.setDocument(doc);
+            for (long ord = values.nextOrd(); ord != SortedSetDocValues.NO_MORE_ORDS; ord = values.nextOrd()) {
+                if (!checked.get(ord)) {
+                    checked.set(ord);
+                    String value = values.lookupOrd(ord).utf8ToString();
+                    if (NGramWildcardQuery.this.matches(value)) {
+                        matched.set(ord);
+                    } else if (value.length() >= IndexItem.MAX_DOCVALUE_SIZE) {
+                        truncated.set(ord);
+                    }
+                }
+                if (matched.get(ord)) {
+                    return true;
+                }
+                isTruncated |= truncated.get(ord);
+            }
+            // the end of the value is only in the stored field
+            return isTruncated && NGramWildcardQuery.this.matches(reader.document(doc, fieldsToLoad));
+        }
+    }
+
+    @Override
+    public Weight createWeight(IndexSearcher searcher, boolean needsScores) throws IOException {
+        String ngramField = NGramAnalyzer.getField(term.field());
+        BooleanQuery.Builder builder = new BooleanQuery.Builder();
+        for (String gram : grams) {
+            builder.add(new TermQuery(new Term(ngramField, gram)), Occur.FILTER);
+        }
+        Weight gramsWeight = searcher.createNormalizedWeight(builder.build(), false);
+
+        return new ConstantScoreWeight(this) {
+
+            @Override
+            public Scorer scorer(LeafReaderContext context) throws IOException {
+                LeafReader reader = context.reader();
+                if (reader.getFieldInfos().fieldInfo(term.field()) == null) {
+                    return null;
+                }
+                DocIdSetIterator approximation;
+                if (reader.getFieldInfos().fieldInfo(ngramField) != null) {
+                    Scorer scorer = gramsWeight.scorer(context);
+                    if (scorer == null) {
+                        return null;
+                    }
+                    approximation = scorer.iterator();
+                } else {
+                    if (!warnedNoSideField) {
+                        warnedNoSideField = true;
+                        LOGGER.warn("Index segments without the n-gram field of {}, all their items are verified", //$NON-NLS-1$
+                                term.field());
+                    }
+                    approximation = DocIdSetIterator.all(reader.maxDoc());
+                }
+
+                String docValuesField = getDocValuesField(reader, term.field());
+                DocValuesMatcher matcher = docValuesField == null ? null
+                        : new DocValuesMatcher(reader, docValuesField);
+
+                TwoPhaseIterator twoPhase = new TwoPhaseIterator(approximation) {
+                    @Override
+                    public boolean matches() throws IOException {
+                        int doc = approximation.docID();
+                        if (matcher != null) {
+                            return matcher.matches(doc);
+                        }
+                        return NGramWildcardQuery.this.matches(reader.document(doc, fieldsToLoad));
+                    }
+
+                    @Override
+                    public float matchCost() {
+                        // analyzes the values not verified yet
+                        return matcher != null ? 100 : 1000;
+                    }
+                };
+                return new ConstantScoreScorer(this, score(), twoPhase);
+            }
+        };
+    }
+
+    @Override
+    public String toString(String field) {
+        StringBuilder buffer = new StringBuilder();
+        if (!term.field().equals(field)) {
+            buffer.append(term.field());
+            buffer.append(":"); //$NON-NLS-1$
+        }
+        buffer.append(term.text());
+        return buffer.toString();
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return sameClassAs(other) && term.equals(((NGramWildcardQuery) other).term);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * classHash() + term.hashCode();
+    }
+
+}
@@ -66,7 +66,15 @@ public LuceneSearchResult getSearchResults1() {
         return results;
     }
 
+    public BitSet getBits() {
+        return bits;
+    }
+
     public LuceneSearchResult getSearchResults() {
+        return getSearchResults(bits, totalHits);
+    }
+
+    public static LuceneSearchResult getSearchResults(BitSet bits, int totalHits) {
         LuceneSearchResult results = new LuceneSearchResult(totalHits);
         int[] docs = results.getLuceneIds();
         int idx = 0;
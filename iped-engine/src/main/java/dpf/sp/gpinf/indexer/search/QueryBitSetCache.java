@@ -0,0 +1,84 @@
+package dpf.sp.gpinf.indexer.search;
+
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map.Entry;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.Query;
+
+/**
+ * Cache of the lucene ids matched by the clauses of the searches of a case,
+ * like the query typed by the user and the filters by category, tree node or
+ * date range, so a search differing from the previous ones by a few clauses
+ * only runs those ones. Holds the least recently used bitsets up to a fraction
+ * of the max heap. Queries should be rewritten, so equivalent ones share their
+ * bitset, and are cached by index reader, including its deletions, so a bitset
+ * of a previous reader is never returned. A new cache is also created when the
+ * index of the case is (re)opened.
+ */
+public class QueryBitSetCache {
+
+    private static final int MAX_HEAP_FRACTION = 20;
+
+    private final long maxSize = Runtime.getRuntime().maxMemory() / MAX_HEAP_FRACTION;
+    private long size = 0;
+
+    private final LinkedHashMap<Key, BitSet> cache = new LinkedHashMap<>(16, 0.75f, true);
+
+    private static class Key {
+
+        private final Object readerKey;
+        private final Query query;
+
+        private Key(IndexReader reader, Query query) {
+            this.readerKey = reader.getCombinedCoreAndDeletesKey();
+            this.query = query;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return readerKey == other.readerKey && query.equals(other.query);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(readerKey) + query.hashCode();
+        }
+    }
+
+    private static long sizeOf(BitSet bits) {
+        return bits.size() / Byte.SIZE;
+    }
+
+    /**
+     * @return the cached bitset of the query on the reader, which must not be
+     *         changed, or null
+     */
+    public synchronized BitSet get(IndexReader reader, Query query) {
+        return cache.get(new Key(reader, query));
+    }
+
+    public synchronized void put(IndexReader reader, Query query, BitSet bits) {
+        if (sizeOf(bits) > maxSize) {
+            return;
+        }
+        BitSet prev = cache.put(new Key(reader, query), bits);
+        if (prev != null) {
+            size -= sizeOf(prev);
+        }
+        size += sizeOf(bits);
+        // the new entry is the last one, so it is not removed
+        Iterator<Entry<Key, BitSet>> iterator = cache.entrySet().iterator();
+        while (size > maxSize) {
+            size -= sizeOf(iterator.next().getValue());
+            iterator.remove();
+        }
+    }
+
+}
@@ -24,8 +24,10 @@
 import org.apache.lucene.search.PhraseQuery;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.WildcardQuery;
 
 import dpf.sp.gpinf.indexer.analysis.FastASCIIFoldingFilter;
+import dpf.sp.gpinf.indexer.analysis.NGramAnalyzer;
 import dpf.sp.gpinf.indexer.config.AdvancedIPEDConfig;
 import dpf.sp.gpinf.indexer.config.ConfigurationManager;
 import dpf.sp.gpinf.indexer.process.IndexItem;
@@ -145,6 +147,9 @@ public Query getQuery(String texto, Analyzer analyzer) throws ParseException, Qu
             try {
                 Query q = parser.parse(texto, null);
                 q = handleNegativeQueries(q, analyzer);
+                if (analyzer != spaceAnalyzer) {
+                    q = handleWildcardQueries(q, analyzer, advConfig.isConvertCharsToAscii());
+                }
                 return q;
                 
             } catch (org.apache.lucene.queryparser.flexible.core.QueryNodeException e) {
@@ -178,6 +183,44 @@ private Query handleNegativeQueries(Query q, Analyzer analyzer) {
         return q;
     }
 
+    /**
+     * Rewrites leading wildcard queries on properties with n-gram side fields to
+     * NGramWildcardQuery, so they do not expand over all terms of the property.
+     */
+    private Query handleWildcardQueries(Query q, Analyzer analyzer, boolean convertCharsToAscii) {
+        if (q instanceof BoostQuery) {
+            float boost = ((BoostQuery) q).getBoost();
+            Query query = ((BoostQuery) q).getQuery();
+            return new BoostQuery(handleWildcardQueries(query, analyzer, convertCharsToAscii), boost);
+        }
+        if (q instanceof BooleanQuery) {
+            BooleanQuery.Builder builder = new BooleanQuery.Builder();
+            builder.setDisableCoord(((BooleanQuery) q).isCoordDisabled());
+            builder.setMinimumNumberShouldMatch(((BooleanQuery) q).getMinimumNumberShouldMatch());
+            for (BooleanClause clause : ((BooleanQuery) q).clauses()) {
+                builder.add(handleWildcardQueries(clause.getQuery(), analyzer, convertCharsToAscii),
+                        clause.getOccur());
+            }
+            return builder.build();
+        }
+        if (q instanceof WildcardQuery) {
+            Term term = ((WildcardQuery) q).getTerm();
+            String text = term.text();
+            if ((text.startsWith("*") || text.startsWith("?")) && text.indexOf('\\') == -1 //$NON-NLS-1$ //$NON-NLS-2$
+                    && hasNGramField(term.field())) {
+                Set<String> grams = NGramWildcardQuery.getGrams(term);
+                if (!grams.isEmpty()) {
+                    return new NGramWildcardQuery(term, grams, analyzer, convertCharsToAscii);
+                }
+            }
+        }
+        return q;
+    }
+
+    private boolean hasNGramField(String field) {
+        return ipedCase.getLeafReader().getFieldInfos().fieldInfo(NGramAnalyzer.getField(field)) != null;
+    }
+
     private HashMap<String, PointsConfig> getPointsConfigMap() {
 
         synchronized (lock) {
@@ -0,0 +1,353 @@
+package dpf.sp.gpinf.indexer.util;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Index of the hashes of the aligned blocks of a set of reference files, used to
+ * find fragments of them in unallocated space. The index file is mapped in
+ * memory, so it is not loaded in the heap and lookups cost a few page accesses.
+ *
+ * File layout: header, a directory of 65536 buckets by the 16 upper hash bits,
+ * block hashes sorted as unsigned longs, the reference id and the block number
+ * inside the reference file of each hash and the reference files paths and
+ * lengths. A block hash is the first 8 bytes of its MD5. Blocks with all bytes
+ * equal are not indexed, as they are common to many unrelated files, but they
+ * are counted in the block numbers.
+ */
+public class BlockHashIndex implements Closeable {
+
+    private static final int MAGIC = 0x49424849; // IBHI
+    private static final int VERSION = 2;
+    private static final int NUM_BUCKETS = 1 << 16;
+    private static final int HEADER_SIZE = 24;
+    private static final int CHUNK_SHIFT = 27;
+    private static final int CHUNK_ENTRIES = 1 << CHUNK_SHIFT;
+    private static final int MAX_ENTRIES = Integer.MAX_VALUE - 8;
+
+    private final FileChannel channel;
+    private final int blockSize;
+    private final long numEntries;
+    private final int[] buckets = new int[NUM_BUCKETS + 1];
+    private final MappedByteBuffer[] hashes, refIds, blockNums;
+    private final String[] refPaths;
+    private final long[] refLengths;
+
+    public BlockHashIndex(File file) throws IOException {
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            ByteBuffer header = channel.map(MapMode.READ_ONLY, 0, HEADER_SIZE + 4L * (NUM_BUCKETS + 1));
+            if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+                throw new IOException("Not a block hash index: " + file.getAbsolutePath()); //$NON-NLS-1$
+            }
+            blockSize = header.getInt();
+            if (blockSize <= 0) {
+                throw new IOException("Invalid block size " + blockSize + ": " + file.getAbsolutePath()); //$NON-NLS-1$ //$NON-NLS-2$
+            }
+            header.getInt();
+            numEntries = header.getLong();
+            header.asIntBuffer().get(buckets);
+
+            long pos = HEADER_SIZE + 4L * (NUM_BUCKETS + 1);
+            int numChunks = (int) ((numEntries + CHUNK_ENTRIES - 1) >>> CHUNK_SHIFT);
+            hashes = new MappedByteBuffer[numChunks];
+            refIds = new MappedByteBuffer[numChunks];
+            blockNums = new MappedByteBuffer[numChunks];
+            for (int i = 0; i < numChunks; i++) {
+                long entries = Math.min(CHUNK_ENTRIES, numEntries - ((long) i << CHUNK_SHIFT));
+                hashes[i] = channel.map(MapMode.READ_ONLY, pos + ((long) i << CHUNK_SHIFT) * 8, entries * 8);
+            }
+            pos += numEntries * 8;
+            for (int i = 0; i < numChunks; i++) {
+                long entries = Math.min(CHUNK_ENTRIES, numEntries - ((long) i << CHUNK_SHIFT));
+                refIds[i] = channel.map(MapMode.READ_ONLY, pos + ((long) i << CHUNK_SHIFT) * 4, entries * 4);
+            }
+            pos += numEntries * 4;
+            for (int i = 0; i < numChunks; i++) {
+                long entries = Math.min(CHUNK_ENTRIES, numEntries - ((long) i << CHUNK_SHIFT));
+                blockNums[i] = channel.map(MapMode.READ_ONLY, pos + ((long) i << CHUNK_SHIFT) * 4, entries * 4);
+            }
+            pos += numEntries * 4;
+
+            channel.position(pos);
+            DataInputStream refs = new DataInputStream(Channels.newInputStream(channel));
+            int numRefs = refs.readInt();
+            refPaths = new String[numRefs];
+            refLengths = new long[numRefs];
+            for (int i = 0; i < numRefs; i++) {
+                refPaths[i] = refs.readUTF();
+                refLengths[i] = refs.readLong();
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    public long getNumBlocks() {
+        return numEntries;
+    }
+
+    public String getRefPath(int refId) {
+        return refPaths[refId];
+    }
+
+    public long getRefLength(int refId) {
+        return refLengths[refId];
+    }
+
+    public long getHash(long entry) {
+        return hashes[(int) (entry >>> CHUNK_SHIFT)].getLong((int) (entry & (CHUNK_ENTRIES - 1)) << 3);
+    }
+
+    public int getRefId(long entry) {
+        return refIds[(int) (entry >>> CHUNK_SHIFT)].getInt((int) (entry & (CHUNK_ENTRIES - 1)) << 2);
+    }
+
+    /**
+     * @return the number of the block inside its reference file, counting from 0
+     */
+    public int getBlockNum(long entry) {
+        return blockNums[(int) (entry >>> CHUNK_SHIFT)].getInt((int) (entry & (CHUNK_ENTRIES - 1)) << 2);
+    }
+
+    /**
+     * @return the first entry with this hash, or -1. Blocks with the same hash, of
+     *         the same or of other reference files, are the next entries.
+     */
+    public long lookup(long blockHash) {
+        int bucket = (int) (blockHash >>> 48);
+        // bucket starts are stored as unsigned ints
+        long lo = buckets[bucket] & 0xFFFFFFFFL, hi = buckets[bucket + 1] & 0xFFFFFFFFL;
+        while (lo < hi) {
+            long mid = (lo + hi) >>> 1;
+            if (Long.compareUnsigned(getHash(mid), blockHash) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo < numEntries && getHash(lo) == blockHash ? lo : -1;
+    }
+
+    /**
+     * @return true if the block blockNum of the reference file has this hash
+     */
+    public boolean contains(long blockHash, int refId, long blockNum) {
+        long entry = lookup(blockHash);
+        if (entry == -1) {
+            return false;
+        }
+        for (; entry < numEntries && getHash(entry) == blockHash; entry++) {
+            if (getRefId(entry) == refId && getBlockNum(entry) == blockNum) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return true if all bytes of the block are equal, so it is not indexed
+     */
+    public static boolean isConstantBlock(byte[] block, int len) {
+        byte first = block[0];
+        for (int i = 1; i < len; i++) {
+            if (block[i] != first) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Computes the block hash, as stored in the index.
+     */
+    public static long hashBlock(MessageDigest md5, byte[] block, int len) {
+        md5.update(block, 0, len);
+        return ByteBuffer.wrap(md5.digest()).getLong();
+    }
+
+    /**
+     * Reads a whole block, unless the stream ends before.
+     *
+     * @return the number of bytes read
+     */
+    public static int readBlock(InputStream in, byte[] block) throws IOException {
+        int len = 0, k;
+        while (len < block.length && (k = in.read(block, len, block.length - len)) != -1) {
+            len += k;
+        }
+        return len;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Builds an index with the blocks of the given files and of the files in the
+     * given folders, recursively. Entries are sorted in memory, 16 bytes per
+     * block, so big reference sets need a big heap.
+     */
+    public static void build(File output, int blockSize, List<File> inputs) throws Exception {
+        if (blockSize <= 0) {
+            throw new IllegalArgumentException("Invalid block size: " + blockSize); //$NON-NLS-1$
+        }
+        List<File> refs = new ArrayList<>();
+        for (File input : inputs) {
+            listFiles(input, refs);
+        }
+        MessageDigest md5 = MessageDigest.getInstance("MD5"); //$NON-NLS-1$
+        byte[] block = new byte[blockSize];
+        long[] hashes = new long[1 << 16];
+        int[] ids = new int[hashes.length];
+        int[] blockNums = new int[hashes.length];
+        int n = 0;
+        for (int id = 0; id < refs.size(); id++) {
+            File ref = refs.get(id);
+            if (ref.length() / blockSize > Integer.MAX_VALUE) {
+                throw new IOException("Too many blocks in " + ref.getAbsolutePath()); //$NON-NLS-1$
+            }
+            try (InputStream in = new FileInputStream(ref)) {
+                int len;
+                for (int blockNum = 0; (len = readBlock(in, block)) == blockSize; blockNum++) {
+                    if (isConstantBlock(block, len)) {
+                        continue;
+                    }
+                    if (n == hashes.length) {
+                        if (n == MAX_ENTRIES) {
+                            throw new IOException("Too many blocks to index, more than " + MAX_ENTRIES); //$NON-NLS-1$
+                        }
+                        int newLength = (int) Math.min(2L * n, MAX_ENTRIES);
+                        hashes = Arrays.copyOf(hashes, newLength);
+                        ids = Arrays.copyOf(ids, newLength);
+                        blockNums = Arrays.copyOf(blockNums, newLength);
+                    }
+                    hashes[n] = hashBlock(md5, block, len);
+                    ids[n] = id;
+                    blockNums[n++] = blockNum;
+                }
+            }
+        }
+        sort(hashes, ids, blockNums, 0, n - 1);
+
+        int[] buckets = new int[NUM_BUCKETS + 1];
+        for (int i = 0, bucket = 0; bucket <= NUM_BUCKETS; bucket++) {
+            while (i < n && (hashes[i] >>> 48) < bucket) {
+                i++;
+            }
+            buckets[bucket] = i;
+        }
+
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(output), 1 << 20))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(blockSize);
+            out.writeInt(0);
+            out.writeLong(n);
+            for (int bucket : buckets) {
+                out.writeInt(bucket);
+            }
+            for (int i = 0; i < n; i++) {
+                out.writeLong(hashes[i]);
+            }
+            for (int i = 0; i < n; i++) {
+                out.writeInt(ids[i]);
+            }
+            for (int i = 0; i < n; i++) {
+                out.writeInt(blockNums[i]);
+            }
+            out.writeInt(refs.size());
+            for (File ref : refs) {
+                out.writeUTF(ref.getAbsolutePath());
+                out.writeLong(ref.length());
+            }
+        }
+    }
+
+    private static void listFiles(File file, List<File> files) {
+        if (file.isDirectory()) {
+            File[] children = file.listFiles();
+            if (children != null) {
+                Arrays.sort(children);
+                for (File child : children) {
+                    listFiles(child, files);
+                }
+            }
+        } else if (file.isFile()) {
+            files.add(file);
+        }
+    }
+
+    // quicksort of hashes, as unsigned longs, moving ids and block numbers together
+    private static void sort(long[] hashes, int[] ids, int[] blockNums, int lo, int hi) {
+        while (lo < hi) {
+            long pivot = hashes[(lo + hi) >>> 1];
+            int i = lo, j = hi;
+            while (i <= j) {
+                while (Long.compareUnsigned(hashes[i], pivot) < 0)
+                    i++;
+                while (Long.compareUnsigned(hashes[j], pivot) > 0)
+                    j--;
+                if (i <= j) {
+                    long h = hashes[i];
+                    hashes[i] = hashes[j];
+                    hashes[j] = h;
+                    int id = ids[i];
+                    ids[i] = ids[j];
+                    ids[j] = id;
+                    int blockNum = blockNums[i];
+                    blockNums[i++] = blockNums[j];
+                    blockNums[j--] = blockNum;
+                }
+            }
+            // recurses into the smaller side to bound the stack
+            if (j - lo < hi - i) {
+                sort(hashes, ids, blockNums, lo, j);
+                lo = i;
+            } else {
+                sort(hashes, ids, blockNums, i, hi);
+                hi = j;
+            }
+        }
+    }
+
+    /**
+     * Usage: BlockHashIndex output blockSize file_or_folder...
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 3) {
+            System.out.println("Usage: BlockHashIndex output blockSize file_or_folder..."); //$NON-NLS-1$
+            return;
+        }
+        List<File> inputs = new ArrayList<>();
+        for (int i = 2; i < args.length; i++) {
+            inputs.add(new File(args[i]));
+        }
+        build(new File(args[0]), Integer.parseInt(args[1]), inputs);
+    }
+
+}
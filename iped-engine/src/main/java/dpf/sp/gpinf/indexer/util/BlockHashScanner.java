@@ -0,0 +1,126 @@
+package dpf.sp.gpinf.indexer.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Looks up the aligned blocks of a stream in a {@link BlockHashIndex} and
+ * reports the runs of blocks that are consecutive blocks of the same reference
+ * file. Constant blocks are not indexed, so they neither extend nor break a
+ * run, but the block numbers of the reference file must follow the stream
+ * offsets. Not thread safe.
+ */
+public class BlockHashScanner {
+
+    public interface RunHandler {
+        void run(int refId, long offset, long length);
+    }
+
+    private final BlockHashIndex index;
+    private final int blockSize;
+    private final int minRunBlocks;
+    private final byte[] block;
+    private final MessageDigest md5;
+
+    private long numBlocks, numHits;
+
+    // current run: reference file, its block at runStart and the hash of that block
+    private int runRef = -1;
+    private long runRefBlock, runStartHash;
+    private long runStart, runEnd, runBlocks;
+
+    /**
+     * @param minRunBlocks
+     *            minimum number of hit blocks of a reported run
+     */
+    public BlockHashScanner(BlockHashIndex index, int minRunBlocks) throws NoSuchAlgorithmException {
+        this.index = index;
+        this.blockSize = index.getBlockSize();
+        this.minRunBlocks = minRunBlocks;
+        this.block = new byte[blockSize];
+        this.md5 = MessageDigest.getInstance("MD5"); //$NON-NLS-1$
+    }
+
+    /**
+     * @return the number of non constant blocks of the last scanned stream
+     */
+    public long getNumBlocks() {
+        return numBlocks;
+    }
+
+    /**
+     * @return the number of blocks of the last scanned stream found in the index
+     */
+    public long getNumHits() {
+        return numHits;
+    }
+
+    public void scan(InputStream in, RunHandler handler) throws IOException {
+        numBlocks = numHits = 0;
+        runRef = -1;
+        try {
+            long offset = 0;
+            while (BlockHashIndex.readBlock(in, block) == blockSize) {
+                if (!BlockHashIndex.isConstantBlock(block, blockSize)) {
+                    numBlocks++;
+                    long hash = BlockHashIndex.hashBlock(md5, block, blockSize);
+                    long entry = index.lookup(hash);
+                    if (entry == -1) {
+                        endRun(handler);
+                    } else {
+                        numHits++;
+                        if (!continuesRun(hash, entry, offset)) {
+                            endRun(handler);
+                            runRef = index.getRefId(entry);
+                            runRefBlock = index.getBlockNum(entry);
+                            runStartHash = hash;
+                            runStart = offset;
+                            runBlocks = 0;
+                        }
+                        runEnd = offset + blockSize;
+                        runBlocks++;
+                    }
+                }
+                offset += blockSize;
+            }
+            endRun(handler);
+        } finally {
+            runRef = -1;
+        }
+    }
+
+    private boolean continuesRun(long hash, long entry, long offset) {
+        if (runRef == -1) {
+            return false;
+        }
+        long blocksFromStart = (offset - runStart) / blockSize;
+        if (index.contains(hash, runRef, runRefBlock + blocksFromStart)) {
+            return true;
+        }
+        if (runBlocks > 1) {
+            return false;
+        }
+        // the first block may be in several reference files, look for one this block
+        // also belongs to, at the same distance
+        for (long e = entry; e < index.getNumBlocks() && index.getHash(e) == hash; e++) {
+            int ref = index.getRefId(e);
+            long refBlock = index.getBlockNum(e) - blocksFromStart;
+            if (refBlock >= 0 && index.contains(runStartHash, ref, refBlock)) {
+                runRef = ref;
+                runRefBlock = refBlock;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void endRun(RunHandler handler) {
+        if (runRef != -1 && runBlocks >= minRunBlocks) {
+            handler.run(runRef, runStart, runEnd - runStart);
+        }
+        runRef = -1;
+    }
+
+}
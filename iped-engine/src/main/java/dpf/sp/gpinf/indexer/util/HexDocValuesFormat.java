@@ -0,0 +1,267 @@
+package dpf.sp.gpinf.indexer.util;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Iterator;
+
+import org.apache.lucene.codecs.DocValuesConsumer;
+import org.apache.lucene.codecs.DocValuesFormat;
+import org.apache.lucene.codecs.DocValuesProducer;
+import org.apache.lucene.codecs.lucene54.Lucene54DocValuesFormat;
+import org.apache.lucene.index.BinaryDocValues;
+import org.apache.lucene.index.FieldInfo;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.index.SegmentReadState;
+import org.apache.lucene.index.SegmentWriteState;
+import org.apache.lucene.index.SortedDocValues;
+import org.apache.lucene.index.SortedNumericDocValues;
+import org.apache.lucene.index.SortedSetDocValues;
+import org.apache.lucene.util.Accountable;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefBuilder;
+
+/**
+ * Doc values format for sorted fields with hex strings, like hashes and
+ * persistent ids. If all values of a field in a segment are hex strings with an
+ * even length and the same letter case, they are stored as the raw bytes, with
+ * half of the size, and converted back to hex when read. As the byte order is
+ * the same of the hex strings, ords and sorting do not change. Other fields and
+ * values are stored unchanged by the Lucene54 format.
+ */
+public class HexDocValuesFormat extends DocValuesFormat {
+
+    public static final String NAME = "IPEDHex"; //$NON-NLS-1$
+
+    private static final String ENCODING_KEY = HexDocValuesFormat.class.getSimpleName() + ".encoding"; //$NON-NLS-1$
+    private static final String LOWER = "lower"; //$NON-NLS-1$
+    private static final String UPPER = "upper"; //$NON-NLS-1$
+    private static final String NONE = "none"; //$NON-NLS-1$
+
+    private static final byte[] LOWER_DIGITS = { '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd',
+            'e', 'f' };
+    private static final byte[] UPPER_DIGITS = { '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'A', 'B', 'C', 'D',
+            'E', 'F' };
+
+    // not looked up by name, as this is created while the formats are loaded
+    private final DocValuesFormat delegate = new Lucene54DocValuesFormat();
+
+    public HexDocValuesFormat() {
+        super(NAME);
+    }
+
+    @Override
+    public DocValuesConsumer fieldsConsumer(SegmentWriteState state) throws IOException {
+        return new HexConsumer(delegate.fieldsConsumer(state));
+    }
+
+    @Override
+    public DocValuesProducer fieldsProducer(SegmentReadState state) throws IOException {
+        return new HexProducer(delegate.fieldsProducer(state));
+    }
+
+    private static String getEncoding(Iterable<BytesRef> values) {
+        boolean lower = false, upper = false;
+        for (BytesRef value : values) {
+            if ((value.length & 1) != 0) {
+                return NONE;
+            }
+            for (int i = value.offset; i < value.offset + value.length; i++) {
+                byte b = value.bytes[i];
+                if (b >= 'a' && b <= 'f') {
+                    lower = true;
+                } else if (b >= 'A' && b <= 'F') {
+                    upper = true;
+                } else if (b < '0' || b > '9') {
+                    return NONE;
+                }
+            }
+            if (lower && upper) {
+                return NONE;
+            }
+        }
+        return upper ? UPPER : LOWER;
+    }
+
+    private static int hexValue(byte b) {
+        return b <= '9' ? b - '0' : (b | 0x20) - 'a' + 10;
+    }
+
+    private static Iterable<BytesRef> encode(Iterable<BytesRef> values) {
+        return () -> new Iterator<BytesRef>() {
+
+            private final Iterator<BytesRef> iterator = values.iterator();
+            private final BytesRefBuilder encoded = new BytesRefBuilder();
+
+            @Override
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public BytesRef next() {
+                BytesRef value = iterator.next();
+                int len = value.length / 2;
+                encoded.grow(len);
+                encoded.setLength(len);
+                byte[] bytes = encoded.bytes();
+                for (int i = 0, j = value.offset; i < len; i++, j += 2) {
+                    bytes[i] = (byte) (hexValue(value.bytes[j]) << 4 | hexValue(value.bytes[j + 1]));
+                }
+                return encoded.get();
+            }
+        };
+    }
+
+    private static class HexConsumer extends DocValuesConsumer {
+
+        private final DocValuesConsumer delegate;
+
+        private HexConsumer(DocValuesConsumer delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void addNumericField(FieldInfo field, Iterable<Number> values) throws IOException {
+            delegate.addNumericField(field, values);
+        }
+
+        @Override
+        public void addBinaryField(FieldInfo field, Iterable<BytesRef> values) throws IOException {
+            delegate.addBinaryField(field, values);
+        }
+
+        @Override
+        public void addSortedField(FieldInfo field, Iterable<BytesRef> values, Iterable<Number> docToOrd)
+                throws IOException {
+            String encoding = getEncoding(values);
+            field.putAttribute(ENCODING_KEY, encoding);
+            delegate.addSortedField(field, NONE.equals(encoding) ? values : encode(values), docToOrd);
+        }
+
+        @Override
+        public void addSortedNumericField(FieldInfo field, Iterable<Number> docToValueCount, Iterable<Number> values)
+                throws IOException {
+            delegate.addSortedNumericField(field, docToValueCount, values);
+        }
+
+        @Override
+        public void addSortedSetField(FieldInfo field, Iterable<BytesRef> values, Iterable<Number> docToOrdCount,
+                Iterable<Number> ords) throws IOException {
+            delegate.addSortedSetField(field, values, docToOrdCount, ords);
+        }
+
+        @Override
+        public void close() throws IOException {
+            delegate.close();
+        }
+    }
+
+    private static class HexSortedDocValues extends SortedDocValues {
+
+        private final SortedDocValues in;
+        private final byte[] digits;
+        private final BytesRefBuilder decoded = new BytesRefBuilder();
+
+        private HexSortedDocValues(SortedDocValues in, byte[] digits) {
+            this.in = in;
+            this.digits = digits;
+        }
+
+        @Override
+        public int getOrd(int docID) {
+            return in.getOrd(docID);
+        }
+
+        @Override
+        public BytesRef lookupOrd(int ord) {
+            BytesRef value = in.lookupOrd(ord);
+            int len = value.length * 2;
+            decoded.grow(len);
+            decoded.setLength(len);
+            byte[] bytes = decoded.bytes();
+            for (int i = 0, j = value.offset; i < len; i += 2, j++) {
+                bytes[i] = digits[(value.bytes[j] >>> 4) & 0xF];
+                bytes[i + 1] = digits[value.bytes[j] & 0xF];
+            }
+            return decoded.get();
+        }
+
+        @Override
+        public int getValueCount() {
+            return in.getValueCount();
+        }
+    }
+
+    private static class HexProducer extends DocValuesProducer {
+
+        private final DocValuesProducer delegate;
+
+        private HexProducer(DocValuesProducer delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public NumericDocValues getNumeric(FieldInfo field) throws IOException {
+            return delegate.getNumeric(field);
+        }
+
+        @Override
+        public BinaryDocValues getBinary(FieldInfo field) throws IOException {
+            return delegate.getBinary(field);
+        }
+
+        @Override
+        public SortedDocValues getSorted(FieldInfo field) throws IOException {
+            SortedDocValues values = delegate.getSorted(field);
+            String encoding = field.getAttribute(ENCODING_KEY);
+            if (LOWER.equals(encoding)) {
+                return new HexSortedDocValues(values, LOWER_DIGITS);
+            } else if (UPPER.equals(encoding)) {
+                return new HexSortedDocValues(values, UPPER_DIGITS);
+            }
+            return values;
+        }
+
+        @Override
+        public SortedNumericDocValues getSortedNumeric(FieldInfo field) throws IOException {
+            return delegate.getSortedNumeric(field);
+        }
+
+        @Override
+        public SortedSetDocValues getSortedSet(FieldInfo field) throws IOException {
+            return delegate.getSortedSet(field);
+        }
+
+        @Override
+        public Bits getDocsWithField(FieldInfo field) throws IOException {
+            return delegate.getDocsWithField(field);
+        }
+
+        @Override
+        public void checkIntegrity() throws IOException {
+            delegate.checkIntegrity();
+        }
+
+        @Override
+        public DocValuesProducer getMergeInstance() throws IOException {
+            return new HexProducer(delegate.getMergeInstance());
+        }
+
+        @Override
+        public long ramBytesUsed() {
+            return delegate.ramBytesUsed();
+        }
+
+        @Override
+        public Collection<Accountable> getChildResources() {
+            return delegate.getChildResources();
+        }
+
+        @Override
+        public void close() throws IOException {
+            delegate.close();
+        }
+    }
+
+}
@@ -0,0 +1,99 @@
+package dpf.sp.gpinf.indexer.util;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.lucene.codecs.DocValuesFormat;
+import org.apache.lucene.codecs.FilterCodec;
+import org.apache.lucene.codecs.PostingsFormat;
+import org.apache.lucene.codecs.lucene50.Lucene50PostingsFormat;
+import org.apache.lucene.codecs.lucene62.Lucene62Codec;
+import org.apache.lucene.codecs.perfield.PerFieldDocValuesFormat;
+import org.apache.lucene.codecs.perfield.PerFieldPostingsFormat;
+
+import dpf.sp.gpinf.indexer.process.IndexItem;
+import dpf.sp.gpinf.indexer.process.task.HashTask;
+import iped3.util.BasicProps;
+
+/**
+ * Codec of the case index, registered through SPI, so old indexes written by
+ * the default Lucene codec and new ones are opened the same way. Differences
+ * from the default codec:
+ *
+ * <ul>
+ * <li>Hash and persistent id docvalues are stored as raw bytes instead of hex
+ * strings, see {@link HexDocValuesFormat}.</li>
+ * <li>The content field, with a huge number of terms, uses bigger term
+ * blocks, so its terms index is smaller.</li>
+ * </ul>
+ *
+ * Other fields use the default formats. Lucene54 docvalues already store
+ * sparse fields, like most metadata, without per document overhead, and
+ * fixed length binary docvalues, like the similarity features, without
+ * addresses.
+ *
+ * <p>
+ * Segments written by this codec record its name and the name of
+ * {@link HexDocValuesFormat}, which Lucene looks up through SPI when the index
+ * is opened. So cases written with it can only be opened with the iped-engine
+ * jar, with its META-INF/services/org.apache.lucene.codecs.Codec and
+ * org.apache.lucene.codecs.DocValuesFormat files, on the classpath. Plain
+ * Lucene tools, like Luke, fail with "An SPI class ... does not exist" without
+ * it.
+ */
+public class IPEDCodec extends FilterCodec {
+
+    public static final String NAME = "IPEDCodec"; //$NON-NLS-1$
+
+    private static final int CONTENT_MIN_BLOCK_SIZE = 40;
+    private static final int CONTENT_MAX_BLOCK_SIZE = 96;
+
+    private static final Set<String> HEX_FIELDS = new HashSet<>();
+
+    static {
+        HEX_FIELDS.add(BasicProps.HASH);
+        HEX_FIELDS.add(IndexItem.PERSISTENT_ID);
+        HEX_FIELDS.add(IndexItem.PARENT_PERSISTENT_ID);
+        HEX_FIELDS.add(IndexItem.CONTAINER_PERSISTENT_ID);
+        for (HashTask.HASH hash : HashTask.HASH.values()) {
+            HEX_FIELDS.add(hash.toString());
+        }
+    }
+
+    private final PostingsFormat defaultPostingsFormat = PostingsFormat.forName("Lucene50"); //$NON-NLS-1$
+    private final PostingsFormat contentPostingsFormat = new Lucene50PostingsFormat(CONTENT_MIN_BLOCK_SIZE,
+            CONTENT_MAX_BLOCK_SIZE);
+
+    private final DocValuesFormat defaultDocValuesFormat = DocValuesFormat.forName("Lucene54"); //$NON-NLS-1$
+    private final DocValuesFormat hexDocValuesFormat = new HexDocValuesFormat();
+
+    private final PostingsFormat postingsFormat = new PerFieldPostingsFormat() {
+        @Override
+        public PostingsFormat getPostingsFormatForField(String field) {
+            return BasicProps.CONTENT.equals(field) ? contentPostingsFormat : defaultPostingsFormat;
+        }
+    };
+
+    private final DocValuesFormat docValuesFormat = new PerFieldDocValuesFormat() {
+        @Override
+        public DocValuesFormat getDocValuesFormatForField(String field) {
+            return HEX_FIELDS.contains(field) ? hexDocValuesFormat : defaultDocValuesFormat;
+        }
+    };
+
+    public IPEDCodec() {
+        // not looked up by name, as this is created while the codecs are loaded
+        super(NAME, new Lucene62Codec());
+    }
+
+    @Override
+    public PostingsFormat postingsFormat() {
+        return postingsFormat;
+    }
+
+    @Override
+    public DocValuesFormat docValuesFormat() {
+        return docValuesFormat;
+    }
+
+}
@@ -0,0 +1,153 @@
+package dpf.sp.gpinf.carver;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.arabidopsis.ahocorasick.AhoCorasick;
+import org.arabidopsis.ahocorasick.CompiledAhoCorasick;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import gpinf.dev.data.Item;
+
+/**
+ * Compares the mapped and streamed inputs on an item that is a range of a local
+ * file, searched from a position inside the item.
+ */
+public class CarvingInputTest {
+
+    private static final String[] PATTERNS = { "%PDF-", "%%EOF", "PK\03\04", //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+            "GIF89a", "\u00ff\u00d8\u00ff" }; //$NON-NLS-1$ //$NON-NLS-2$
+
+    private static final int OFFSET = 12345;
+    private static final int LENGTH = 3 * 1024 * 1024 + 777;
+    private static final int POSITION = 1001;
+
+    private File parentFile;
+    private Item offsetItem;
+    private Item tempFileItem;
+    private CompiledAhoCorasick tree;
+
+    @Before
+    public void setUp() throws IOException {
+        parentFile = File.createTempFile("carving", ".bin"); //$NON-NLS-1$ //$NON-NLS-2$
+        Files.write(parentFile.toPath(), createData(OFFSET + LENGTH + 5000));
+
+        offsetItem = createOffsetItem();
+        tempFileItem = createOffsetItem();
+        // like items exported by other tasks, e.g. ParsingTask
+        tempFileItem.getTempFile();
+
+        AhoCorasick ahoCorasick = new AhoCorasick();
+        for (String pattern : PATTERNS) {
+            ahoCorasick.add(pattern.getBytes(StandardCharsets.ISO_8859_1), pattern);
+        }
+        ahoCorasick.prepare();
+        tree = ahoCorasick.compile();
+    }
+
+    @After
+    public void tearDown() {
+        offsetItem.dispose();
+        tempFileItem.dispose();
+        parentFile.delete();
+    }
+
+    private Item createOffsetItem() {
+        Item item = new Item();
+        item.setFile(parentFile);
+        item.setFileOffset(OFFSET);
+        item.setLength((long) LENGTH);
+        return item;
+    }
+
+    @Test
+    public void testMappedEqualsStreamed() throws IOException {
+        List<String> streamed;
+        try (CarvingInput input = CarvingInput.open(offsetItem, POSITION)) {
+            // the range of the parent file is not mapped
+            assertEquals("Streamed", input.getClass().getSimpleName()); //$NON-NLS-1$
+            streamed = search(input);
+        }
+        List<String> mapped;
+        try (CarvingInput input = CarvingInput.open(tempFileItem, POSITION)) {
+            assertEquals("Mapped", input.getClass().getSimpleName()); //$NON-NLS-1$
+            mapped = search(input);
+        }
+        assertEquals(streamed, mapped);
+
+        // and both are the matches inside the item range
+        List<String> expected = naiveSearch(Files.readAllBytes(parentFile.toPath()), OFFSET + POSITION,
+                OFFSET + LENGTH);
+        List<String> sorted = new ArrayList<>(mapped);
+        Collections.sort(sorted);
+        assertEquals(expected, sorted);
+    }
+
+    /**
+     * @return the matches as "end pattern", with end relative to the opened
+     *         position
+     */
+    private List<String> search(CarvingInput input) throws IOException {
+        List<String> matches = new ArrayList<>();
+        int state = tree.getRoot();
+        long pos = 0;
+        int len;
+        while ((len = input.nextBlock(Long.MAX_VALUE)) > 0) {
+            final long blockStart = pos;
+            state = input.search(tree, state, (end, out) -> matches.add(blockStart + end + " " + out)); //$NON-NLS-1$
+            pos += len;
+        }
+        assertEquals(LENGTH - POSITION, pos);
+        return matches;
+    }
+
+    private static List<String> naiveSearch(byte[] data, int from, int to) {
+        List<String> matches = new ArrayList<>();
+        for (String pattern : PATTERNS) {
+            byte[] bytes = pattern.getBytes(StandardCharsets.ISO_8859_1);
+            for (int i = from; i + bytes.length <= to; i++) {
+                int j = 0;
+                while (j < bytes.length && data[i + j] == bytes[j]) {
+                    j++;
+                }
+                if (j == bytes.length) {
+                    matches.add((i + bytes.length - from) + " " + pattern); //$NON-NLS-1$
+                }
+            }
+        }
+        Collections.sort(matches);
+        return matches;
+    }
+
+    /**
+     * Random text with patterns, some of them crossing the 1 MB blocks of the
+     * streamed input and the item boundaries.
+     */
+    private static byte[] createData(int size) {
+        Random random = new Random(0);
+        byte[] data = new byte[size];
+        for (int i = 0; i < size; i++) {
+            data[i] = (byte) (' ' + random.nextInt(95));
+        }
+        int[] positions = { OFFSET - 2, OFFSET + POSITION - 3, OFFSET + POSITION + (1 << 20) - 2,
+                OFFSET + POSITION + 2 * (1 << 20) - 4, OFFSET + LENGTH - 3 };
+        for (int i = 0; i < 2000; i++) {
+            String pattern = PATTERNS[random.nextInt(PATTERNS.length)];
+            int pos = i < positions.length ? positions[i] : random.nextInt(size - 10);
+            byte[] bytes = pattern.getBytes(StandardCharsets.ISO_8859_1);
+            System.arraycopy(bytes, 0, data, pos, bytes.length);
+        }
+        return data;
+    }
+
+}
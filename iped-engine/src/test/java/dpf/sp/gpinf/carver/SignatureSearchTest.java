@@ -0,0 +1,173 @@
+package dpf.sp.gpinf.carver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.arabidopsis.ahocorasick.AhoCorasick;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import dpf.sp.gpinf.carver.api.CarverType;
+import dpf.sp.gpinf.carver.api.Signature;
+import dpf.sp.gpinf.indexer.util.SeekableFileInputStream;
+import gpinf.dev.data.Item;
+import iped3.io.SeekableInputStream;
+
+/**
+ * Compares the segmented signature search with the sequential one on a small
+ * item split in segments, with signatures crossing the segment boundaries.
+ */
+public class SignatureSearchTest {
+
+    private static final int SEGMENT_SIZE = 1000;
+    private static final long DATA_START = 1;
+
+    private final AtomicInteger openStreams = new AtomicInteger();
+    private ExecutorService executor;
+    private File file;
+    private SignatureSearch search;
+
+    @Before
+    public void setUp() throws Exception {
+        executor = Executors.newFixedThreadPool(3);
+        file = File.createTempFile("carving", ".bin"); //$NON-NLS-1$ //$NON-NLS-2$
+        Files.write(file.toPath(), createData());
+
+        CarverType type = new CarverType();
+        type.setName("test"); //$NON-NLS-1$
+        type.addHeader("\\FF\\D8\\FF"); //$NON-NLS-1$
+        type.addFooter("\\FF\\D9"); //$NON-NLS-1$
+        type.addHeader("RIFF????WAVE"); //$NON-NLS-1$
+        type.addHeader("%PDF-1."); //$NON-NLS-1$
+        AhoCorasick tree = new AhoCorasick();
+        int maxSeqLen = 0;
+        for (Signature sig : type.getSignatures()) {
+            for (int k = 0; k < sig.seqs.length; k++) {
+                tree.add(sig.seqs[k], new Object[] { sig, k });
+                maxSeqLen = Math.max(maxSeqLen, sig.seqs[k].length);
+            }
+        }
+        tree.prepare();
+        search = new SignatureSearch(tree.compile(), maxSeqLen);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+        file.delete();
+    }
+
+    @Test
+    public void testSegmentedEqualsSequential() throws Exception {
+        List<String> expected = new ArrayList<>();
+        boolean[] crosses = new boolean[1];
+        search.search(fileItem(), DATA_START, (sig, seq, offset) -> {
+            expected.add(toString(sig, seq, offset));
+            crosses[0] |= offset / SEGMENT_SIZE != (offset + sig.getLength() - 1) / SEGMENT_SIZE;
+        });
+        assertTrue(crosses[0]);
+
+        long dataLength = file.length() - DATA_START;
+        for (Item item : new Item[] { fileItem(), streamItem() }) {
+            for (int maxPending : new int[] { 1, 3, 8 }) {
+                List<String> hits = new ArrayList<>();
+                search.searchSegmented(item, DATA_START, dataLength, SEGMENT_SIZE, executor, maxPending,
+                        (sig, seq, offset) -> hits.add(toString(sig, seq, offset)));
+                assertEquals(expected, hits);
+            }
+        }
+        assertEquals(0, openStreams.get());
+    }
+
+    @Test
+    public void testSegmentsFinishedOnError() throws Exception {
+        RuntimeException error = new RuntimeException("test"); //$NON-NLS-1$
+        try {
+            search.searchSegmented(streamItem(), DATA_START, file.length() - DATA_START, SEGMENT_SIZE, executor, 3,
+                    (sig, seq, offset) -> {
+                        throw error;
+                    });
+            fail();
+        } catch (RuntimeException e) {
+            assertSame(error, e);
+        }
+        // no segment is still reading the item
+        assertEquals(0, openStreams.get());
+    }
+
+    private static String toString(Signature sig, int seq, long offset) {
+        return sig.getSigString() + " " + seq + " " + offset; //$NON-NLS-1$ //$NON-NLS-2$
+    }
+
+    private Item fileItem() {
+        Item item = new Item();
+        item.setFile(file);
+        item.setLength(file.length());
+        return item;
+    }
+
+    /**
+     * Item read through its stream, counting the streams still open.
+     */
+    private Item streamItem() {
+        Item item = new Item() {
+            @Override
+            public SeekableInputStream getStream() throws IOException {
+                openStreams.incrementAndGet();
+                return new SeekableFileInputStream(file) {
+                    private boolean closed;
+
+                    @Override
+                    public void close() throws IOException {
+                        if (!closed) {
+                            closed = true;
+                            openStreams.decrementAndGet();
+                        }
+                        super.close();
+                    }
+                };
+            }
+        };
+        item.setLength(file.length());
+        return item;
+    }
+
+    /**
+     * Random text with signatures around the segment boundaries, relative to the
+     * data start, and some in the middle of the segments.
+     */
+    private static byte[] createData() {
+        Random random = new Random(0);
+        byte[] data = new byte[20 * SEGMENT_SIZE + 123];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) ('a' + random.nextInt(26));
+        }
+        byte[][] sigs = { { (byte) 0xFF, (byte) 0xD8, (byte) 0xFF }, { (byte) 0xFF, (byte) 0xD9 },
+                "RIFFxxxxWAVE".getBytes(StandardCharsets.ISO_8859_1), //$NON-NLS-1$
+                "%PDF-1.".getBytes(StandardCharsets.ISO_8859_1) }; //$NON-NLS-1$
+        for (int segment = 1; segment < 20; segment++) {
+            byte[] sig = sigs[segment % sigs.length];
+            // from ending exactly at the boundary to starting at it
+            int pos = (int) (DATA_START + segment * SEGMENT_SIZE - sig.length + segment % (sig.length + 1));
+            System.arraycopy(sig, 0, data, pos, sig.length);
+            byte[] other = sigs[(segment + 1) % sigs.length];
+            System.arraycopy(other, 0, data, pos + SEGMENT_SIZE / 2, other.length);
+        }
+        return data;
+    }
+
+}
@@ -0,0 +1,115 @@
+package dpf.sp.gpinf.indexer.analysis;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.Random;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.util.CharTokenizer;
+
+import dpf.sp.gpinf.indexer.util.FragmentingReader;
+
+/**
+ * Measures tokens/s of the indexing analyzers over generated multilingual text,
+ * read through a FragmentingReader like in IndexTask. AnalyzerTest checks that
+ * the tokens are the same of a Lucene CharTokenizer with the same rules. Usage:
+ * AnalyzerBenchmark [sizeInMB] [iterations]
+ */
+public class AnalyzerBenchmark {
+
+    static final String[] SAMPLES = {
+            "O laudo pericial descreve a apreensão do computador e a extração das evidências digitais.", //$NON-NLS-1$
+            "The suspect's e-mail john.doe@example.com was found in 1,234 files at C:\\Users\\John\\Documents.", //$NON-NLS-1$
+            "El análisis de los archivos borrados permitió recuperar fotografías y conversaciones.", //$NON-NLS-1$
+            "Die Beschlagnahme der Festplatte erfolgte gemäß § 94 StPO am 12.03.2019 um 14:30 Uhr.", //$NON-NLS-1$
+            "Подозреваемый удалил сообщения из мессенджера перед задержанием.", //$NON-NLS-1$
+            "Η ανάλυση των δεδομένων ολοκληρώθηκε χωρίς σφάλματα.", //$NON-NLS-1$
+            "تم العثور على الملفات المحذوفة في القرص الصلب.", //$NON-NLS-1$
+            "嫌疑人的电脑中发现了大量的聊天记录和图片文件。", //$NON-NLS-1$
+            "容疑者のスマートフォンから削除されたメッセージを復元した。", //$NON-NLS-1$
+            "Mensagem: vamos nos encontrar às 20h 😀👍 ok? 𝐁𝐨𝐥𝐝 𝕋𝕖𝕩𝕥", //$NON-NLS-1$
+            "0x52908400098527886E0F7030069857D2E4169EE7 ab12cd34 ÀÉÎÕÜ ÇÑ Straße ﬁle" }; //$NON-NLS-1$
+
+    static class ReferenceTokenizer extends CharTokenizer {
+
+        @Override
+        protected boolean isTokenChar(int c) {
+            return Character.isLetterOrDigit(c);
+        }
+
+        @Override
+        protected int normalize(int c) {
+            return Character.toLowerCase(c);
+        }
+    }
+
+    static String createText(int size) {
+        Random random = new Random(0);
+        StringBuilder sb = new StringBuilder(size + 1000);
+        while (sb.length() < size) {
+            String sample = SAMPLES[random.nextInt(SAMPLES.length)];
+            sb.append(sample).append(random.nextInt(8) == 0 ? '\n' : ' ');
+        }
+        return sb.toString();
+    }
+
+    private static long countTokens(TokenStream ts) throws IOException {
+        long count = 0;
+        try {
+            ts.reset();
+            while (ts.incrementToken()) {
+                count++;
+            }
+            ts.end();
+        } finally {
+            ts.close();
+        }
+        return count;
+    }
+
+    private static Reader newReader(String text) {
+        return new FragmentingReader(new StringReader(text));
+    }
+
+    private static void run(String name, Analyzer analyzer, String text, int iterations) throws IOException {
+        for (int i = 0; i < iterations; i++) {
+            long t = System.nanoTime();
+            // the same components are reused, like by each indexing thread
+            long tokens = countTokens(analyzer.tokenStream("content", newReader(text))); //$NON-NLS-1$
+            long time = System.nanoTime() - t;
+            System.out.println(name + ": " + (tokens * 1000000000L / time) + " tokens/s, " //$NON-NLS-1$ //$NON-NLS-2$
+                    + (text.length() * 1000L / time) + " MChars/s"); //$NON-NLS-1$
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        int size = (args.length > 0 ? Integer.parseInt(args[0]) : 64) << 20;
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        // IndexTask splits bigger texts
+        FragmentingReader.setTextSplitSize(Long.MAX_VALUE);
+        String text = createText(size);
+
+        Analyzer reference = new Analyzer() {
+            @Override
+            protected TokenStreamComponents createComponents(String fieldName) {
+                return new TokenStreamComponents(new ReferenceTokenizer());
+            }
+        };
+        Analyzer tokenizer = new Analyzer() {
+            @Override
+            protected TokenStreamComponents createComponents(String fieldName) {
+                return new TokenStreamComponents(new LetterDigitTokenizer());
+            }
+        };
+        StandardASCIIAnalyzer content = new StandardASCIIAnalyzer(false);
+        StandardASCIIAnalyzer category = new StandardASCIIAnalyzer(true);
+
+        run("CharTokenizer", reference, text, iterations); //$NON-NLS-1$
+        run("LetterDigitTokenizer", tokenizer, text, iterations); //$NON-NLS-1$
+        run("Content analyzer", content, text, iterations); //$NON-NLS-1$
+        run("Category analyzer", category, text, iterations); //$NON-NLS-1$
+    }
+
+}
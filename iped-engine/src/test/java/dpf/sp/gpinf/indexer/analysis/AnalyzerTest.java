@@ -0,0 +1,144 @@
+package dpf.sp.gpinf.indexer.analysis;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
+import org.apache.lucene.analysis.util.CharTokenizer;
+import org.junit.Test;
+
+/**
+ * Compares the tokens of the fast tokenizers and folding filter with the ones
+ * of Lucene's CharTokenizer with the same rules, on the multilingual text of
+ * {@link AnalyzerBenchmark} and on texts with supplementary chars at the
+ * buffer and max token length limits.
+ */
+public class AnalyzerTest {
+
+    private static class CategoryReferenceTokenizer extends CharTokenizer {
+
+        @Override
+        protected boolean isTokenChar(int c) {
+            return c != CategoryTokenizer.SEPARATOR;
+        }
+
+        @Override
+        protected int normalize(int c) {
+            return Character.toLowerCase(c);
+        }
+    }
+
+    private static String repeat(char c, int n) {
+        char[] chars = new char[n];
+        Arrays.fill(chars, c);
+        return new String(chars);
+    }
+
+    private static List<String> getTexts() {
+        // MATHEMATICAL BOLD CAPITAL B, a supplementary letter
+        String bold = "\uD835\uDC01"; //$NON-NLS-1$
+        return Arrays.asList(AnalyzerBenchmark.createText(1 << 20),
+                // supplementary letter at the end of the 4096 chars read buffer
+                repeat('x', 4095) + bold + "ab " + repeat('y', 4094) + " " + bold, //$NON-NLS-1$ //$NON-NLS-2$
+                // and at the max token length
+                repeat('a', 254) + bold + "b " + repeat('c', 253) + bold + bold, //$NON-NLS-1$
+                // lone surrogates
+                "a\uD835 b \uDC01c \uD835", //$NON-NLS-1$
+                "", " ", "\u00C7\u00E3o"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+    }
+
+    /**
+     * @return "term start end positionIncrement" of each token, then the final
+     *         offset
+     */
+    private static List<String> getTokens(TokenStream ts) throws IOException {
+        CharTermAttribute term = ts.addAttribute(CharTermAttribute.class);
+        OffsetAttribute offset = ts.addAttribute(OffsetAttribute.class);
+        PositionIncrementAttribute posInc = ts.addAttribute(PositionIncrementAttribute.class);
+        List<String> tokens = new ArrayList<>();
+        try {
+            ts.reset();
+            while (ts.incrementToken()) {
+                tokens.add(term + " " + offset.startOffset() + " " + offset.endOffset() + " " //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+                        + posInc.getPositionIncrement());
+            }
+            ts.end();
+            tokens.add(String.valueOf(offset.endOffset()));
+        } finally {
+            ts.close();
+        }
+        return tokens;
+    }
+
+    private static List<String> getTokens(Tokenizer tokenizer, String text) throws IOException {
+        tokenizer.setReader(new StringReader(text));
+        return getTokens(tokenizer);
+    }
+
+    private static String fold(String term) {
+        char[] folded = new char[term.length()];
+        FastASCIIFoldingFilter.foldToASCII(term.toCharArray(), 0, folded, 0, folded.length);
+        return new String(folded);
+    }
+
+    @Test
+    public void testLetterDigitTokenizer() throws IOException {
+        // the same instances are reused, like by each indexing thread
+        Tokenizer expected = new AnalyzerBenchmark.ReferenceTokenizer();
+        Tokenizer actual = new LetterDigitTokenizer();
+        for (String text : getTexts()) {
+            List<String> tokens = getTokens(expected, text);
+            assertEquals(tokens, getTokens(actual, text));
+        }
+    }
+
+    @Test
+    public void testCategoryTokenizer() throws IOException {
+        Tokenizer expected = new CategoryReferenceTokenizer();
+        Tokenizer actual = new CategoryTokenizer();
+        List<String> texts = new ArrayList<>(getTexts());
+        texts.add("Documentos\u0000Imagens \u00C0 Parte\u0000\u0000\u00C1udios\u0000"); //$NON-NLS-1$
+        for (String text : texts) {
+            assertEquals(getTokens(expected, text), getTokens(actual, text));
+        }
+    }
+
+    @Test
+    public void testFoldingFilter() throws IOException {
+        for (String text : getTexts()) {
+            Tokenizer tokenizer = new AnalyzerBenchmark.ReferenceTokenizer();
+            List<String> tokens = getTokens(tokenizer, text);
+            List<String> expected = new ArrayList<>();
+            List<String> expectedWithOriginal = new ArrayList<>();
+            for (String token : tokens.subList(0, tokens.size() - 1)) {
+                int i = token.indexOf(' ');
+                String term = token.substring(0, i);
+                String folded = fold(term) + token.substring(i);
+                expected.add(folded);
+                expectedWithOriginal.add(folded);
+                if (term.chars().anyMatch(c -> c >= '\u0080')) {
+                    // the original token comes after the folded one, at the same position
+                    expectedWithOriginal.add(token.substring(0, token.length() - 1) + "0"); //$NON-NLS-1$
+                }
+            }
+            expected.add(tokens.get(tokens.size() - 1));
+            expectedWithOriginal.add(tokens.get(tokens.size() - 1));
+
+            assertEquals(expected, getTokens(new FastASCIIFoldingFilter(new LetterDigitTokenizer()), text));
+            FastASCIIFoldingFilter filter = new FastASCIIFoldingFilter(new LetterDigitTokenizer(), true);
+            assertEquals(expectedWithOriginal, getTokens(filter, text));
+        }
+        assertEquals(Arrays.asList("cao 0 3 1", "3"), //$NON-NLS-1$ //$NON-NLS-2$
+                getTokens(new FastASCIIFoldingFilter(new LetterDigitTokenizer()), "\u00C7\u00C3O")); //$NON-NLS-1$
+    }
+
+}
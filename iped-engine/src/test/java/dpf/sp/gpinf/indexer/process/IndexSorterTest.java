@@ -0,0 +1,202 @@
+package dpf.sp.gpinf.indexer.process;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.apache.lucene.analysis.core.KeywordAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.SortedDocValuesField;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.LogDocMergePolicy;
+import org.apache.lucene.index.MultiDocValues;
+import org.apache.lucene.index.MultiFields;
+import org.apache.lucene.index.NoMergePolicy;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import dpf.sp.gpinf.indexer.util.IOUtil;
+import iped3.util.BasicProps;
+
+/**
+ * Sorts a small index with several segments, deleted items and an item split
+ * in two documents, and checks that the ids are mapped to the same items, like
+ * when the case is opened.
+ */
+public class IndexSorterTest {
+
+    private static final String PART = "part"; //$NON-NLS-1$
+
+    private File baseDir, indexDir, sortedIndexDir, unsortedIndexDir;
+
+    @Before
+    public void setUp() throws IOException {
+        baseDir = Files.createTempDirectory("indexsorter").toFile(); //$NON-NLS-1$
+        indexDir = new File(baseDir, "index"); //$NON-NLS-1$
+        sortedIndexDir = new File(baseDir, "index_sorted"); //$NON-NLS-1$
+        unsortedIndexDir = new File(baseDir, "index_unsorted"); //$NON-NLS-1$
+    }
+
+    @After
+    public void tearDown() {
+        IOUtil.deletarDiretorio(baseDir);
+    }
+
+    private static Document newDocument(int id, String uuid, String path, int part) {
+        Document doc = new Document();
+        doc.add(new StringField(BasicProps.ID, Integer.toString(id), Field.Store.NO));
+        doc.add(new NumericDocValuesField(BasicProps.ID, id));
+        doc.add(new StoredField(BasicProps.EVIDENCE_UUID, uuid));
+        doc.add(new SortedDocValuesField(BasicProps.EVIDENCE_UUID, new BytesRef(uuid)));
+        doc.add(new StoredField(BasicProps.PATH, path));
+        doc.add(new SortedDocValuesField(BasicProps.PATH, new BytesRef(path)));
+        doc.add(new StoredField(PART, Integer.toString(part)));
+        return doc;
+    }
+
+    private void createIndex() throws IOException {
+        Random random = new Random(0);
+        IndexWriterConfig config = new IndexWriterConfig(new KeywordAnalyzer());
+        config.setMergePolicy(NoMergePolicy.INSTANCE);
+        try (Directory directory = FSDirectory.open(indexDir.toPath());
+                IndexWriter writer = new IndexWriter(directory, config)) {
+            int id = 0;
+            for (int segment = 0; segment < 3; segment++) {
+                for (int i = 0; i < 50; i++, id++) {
+                    String uuid = "evidence" + random.nextInt(2); //$NON-NLS-1$
+                    String path = uuid + "/folder" + random.nextInt(5) + "/file" + id; //$NON-NLS-1$ //$NON-NLS-2$
+                    writer.addDocument(newDocument(id, uuid, path, 0));
+                    if (id == 60) {
+                        // like an item with its text split
+                        writer.addDocument(newDocument(id, uuid, path, 1));
+                    }
+                }
+                writer.commit();
+            }
+            // like the deleted empty tree nodes
+            writer.deleteDocuments(new Term(BasicProps.ID, "10"), new Term(BasicProps.ID, "120")); //$NON-NLS-1$ //$NON-NLS-2$
+        }
+    }
+
+    /**
+     * @return "evidence path part" of the first live document of each id, like the
+     *         id to lucene id map of IPEDSource
+     */
+    private Map<Integer, String> getItemsById() throws IOException {
+        Map<Integer, String> items = new HashMap<>();
+        try (Directory directory = FSDirectory.open(indexDir.toPath());
+                DirectoryReader reader = DirectoryReader.open(directory)) {
+            NumericDocValues ids = MultiDocValues.getNumericValues(reader, BasicProps.ID);
+            Bits liveDocs = MultiFields.getLiveDocs(reader);
+            for (int doc = reader.maxDoc() - 1; doc >= 0; doc--) {
+                if (liveDocs == null || liveDocs.get(doc)) {
+                    Document document = reader.document(doc);
+                    items.put((int) ids.get(doc), document.get(BasicProps.EVIDENCE_UUID) + " " //$NON-NLS-1$
+                            + document.get(BasicProps.PATH) + " " + document.get(PART)); //$NON-NLS-1$
+                }
+            }
+        }
+        return items;
+    }
+
+    private void sort(IndexWriterConfig config, boolean forceMerge) throws IOException {
+        try (Directory directory = FSDirectory.open(indexDir.toPath());
+                Directory sortedDirectory = FSDirectory.open(sortedIndexDir.toPath())) {
+            IndexSorter.copySorted(directory, sortedDirectory, config, forceMerge);
+        }
+        IndexSorter.replaceIndex(indexDir, sortedIndexDir, unsortedIndexDir);
+    }
+
+    private void assertSorted() throws IOException {
+        try (Directory directory = FSDirectory.open(indexDir.toPath());
+                DirectoryReader reader = DirectoryReader.open(directory)) {
+            // deleted items were dropped
+            assertNull(MultiFields.getLiveDocs(reader));
+            for (LeafReaderContext context : reader.leaves()) {
+                LeafReader leafReader = context.reader();
+                NumericDocValues ids = leafReader.getNumericDocValues(BasicProps.ID);
+                for (int doc = 1; doc < leafReader.maxDoc(); doc++) {
+                    int cmp = getSortKey(leafReader.document(doc - 1)).compareTo(getSortKey(leafReader.document(doc)));
+                    assertTrue(cmp < 0 || (cmp == 0 && ids.get(doc - 1) <= ids.get(doc)));
+                }
+            }
+        }
+    }
+
+    private static String getSortKey(Document document) {
+        return document.get(BasicProps.EVIDENCE_UUID) + "/" + document.get(BasicProps.PATH); //$NON-NLS-1$
+    }
+
+    @Test
+    public void testSameItemsById() throws IOException {
+        createIndex();
+        Map<Integer, String> items = getItemsById();
+        assertEquals(150 - 2, items.size());
+        assertTrue(items.get(60).endsWith(" 0")); //$NON-NLS-1$
+
+        sort(new IndexWriterConfig(new KeywordAnalyzer()), false);
+
+        assertTrue(indexDir.exists());
+        assertFalse(sortedIndexDir.exists());
+        assertFalse(unsortedIndexDir.exists());
+        assertEquals(items, getItemsById());
+        assertSorted();
+    }
+
+    @Test
+    public void testOtherMergePolicy() throws IOException {
+        createIndex();
+        Map<Integer, String> items = getItemsById();
+
+        // not a TieredMergePolicy
+        IndexWriterConfig config = new IndexWriterConfig(new KeywordAnalyzer());
+        config.setMergePolicy(new LogDocMergePolicy());
+        sort(config, false);
+
+        assertEquals(items, getItemsById());
+        assertSorted();
+    }
+
+    @Test
+    public void testReplaceIndexRollback() throws IOException {
+        createIndex();
+        Set<String> files = new TreeSet<>(Arrays.asList(indexDir.list()));
+        try {
+            // no sorted index to move
+            IndexSorter.replaceIndex(indexDir, sortedIndexDir, unsortedIndexDir);
+            fail();
+        } catch (IOException e) {
+            // expected
+        }
+        assertEquals(files, new TreeSet<>(Arrays.asList(indexDir.list())));
+        assertFalse(unsortedIndexDir.exists());
+    }
+
+}
@@ -0,0 +1,168 @@
+package dpf.sp.gpinf.indexer.process.task.regex;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Saves hits with a small buffer, so they are spilled to several runs, appends
+ * more hits to the saved file and compares what the reader returns with the
+ * added hits.
+ */
+public class RegexHitStoreTest {
+
+    private static final String[] REGEXES = { "EMAIL", "URL", "IPV4" }; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+
+    private File dir, file;
+
+    // added offsets by "item regex value", in the order they were added
+    private final Map<String, List<Long>> expected = new HashMap<>();
+    private final Map<String, Set<String>> expectedValues = new HashMap<>();
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("regexhits").toFile(); //$NON-NLS-1$
+        file = new File(dir, RegexHitStore.FILE_NAME);
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = file.getParentFile().listFiles();
+        if (files != null) {
+            for (File f : files) {
+                f.delete();
+            }
+        }
+        file.getParentFile().delete();
+        dir.delete();
+    }
+
+    @Test
+    public void testSpillAndAppend() throws IOException {
+        Random random = new Random(0);
+        RegexHitStore store = new RegexHitStore(file, 50);
+        addRandomHits(store, random, 0, 300);
+        store.save();
+        // only the saved file is left
+        assertEquals(Arrays.asList(file.getName()), Arrays.asList(file.getParentFile().list()));
+        assertSameHits();
+
+        // like when appending to a case, with items of the previous processing too
+        store = new RegexHitStore(file, 50);
+        addRandomHits(store, random, 200, 500);
+        store.save();
+        assertEquals(Arrays.asList(file.getName()), Arrays.asList(file.getParentFile().list()));
+        assertSameHits();
+    }
+
+    @Test
+    public void testEmpty() throws IOException {
+        new RegexHitStore(file).save();
+        try (RegexHitReader reader = new RegexHitReader(file)) {
+            assertEquals(0, reader.getRegexNames().size());
+            assertEquals(0, reader.getItemsWithValue("EMAIL", "a@b.com").length); //$NON-NLS-1$ //$NON-NLS-2$
+            assertEquals(0, reader.getOffsets(1, "EMAIL", "a@b.com").length); //$NON-NLS-1$ //$NON-NLS-2$
+        }
+    }
+
+    @Test
+    public void testLongValue() throws IOException {
+        // more than the 64 KB of writeUTF
+        char[] chars = new char[40000];
+        Arrays.fill(chars, '\u00e7');
+        String value = new String(chars);
+        long[] offsets = { 1L << 40, 3, (1L << 40) + 5 };
+        RegexHitStore store = new RegexHitStore(file);
+        store.add(7, "URL", value, offsets); //$NON-NLS-1$
+        store.save();
+        try (RegexHitReader reader = new RegexHitReader(file)) {
+            assertEquals(Arrays.asList(value), reader.getValues("URL")); //$NON-NLS-1$
+            assertArrayEquals(new int[] { 7 }, reader.getItemsWithValue("URL", value)); //$NON-NLS-1$
+            assertArrayEquals(offsets, reader.getOffsets(7, "URL", value)); //$NON-NLS-1$
+        }
+    }
+
+    private void addRandomHits(RegexHitStore store, Random random, int firstItem, int lastItem) throws IOException {
+        for (int n = 0; n < 1000; n++) {
+            int item = firstItem + random.nextInt(lastItem - firstItem);
+            String regex = REGEXES[random.nextInt(REGEXES.length)];
+            String value = regex.toLowerCase() + random.nextInt(30);
+            long[] offsets = new long[1 + random.nextInt(random.nextInt(10) == 0 ? 100 : 5)];
+            for (int i = 0; i < offsets.length; i++) {
+                // big offsets and, like hits in the item name, offsets out of order
+                offsets[i] = random.nextBoolean() ? random.nextInt(1000) : random.nextLong() >>> 2;
+            }
+            store.add(item, regex, value, offsets);
+
+            String key = item + " " + regex + " " + value; //$NON-NLS-1$ //$NON-NLS-2$
+            List<Long> list = expected.computeIfAbsent(key, k -> new ArrayList<>());
+            for (long offset : offsets) {
+                list.add(offset);
+            }
+            expectedValues.computeIfAbsent(regex, k -> new LinkedHashSet<>()).add(value);
+        }
+    }
+
+    private void assertSameHits() throws IOException {
+        try (RegexHitReader reader = new RegexHitReader(file)) {
+            assertEquals(new TreeSet<>(expectedValues.keySet()), new TreeSet<>(reader.getRegexNames()));
+            for (String regex : REGEXES) {
+                assertEquals(new ArrayList<>(expectedValues.get(regex)), reader.getValues(regex));
+                for (String value : expectedValues.get(regex)) {
+                    TreeSet<Integer> items = new TreeSet<>();
+                    long count = 0;
+                    for (Map.Entry<String, List<Long>> entry : expected.entrySet()) {
+                        String[] key = entry.getKey().split(" "); //$NON-NLS-1$
+                        if (key[1].equals(regex) && key[2].equals(value)) {
+                            int item = Integer.parseInt(key[0]);
+                            items.add(item);
+                            count += entry.getValue().size();
+                            assertEquals(entry.getValue(), toList(reader.getOffsets(item, regex, value)));
+                            assertTrue(reader.getValues(item, regex).contains(value));
+                        }
+                    }
+                    assertFalse(items.isEmpty());
+                    assertEquals(new ArrayList<>(items), toList(reader.getItemsWithValue(regex, value)));
+                    assertEquals(count, reader.getHitCount(regex, value));
+                }
+            }
+            assertEquals(0, reader.getOffsets(100000, REGEXES[0], "email0").length); //$NON-NLS-1$
+            assertEquals(0, reader.getItemsWithValue(REGEXES[0], "none").length); //$NON-NLS-1$
+        }
+    }
+
+    private static List<Long> toList(long[] array) {
+        List<Long> list = new ArrayList<>();
+        for (long l : array) {
+            list.add(l);
+        }
+        return list;
+    }
+
+    private static List<Integer> toList(int[] array) {
+        List<Integer> list = new ArrayList<>();
+        for (int i : array) {
+            list.add(i);
+        }
+        return list;
+    }
+
+}
@@ -0,0 +1,175 @@
+package dpf.sp.gpinf.indexer.process.task.regex;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import dk.brics.automaton.Automaton;
+import dk.brics.automaton.AutomatonMatcher;
+import dk.brics.automaton.BasicOperations;
+import dk.brics.automaton.DatatypesAutomatonProvider;
+import dk.brics.automaton.RegExp;
+import dk.brics.automaton.RunAutomaton;
+
+public class StreamingMatcherTest {
+
+    private static final String[] SELECTIVE_REGEXES = {
+            "[0-9a-z][0-9a-z\\+\\.\\_\\%\\-]{1,64}\\@[0-9a-z\\-]{2,64}(\\.[0-9a-z\\-]{2,25}){1,3}", //$NON-NLS-1$
+            "((https?|ftp|file):/{2,3}|www)[-a-z0-9\\+\\&\\@\\#\\\\/\\%\\?\\=\\~_\\|!:,\\.;]+", //$NON-NLS-1$
+            "([0-9a-fA-F][0-9a-fA-F]:){5}([0-9a-fA-F][0-9a-fA-F])", //$NON-NLS-1$
+            "0x[a-fA-F0-9]{40}[^a-fA-F0-9]" }; //$NON-NLS-1$
+
+    private static final String BITCOIN_CASH = "(bitcoincash:)?[a-z0-9]{20,87}[^0-9a-zA-Z]"; //$NON-NLS-1$
+
+    private static final String[] OTHER_REGEXES = {
+            "[^0-9\\.]([^0].?.?&<1-255>)(\\.(([^0].?.?&<1-255>)|0)){3}[^0-9\\.]", //$NON-NLS-1$
+            "[^0-9]([0-9]{4} ){3}[0-9]{4}[^0-9]", //$NON-NLS-1$
+            BITCOIN_CASH };
+
+    private static final String[] TOKENS = { "john.doe@example.com", "a@b", "user@host", "@@", "http://iped.dpf.gov.br/", //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
+            "www.example.org/index.html?a=1", "ftp:/", "00:1a:2b:3c:4d:5e", "0a:0b:0c", //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+            "0x52908400098527886E0F7030069857D2E4169EE7", "192.168.0.1", "10.0.0", "4111 1111 1111 1111", //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+            "bitcoincash:qpm2qsznhks23z7629mms6s4cwef74vcwvy22gdx6a", "the", "quick", "brown", "fox", "1999", //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$
+            "R$ 1.000,00", ".", ",", ":", "\n" }; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
+
+    private static List<RunAutomaton> toPatterns(String[]... regexes) {
+        List<RunAutomaton> patterns = new ArrayList<>();
+        for (String[] array : regexes) {
+            for (String regex : array) {
+                patterns.add(new RunAutomaton(toAutomaton(regex)));
+            }
+        }
+        return patterns;
+    }
+
+    private static Automaton toAutomaton(String regex) {
+        return new RegExp(regex).toAutomaton(new DatatypesAutomatonProvider());
+    }
+
+    private static Automaton union(String[]... regexes) {
+        List<Automaton> automata = new ArrayList<>();
+        for (String[] array : regexes) {
+            for (String regex : array) {
+                automata.add(toAutomaton(regex));
+            }
+        }
+        return BasicOperations.union(automata);
+    }
+
+    private static String createCorpus(long seed, int numTokens) {
+        Random random = new Random(seed);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < numTokens; i++) {
+            sb.append(TOKENS[random.nextInt(TOKENS.length)]);
+            sb.append(random.nextInt(4) == 0 ? "" : " "); //$NON-NLS-1$ //$NON-NLS-2$
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Returns reads of random sizes, to test matches crossing reads.
+     */
+    private static Reader createReader(String text, long seed) {
+        Random random = new Random(seed);
+        return new StringReader(text) {
+            @Override
+            public int read(char[] cbuf, int off, int len) throws IOException {
+                return super.read(cbuf, off, Math.min(len, 1 + random.nextInt(100)));
+            }
+        };
+    }
+
+    private static List<String> findAll(RunAutomaton pattern, String text) {
+        List<String> result = new ArrayList<>();
+        AutomatonMatcher matcher = pattern.newMatcher(text);
+        while (matcher.find()) {
+            result.add(matcher.start() + ":" + matcher.end()); //$NON-NLS-1$
+        }
+        return result;
+    }
+
+    private static List<String> findAll(StreamingMatcher matcher, Reader reader) throws IOException {
+        List<String> result = new ArrayList<>();
+        matcher.reset(reader);
+        while (matcher.find()) {
+            result.add(matcher.start() + ":" + matcher.end()); //$NON-NLS-1$
+        }
+        return result;
+    }
+
+    private void assertSameMatches(RunAutomaton pattern, RegexPrefilter prefilter, RunAutomaton unfiltered)
+            throws IOException {
+        int maxMatchLength = StreamingMatcher.maxMatchLength(pattern, 1 << 14);
+        for (int seed = 0; seed < 20; seed++) {
+            String text = createCorpus(seed, 20000);
+            List<String> expected = findAll(pattern, text);
+            StreamingMatcher matcher = new StreamingMatcher(pattern, maxMatchLength, 1 << 10, prefilter,
+                    unfiltered);
+            assertEquals(expected, findAll(matcher, createReader(text, seed)));
+        }
+    }
+
+    @Test
+    public void testSameMatchesAsAutomatonMatcher() throws IOException {
+        RunAutomaton pattern = new RunAutomaton(union(SELECTIVE_REGEXES, OTHER_REGEXES));
+        assertSameMatches(pattern, null, null);
+    }
+
+    @Test
+    public void testSameMatchesWithPrefilter() throws IOException {
+        RegexPrefilter prefilter = RegexPrefilter.create(toPatterns(SELECTIVE_REGEXES));
+        assertNotNull(prefilter);
+        RunAutomaton pattern = new RunAutomaton(union(SELECTIVE_REGEXES));
+        for (int i = 0; i < SELECTIVE_REGEXES.length; i++) {
+            assertTrue(prefilter.isSelective(i));
+        }
+        assertSameMatches(pattern, prefilter, null);
+    }
+
+    @Test
+    public void testNoPrefilterForCommonChars() {
+        // requires only letters and digits
+        assertNull(RegexPrefilter.create(toPatterns(new String[] { BITCOIN_CASH })));
+    }
+
+    @Test
+    public void testSameMatchesWithMixedPrefilter() throws IOException {
+        String[][] regexes = { SELECTIVE_REGEXES, OTHER_REGEXES };
+        RegexPrefilter prefilter = RegexPrefilter.create(toPatterns(regexes));
+        assertNotNull(prefilter);
+
+        List<String> unfiltered = new ArrayList<>();
+        int i = 0;
+        for (String[] array : regexes) {
+            for (String regex : array) {
+                if (!prefilter.isSelective(i++)) {
+                    unfiltered.add(regex);
+                }
+            }
+        }
+        // the e-mail regex is filtered, the bitcoin cash one is not
+        assertTrue(prefilter.isSelective(0));
+        assertTrue(unfiltered.contains(BITCOIN_CASH));
+
+        RunAutomaton pattern = new RunAutomaton(union(regexes));
+        RunAutomaton unfilteredPattern = new RunAutomaton(union(unfiltered.toArray(new String[0])));
+        assertSameMatches(pattern, prefilter, unfilteredPattern);
+    }
+
+    @Test
+    public void testMaxMatchLength() {
+        assertEquals(17, StreamingMatcher.maxMatchLength(new RunAutomaton(toAutomaton(SELECTIVE_REGEXES[2])), 100));
+        assertEquals(100, StreamingMatcher.maxMatchLength(new RunAutomaton(toAutomaton(SELECTIVE_REGEXES[1])), 100));
+    }
+
+}
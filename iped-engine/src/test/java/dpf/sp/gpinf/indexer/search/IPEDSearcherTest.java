@@ -0,0 +1,136 @@
+package dpf.sp.gpinf.indexer.search;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.util.BitSet;
+import java.util.Random;
+
+import org.apache.lucene.analysis.core.KeywordAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.NoMergePolicy;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause.Occur;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.BoostQuery;
+import org.apache.lucene.search.ConstantScoreQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.PrefixQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.WildcardQuery;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.RAMDirectory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Compares the lucene ids that IPEDSearcher gets from the cached bitsets of the
+ * clauses of random nested boolean queries with the ones found by
+ * IndexSearcher.search, before and after items are deleted.
+ */
+public class IPEDSearcherTest {
+
+    private static final String[] FIELDS = { "a", "b", "c" }; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+
+    private static final Occur[] OCCURS = Occur.values();
+
+    private final QueryBitSetCache cache = new QueryBitSetCache();
+    private Directory dir;
+    private IndexWriter writer;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = new RAMDirectory();
+        Random random = new Random(0);
+        IndexWriterConfig config = new IndexWriterConfig(new KeywordAnalyzer());
+        config.setMergePolicy(NoMergePolicy.INSTANCE);
+        writer = new IndexWriter(dir, config);
+        for (int i = 0; i < 300; i++) {
+            Document doc = new Document();
+            doc.add(new StringField("id", Integer.toString(i), Field.Store.NO)); //$NON-NLS-1$
+            for (String field : FIELDS) {
+                if (random.nextInt(5) != 0) {
+                    doc.add(new StringField(field, field + random.nextInt(4), Field.Store.NO));
+                }
+            }
+            writer.addDocument(doc);
+            if (i % 100 == 99) {
+                writer.commit();
+            }
+        }
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        writer.close();
+        dir.close();
+    }
+
+    private static Query randomQuery(Random random, int depth) {
+        if (depth == 0 || random.nextInt(3) == 0) {
+            String field = FIELDS[random.nextInt(FIELDS.length)];
+            switch (random.nextInt(6)) {
+                case 0:
+                    return new MatchAllDocsQuery();
+                case 1:
+                    return new WildcardQuery(new Term(field, "*" + random.nextInt(4))); //$NON-NLS-1$
+                case 2:
+                    return new PrefixQuery(new Term(field, field));
+                case 3:
+                    return new BoostQuery(new TermQuery(new Term(field, field + random.nextInt(4))), 2);
+                case 4:
+                    return new ConstantScoreQuery(new TermQuery(new Term(field, field + random.nextInt(4))));
+                default:
+                    return new TermQuery(new Term(field, field + random.nextInt(4)));
+            }
+        }
+        BooleanQuery.Builder builder = new BooleanQuery.Builder();
+        int numClauses = 1 + random.nextInt(4);
+        for (int i = 0; i < numClauses; i++) {
+            builder.add(randomQuery(random, depth - 1), OCCURS[random.nextInt(OCCURS.length)]);
+        }
+        builder.setMinimumNumberShouldMatch(random.nextInt(3));
+        return builder.build();
+    }
+
+    private void assertSameBits(long seed, int numQueries) throws IOException {
+        Random random = new Random(seed);
+        try (DirectoryReader reader = DirectoryReader.open(dir)) {
+            IndexSearcher searcher = new IndexSearcher(reader);
+            IPEDSearcher ipedSearcher = new IPEDSearcher((IPEDSource) null);
+            for (int i = 0; i < numQueries; i++) {
+                Query query = randomQuery(random, 3);
+                NoScoringCollector collector = new NoScoringCollector(reader.maxDoc());
+                searcher.search(query, collector);
+                BitSet expected = collector.getBits();
+                Query rewritten = searcher.rewrite(query);
+                assertEquals(query.toString(), expected, ipedSearcher.getBits(rewritten, searcher, cache));
+                // now from the cache
+                assertEquals(query.toString(), expected, ipedSearcher.getBits(rewritten, searcher, cache));
+            }
+        }
+    }
+
+    @Test
+    public void testSameBitsAsSearch() throws IOException {
+        assertSameBits(1, 500);
+    }
+
+    @Test
+    public void testSameBitsAfterDeletions() throws IOException {
+        assertSameBits(1, 200);
+        writer.deleteDocuments(new Term("a", "a1"), new Term("id", "5")); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+        writer.commit();
+        // the same clauses are not taken from the bitsets of the previous reader
+        assertSameBits(1, 200);
+    }
+
+}
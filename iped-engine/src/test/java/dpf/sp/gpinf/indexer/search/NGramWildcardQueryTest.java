@@ -0,0 +1,137 @@
+package dpf.sp.gpinf.indexer.search;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.miscellaneous.PerFieldAnalyzerWrapper;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.FieldType;
+import org.apache.lucene.document.SortedDocValuesField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexOptions;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.NoMergePolicy;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.BytesRef;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import dpf.sp.gpinf.indexer.analysis.NGramAnalyzer;
+import dpf.sp.gpinf.indexer.analysis.StandardASCIIAnalyzer;
+import dpf.sp.gpinf.indexer.process.IndexItem;
+
+/**
+ * Searches an index with a segment indexed without the n-gram side field, like
+ * of a case processed before, and a segment with it, both with the same names,
+ * so both must return the same items.
+ */
+public class NGramWildcardQueryTest {
+
+    private static final String LONG_NAME = new String(new char[5000]).replace('\0', 'x') + " needle.bin"; //$NON-NLS-1$
+
+    private static final String[] NAMES = { "John.Doe@corp.com report.pdf", "photo_2019_corp.jpg", //$NON-NLS-1$ //$NON-NLS-2$
+            "Relat\u00f3rio Anual.docx", "notes.txt", LONG_NAME }; //$NON-NLS-1$ //$NON-NLS-2$
+
+    private final Analyzer analyzer = new PerFieldAnalyzerWrapper(new StandardASCIIAnalyzer(false),
+            Collections.singletonMap(NGramAnalyzer.getField(IndexItem.NAME), new NGramAnalyzer(true)));
+
+    private Directory dir;
+    private DirectoryReader reader;
+    private IndexSearcher searcher;
+
+    @Before
+    public void setUp() throws IOException {
+        FieldType ngramField = new FieldType();
+        ngramField.setIndexOptions(IndexOptions.DOCS);
+        ngramField.setOmitNorms(true);
+        ngramField.freeze();
+
+        dir = new RAMDirectory();
+        IndexWriterConfig config = new IndexWriterConfig(analyzer).setMergePolicy(NoMergePolicy.INSTANCE);
+        try (IndexWriter writer = new IndexWriter(dir, config)) {
+            for (boolean hasNGramField : new boolean[] { false, true }) {
+                for (String name : NAMES) {
+                    Document doc = new Document();
+                    // only the names truncated in the doc values are stored, so the others must be
+                    // verified by their doc values
+                    boolean truncated = name.length() > IndexItem.MAX_DOCVALUE_SIZE;
+                    doc.add(new TextField(IndexItem.NAME, name, truncated ? Field.Store.YES : Field.Store.NO));
+                    String value = truncated ? name.substring(0, IndexItem.MAX_DOCVALUE_SIZE) : name;
+                    doc.add(new SortedDocValuesField(IndexItem.NAME, new BytesRef(IndexItem.normalize(value))));
+                    if (hasNGramField) {
+                        doc.add(new Field(NGramAnalyzer.getField(IndexItem.NAME), name, ngramField));
+                    }
+                    writer.addDocument(doc);
+                }
+                writer.commit();
+            }
+        }
+        reader = DirectoryReader.open(dir);
+        searcher = new IndexSearcher(reader);
+        assertEquals(2, reader.leaves().size());
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        reader.close();
+        dir.close();
+    }
+
+    /**
+     * @return the indexes in NAMES of the items found in each segment
+     */
+    private Set<Integer> search(String pattern) throws IOException {
+        Term term = new Term(IndexItem.NAME, pattern);
+        NGramWildcardQuery query = new NGramWildcardQuery(term, NGramWildcardQuery.getGrams(term), analyzer, true);
+        Set<Integer> oldSegment = new TreeSet<>();
+        Set<Integer> newSegment = new TreeSet<>();
+        for (ScoreDoc scoreDoc : searcher.search(query, 100).scoreDocs) {
+            if (scoreDoc.doc < NAMES.length) {
+                oldSegment.add(scoreDoc.doc);
+            } else {
+                newSegment.add(scoreDoc.doc - NAMES.length);
+            }
+        }
+        assertEquals(oldSegment, newSegment);
+        return newSegment;
+    }
+
+    @Test
+    public void testSameResultsWithoutSideField() throws IOException {
+        // the whole value matches, though no word does
+        assertEquals(set(0), search("*@corp.com*")); //$NON-NLS-1$
+        assertEquals(set(0, 1), search("*corp*")); //$NON-NLS-1$
+        // values converted to ascii
+        assertEquals(set(2), search("*latorio*")); //$NON-NLS-1$
+        assertEquals(set(3), search("*.txt")); //$NON-NLS-1$
+        // the end of the name is only in the stored field
+        assertEquals(set(4), search("*eedle.b?n")); //$NON-NLS-1$
+        assertEquals(set(), search("*zzz*")); //$NON-NLS-1$
+    }
+
+    @Test
+    public void testGrams() {
+        assertEquals(new TreeSet<>(Arrays.asList("@co", "cor", "orp", "otx", "txt")), //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
+                new TreeSet<>(NGramWildcardQuery.getGrams(new Term(IndexItem.NAME, "*@corp*a?otxt")))); //$NON-NLS-1$
+        assertEquals(0, NGramWildcardQuery.getGrams(new Term(IndexItem.NAME, "*ab*c?d")).size()); //$NON-NLS-1$
+    }
+
+    private static Set<Integer> set(Integer... values) {
+        return new TreeSet<>(Arrays.asList(values));
+    }
+
+}
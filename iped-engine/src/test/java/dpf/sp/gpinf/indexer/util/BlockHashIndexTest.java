@@ -0,0 +1,129 @@
+package dpf.sp.gpinf.indexer.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Builds an index from two small reference files and looks for fragments of
+ * them in a stream of random blocks.
+ */
+public class BlockHashIndexTest {
+
+    private static final int BLOCK_SIZE = 512;
+
+    private final Random random = new Random(0);
+    private File ref0, ref1, indexFile;
+    private byte[] data0, data1;
+    private BlockHashIndex index;
+
+    @Before
+    public void setUp() throws Exception {
+        data0 = randomBlocks(20);
+        // constant block, not indexed
+        Arrays.fill(data0, 5 * BLOCK_SIZE, 6 * BLOCK_SIZE, (byte) 0);
+        data1 = randomBlocks(10);
+        // block shared by both files
+        System.arraycopy(data0, 8 * BLOCK_SIZE, data1, 0, BLOCK_SIZE);
+
+        ref0 = File.createTempFile("ref0", ".bin"); //$NON-NLS-1$ //$NON-NLS-2$
+        ref1 = File.createTempFile("ref1", ".bin"); //$NON-NLS-1$ //$NON-NLS-2$
+        Files.write(ref0.toPath(), data0);
+        // and a partial last block, not indexed
+        Files.write(ref1.toPath(), Arrays.copyOf(data1, data1.length + 100));
+        indexFile = File.createTempFile("blockhash", ".idx"); //$NON-NLS-1$ //$NON-NLS-2$
+        BlockHashIndex.build(indexFile, BLOCK_SIZE, Arrays.asList(ref0, ref1));
+        index = new BlockHashIndex(indexFile);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (index != null) {
+            index.close();
+        }
+        for (File file : new File[] { ref0, ref1, indexFile }) {
+            if (file != null) {
+                file.delete();
+            }
+        }
+    }
+
+    @Test
+    public void testLookup() throws Exception {
+        assertEquals(BLOCK_SIZE, index.getBlockSize());
+        assertEquals(19 + 10, index.getNumBlocks());
+        assertEquals(ref0.getAbsolutePath(), index.getRefPath(0));
+        assertEquals(data1.length + 100, index.getRefLength(1));
+
+        MessageDigest md5 = MessageDigest.getInstance("MD5"); //$NON-NLS-1$
+        for (int i = 0; i < 20; i++) {
+            long hash = hashBlock(md5, data0, i);
+            if (i == 5) {
+                assertEquals(-1, index.lookup(hash));
+                continue;
+            }
+            assertTrue(index.contains(hash, 0, i));
+            assertFalse(index.contains(hash, 0, i + 1));
+            assertFalse(index.contains(hash, 1, i));
+        }
+        long shared = hashBlock(md5, data1, 0);
+        assertTrue(index.contains(shared, 0, 8));
+        assertTrue(index.contains(shared, 1, 0));
+        assertEquals(-1, index.lookup(hashBlock(md5, randomBlocks(1), 0)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidBlockSize() throws Exception {
+        BlockHashIndex.build(indexFile, 0, Arrays.asList(ref0));
+    }
+
+    @Test
+    public void testFragmentFromMiddleOfFile() throws Exception {
+        byte[] data = randomBlocks(50);
+        // blocks 3 to 9 of ref0, with the constant and the shared blocks, at an offset
+        // not aligned to their offset in ref0
+        System.arraycopy(data0, 3 * BLOCK_SIZE, data, 17 * BLOCK_SIZE, 7 * BLOCK_SIZE);
+        // blocks 12 and 14 of ref0 together are not a fragment
+        System.arraycopy(data0, 12 * BLOCK_SIZE, data, 30 * BLOCK_SIZE, BLOCK_SIZE);
+        System.arraycopy(data0, 14 * BLOCK_SIZE, data, 31 * BLOCK_SIZE, BLOCK_SIZE);
+        // blocks 0 to 3 of ref1, starting with the shared block
+        System.arraycopy(data1, 0, data, 40 * BLOCK_SIZE, 4 * BLOCK_SIZE);
+
+        BlockHashScanner scanner = new BlockHashScanner(index, 2);
+        List<String> runs = new ArrayList<>();
+        // with a partial last block, not scanned
+        scanner.scan(new ByteArrayInputStream(Arrays.copyOf(data, data.length + 10)),
+                (ref, offset, length) -> runs.add(ref + " " + offset + " " + length)); //$NON-NLS-1$ //$NON-NLS-2$
+
+        List<String> expected = Arrays.asList("0 " + 17 * BLOCK_SIZE + " " + 7 * BLOCK_SIZE, //$NON-NLS-1$ //$NON-NLS-2$
+                "1 " + 40 * BLOCK_SIZE + " " + 4 * BLOCK_SIZE); //$NON-NLS-1$ //$NON-NLS-2$
+        assertEquals(expected, runs);
+        assertEquals(49, scanner.getNumBlocks());
+        assertEquals(6 + 2 + 4, scanner.getNumHits());
+    }
+
+    private static long hashBlock(MessageDigest md5, byte[] data, int blockNum) {
+        byte[] block = Arrays.copyOfRange(data, blockNum * BLOCK_SIZE, (blockNum + 1) * BLOCK_SIZE);
+        return BlockHashIndex.hashBlock(md5, block, BLOCK_SIZE);
+    }
+
+    private byte[] randomBlocks(int numBlocks) {
+        byte[] data = new byte[numBlocks * BLOCK_SIZE];
+        random.nextBytes(data);
+        return data;
+    }
+
+}
@@ -0,0 +1,173 @@
+package dpf.sp.gpinf.indexer.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.codecs.Codec;
+import org.apache.lucene.codecs.lucene62.Lucene62Codec;
+import org.apache.lucene.document.BinaryDocValuesField;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.SortedDocValuesField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.SortedDocValues;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.WildcardQuery;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.BytesRef;
+
+import iped3.util.BasicProps;
+
+/**
+ * Compares index size and search latency of IPEDCodec and of the default codec
+ * with generated documents like the ones of a case: hashes and persistent ids,
+ * many sparse metadata fields, similarity features and text content. Also
+ * checks that both indexes return the same hash docvalues. Usage:
+ * CodecBenchmark [numDocs] [tempDir]
+ */
+public class CodecBenchmark {
+
+    private static final int NUM_METADATA = 300;
+    private static final int METADATA_PER_DOC = 8;
+    private static final int NUM_QUERIES = 200;
+
+    private static final String[] WORDS = new String[20000];
+
+    private static String hex(Random random, int numBytes) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < numBytes; i++) {
+            sb.append(String.format("%02x", random.nextInt(256))); //$NON-NLS-1$
+        }
+        return sb.toString();
+    }
+
+    private static Document createDoc(Random random, int id) {
+        Document doc = new Document();
+        doc.add(new NumericDocValuesField(BasicProps.ID, id));
+        String hash = hex(random, 16).toUpperCase();
+        doc.add(new StringField(BasicProps.HASH, hash, Field.Store.YES));
+        doc.add(new SortedDocValuesField(BasicProps.HASH, new BytesRef(hash)));
+        String persistentId = hex(random, 16);
+        doc.add(new StringField("persistentId", persistentId, Field.Store.YES)); //$NON-NLS-1$
+        doc.add(new SortedDocValuesField("persistentId", new BytesRef(persistentId))); //$NON-NLS-1$
+        String md5 = hash.toLowerCase();
+        doc.add(new SortedDocValuesField("md5", new BytesRef(md5))); //$NON-NLS-1$
+        for (int i = 0; i < METADATA_PER_DOC; i++) {
+            String key = "meta" + random.nextInt(NUM_METADATA); //$NON-NLS-1$
+            if (doc.getField(key) == null) {
+                doc.add(new SortedDocValuesField(key, new BytesRef(WORDS[random.nextInt(100)])));
+            }
+        }
+        if (random.nextInt(10) == 0) {
+            byte[] features = new byte[76];
+            random.nextBytes(features);
+            doc.add(new BinaryDocValuesField(BasicProps.SIMILARITY_FEATURES, new BytesRef(features)));
+        }
+        StringBuilder content = new StringBuilder();
+        int numWords = 20 + random.nextInt(500);
+        for (int i = 0; i < numWords; i++) {
+            // skewed distribution of words
+            int w = (int) (WORDS.length * Math.pow(random.nextDouble(), 3));
+            content.append(WORDS[w]).append(' ');
+        }
+        doc.add(new TextField(BasicProps.CONTENT, content.toString(), Field.Store.NO));
+        return doc;
+    }
+
+    private static long size(File dir) {
+        long size = 0;
+        for (File file : dir.listFiles()) {
+            size += file.length();
+        }
+        return size;
+    }
+
+    private static void index(Directory dir, Codec codec, int numDocs) throws IOException {
+        IndexWriterConfig conf = new IndexWriterConfig(new StandardAnalyzer());
+        conf.setCodec(codec);
+        conf.setRAMBufferSizeMB(64);
+        Random random = new Random(0);
+        try (IndexWriter writer = new IndexWriter(dir, conf)) {
+            for (int i = 0; i < numDocs; i++) {
+                writer.addDocument(createDoc(random, i));
+            }
+            writer.forceMerge(1);
+        }
+    }
+
+    private static long search(IndexSearcher searcher) throws IOException {
+        Random random = new Random(1);
+        long hits = 0;
+        for (int i = 0; i < NUM_QUERIES; i++) {
+            TermQuery query = new TermQuery(new Term(BasicProps.CONTENT, WORDS[random.nextInt(WORDS.length)]));
+            hits += searcher.search(query, 100, new Sort(new SortField(BasicProps.HASH, SortField.Type.STRING)))
+                    .totalHits;
+            hits += searcher.search(new WildcardQuery(new Term(BasicProps.CONTENT, "w1*")), 10).totalHits; //$NON-NLS-1$
+        }
+        return hits;
+    }
+
+    private static long checksum(DirectoryReader reader) throws IOException {
+        long checksum = 0;
+        for (LeafReaderContext context : reader.leaves()) {
+            for (String field : new String[] { BasicProps.HASH, "persistentId", "md5" }) { //$NON-NLS-1$ //$NON-NLS-2$
+                SortedDocValues values = context.reader().getSortedDocValues(field);
+                for (int doc = 0; doc < context.reader().maxDoc(); doc++) {
+                    checksum = checksum * 31 + values.get(doc).utf8ToString().hashCode();
+                }
+            }
+        }
+        return checksum;
+    }
+
+    private static long run(String name, Codec codec, File baseDir, int numDocs) throws IOException {
+        File indexDir = new File(baseDir, name);
+        long t = System.currentTimeMillis();
+        try (Directory dir = FSDirectory.open(indexDir.toPath())) {
+            index(dir, codec, numDocs);
+            long indexTime = System.currentTimeMillis() - t;
+            try (DirectoryReader reader = DirectoryReader.open(dir)) {
+                IndexSearcher searcher = new IndexSearcher(reader);
+                // warm up
+                search(searcher);
+                t = System.currentTimeMillis();
+                long hits = search(searcher);
+                long searchTime = System.currentTimeMillis() - t;
+                System.out.println(name + ": index size " + (size(indexDir) >> 10) + " KB, indexing " + indexTime //$NON-NLS-1$ //$NON-NLS-2$
+                        + " ms, " + NUM_QUERIES * 2 + " searches " + searchTime + " ms, hits " + hits); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+                return checksum(reader);
+            }
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        int numDocs = args.length > 0 ? Integer.parseInt(args[0]) : 500000;
+        File baseDir = args.length > 1 ? new File(args[1]) : Files.createTempDirectory("codec-benchmark").toFile(); //$NON-NLS-1$
+
+        for (int i = 0; i < WORDS.length; i++) {
+            WORDS[i] = "w" + Integer.toString(i, 36); //$NON-NLS-1$
+        }
+
+        long expected = run("Lucene62", new Lucene62Codec(), baseDir, numDocs); //$NON-NLS-1$
+        long actual = run(IPEDCodec.NAME, Codec.forName(IPEDCodec.NAME), baseDir, numDocs);
+        if (expected != actual) {
+            throw new IllegalStateException("Different docvalues read from the indexes"); //$NON-NLS-1$
+        }
+        System.out.println("Same docvalues read from both indexes."); //$NON-NLS-1$
+    }
+
+}
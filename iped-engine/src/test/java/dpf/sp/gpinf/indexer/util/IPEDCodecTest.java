@@ -0,0 +1,163 @@
+package dpf.sp.gpinf.indexer.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+
+import org.apache.lucene.analysis.core.KeywordAnalyzer;
+import org.apache.lucene.codecs.Codec;
+import org.apache.lucene.codecs.lucene62.Lucene62Codec;
+import org.apache.lucene.codecs.perfield.PerFieldDocValuesFormat;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.SortedDocValuesField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.NoMergePolicy;
+import org.apache.lucene.index.SortedDocValues;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.BytesRef;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import iped3.util.BasicProps;
+
+/**
+ * Indexes the same hash values with IPEDCodec and with the default codec, in
+ * segments with lower case, upper case, mixed case, odd length and non hex
+ * values, and checks that ords, values and sorting are the same, before and
+ * after the segments are merged. Both indexes are opened by codec name, so
+ * this also checks the SPI registration of the codec.
+ */
+public class IPEDCodecTest {
+
+    private static final String FIELD = BasicProps.HASH;
+
+    private static final String[] LOWER_CASE = { "0a1b", "ff", "00ff", "0a1b", "", "0a1b2c" }; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$
+    private static final String[] UPPER_CASE = { "0A1B", "FF", "00FF", "AB" }; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+    private static final String[] MIXED_CASE = { "0a1B", "ff", "AB" }; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+    private static final String[] ODD_LENGTH = { "abc", "0a1b", "a" }; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+    private static final String[] NOT_HEX = { "xyz1", "0a1b", "g0" }; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+
+    private Directory expectedDir, dir;
+
+    @Before
+    public void setUp() {
+        expectedDir = new RAMDirectory();
+        dir = new RAMDirectory();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        expectedDir.close();
+        dir.close();
+    }
+
+    private static IndexWriterConfig newConfig(Codec codec) {
+        IndexWriterConfig config = new IndexWriterConfig(new KeywordAnalyzer());
+        config.setCodec(codec);
+        return config;
+    }
+
+    /**
+     * Writes each array of values to its own segment, with a document without
+     * the field in each one.
+     */
+    private static void createIndex(Directory directory, Codec codec, String[]... segments) throws IOException {
+        IndexWriterConfig config = newConfig(codec);
+        config.setMergePolicy(NoMergePolicy.INSTANCE);
+        try (IndexWriter writer = new IndexWriter(directory, config)) {
+            int id = 0;
+            for (String[] values : segments) {
+                for (String value : values) {
+                    Document doc = new Document();
+                    doc.add(new NumericDocValuesField(BasicProps.ID, id++));
+                    doc.add(new SortedDocValuesField(FIELD, new BytesRef(value)));
+                    writer.addDocument(doc);
+                }
+                Document doc = new Document();
+                doc.add(new NumericDocValuesField(BasicProps.ID, id++));
+                writer.addDocument(doc);
+                writer.commit();
+            }
+        }
+    }
+
+    private static void forceMerge(Directory directory, Codec codec) throws IOException {
+        try (IndexWriter writer = new IndexWriter(directory, newConfig(codec))) {
+            writer.forceMerge(1);
+        }
+    }
+
+    private void createIndexes(String[]... segments) throws IOException {
+        createIndex(expectedDir, new Lucene62Codec(), segments);
+        createIndex(dir, new IPEDCodec(), segments);
+    }
+
+    private void forceMerge() throws IOException {
+        forceMerge(expectedDir, new Lucene62Codec());
+        forceMerge(dir, new IPEDCodec());
+    }
+
+    private void assertSameDocValues() throws IOException {
+        try (DirectoryReader expected = DirectoryReader.open(expectedDir);
+                DirectoryReader reader = DirectoryReader.open(dir)) {
+            assertEquals(expected.leaves().size(), reader.leaves().size());
+            for (int i = 0; i < reader.leaves().size(); i++) {
+                LeafReader expectedLeaf = expected.leaves().get(i).reader();
+                LeafReader leaf = reader.leaves().get(i).reader();
+                assertEquals(HexDocValuesFormat.NAME, leaf.getFieldInfos().fieldInfo(FIELD)
+                        .getAttribute(PerFieldDocValuesFormat.PER_FIELD_FORMAT_KEY));
+
+                SortedDocValues expectedValues = expectedLeaf.getSortedDocValues(FIELD);
+                SortedDocValues values = leaf.getSortedDocValues(FIELD);
+                assertEquals(expectedValues.getValueCount(), values.getValueCount());
+                for (int ord = 0; ord < values.getValueCount(); ord++) {
+                    assertEquals(expectedValues.lookupOrd(ord).utf8ToString(), values.lookupOrd(ord).utf8ToString());
+                }
+                assertEquals(expectedLeaf.maxDoc(), leaf.maxDoc());
+                for (int doc = 0; doc < leaf.maxDoc(); doc++) {
+                    assertEquals(expectedValues.getOrd(doc), values.getOrd(doc));
+                }
+            }
+
+            Sort sort = new Sort(new SortField(FIELD, SortField.Type.STRING));
+            TopDocs expectedHits = new IndexSearcher(expected).search(new MatchAllDocsQuery(), expected.maxDoc(), sort);
+            TopDocs hits = new IndexSearcher(reader).search(new MatchAllDocsQuery(), reader.maxDoc(), sort);
+            assertEquals(expectedHits.scoreDocs.length, hits.scoreDocs.length);
+            for (int i = 0; i < hits.scoreDocs.length; i++) {
+                assertEquals(expectedHits.scoreDocs[i].doc, hits.scoreDocs[i].doc);
+            }
+        }
+    }
+
+    @Test
+    public void testSameDocValuesAsDefaultCodec() throws IOException {
+        createIndexes(LOWER_CASE, UPPER_CASE, MIXED_CASE, ODD_LENGTH, NOT_HEX);
+        assertSameDocValues();
+
+        // the merged segment has mixed values, so it is not hex encoded
+        forceMerge();
+        assertSameDocValues();
+    }
+
+    @Test
+    public void testMergeHexSegments() throws IOException {
+        createIndexes(LOWER_CASE, new String[] { "ff", "abcdef", "01" }); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+        assertSameDocValues();
+
+        // the merged segment is hex encoded too
+        forceMerge();
+        assertSameDocValues();
+    }
+
+}
@@ -25,6 +25,7 @@
 import java.text.SimpleDateFormat;
 import java.util.List;
 
+import dpf.sp.gpinf.indexer.parsers.util.ChatReportPage;
 import dpf.sp.gpinf.indexer.parsers.util.Messages;
 import iped3.io.IItemBase;
 import iped3.search.IItemSearcher;
@@ -83,15 +84,23 @@ public byte[] genarateContactHtml(Contact contact) {
         return bout.toByteArray();
     }
 
-    public byte[] generateNextChatHtml(Chat c) {
+    public boolean hasNextChatHtml(Chat c) {
+        return firstFragment || (currentMsg > 0 && currentMsg < c.getMessages().size());
+    }
+
+    /**
+     * Writes the next page of the chat to the given page.
+     *
+     * @return false if there are no more pages to write
+     */
+    public boolean generateNextChatHtml(Chat c, ChatReportPage page) {
 
-        if ((!firstFragment && currentMsg == 0) || (currentMsg > 0 && currentMsg == c.getMessages().size()))
-            return null;
+        if (!hasNextChatHtml(c))
+            return false;
 
         firstFragment = false;
 
-        ByteArrayOutputStream bout = new ByteArrayOutputStream();
-        PrintWriter out = new PrintWriter(new OutputStreamWriter(bout, StandardCharsets.UTF_8));
+        PrintWriter out = page.getWriter();
         String title = c.getName();
         if (!c.isGroup()) {
             if (c.getC().getPhone() != null)
@@ -118,7 +127,7 @@ else if (c.getC().getUsername() != null)
 
             printMessage(out, m, c.isGroup());
 
-            if (currentMsg != c.getMessages().size() && bout.size() >= MIN_SIZE_TO_SPLIT_CHAT) {
+            if (currentMsg != c.getMessages().size() && page.size() >= MIN_SIZE_TO_SPLIT_CHAT) {
                 out.println("<div class=\"linha\"><div class=\"date\">" //$NON-NLS-1$
                         + Messages.getString("WhatsAppReport.ChatContinues") + "</div></div>"); //$NON-NLS-1$ //$NON-NLS-2$
                 break;
@@ -128,7 +137,7 @@ else if (c.getC().getUsername() != null)
         printMessageFileFooter(out);
         out.flush();
 
-        return bout.toByteArray();
+        return true;
     }
 
     private TagHtml getThumbTag(Message m, String classnotfound) {
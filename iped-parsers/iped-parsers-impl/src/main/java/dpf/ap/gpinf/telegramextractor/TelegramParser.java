@@ -52,6 +52,7 @@
 
 import dpf.sp.gpinf.indexer.parsers.IndexerDefaultParser;
 import dpf.sp.gpinf.indexer.parsers.jdbc.SQLite3DBParser;
+import dpf.sp.gpinf.indexer.parsers.util.ChatReportPage;
 import dpf.sp.gpinf.indexer.parsers.util.ItemInfo;
 import dpf.sp.gpinf.indexer.util.EmptyInputStream;
 import iped3.io.IItemBase;
@@ -177,46 +178,51 @@ private void generateChat(Chat c, Contact account, Extractor e, IItemSearcher se
             EmbeddedDocumentExtractor extractor) throws SAXException, IOException {
         int frag = 0;
         int firstMsg = 0;
-        byte[] bytes;
         ReportGenerator r = new ReportGenerator(searcher);
-        while ((bytes = r.generateNextChatHtml(c)) != null) {
-            int nextMsg = r.getNextMsgNum();
-
-            String chatName = getChatNamePrefix(c);
-            if (frag > 0 || nextMsg < c.getMessages().size())
-                chatName += "_" + frag++; //$NON-NLS-1$
-
-            Metadata chatMetadata = new Metadata();
-            chatMetadata.set(TikaCoreProperties.TITLE, chatName);
-            chatMetadata.set(IndexerDefaultParser.INDEXER_CONTENT_TYPE, TELEGRAM_CHAT.toString());
-            chatMetadata.set(ExtraProperties.ITEM_VIRTUAL_ID, Long.toString(c.getId()));
-            chatMetadata.set(ExtraProperties.CHAT_RECOVERED, Boolean.toString(c.isDeleted()));
-
-            if (c.isGroup()) {
-                ChatGroup cg = (ChatGroup) c;
-                if (cg.getMembers() != null && !cg.getMembers().isEmpty()) {
-                    for (Long id : cg.getMembers()) {
-                        chatMetadata.add(ExtraProperties.PARTICIPANTS, e.getContact(id).toString());
+        while (r.hasNextChatHtml(c)) {
+            try (ChatReportPage page = new ChatReportPage()) {
+                r.generateNextChatHtml(c, page);
+                int nextMsg = r.getNextMsgNum();
+
+                String chatName = getChatNamePrefix(c);
+                if (frag > 0 || r.hasNextChatHtml(c))
+                    chatName += "_" + frag++; //$NON-NLS-1$
+
+                Metadata chatMetadata = new Metadata();
+                chatMetadata.set(TikaCoreProperties.TITLE, chatName);
+                chatMetadata.set(IndexerDefaultParser.INDEXER_CONTENT_TYPE, TELEGRAM_CHAT.toString());
+                chatMetadata.set(ExtraProperties.ITEM_VIRTUAL_ID, Long.toString(c.getId()));
+                chatMetadata.set(ExtraProperties.CHAT_RECOVERED, Boolean.toString(c.isDeleted()));
+
+                if (c.isGroup()) {
+                    ChatGroup cg = (ChatGroup) c;
+                    if (cg.getMembers() != null && !cg.getMembers().isEmpty()) {
+                        for (Long id : cg.getMembers()) {
+                            chatMetadata.add(ExtraProperties.PARTICIPANTS, e.getContact(id).toString());
+                        }
                     }
                 }
-            }
 
-            List<Message> msgSubset = c.getMessages().subList(firstMsg, nextMsg);
+                List<Message> msgSubset = c.getMessages().subList(firstMsg, nextMsg);
 
-            if (extractMessages && !msgSubset.isEmpty()) {
-                chatMetadata.set(BasicProps.HASCHILD, Boolean.TRUE.toString());
-            }
-            storeLinkedHashes(msgSubset, chatMetadata);
+                if (extractMessages && !msgSubset.isEmpty()) {
+                    chatMetadata.set(BasicProps.HASCHILD, Boolean.TRUE.toString());
+                }
+                storeLinkedHashes(msgSubset, chatMetadata);
 
-            ByteArrayInputStream chatStream = new ByteArrayInputStream(bytes);
-            extractor.parseEmbedded(chatStream, handler, chatMetadata, false);
+                try (InputStream chatStream = page.getInputStream()) {
+                    extractor.parseEmbedded(chatStream, handler, chatMetadata, false);
+                }
 
-            if (extractMessages) {
-                extractMessages(chatName, msgSubset, account, e, c.getId(), handler, extractor);
-            }
+                if (extractMessages) {
+                    extractMessages(chatName, msgSubset, account, e, c.getId(), handler, extractor);
+                }
 
-            firstMsg = nextMsg;
+                firstMsg = nextMsg;
+            }
         }
+        // messages of this chat are not needed anymore
+        c.getMessages().clear();
     }
 
     private String getChatNamePrefix(Chat c) {
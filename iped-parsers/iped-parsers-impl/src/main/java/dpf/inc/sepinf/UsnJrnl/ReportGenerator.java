@@ -8,7 +8,6 @@
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
-import java.io.Writer;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -99,37 +98,54 @@ public InputStream createHTMLReport(List<UsnJrnlEntry> entries) {
 
     public InputStream createCSVReport(List<UsnJrnlEntry> entries, TemporaryResources tmp) throws IOException {
         Path path = tmp.createTempFile();
-        try (OutputStream os = Files.newOutputStream(path);
-                Writer writer = new OutputStreamWriter(os, StandardCharsets.UTF_8);
-                PrintWriter out = new PrintWriter(writer);) {
-            byte[] utf8bom = { (byte) 0xEF, (byte) 0xBB, (byte) 0xBF };
+        try (PrintWriter out = startCSVReport(path)) {
+            writeCSVEntries(out, entries);
+        }
+
+        return new BufferedInputStream(Files.newInputStream(path));
+    }
+
+    /**
+     * Creates a CSV report with just the header, entries are appended with
+     * {@link #writeCSVEntries(PrintWriter, List)}.
+     */
+    public PrintWriter startCSVReport(Path path) throws IOException {
+        OutputStream os = Files.newOutputStream(path);
+        byte[] utf8bom = { (byte) 0xEF, (byte) 0xBB, (byte) 0xBF };
+        try {
             os.write(utf8bom);
-            boolean first = true;
-            for (String col : cols) {
-                if (first) {
-                    out.print(col);
-                    first = false;
-                } else {
-                    out.print(";" + col);
-                }
-            }
-            for (UsnJrnlEntry u : entries) {
-                out.print("\n");
-                out.print(String.format("0x%016X", u.getOffset()) + ";");
-                out.print("\"" + u.getFileName() + "\";");
-                out.print("\"" + u.getFullPath() + "\";");
-                out.print(u.getUSN() + ";");
-                out.print(timeFormat.format(u.getFileTime()) + ";");
-                out.print(u.getReasons() + ";");
-                out.print("0x" + Util.byteArrayToHex(u.getMftRef()) + ";");
-                out.print("0x" + Util.byteArrayToHex(u.getParentMftRef()) + ";");
-                out.print(u.getHumanAttributes() + ";");
-                out.print(u.getSourceInformation() + ";");
-                out.print(u.getSecurityId());
+        } catch (IOException e) {
+            os.close();
+            throw e;
+        }
+        PrintWriter out = new PrintWriter(new OutputStreamWriter(os, StandardCharsets.UTF_8));
+        boolean first = true;
+        for (String col : cols) {
+            if (first) {
+                out.print(col);
+                first = false;
+            } else {
+                out.print(";" + col);
             }
         }
+        return out;
+    }
 
-        return new BufferedInputStream(Files.newInputStream(path));
+    public void writeCSVEntries(PrintWriter out, List<UsnJrnlEntry> entries) {
+        for (UsnJrnlEntry u : entries) {
+            out.print("\n");
+            out.print(String.format("0x%016X", u.getOffset()) + ";");
+            out.print("\"" + u.getFileName() + "\";");
+            out.print("\"" + u.getFullPath() + "\";");
+            out.print(u.getUSN() + ";");
+            out.print(timeFormat.format(u.getFileTime()) + ";");
+            out.print(u.getReasons() + ";");
+            out.print("0x" + Util.byteArrayToHex(u.getMftRef()) + ";");
+            out.print("0x" + Util.byteArrayToHex(u.getParentMftRef()) + ";");
+            out.print(u.getHumanAttributes() + ";");
+            out.print(u.getSourceInformation() + ";");
+            out.print(u.getSecurityId());
+        }
     }
 
 }
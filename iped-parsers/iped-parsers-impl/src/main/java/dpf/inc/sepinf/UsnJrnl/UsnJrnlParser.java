@@ -1,8 +1,11 @@
 package dpf.inc.sepinf.UsnJrnl;
 
+import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.ArrayList;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -44,6 +47,9 @@ public enum ReportType {
     // Option to extract each registry as a sub item.
     private boolean extractEntries = false;
 
+    // max number of journal segments parsed concurrently
+    private int parsingThreads = Runtime.getRuntime().availableProcessors();
+
     public static final MediaType USNJRNL_$J = MediaType.parse("application/x-usnjournal-$J");
     public static final MediaType USNJRNL_REPORT_HTML = MediaType.parse("application/x-usnjournal-report-html");
     public static final MediaType USNJRNL_REPORT_CSV = MediaType.parse("application/x-usnjournal-report-csv");
@@ -56,6 +62,11 @@ public Set<MediaType> getSupportedTypes(ParseContext context) {
         return SUPPORTED_TYPES;
     }
 
+    @Field
+    public void setParsingThreads(int parsingThreads) {
+        this.parsingThreads = parsingThreads;
+    }
+
     @Field
     public void setExtractEntries(boolean extractEntries) {
         this.extractEntries = extractEntries;
@@ -130,40 +141,31 @@ public UsnJrnlEntry readEntry(SeekableInputStream in) throws IOException {
         return null;
     }
 
-    private void createReport(ArrayList<UsnJrnlEntry> entries, int n, ParseContext context, ContentHandler handler)
-            throws SAXException, IOException {
-        ReportGenerator rg = new ReportGenerator();
+    private void createReport(InputStream is, MediaType mediaType, String name, ParseContext context,
+            ContentHandler handler) throws SAXException, IOException {
         EmbeddedDocumentExtractor extractor = context.get(EmbeddedDocumentExtractor.class,
                 new ParsingEmbeddedDocumentExtractor(context));
 
         Metadata cMetadata = new Metadata();
-        String name = "USN Journal Report";
-
-        InputStream is = null;
-        try (TemporaryResources tmp = new TemporaryResources()) {
-            if (reportType == ReportType.CSV) {
-                cMetadata.set(IndexerDefaultParser.INDEXER_CONTENT_TYPE, USNJRNL_REPORT_CSV.toString());
-                is = rg.createCSVReport(entries, tmp);
-
-            } else if (reportType == ReportType.HTML) {
-                cMetadata.set(IndexerDefaultParser.INDEXER_CONTENT_TYPE, USNJRNL_REPORT_HTML.toString());
-                is = rg.createHTMLReport(entries);
-                name += " " + n;
-            }
-
+        try {
+            cMetadata.set(IndexerDefaultParser.INDEXER_CONTENT_TYPE, mediaType.toString());
             cMetadata.set(TikaCoreProperties.TITLE, name);
             extractor.parseEmbedded(is, handler, cMetadata, false);
 
         } finally {
             IOUtil.closeQuietly(is);
         }
+    }
 
-        /**
-         * Optionally extract entries as subitems
-         */
+    /**
+     * Optionally extract entries as subitems
+     */
+    private void extractEntries(List<UsnJrnlEntry> entries, ReportGenerator rg, ParseContext context,
+            ContentHandler handler) throws SAXException, IOException {
         if (extractEntries) {
             for (UsnJrnlEntry entry : entries) {
-                extractor = context.get(EmbeddedDocumentExtractor.class, new ParsingEmbeddedDocumentExtractor(context));
+                EmbeddedDocumentExtractor extractor = context.get(EmbeddedDocumentExtractor.class,
+                        new ParsingEmbeddedDocumentExtractor(context));
                 Metadata metadataItem = new Metadata();
                 metadataItem.set(IndexerDefaultParser.INDEXER_CONTENT_TYPE, USNJRNL_REGISTRY.toString());
                 metadataItem.set(TikaCoreProperties.TITLE, "USN journal Entry " + entry.getUSN());
@@ -191,6 +193,63 @@ private void createReport(ArrayList<UsnJrnlEntry> entries, int n, ParseContext c
         }
     }
 
+    /**
+     * Writes the entries as they are parsed, in batches of MAX_ENTRIES: one html
+     * report per batch or a single csv report appended batch by batch.
+     */
+    private class ReportWriter implements UsnJrnlSegmentParser.BatchConsumer {
+
+        private final ContentHandler handler;
+        private final ParseContext context;
+        private final IItemSearcher searcher;
+        private final IItemBase item;
+        private final TemporaryResources tmp;
+        private final ReportGenerator rg = new ReportGenerator();
+        private PrintWriter csv;
+        private Path csvPath;
+        private int n = 1;
+
+        private ReportWriter(ContentHandler handler, ParseContext context, IItemSearcher searcher, IItemBase item,
+                TemporaryResources tmp) {
+            this.handler = handler;
+            this.context = context;
+            this.searcher = searcher;
+            this.item = item;
+            this.tmp = tmp;
+        }
+
+        @Override
+        public void accept(List<UsnJrnlEntry> batch) throws IOException, SAXException {
+            rebuildFullPaths(batch, searcher, item);
+
+            // limits the html table size
+            if (reportType == ReportType.HTML) {
+                createReport(rg.createHTMLReport(batch), USNJRNL_REPORT_HTML, "USN Journal Report " + n++, context,
+                        handler);
+
+            } else if (reportType == ReportType.CSV) {
+                if (csv == null) {
+                    csvPath = tmp.createTempFile();
+                    csv = rg.startCSVReport(csvPath);
+                    tmp.addResource(csv);
+                }
+                rg.writeCSVEntries(csv, batch);
+            }
+            extractEntries(batch, rg, context, handler);
+        }
+
+        private void finish() throws IOException, SAXException {
+            if (csv != null) {
+                csv.close();
+                if (csv.checkError()) {
+                    throw new IOException("Error writing USN journal report"); //$NON-NLS-1$
+                }
+                createReport(new BufferedInputStream(Files.newInputStream(csvPath)), USNJRNL_REPORT_CSV,
+                        "USN Journal Report", context, handler);
+            }
+        }
+    }
+
     private static final int READ_PAGE = 0XFFFF;
 
     public long jumpZeros(SeekableInputStream in, long start, long end) throws IOException {
@@ -218,41 +277,18 @@ public long jumpZeros(SeekableInputStream in, long start, long end) throws IOExc
     public void parse(InputStream stream, ContentHandler handler, Metadata metadata, ParseContext context)
             throws IOException, SAXException, TikaException {
 
-        ArrayList<UsnJrnlEntry> entries = new ArrayList<>();
-        int n = 1;
         IItemSearcher searcher = context.get(IItemSearcher.class);
         IItemBase item = context.get(IItemBase.class);
+        long start, size;
         try (SeekableInputStream sis = item.getStream()) {
-            jumpZeros(sis, 0, sis.size());
-            while (findNextEntry(sis)) {
-                UsnJrnlEntry u = readEntry(sis);
-                // do not insert empty registries in the list
-                if (u == null) {
-                    continue;
-                }
-                
-                entries.add(u);
-
-                if (entries.size() % MAX_ENTRIES == 0) {
-                    int baseIndex = ((entries.size() / MAX_ENTRIES) - 1) * MAX_ENTRIES;
-                    rebuildFullPaths(entries.subList(baseIndex, baseIndex + MAX_ENTRIES), searcher, item);
-                }
-
-                // limits the html table size
-                if (entries.size() == MAX_ENTRIES && reportType == ReportType.HTML) {
-                    createReport(entries, n, context, handler);
-                    entries.clear();
-                    n++;
-                }
-            }
+            size = sis.size();
+            start = jumpZeros(sis, 0, size);
         }
 
-        if (entries.size() > 0) {
-            if (entries.size() % MAX_ENTRIES != 0) {
-                int baseIndex = (entries.size() / MAX_ENTRIES) * MAX_ENTRIES;
-                rebuildFullPaths(entries.subList(baseIndex, entries.size()), searcher, item);
-            }
-            createReport(entries, n, context, handler);
+        try (TemporaryResources tmp = new TemporaryResources()) {
+            ReportWriter writer = new ReportWriter(handler, context, searcher, item, tmp);
+            new UsnJrnlSegmentParser(item, size).parse(start, parsingThreads, MAX_ENTRIES, writer);
+            writer.finish();
         }
 
     }
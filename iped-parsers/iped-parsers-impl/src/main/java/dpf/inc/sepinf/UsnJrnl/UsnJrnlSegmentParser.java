@@ -0,0 +1,403 @@
+package dpf.inc.sepinf.UsnJrnl;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.IOUtils;
+import org.xml.sax.SAXException;
+
+import iped3.io.IStreamSource;
+import iped3.io.SeekableInputStream;
+
+/**
+ * Parses the $J stream in large blocks instead of field by field. The data
+ * after the leading sparse region is split into segments parsed concurrently,
+ * each one with its own stream. As a segment start may fall in the middle of a
+ * record, segments are merged in order, resynchronizing each one with the end
+ * of the previous, so the result is the same of a sequential scan. Merged
+ * entries are handed out in batches and only the segments being parsed ahead of
+ * the merge are kept in memory.
+ */
+class UsnJrnlSegmentParser {
+
+    private static final long SEGMENT_SIZE = 32 << 20;
+
+    private static final int BLOCK_SIZE = 1 << 20;
+
+    // largest record: 76 bytes v3 header plus a file name of up to 0xFFFF bytes
+    private static final int MAX_RECORD_READ = 76 + 0xFFFF;
+
+    private static final ExecutorService executor = createExecutor();
+
+    private static ExecutorService createExecutor() {
+        int threads = Runtime.getRuntime().availableProcessors();
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), r -> {
+                    Thread t = new Thread(r, "UsnJrnlSegmentParser"); //$NON-NLS-1$
+                    t.setDaemon(true);
+                    return t;
+                });
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    /**
+     * Receives the entries in journal order.
+     */
+    interface BatchConsumer {
+
+        void accept(List<UsnJrnlEntry> batch) throws IOException, SAXException;
+    }
+
+    private final IStreamSource source;
+    private final long size;
+    private final long segmentSize;
+
+    // set when parsing fails, so segments still being parsed stop early
+    private volatile boolean aborted = false;
+
+    private static class Segment {
+
+        private long start, end;
+        private ArrayList<UsnJrnlEntry> entries = new ArrayList<>();
+        // positions where records were decoded, even invalid ones, in ascending order
+        private long[] positions = new long[1024];
+        private int numPositions = 0;
+        // scan position where the segment parsing stopped
+        private long nextPos;
+
+        private Segment(long start, long end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        private void addPosition(long pos) {
+            if (numPositions == positions.length) {
+                positions = Arrays.copyOf(positions, positions.length * 2);
+            }
+            positions[numPositions++] = pos;
+        }
+
+        private boolean isSyncPoint(long pos) {
+            return Arrays.binarySearch(positions, 0, numPositions, pos) >= 0;
+        }
+    }
+
+    /**
+     * Buffered positional reader over a stream of the journal.
+     */
+    private class BlockReader implements AutoCloseable {
+
+        private SeekableInputStream in;
+        private byte[] buf = new byte[BLOCK_SIZE + MAX_RECORD_READ];
+        private long bufStart = 0;
+        private int bufLen = 0;
+
+        private BlockReader() throws IOException {
+            in = source.getStream();
+        }
+
+        /**
+         * Makes [pos, pos + len) available in the buffer, if not beyond the end.
+         *
+         * @return the offset of pos in the buffer
+         */
+        private int fill(long pos, int len) throws IOException {
+            if (pos < bufStart || (pos + len > bufStart + bufLen && bufStart + bufLen < size)) {
+                in.seek(pos);
+                bufStart = pos;
+                bufLen = IOUtils.read(in, buf, 0, buf.length);
+            }
+            return (int) (pos - bufStart);
+        }
+
+        private long available(long pos) {
+            return bufStart + bufLen - pos;
+        }
+
+        /**
+         * Scans for the next record header, skipping zeroed blocks 8 bytes at a
+         * time like {@link UsnJrnlParser#findNextEntry}.
+         *
+         * @return the record position or the scan position at or after limit
+         */
+        private long findNextEntry(long pos, long limit) throws IOException {
+            while (pos < limit && pos + 8 <= size) {
+                int off = fill(pos, 8);
+                if (isZero(buf, off)) {
+                    pos += 8;
+                    continue;
+                }
+                if ((buf[off + 4] == 2 || buf[off + 4] == 3) && (buf[off + 5] | buf[off + 6] | buf[off + 7]) == 0) {
+                    return pos;
+                }
+                pos++;
+            }
+            // no more records if the end of the journal was reached
+            return pos < limit ? size : pos;
+        }
+
+        /**
+         * Decodes the record at pos like {@link UsnJrnlParser#readEntry}.
+         *
+         * @return the position after the record
+         */
+        private long readEntry(long pos, List<UsnJrnlEntry> entries) throws IOException {
+            int off = fill(pos, MAX_RECORD_READ);
+            if (available(pos) < 4) {
+                return pos + 4;
+            }
+            int tam = readInt32(buf, off);
+            if (tam <= 0) {
+                return pos + 4;
+            }
+            UsnJrnlEntry u = new UsnJrnlEntry();
+            u.setTam(tam);
+            u.setOffset(pos);
+            u.setMajorVersion(readInt16(buf, off + 4));
+            u.setMinorVersion(readInt16(buf, off + 6));
+            int filerefLen = u.getMajorVersion() == 3 ? 16 : 8;
+            int headerLen = 60 + 2 * (filerefLen - 8);
+            if (available(pos) < headerLen) {
+                return pos + headerLen;
+            }
+            int i = off + 8;
+            u.setMftRef(Arrays.copyOfRange(buf, i, i + filerefLen));
+            i += filerefLen;
+            u.setParentMftRef(Arrays.copyOfRange(buf, i, i + filerefLen));
+            i += filerefLen;
+            u.setUSN(readInt64(buf, i));
+            u.setFileTime(readInt64(buf, i + 8));
+            u.setReasonFlag(readInt32(buf, i + 16) & 0xFFFFFFFFL);
+            u.setSourceInformation(readInt32(buf, i + 20) & 0xFFFFFFFFL);
+            u.setSecurityId(readInt32(buf, i + 24) & 0xFFFFFFFFL);
+            u.setFileAttributes(readInt32(buf, i + 28) & 0xFFFFFFFFL);
+            u.setSizeofFileName(readInt16(buf, i + 32));
+            u.setOffsetFilename(readInt16(buf, i + 34));
+            // invalid registry
+            if (u.getOffsetFilename() + u.getSizeofFileName() > tam) {
+                return pos + headerLen;
+            }
+            int nameLen = (int) Math.min(u.getSizeofFileName(), available(pos) - headerLen);
+            u.setFileName(new String(buf, off + headerLen, nameLen, StandardCharsets.UTF_16LE));
+            entries.add(u);
+
+            return Math.max(pos + headerLen + nameLen, pos + tam);
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    UsnJrnlSegmentParser(IStreamSource source, long size) {
+        this(source, size, SEGMENT_SIZE);
+    }
+
+    UsnJrnlSegmentParser(IStreamSource source, long size, long segmentSize) {
+        this.source = source;
+        this.size = size;
+        this.segmentSize = segmentSize;
+    }
+
+    /**
+     * Parses all records from start to the end of the journal.
+     *
+     * @param numThreads
+     *            max number of segments parsed concurrently
+     * @param batchSize
+     *            number of entries passed to each consumer call, except the last
+     */
+    void parse(long start, int numThreads, int batchSize, BatchConsumer consumer) throws IOException, SAXException {
+        List<Segment> segments = new ArrayList<>();
+        for (long pos = start; pos < size; pos += segmentSize) {
+            segments.add(new Segment(pos, Math.min(size, pos + segmentSize)));
+        }
+
+        ArrayDeque<Future<Segment>> pending = new ArrayDeque<>();
+        boolean success = false;
+        try (Merger merger = new Merger(batchSize, consumer)) {
+            int next = 0;
+            for (int i = 0; i < segments.size(); i++) {
+                Segment segment;
+                if (numThreads <= 1) {
+                    segment = parseSegment(segments.get(i));
+                } else {
+                    while (next < segments.size() && pending.size() < numThreads) {
+                        Segment ahead = segments.get(next++);
+                        pending.add(executor.submit(() -> parseSegment(ahead)));
+                    }
+                    segment = pending.poll().get();
+                }
+                segments.set(i, null);
+                merger.merge(segment);
+            }
+            merger.flush();
+            success = true;
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+
+        } finally {
+            if (!success) {
+                aborted = true;
+                // segment streams must be closed before returning
+                for (Future<Segment> future : pending) {
+                    awaitQuietly(future);
+                }
+            }
+        }
+    }
+
+    private static void awaitQuietly(Future<?> future) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                future.get();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            } catch (ExecutionException | CancellationException e) {
+                break;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private Segment parseSegment(Segment segment) throws IOException {
+        if (aborted) {
+            return segment;
+        }
+        try (BlockReader reader = new BlockReader()) {
+            long pos = segment.start;
+            while (!aborted) {
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedIOException();
+                }
+                pos = reader.findNextEntry(pos, segment.end);
+                if (pos >= segment.end) {
+                    break;
+                }
+                segment.addPosition(pos);
+                pos = reader.readEntry(pos, segment.entries);
+            }
+            segment.nextPos = pos;
+        }
+        return segment;
+    }
+
+    /**
+     * Appends the segments in order, continuing the sequential scan from the end
+     * of each segment until it reaches a record also decoded by the next one,
+     * from where both agree.
+     */
+    private class Merger implements AutoCloseable {
+
+        private final int batchSize;
+        private final BatchConsumer consumer;
+        private List<UsnJrnlEntry> batch = new ArrayList<>();
+        private BlockReader reader;
+        private boolean started = false;
+        private long pos;
+
+        private Merger(int batchSize, BatchConsumer consumer) {
+            this.batchSize = batchSize;
+            this.consumer = consumer;
+        }
+
+        private void merge(Segment segment) throws IOException, SAXException {
+            if (!started) {
+                started = true;
+                add(segment, segment.start);
+                return;
+            }
+            while (pos < size) {
+                if (reader == null) {
+                    reader = new BlockReader();
+                }
+                pos = reader.findNextEntry(pos, size);
+                if (pos >= segment.end) {
+                    // segment already covered by the sequential scan
+                    return;
+                }
+                if (segment.isSyncPoint(pos)) {
+                    add(segment, pos);
+                    return;
+                }
+                pos = reader.readEntry(pos, batch);
+                checkBatch();
+            }
+        }
+
+        private void add(Segment segment, long from) throws IOException, SAXException {
+            for (UsnJrnlEntry entry : segment.entries) {
+                if (entry.getOffset() >= from) {
+                    batch.add(entry);
+                    checkBatch();
+                }
+            }
+            pos = segment.nextPos;
+        }
+
+        private void checkBatch() throws IOException, SAXException {
+            if (batch.size() >= batchSize) {
+                flush();
+            }
+        }
+
+        private void flush() throws IOException, SAXException {
+            if (!batch.isEmpty()) {
+                List<UsnJrnlEntry> full = batch;
+                batch = new ArrayList<>();
+                consumer.accept(full);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (reader != null) {
+                reader.close();
+            }
+        }
+    }
+
+    private static boolean isZero(byte[] b, int off) {
+        return (b[off] | b[off + 1] | b[off + 2] | b[off + 3] | b[off + 4] | b[off + 5] | b[off + 6]
+                | b[off + 7]) == 0;
+    }
+
+    private static int readInt16(byte[] b, int off) {
+        return (b[off] & 0xFF) | (b[off + 1] & 0xFF) << 8;
+    }
+
+    private static int readInt32(byte[] b, int off) {
+        return (b[off] & 0xFF) | (b[off + 1] & 0xFF) << 8 | (b[off + 2] & 0xFF) << 16 | (b[off + 3] & 0xFF) << 24;
+    }
+
+    private static long readInt64(byte[] b, int off) {
+        return (readInt32(b, off) & 0xFFFFFFFFL) | ((long) readInt32(b, off + 4)) << 32;
+    }
+
+}
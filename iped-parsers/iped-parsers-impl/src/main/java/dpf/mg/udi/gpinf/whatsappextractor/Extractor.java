@@ -23,16 +23,29 @@ protected Extractor(File databaseFile, WAContactsDirectory contacts, WAAccount a
      */
     public List<Chat> getChatList() throws WAExtractorException {
         if (chatList == null) {
-            chatList = extractChatList();
+            chatList = extractChatList(true);
         }
         return chatList;
     }
 
+    /**
+     * @return the chats without their messages, which are read one chat at a time
+     *         by {@link #openMessages(Chat)}
+     */
+    public List<Chat> getChatListWithoutMessages() throws WAExtractorException {
+        return extractChatList(false);
+    }
+
     public File getDatabaseFile() {
         return databaseFile;
     }
 
-    protected abstract List<Chat> extractChatList() throws WAExtractorException;
+    protected abstract List<Chat> extractChatList(boolean withMessages) throws WAExtractorException;
+
+    /**
+     * @return the messages of the chat in time order, read while iterated
+     */
+    public abstract MessageCursor openMessages(Chat c) throws WAExtractorException;
 
     protected Connection getConnection() throws SQLException {
         return DriverManager.getConnection("jdbc:sqlite:" + databaseFile.getAbsolutePath());
@@ -59,7 +59,7 @@ public ExtractorAndroid(File databaseFile, WAContactsDirectory contacts, WAAccou
     }
 
     @Override
-    protected List<Chat> extractChatList() throws WAExtractorException {
+    protected List<Chat> extractChatList(boolean withMessages) throws WAExtractorException {
         List<Chat> list = new ArrayList<>();
 
         try (Connection conn = getConnection(); Statement stmt = conn.createStatement()) {
@@ -82,7 +82,8 @@ protected List<Chat> extractChatList() throws WAExtractorException {
                 }
 
                 for (Chat c : list) {
-                    c.setMessages(extractMessages(conn, c.getRemote(), c.isGroupChat()));
+                    if (withMessages)
+                        c.setMessages(extractMessages(conn, c.getRemote(), c.isGroupChat()));
                     if (c.isGroupChat()) {
                         setGroupMembers(c, conn);
                     }
@@ -140,79 +141,103 @@ private boolean databaseHashThumbnailsTable(Connection conn) throws SQLException
         return result;
     }
 
+    @Override
+    public MessageCursor openMessages(Chat c) throws WAExtractorException {
+        try {
+            Connection conn = getConnection();
+            try {
+                PreparedStatement stmt = prepareMessages(conn, c.getRemote(), c.isGroupChat());
+                return new MessageCursor(conn, stmt, rs -> readMessage(rs, c.getRemote(), c.isGroupChat()));
+            } catch (SQLException | RuntimeException e) {
+                conn.close();
+                throw e;
+            }
+        } catch (SQLException ex) {
+            throw new WAExtractorException(ex);
+        }
+    }
+
+    private PreparedStatement prepareMessages(Connection conn, WAContact remote, boolean isGroupChat)
+            throws SQLException {
+        PreparedStatement stmt = conn.prepareStatement(hasThumbTable ? SELECT_MESSAGES_THUMBS_TABLE
+                : hasEditVersionCol ? SELECT_MESSAGES_NO_THUMBS_TABLE : SELECT_MESSAGES_NO_EDIT_VERSION);
+        stmt.setFetchSize(1000);
+        String id = remote.getId();
+        id += isGroupChat ? "@g.us" : "@s.whatsapp.net"; //$NON-NLS-1$ //$NON-NLS-2$
+        stmt.setString(1, id);
+        return stmt;
+    }
+
     private List<Message> extractMessages(Connection conn, WAContact remote, boolean isGroupChat) throws SQLException {
         List<Message> messages = new ArrayList<>();
-        try (PreparedStatement stmt = conn
-                .prepareStatement(hasThumbTable ? SELECT_MESSAGES_THUMBS_TABLE
-                        : hasEditVersionCol ? SELECT_MESSAGES_NO_THUMBS_TABLE : SELECT_MESSAGES_NO_EDIT_VERSION)) {
-            stmt.setFetchSize(1000);
-            String id = remote.getId();
-            id += isGroupChat ? "@g.us" : "@s.whatsapp.net"; //$NON-NLS-1$ //$NON-NLS-2$
-            stmt.setString(1, id);
+        try (PreparedStatement stmt = prepareMessages(conn, remote, isGroupChat)) {
             ResultSet rs = stmt.executeQuery();
             while (rs.next()) {
-                Message m = new Message();
-                if (account != null)
-                    m.setLocalResource(account.getId());
-                int type = rs.getInt("messageType"); //$NON-NLS-1$
-                int status = rs.getInt("status"); //$NON-NLS-1$
-                String caption = rs.getString("mediaCaption"); //$NON-NLS-1$
-                String str = SQLite3DBParser.getStringIfExists(rs, "edit_version"); //$NON-NLS-1$
-                Integer edit_version = str != null ? Integer.parseInt(str) : null;
-                long media_size = rs.getLong("mediaSize"); //$NON-NLS-1$
-                m.setId(rs.getLong("id")); //$NON-NLS-1$
-                String remoteResource = rs.getString("remoteResource");
-                if (remoteResource == null || remoteResource.isEmpty() || !isGroupChat) {
-                    remoteResource = remote.getFullId();
-                }
-                m.setRemoteResource(remoteResource); // $NON-NLS-1$
-                m.setStatus(status); // $NON-NLS-1$
-                m.setData(Util.getUTF8String(rs, "data")); //$NON-NLS-1$
-                m.setFromMe(rs.getInt("fromMe") == 1); //$NON-NLS-1$
-                m.setTimeStamp(new Date(rs.getLong("timestamp"))); //$NON-NLS-1$
-                m.setMediaUrl(rs.getString("mediaUrl")); //$NON-NLS-1$
-                m.setMediaMime(rs.getString("mediaMime")); //$NON-NLS-1$
-                m.setMediaName(rs.getString("mediaName")); //$NON-NLS-1$
-                m.setMediaCaption(caption); // $NON-NLS-1$
-                m.setMediaHash(rs.getString("mediaHash"), true); //$NON-NLS-1$
-                m.setMediaSize(media_size);
-                m.setLatitude(rs.getDouble("latitude")); //$NON-NLS-1$
-                m.setLongitude(rs.getDouble("longitude")); //$NON-NLS-1$
-                m.setMessageType(decodeMessageType(type, status, edit_version, caption, (int) media_size));
-                m.setMediaDuration(rs.getInt("media_duration")); //$NON-NLS-1$
-                if (m.getMessageType() == CONTACT_MESSAGE) {
-                    m.setVcards(Arrays.asList(new String[] { m.getData() }));
-                }
-                byte[] thumbData = rs.getBytes("rawData"); //$NON-NLS-1$
-                if (thumbData == null) {
-                    thumbData = rs.getBytes("thumbData"); //$NON-NLS-1$
-                }
-                m.setThumbData(thumbData);
-                if (m.isFromMe()) {
-                    switch (m.getStatus()) {
-                        case 4:
-                            m.setMessageStatus(MessageStatus.MESSAGE_SENT);
-                            break;
-                        case 5:
-                            m.setMessageStatus(MessageStatus.MESSAGE_DELIVERED);
-                            break;
-                        case 13:
-                            m.setMessageStatus(MessageStatus.MESSAGE_VIEWED);
-                            break;
-                        case 0:
-                            m.setMessageStatus(MessageStatus.MESSAGE_UNSENT);
-                            break;
-                        default:
-                            break;
-                    }
-                }
-                messages.add(m);
-
+                messages.add(readMessage(rs, remote, isGroupChat));
             }
         }
         return messages;
     }
 
+    private Message readMessage(ResultSet rs, WAContact remote, boolean isGroupChat) throws SQLException {
+        Message m = new Message();
+        if (account != null)
+            m.setLocalResource(account.getId());
+        int type = rs.getInt("messageType"); //$NON-NLS-1$
+        int status = rs.getInt("status"); //$NON-NLS-1$
+        String caption = rs.getString("mediaCaption"); //$NON-NLS-1$
+        String str = SQLite3DBParser.getStringIfExists(rs, "edit_version"); //$NON-NLS-1$
+        Integer edit_version = str != null ? Integer.parseInt(str) : null;
+        long media_size = rs.getLong("mediaSize"); //$NON-NLS-1$
+        m.setId(rs.getLong("id")); //$NON-NLS-1$
+        String remoteResource = rs.getString("remoteResource");
+        if (remoteResource == null || remoteResource.isEmpty() || !isGroupChat) {
+            remoteResource = remote.getFullId();
+        }
+        m.setRemoteResource(remoteResource); // $NON-NLS-1$
+        m.setStatus(status); // $NON-NLS-1$
+        m.setData(Util.getUTF8String(rs, "data")); //$NON-NLS-1$
+        m.setFromMe(rs.getInt("fromMe") == 1); //$NON-NLS-1$
+        m.setTimeStamp(new Date(rs.getLong("timestamp"))); //$NON-NLS-1$
+        m.setMediaUrl(rs.getString("mediaUrl")); //$NON-NLS-1$
+        m.setMediaMime(rs.getString("mediaMime")); //$NON-NLS-1$
+        m.setMediaName(rs.getString("mediaName")); //$NON-NLS-1$
+        m.setMediaCaption(caption); // $NON-NLS-1$
+        m.setMediaHash(rs.getString("mediaHash"), true); //$NON-NLS-1$
+        m.setMediaSize(media_size);
+        m.setLatitude(rs.getDouble("latitude")); //$NON-NLS-1$
+        m.setLongitude(rs.getDouble("longitude")); //$NON-NLS-1$
+        m.setMessageType(decodeMessageType(type, status, edit_version, caption, (int) media_size));
+        m.setMediaDuration(rs.getInt("media_duration")); //$NON-NLS-1$
+        if (m.getMessageType() == CONTACT_MESSAGE) {
+            m.setVcards(Arrays.asList(new String[] { m.getData() }));
+        }
+        byte[] thumbData = rs.getBytes("rawData"); //$NON-NLS-1$
+        if (thumbData == null) {
+            thumbData = rs.getBytes("thumbData"); //$NON-NLS-1$
+        }
+        m.setThumbData(thumbData);
+        if (m.isFromMe()) {
+            switch (m.getStatus()) {
+                case 4:
+                    m.setMessageStatus(MessageStatus.MESSAGE_SENT);
+                    break;
+                case 5:
+                    m.setMessageStatus(MessageStatus.MESSAGE_DELIVERED);
+                    break;
+                case 13:
+                    m.setMessageStatus(MessageStatus.MESSAGE_VIEWED);
+                    break;
+                case 0:
+                    m.setMessageStatus(MessageStatus.MESSAGE_UNSENT);
+                    break;
+                default:
+                    break;
+            }
+        }
+        return m;
+    }
+
     protected Message.MessageType decodeMessageType(int messageType, int status, Integer edit_version, String caption,
             int mediaSize) {
         Message.MessageType result = UNKNOWN_MESSAGE;
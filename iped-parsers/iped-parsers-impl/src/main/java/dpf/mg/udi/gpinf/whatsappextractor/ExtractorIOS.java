@@ -59,7 +59,7 @@ public ExtractorIOS(File databaseFile, WAContactsDirectory contacts, WAAccount a
     }
 
     @Override
-    protected List<Chat> extractChatList() throws WAExtractorException {
+    protected List<Chat> extractChatList(boolean withMessages) throws WAExtractorException {
         List<Chat> list = new ArrayList<>();
 
         try (Connection conn = getConnection(); Statement stmt = conn.createStatement()) {
@@ -78,7 +78,8 @@ protected List<Chat> extractChatList() throws WAExtractorException {
                 }
 
                 for (Chat c : list) {
-                    c.setMessages(extractMessages(conn, c));
+                    if (withMessages)
+                        c.setMessages(extractMessages(conn, c));
                     if (c.isGroupChat()) {
                         setGroupMembers(c, conn);
                     }
@@ -112,80 +113,103 @@ private void setGroupMembers(Chat c, Connection conn) throws WAExtractorExceptio
 
     }
 
+    @Override
+    public MessageCursor openMessages(Chat c) throws WAExtractorException {
+        try {
+            Connection conn = getConnection();
+            try {
+                return new MessageCursor(conn, prepareMessages(conn, c), rs -> readMessage(rs, c));
+            } catch (SQLException | RuntimeException e) {
+                conn.close();
+                throw e;
+            }
+        } catch (SQLException ex) {
+            throw new WAExtractorException(ex);
+        }
+    }
+
+    private PreparedStatement prepareMessages(Connection conn, Chat chat) throws SQLException {
+        String sql = chat.isGroupChat() ? SELECT_MESSAGES_GROUP : SELECT_MESSAGES_USER;
+        PreparedStatement stmt = conn.prepareStatement(sql);
+        stmt.setFetchSize(1000);
+        stmt.setLong(1, chat.getId());
+        return stmt;
+    }
+
     private List<Message> extractMessages(Connection conn, Chat chat) throws SQLException {
         List<Message> messages = new ArrayList<>();
-        String sql = chat.isGroupChat() ? SELECT_MESSAGES_GROUP : SELECT_MESSAGES_USER;
-        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
-            stmt.setFetchSize(1000);
-            stmt.setLong(1, chat.getId());
+        try (PreparedStatement stmt = prepareMessages(conn, chat)) {
             ResultSet rs = stmt.executeQuery();
             while (rs.next()) {
-                Message m = new Message();
-                if (account != null)
-                    m.setLocalResource(account.getId());
-                m.setId(rs.getLong("id")); //$NON-NLS-1$
-                String remoteResource = rs.getString("remoteResource");
-                if (remoteResource == null || remoteResource.isEmpty() || !chat.isGroupChat()) {
-                    remoteResource = chat.getRemote().getFullId();
-                }
-                m.setRemoteResource(remoteResource); // $NON-NLS-1$
-                m.setStatus(rs.getInt("status")); //$NON-NLS-1$
-                m.setData(Util.getUTF8String(rs, "data")); //$NON-NLS-1$
-                m.setFromMe(rs.getInt("fromMe") == 1); //$NON-NLS-1$
-                if (m.isFromMe()) {
-                    switch (m.getStatus()) {
-                        case 1:
-                            m.setMessageStatus(MessageStatus.MESSAGE_SENT);
-                            break;
-                        case 6:
-                            m.setMessageStatus(MessageStatus.MESSAGE_DELIVERED);
-                            break;
-                        case 8:
-                            m.setMessageStatus(MessageStatus.MESSAGE_VIEWED);
-                            break;
-                        case 9:
-                            m.setMessageStatus(MessageStatus.MESSAGE_UNSENT);
-                            break;
-                        default:
-                            break;
-                    }
-                }
-                try {
-                    m.setTimeStamp(dateFormat.parse(rs.getString("timestamp"))); //$NON-NLS-1$
-                } catch (ParseException e) {
-                    throw new SQLException(e);
-                }
-                int gEventType = rs.getInt("gEventType"); //$NON-NLS-1$
-                int messageType = rs.getInt("messageType"); //$NON-NLS-1$
-                m.setMessageType(decodeMessageType(messageType, gEventType));
-                if (m.getMessageType() != CONTACT_MESSAGE) {
-                    m.setMediaMime(rs.getString("vCardString")); //$NON-NLS-1$
-                } else {
-                    String vcards = rs.getString("vCardString"); //$NON-NLS-1$
-                    if (vcards != null) {
-                        m.setVcards(Arrays.asList(vcards.split(Pattern.quote(VCARD_SEPARATOR))));
-                    }
-                }
-                m.setMediaName(rs.getString("mediaName")); //$NON-NLS-1$
-                m.setMediaSize(rs.getLong("mediaSize")); //$NON-NLS-1$
-                m.setMediaCaption(rs.getString("mediaCaption")); //$NON-NLS-1$
-                m.setThumbpath(rs.getString("thumbpath")); //$NON-NLS-1$
-                m.setUrl(rs.getString("url")); //$NON-NLS-1$
-                m.setLatitude(rs.getDouble("latitude")); //$NON-NLS-1$
-                m.setLongitude(rs.getDouble("longitude")); //$NON-NLS-1$
-                if (MEDIA_MESSAGES.contains(m.getMessageType())) {
-                    try {
-                        m.setMediaHash(rs.getString("mediaHash"), true);
-                    } catch (IllegalArgumentException _) {
-                    } // ignore
-                }
-                messages.add(m);
-
+                messages.add(readMessage(rs, chat));
             }
         }
         return messages;
     }
 
+    private Message readMessage(ResultSet rs, Chat chat) throws SQLException {
+        Message m = new Message();
+        if (account != null)
+            m.setLocalResource(account.getId());
+        m.setId(rs.getLong("id")); //$NON-NLS-1$
+        String remoteResource = rs.getString("remoteResource");
+        if (remoteResource == null || remoteResource.isEmpty() || !chat.isGroupChat()) {
+            remoteResource = chat.getRemote().getFullId();
+        }
+        m.setRemoteResource(remoteResource); // $NON-NLS-1$
+        m.setStatus(rs.getInt("status")); //$NON-NLS-1$
+        m.setData(Util.getUTF8String(rs, "data")); //$NON-NLS-1$
+        m.setFromMe(rs.getInt("fromMe") == 1); //$NON-NLS-1$
+        if (m.isFromMe()) {
+            switch (m.getStatus()) {
+                case 1:
+                    m.setMessageStatus(MessageStatus.MESSAGE_SENT);
+                    break;
+                case 6:
+                    m.setMessageStatus(MessageStatus.MESSAGE_DELIVERED);
+                    break;
+                case 8:
+                    m.setMessageStatus(MessageStatus.MESSAGE_VIEWED);
+                    break;
+                case 9:
+                    m.setMessageStatus(MessageStatus.MESSAGE_UNSENT);
+                    break;
+                default:
+                    break;
+            }
+        }
+        try {
+            m.setTimeStamp(dateFormat.parse(rs.getString("timestamp"))); //$NON-NLS-1$
+        } catch (ParseException e) {
+            throw new SQLException(e);
+        }
+        int gEventType = rs.getInt("gEventType"); //$NON-NLS-1$
+        int messageType = rs.getInt("messageType"); //$NON-NLS-1$
+        m.setMessageType(decodeMessageType(messageType, gEventType));
+        if (m.getMessageType() != CONTACT_MESSAGE) {
+            m.setMediaMime(rs.getString("vCardString")); //$NON-NLS-1$
+        } else {
+            String vcards = rs.getString("vCardString"); //$NON-NLS-1$
+            if (vcards != null) {
+                m.setVcards(Arrays.asList(vcards.split(Pattern.quote(VCARD_SEPARATOR))));
+            }
+        }
+        m.setMediaName(rs.getString("mediaName")); //$NON-NLS-1$
+        m.setMediaSize(rs.getLong("mediaSize")); //$NON-NLS-1$
+        m.setMediaCaption(rs.getString("mediaCaption")); //$NON-NLS-1$
+        m.setThumbpath(rs.getString("thumbpath")); //$NON-NLS-1$
+        m.setUrl(rs.getString("url")); //$NON-NLS-1$
+        m.setLatitude(rs.getDouble("latitude")); //$NON-NLS-1$
+        m.setLongitude(rs.getDouble("longitude")); //$NON-NLS-1$
+        if (MEDIA_MESSAGES.contains(m.getMessageType())) {
+            try {
+                m.setMediaHash(rs.getString("mediaHash"), true);
+            } catch (IllegalArgumentException _) {
+            } // ignore
+        }
+        return m;
+    }
+
     protected Message.MessageType decodeMessageType(int messageType, int gEventType) {
         Message.MessageType result = UNKNOWN_MESSAGE;
         switch (messageType) {
@@ -0,0 +1,86 @@
+package dpf.mg.udi.gpinf.whatsappextractor;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Iterates the messages of a chat while they are read from the database, so
+ * the messages of huge chats do not need to be all in memory. Closes the
+ * statement and the connection when closed.
+ */
+public class MessageCursor implements Iterator<Message>, Closeable {
+
+    interface MessageReader {
+        Message read(ResultSet rs) throws SQLException;
+    }
+
+    private final Connection conn;
+    private final PreparedStatement stmt;
+    private final ResultSet rs;
+    private final MessageReader reader;
+    private Message next;
+
+    MessageCursor(Connection conn, PreparedStatement stmt, MessageReader reader) throws SQLException {
+        this.conn = conn;
+        this.stmt = stmt;
+        this.reader = reader;
+        try {
+            this.rs = stmt.executeQuery();
+            fetchNext();
+        } catch (SQLException | RuntimeException e) {
+            closeQuietly();
+            throw e;
+        }
+    }
+
+    private void fetchNext() throws SQLException {
+        next = rs.next() ? reader.read(rs) : null;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return next != null;
+    }
+
+    @Override
+    public Message next() {
+        if (next == null) {
+            throw new NoSuchElementException();
+        }
+        Message message = next;
+        try {
+            fetchNext();
+        } catch (SQLException e) {
+            throw new RuntimeException("Error reading WhatsApp messages", e); //$NON-NLS-1$
+        }
+        return message;
+    }
+
+    private void closeQuietly() {
+        try {
+            close();
+        } catch (IOException e) {
+            // ignore
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            try {
+                stmt.close();
+            } finally {
+                conn.close();
+            }
+        } catch (SQLException e) {
+            throw new IOException(e);
+        }
+    }
+
+}
@@ -7,16 +7,17 @@
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.io.UnsupportedEncodingException;
-import java.nio.charset.StandardCharsets;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
-import java.util.function.Supplier;
 
 import org.apache.commons.text.StringSubstitutor;
 import org.apache.commons.text.lookup.StringLookup;
 import org.apache.commons.text.lookup.StringLookupFactory;
 
 import dpf.mg.udi.gpinf.vcardparser.VCardParser;
+import dpf.sp.gpinf.indexer.parsers.util.ChatReportPage;
 import dpf.sp.gpinf.indexer.parsers.util.ChildPornHashLookup;
 import dpf.sp.gpinf.indexer.parsers.util.Messages;
 import dpf.sp.gpinf.indexer.util.SimpleHTMLEncoder;
@@ -36,6 +37,8 @@ public class ReportGenerator {
     private final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd"); //$NON-NLS-1$
     private final SimpleDateFormat timeFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss XXX"); //$NON-NLS-1$
     private static final String template = Util.readResourceAsString("wachat-html-template.txt");
+    private static final String templateHead = template.substring(0, template.indexOf("${messages}")); //$NON-NLS-1$
+    private static final String templateTail = template.substring(templateHead.length() + "${messages}".length()); //$NON-NLS-1$
     private static final String css = Util.readResourceAsString("css/whatsapp.css");
     private static final String js = Util.readResourceAsString("js/whatsapp.js");
     private IItemSearcher searcher;
@@ -116,19 +119,33 @@ private String format(String s) {
 
     }
 
-    public byte[] generateNextChatHtml(Chat c, WAContactsDirectory contactsDirectory) {
+    /**
+     * @return true if the next call to generateNextChatHtml will write a new
+     *         page of the chat
+     */
+    public boolean hasNextChatHtml(Iterator<Message> messages) {
+        return firstFragment || messages.hasNext();
+    }
 
-        if ((!firstFragment && currentMsg == 0) || (currentMsg > 0 && currentMsg == c.getMessages().size()))
+    /**
+     * Writes the next page of the chat to the given page, taking the messages
+     * from the iterator and splitting the chat when the page gets larger than
+     * MIN_SIZE_TO_SPLIT_CHAT.
+     *
+     * @return the messages written to the page, or null if there are no more
+     *         pages to write
+     */
+    public List<Message> generateNextChatHtml(Chat c, Iterator<Message> messages,
+            WAContactsDirectory contactsDirectory, ChatReportPage page) {
+
+        if (!hasNextChatHtml(messages))
             return null;
 
         firstFragment = false;
 
-        ByteArrayOutputStream chatBytes = new ByteArrayOutputStream();
-        PrintWriter printWriter = new PrintWriter(new OutputStreamWriter(chatBytes, StandardCharsets.UTF_8)); // $NON-NLS-1$
-
-        printMessageFile(printWriter, c.getTitle(), c.getPrintId(), c.getRemote().getAvatar(), () -> {
-            ByteArrayOutputStream bout = new ByteArrayOutputStream();
-            PrintWriter out = new PrintWriter(new OutputStreamWriter(bout, StandardCharsets.UTF_8)); // $NON-NLS-1$
+        List<Message> pageMessages = new ArrayList<>();
+        PrintWriter out = page.getWriter();
+        printMessageFile(out, c.getTitle(), c.getPrintId(), c.getRemote().getAvatar(), () -> {
             if(c.getRecoveredFrom()!=null) {
                 out.println("<div class=\"linha\"><div class=\"date\">" //$NON-NLS-1$
                         + Messages.getString("WhatsAppReport.RecoveredFrom") + " " + c.getRecoveredFrom()
@@ -138,9 +155,11 @@ public byte[] generateNextChatHtml(Chat c, WAContactsDirectory contactsDirectory
                 out.println("<div class=\"linha\"><div class=\"date\">" //$NON-NLS-1$
                         + Messages.getString("WhatsAppReport.ChatContinuation") + "</div></div>"); //$NON-NLS-1$ //$NON-NLS-2$
 
+            long startSize = page.size();
             String lastDate = null;
-            while (currentMsg < c.getMessages().size()) {
-                Message m = c.getMessages().get(currentMsg);
+            while (messages.hasNext()) {
+                Message m = messages.next();
+                pageMessages.add(m);
                 String thisDate = dateFormat.format(m.getTimeStamp());
                 if (lastDate == null || !lastDate.equals(thisDate)) {
                     out.println("<div class=\"linha\"><div class=\"date\">" //$NON-NLS-1$
@@ -149,18 +168,16 @@ public byte[] generateNextChatHtml(Chat c, WAContactsDirectory contactsDirectory
                 }
                 printMessage(out, m, c.isGroupChat(), contactsDirectory);
                 currentMsg += 1;
-                if (currentMsg != c.getMessages().size() && bout.size() >= MIN_SIZE_TO_SPLIT_CHAT) {
+                if (messages.hasNext() && page.size() - startSize >= MIN_SIZE_TO_SPLIT_CHAT) {
                     out.println("<div class=\"linha\"><div class=\"date\">" //$NON-NLS-1$
                             + Messages.getString("WhatsAppReport.ChatContinues") + "</div></div>"); //$NON-NLS-1$ //$NON-NLS-2$
                     break;
                 }
             }
-            out.flush();
-            return new String(bout.toByteArray(), StandardCharsets.UTF_8);
         });
 
-        printWriter.flush();
-        return chatBytes.toByteArray();
+        out.flush();
+        return pageMessages;
     }
 
     private void printMessage(PrintWriter out, Message message, boolean group, WAContactsDirectory contactsDirectory) {
@@ -553,7 +570,7 @@ private static String getTitle(Message message) {
             return "File"; //$NON-NLS-1$
     }
 
-    private void printMessageFile(PrintWriter out, String title, String id, byte[] avatar, Supplier<String> messages) {
+    private void printMessageFile(PrintWriter out, String title, String id, byte[] avatar, Runnable messages) {
         String strAvatar;
         if (avatar == null || avatar.length == 0) {
             strAvatar = Util.getImageResourceAsEmbedded("img/avatar.png");
@@ -571,8 +588,6 @@ public String lookup(String key) {
                         return id;
                     case "avatar":
                         return strAvatar;
-                    case "messages":
-                        return messages.get();
                     case "javascript":
                         return js;
                     case "css":
@@ -581,7 +596,10 @@ public String lookup(String key) {
                 return StringLookupFactory.INSTANCE.interpolatorStringLookup().lookup(key);
             }
         });
-        out.println(interpolator.replace(template));
+        // messages are streamed between the template parts, not interpolated
+        out.print(interpolator.replace(templateHead));
+        messages.run();
+        out.println(interpolator.replace(templateTail));
     }
 
 }
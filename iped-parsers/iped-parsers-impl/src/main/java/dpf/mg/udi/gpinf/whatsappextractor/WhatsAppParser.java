@@ -32,6 +32,7 @@
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -60,8 +61,11 @@
 import dpf.sp.gpinf.indexer.parsers.IndexerDefaultParser;
 import dpf.sp.gpinf.indexer.parsers.jdbc.SQLite3DBParser;
 import dpf.sp.gpinf.indexer.parsers.jdbc.SQLite3Parser;
+import dpf.sp.gpinf.indexer.parsers.util.ChatReportPage;
 import dpf.sp.gpinf.indexer.parsers.util.EmbeddedParent;
+import dpf.sp.gpinf.indexer.parsers.util.ItemContentStream;
 import dpf.sp.gpinf.indexer.parsers.util.ItemInfo;
+import dpf.sp.gpinf.indexer.parsers.util.MaterializedFile;
 import dpf.sp.gpinf.indexer.util.EmptyInputStream;
 import iped3.IItem;
 import iped3.io.IItemBase;
@@ -195,27 +199,48 @@ public void parse(InputStream stream, ContentHandler handler, Metadata metadata,
 
     private void createReport(List<Chat> chatList, IItemSearcher searcher, WAContactsDirectory contacts,
             ContentHandler handler, EmbeddedDocumentExtractor extractor, WAAccount account) throws Exception {
+        createReport(chatList, null, searcher, contacts, handler, extractor, account);
+    }
+
+    /**
+     * @param waExtractor
+     *            if not null, the messages of each chat are read from it while the
+     *            pages are written, otherwise they are taken from the chat
+     */
+    private void createReport(List<Chat> chatList, Extractor waExtractor, IItemSearcher searcher,
+            WAContactsDirectory contacts, ContentHandler handler, EmbeddedDocumentExtractor extractor,
+            WAAccount account) throws Exception {
         int chatVirtualId = 0;
         HashMap<String, String> cache = new HashMap<>();
         for (Chat c : chatList) {
             getAvatar(searcher, c.getRemote());
-            int frag = 0;
-            int firstMsg = 0;
-            ReportGenerator reportGenerator = new ReportGenerator(searcher);
-            byte[] bytes = reportGenerator.generateNextChatHtml(c, contacts);
-            while (bytes != null) {
+            if (waExtractor != null) {
+                try (MessageCursor messages = waExtractor.openMessages(c)) {
+                    chatVirtualId = createChatReport(c, messages, searcher, contacts, handler, extractor, account,
+                            chatVirtualId, cache);
+                }
+            } else {
+                chatVirtualId = createChatReport(c, c.getMessages().iterator(), searcher, contacts, handler,
+                        extractor, account, chatVirtualId, cache);
+            }
+        }
+    }
+
+    private int createChatReport(Chat c, Iterator<Message> messages, IItemSearcher searcher,
+            WAContactsDirectory contacts, ContentHandler handler, EmbeddedDocumentExtractor extractor,
+            WAAccount account, int chatVirtualId, HashMap<String, String> cache) throws Exception {
+        int frag = 0;
+        ReportGenerator reportGenerator = new ReportGenerator(searcher);
+        while (reportGenerator.hasNextChatHtml(messages)) {
+            try (ChatReportPage page = new ChatReportPage()) {
+                List<Message> msgSubset = reportGenerator.generateNextChatHtml(c, messages, contacts, page);
                 Metadata chatMetadata = new Metadata();
-                int nextMsg = reportGenerator.getNextMsgNum();
 
-                List<Message> msgSubset = c.getMessages().subList(firstMsg, nextMsg);
                 storeLinkedHashes(msgSubset, chatMetadata, searcher);
                 storeLocations(msgSubset, chatMetadata);
 
-                firstMsg = nextMsg;
-                byte[] nextBytes = reportGenerator.generateNextChatHtml(c, contacts);
-
                 String chatName = c.getTitle();
-                if (frag > 0 || nextBytes != null)
+                if (frag > 0 || reportGenerator.hasNextChatHtml(messages))
                     chatName += "_" + frag++; //$NON-NLS-1$
 
                 chatMetadata.set(TikaCoreProperties.TITLE, chatName);
@@ -224,22 +249,23 @@ private void createReport(List<Chat> chatList, IItemSearcher searcher, WAContact
                 if (extractMessages && msgSubset.size() > 0) {
                     chatMetadata.set(BasicProps.HASCHILD, Boolean.TRUE.toString());
                 }
-                
+
                 if(c.isGroupChat()) {
                     for(WAContact member:c.getGroupmembers()) {
                         chatMetadata.add(ExtraProperties.PARTICIPANTS, formatContact(member, cache));
                     }
                 }
 
-                ByteArrayInputStream chatStream = new ByteArrayInputStream(bytes);
-                extractor.parseEmbedded(chatStream, handler, chatMetadata, false);
-                bytes = nextBytes;
+                try (InputStream chatStream = page.getInputStream()) {
+                    extractor.parseEmbedded(chatStream, handler, chatMetadata, false);
+                }
 
                 if (extractMessages) {
                     extractMessages(chatName, c, msgSubset, account, contacts, chatVirtualId++, handler, extractor, cache);
                 }
             }
         }
+        return chatVirtualId;
     }
 
     private void parseWhatsappMessages(InputStream stream, ContentHandler handler, Metadata metadata,
@@ -266,8 +292,8 @@ private void parseWhatsappMessages(InputStream stream, ContentHandler handler, M
                 WAAccount account = getUserAccount(searcher, dbPath, extFactory instanceof ExtractorAndroidFactory);
 
                 Extractor waExtractor = extFactory.createMessageExtractor(tis.getFile(), contacts, account);
-                List<Chat> chatList = waExtractor.getChatList();
-                createReport(chatList, searcher, contacts, handler, extractor, account);
+                List<Chat> chatList = waExtractor.getChatListWithoutMessages();
+                createReport(chatList, waExtractor, searcher, contacts, handler, extractor, account);
 
             } catch (Exception e) {
                 sqliteParser.parse(tis, handler, metadata, context);
@@ -785,9 +811,12 @@ private WAContactsDirectory getContacts(String path, IItemSearcher searcher, Cla
         context.set(IItemBase.class, item);
         ExtractorFactory extFactory = (ExtractorFactory) extFactoryClass.newInstance();
 
-        try (InputStream is = item.getBufferedStream()) {
+        // shares the same materialized db file between the extractor and its connection
+        try (MaterializedFile dbFile = MaterializedFile.acquire(item);
+                InputStream is = TikaInputStream.get(dbFile.getFile().toPath())) {
+            context.set(ItemContentStream.class, new ItemContentStream(is));
             extFactory.setConnectionParams(is, null, context, this);
-            WAContactsExtractor waExtractor = extFactory.createContactsExtractor(item.getTempFile());
+            WAContactsExtractor waExtractor = extFactory.createContactsExtractor(dbFile.getFile());
             waExtractor.extractContactList();
             return waExtractor.getContactsDirectory();
         }
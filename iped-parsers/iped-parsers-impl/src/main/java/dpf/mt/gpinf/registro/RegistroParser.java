@@ -3,12 +3,12 @@
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Set;
 
 import org.apache.tika.exception.TikaException;
+import org.apache.tika.io.TemporaryResources;
 import org.apache.tika.io.TikaInputStream;
 import org.apache.tika.metadata.Metadata;
 import org.apache.tika.metadata.TikaMetadataKeys;
@@ -25,6 +25,7 @@
 import dpf.sp.gpinf.indexer.parsers.util.EmbeddedItem;
 import dpf.sp.gpinf.indexer.parsers.util.EmbeddedParent;
 import dpf.sp.gpinf.indexer.parsers.util.ItemInfo;
+import dpf.sp.gpinf.indexer.util.IOUtil;
 
 public class RegistroParser extends AbstractParser {
 
@@ -46,6 +47,8 @@ public void parse(InputStream stream, ContentHandler handler, Metadata metadata,
             throws IOException, SAXException, TikaException {
         /* filtra os itens a serem parseados */
         String nome = metadata.get(TikaMetadataKeys.RESOURCE_NAME_KEY).toUpperCase();
+        TemporaryResources tmp = new TemporaryResources();
+        RegistryFile rf = null;
         try {
             if (defaultRegistryKeyParser == null) {
                 defaultRegistryKeyParser = RegistryKeyParserManager.getRegistryKeyParserManager()
@@ -59,10 +62,11 @@ public void parse(InputStream stream, ContentHandler handler, Metadata metadata,
             if (!(caminho.contains("system32/config") || caminho.contains("users") || caminho.contains("settings")))
                 return;
 
-            File dbFile = TikaInputStream.get(stream).getFile();
-
-            RegistryFile rf = new RegistryFile(dbFile);
+            File dbFile = TikaInputStream.get(stream, tmp).getFile();
 
+            // cells are read on demand from the hive instead of all decoded up front
+            rf = new RegistryFile(dbFile);
+            rf.setUseMappedFile(IOUtil.canMapFile(dbFile));
             rf.load();
 
             KeyNode kf = rf.findKeyNode("/");
@@ -71,6 +75,9 @@ public void parse(InputStream stream, ContentHandler handler, Metadata metadata,
         } catch (Exception e) {
             throw new TikaException("Erro ao decodificar arquivo de registro: " + nome, e);
         } finally {
+            if (rf != null)
+                rf.close();
+            tmp.close();
         }
     }
 
@@ -94,20 +101,15 @@ private void keyParser(KeyNode kn, boolean hasChildren, String keyPath, String p
 
     private void recursiveKeyParser(KeyNode kn, String keyPath, String parentPath, ContentHandler handler,
             Metadata metadata, ParseContext context) throws TikaException {
-        ArrayList<KeyNode> kns = kn.getSubKeys();
-
-        keyParser(kn, ((kns != null) && (kns.size() > 0)), keyPath, parentPath, handler, metadata, context);
-
-        EmbeddedItem item = context.get(EmbeddedItem.class);
+        keyParser(kn, kn.hasSubKeys(), keyPath, parentPath, handler, metadata, context);
 
         if (RegistryKeyParserManager.getRegistryKeyParserManager().hasChildRegistered(keyPath)) {
-            if (kns != null) {
-                for (int i = 0; i < kns.size(); i++) {
-                    recursiveKeyParser(kns.get(i), keyPath + "/" + kns.get(i).getKeyName(), keyPath, handler, metadata,
-                            context);
-                }
+            // subkeys are decoded one at a time, so only the current path is kept in memory
+            for (KeyNode sub : kn.iterateSubKeys()) {
+                recursiveKeyParser(sub, keyPath + "/" + sub.getKeyName(), keyPath, handler, metadata, context);
             }
         }
+        parentMap.remove(keyPath);
     }
 
 }
\ No newline at end of file
@@ -5,7 +5,6 @@
 import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
-import java.util.ArrayList;
 
 import org.apache.tika.exception.TikaException;
 import org.apache.tika.extractor.EmbeddedDocumentExtractor;
@@ -68,13 +67,9 @@ public void parse(KeyNode kn, String title, boolean hasChildren, String keyPath,
                 }
                 out.println("</TABLE>");
 
-                ArrayList<KeyNode> kns = kn.getSubKeys();
-                if (kns != null) {
-                    for (int i = 0; i < kns.size(); i++) {
-                        KeyNode knl = kns.get(i);
-                        if (knl.getKeyName().contains("Search.History")) {
-                            parseSeachHistoryKey(knl, out);
-                        }
+                for (KeyNode knl : kn.iterateSubKeys()) {
+                    if (knl.getKeyName().contains("Search.History")) {
+                        parseSeachHistoryKey(knl, out);
                     }
                 }
 
@@ -106,42 +101,37 @@ public void parse(KeyNode kn, String title, boolean hasChildren, String keyPath,
 
     private void parseSeachHistoryKey(KeyNode kn, PrintWriter out) {
 
-        ArrayList<KeyNode> kns = kn.getSubKeys();
-        if (kns != null) {
-            for (int i = 0; i < kns.size(); i++) {
-                KeyNode knl = kns.get(i);
-
-                out.println("<TABLE>");
-                out.println("<TR>");
-                out.println("<TH colspan='2'>Histórico de pesquisas</tH>");
-                out.println("</TR>");
-                out.println("<TR>");
-                out.println("<TD>Chave:</td><td>" + knl.getKeyName() + "</td>");
-                out.println("</TR>");
-                out.println("<TR>");
-                String lastWrittenString = dateFormat.get().format(kn.getLastWrittenAsDate());
-                out.println("<TD>Última modificação:</td><td>" + lastWrittenString + "</td>");
-                out.println("</TR>");
-                out.println("<TABLE>");
-                out.println("<TABLE>");
-                out.println("<TR>" + "<TH>Atributo</TH>" + "<TH>Valor Decodificado</TH>" + "</TR>");
-
-                KeyValue[] kvs = knl.getValues();
-
-                if (kvs != null) {
-                    for (int j = 0; j < kvs.length; j++) {
-                        KeyValue keyValue = kvs[j];
-
-                        out.print("<TR>");
-                        out.print("<TD>" + keyValue.getValueName() + "</TD>");
-                        out.println("<TD>" + decodeAresHexString(keyValue.getValueName()) + "</TD>");
-                        out.print("</TR>");
-                    }
+        for (KeyNode knl : kn.iterateSubKeys()) {
+            out.println("<TABLE>");
+            out.println("<TR>");
+            out.println("<TH colspan='2'>Histórico de pesquisas</tH>");
+            out.println("</TR>");
+            out.println("<TR>");
+            out.println("<TD>Chave:</td><td>" + knl.getKeyName() + "</td>");
+            out.println("</TR>");
+            out.println("<TR>");
+            String lastWrittenString = dateFormat.get().format(kn.getLastWrittenAsDate());
+            out.println("<TD>Última modificação:</td><td>" + lastWrittenString + "</td>");
+            out.println("</TR>");
+            out.println("<TABLE>");
+            out.println("<TABLE>");
+            out.println("<TR>" + "<TH>Atributo</TH>" + "<TH>Valor Decodificado</TH>" + "</TR>");
+
+            KeyValue[] kvs = knl.getValues();
+
+            if (kvs != null) {
+                for (int j = 0; j < kvs.length; j++) {
+                    KeyValue keyValue = kvs[j];
+
+                    out.print("<TR>");
+                    out.print("<TD>" + keyValue.getValueName() + "</TD>");
+                    out.println("<TD>" + decodeAresHexString(keyValue.getValueName()) + "</TD>");
+                    out.print("</TR>");
                 }
-
-                out.println("</TABLE>");
-                out.println("<br/>");
             }
+
+            out.println("</TABLE>");
+            out.println("<br/>");
         }
     }
 
@@ -3,7 +3,6 @@
 import java.io.ByteArrayInputStream;
 import java.security.cert.CertificateFactory;
 import java.security.cert.X509Certificate;
-import java.util.ArrayList;
 import java.util.Arrays;
 
 import org.apache.tika.exception.TikaException;
@@ -26,12 +25,9 @@ public class CertificateKeyParser extends HtmlKeyParser {
     @Override
     public void parse(KeyNode kn, String title, boolean hasChildren, String keyPath, EmbeddedParent parent,
             ContentHandler handler, Metadata metadata, ParseContext context) throws TikaException {
-        ArrayList<KeyNode> kns = kn.getSubKeys();
-        if (kns != null) {
-            for (int i = 0; i < kns.size(); i++) {
-                parseCertificateKey(kns.get(i), kns.get(i).getKeyName(), true, keyPath + "/" + kns.get(i).getKeyName(),
-                        parent, handler, metadata, context);
-            }
+        for (KeyNode sub : kn.iterateSubKeys()) {
+            parseCertificateKey(sub, sub.getKeyName(), true, keyPath + "/" + sub.getKeyName(), parent, handler,
+                    metadata, context);
         }
     }
 
@@ -7,6 +7,8 @@
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
 import java.util.concurrent.TimeUnit;
 
 public class KeyNode extends CellContent {
@@ -73,40 +75,86 @@ public KeyNode getSubKey(String name) {
     }
 
     public ArrayList<KeyNode> getSubKeys() {
-        if (getSubKeysCount() > 0) {
-            byte[] buffer = Arrays.copyOfRange(data, 28, 32);
-            int listOffset = (buffer[0] & 0xFF) | (buffer[1] & 0xFF) << 8 | (buffer[2] & 0xFF) << 16
-                    | (buffer[3] & 0xFF) << 24;
-            buffer = null;
+        int[] offsets = getSubKeyOffsets();
+        if (offsets.length == 0) {
+            return null;
+        }
+        ArrayList<KeyNode> resultado = new ArrayList<KeyNode>(offsets.length);
+        for (int i = 0; i < offsets.length; i++) {
+            resultado.add(getSubKeyAt(offsets[i]));
+        }
+        return resultado;
+    }
 
-            ArrayList<KeyNode> resultado = new ArrayList<KeyNode>();
+    /**
+     * @return true if the key has at least one subkey, without decoding them.
+     */
+    public boolean hasSubKeys() {
+        return getSubKeyOffsets().length > 0;
+    }
 
-            addSubkeys(listOffset, resultado);
+    /**
+     * Iterates over the subkeys decoding one at a time, so large keys do not keep
+     * all their subkeys in memory like {@link #getSubKeys()}.
+     */
+    public Iterable<KeyNode> iterateSubKeys() {
+        final int[] offsets = getSubKeyOffsets();
+        return () -> new Iterator<KeyNode>() {
+            int i = 0;
+
+            @Override
+            public boolean hasNext() {
+                return i < offsets.length;
+            }
 
-            return resultado;
-        } else {
-            return null;
+            @Override
+            public KeyNode next() {
+                if (i >= offsets.length) {
+                    throw new NoSuchElementException();
+                }
+                return getSubKeyAt(offsets[i++]);
+            }
+        };
+    }
+
+    private KeyNode getSubKeyAt(int offset) {
+        return (KeyNode) reg.getCell(offset).getCellContent();
+    }
+
+    /**
+     * @return the cell offsets of the subkeys, following index roots.
+     */
+    public int[] getSubKeyOffsets() {
+        if (getSubKeysCount() <= 0) {
+            return new int[0];
         }
+        byte[] buffer = Arrays.copyOfRange(data, 28, 32);
+        int listOffset = (buffer[0] & 0xFF) | (buffer[1] & 0xFF) << 8 | (buffer[2] & 0xFF) << 16
+                | (buffer[3] & 0xFF) << 24;
+        buffer = null;
+
+        return addSubkeyOffsets(listOffset, new int[0]);
     }
 
-    private void addSubkeys(int listOffset, ArrayList resultado) {
+    private int[] addSubkeyOffsets(int listOffset, int[] resultado) {
         HiveCell cell = reg.getCell(listOffset);
         if (cell.getCellContent() instanceof SubKeysList) {
-            SubKeysList listOffsets = (SubKeysList) cell.getCellContent();
-            int offsets[] = listOffsets.getOffsets();
-            for (int i = 0; i < offsets.length; i++) {
-                int offset = offsets[i];
-                HiveCell keyCell = reg.getCell(offset);
-                resultado.add((KeyNode) keyCell.getCellContent());
+            int[] offsets = ((SubKeysList) cell.getCellContent()).getOffsets();
+            if (offsets == null) {
+                return resultado;
             }
+            int size = resultado.length;
+            resultado = Arrays.copyOf(resultado, size + offsets.length);
+            System.arraycopy(offsets, 0, resultado, size, offsets.length);
         }
         if (cell.getCellContent() instanceof IndexRoot) {
             IndexRoot ri = (IndexRoot) cell.getCellContent();
             int[] offsets = ri.getOffsets();
-            for (int i = 0; i < offsets.length; i++) {
-                addSubkeys(offsets[i], resultado);
+            for (int i = 0; offsets != null && i < offsets.length; i++) {
+                resultado = addSubkeyOffsets(offsets[i], resultado);
             }
         }
+        return resultado;
     }
 
     private void loadValues() {
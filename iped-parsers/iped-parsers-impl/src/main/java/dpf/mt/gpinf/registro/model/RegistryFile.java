@@ -1,12 +1,16 @@
 package dpf.mt.gpinf.registro.model;
 
+import java.io.Closeable;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.util.ArrayList;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.StandardOpenOption;
 import java.util.Arrays;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.StringTokenizer;
 
@@ -17,11 +21,35 @@
  * 
  */
 
-public class RegistryFile {
+public class RegistryFile implements Closeable {
+
+    /**
+     * Offset of the first hive bin, cell offsets are relative to it.
+     */
+    private static final int HIVE_BINS_OFFSET = 4096;
+
+    private static final int CELL_CACHE_SIZE = 4096;
+
     File file;
     // StreamSource ss;
     int rootCellOffset;
-    HashMap<Integer, HiveCell> readCells;
+
+    private boolean useMappedFile = true;
+    private FileChannel channel;
+    private ByteBuffer mappedFile;
+    private long fileLength;
+
+    /**
+     * Cells are decoded on demand by offset, only the most recently used are kept.
+     */
+    private LinkedHashMap<Integer, HiveCell> cellCache = new LinkedHashMap<Integer, HiveCell>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, HiveCell> eldest) {
+            return size() > CELL_CACHE_SIZE;
+        }
+    };
 
     public RegistryFile(File file) {
         this.file = file;
@@ -31,60 +59,81 @@ public File getFile() {
         return file;
     }
 
+    /**
+     * @param useMappedFile
+     *            if the hive should be memory mapped instead of read with
+     *            positional reads. Default is true.
+     */
+    public void setUseMappedFile(boolean useMappedFile) {
+        this.useMappedFile = useMappedFile;
+    }
+
+    /**
+     * Opens the hive and reads its header. Cells are read lazily by
+     * {@link #getCell(int)}.
+     */
     public void load() throws IOException {
-        FileInputStream fis = new FileInputStream(file);
-        int pos = 0;
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        fileLength = channel.size();
 
-        readCells = new HashMap<Integer, HiveCell>();
+        if (useMappedFile && fileLength <= Integer.MAX_VALUE) {
+            mappedFile = channel.map(MapMode.READ_ONLY, 0, fileLength);
+            channel.close();
+            channel = null;
+        }
 
         Registry reg = new Registry();
-        fis.read(reg.fileHeader);
+        read(0, reg.fileHeader);
 
         byte[] buffer = Arrays.copyOfRange(reg.fileHeader, 36, 40);
         rootCellOffset = (buffer[0] & 0xFF) | (buffer[1] & 0xFF) << 8 | (buffer[2] & 0xFF) << 16
                 | (buffer[3] & 0xFF) << 24;
         buffer = null;
+    }
 
-        boolean hbexite = true;
-        while (hbexite) {
-            HiveBin hb = new HiveBin();
-            pos += fis.read(hb.header);// le o cabecalho do hivebean
-            String sig = new String(Arrays.copyOf(hb.header, 4));
-            if (!sig.equals("hbin")) {
-                hbexite = false; // fim do arquivo, e consequentemente do loop
-                continue;
-            }
+    @Override
+    public void close() throws IOException {
+        cellCache.clear();
+        mappedFile = null;
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
 
-            buffer = Arrays.copyOfRange(hb.header, 4, 8);
-            hb.offset = (buffer[0] & 0xFF) | (buffer[1] & 0xFF) << 8 | (buffer[2] & 0xFF) << 16
-                    | (buffer[3] & 0xFF) << 24;
-            buffer = null;
-            buffer = Arrays.copyOfRange(hb.header, 8, 12);
-            hb.size = (buffer[0] & 0xFF) | (buffer[1] & 0xFF) << 8 | (buffer[2] & 0xFF) << 16
-                    | (buffer[3] & 0xFF) << 24;
-            buffer = null;
-
-            int hiveDataReadCount = 32; // inicia com o tamanho do cabecalho ja lido + offset
-            while (hiveDataReadCount < hb.size) {
-                HiveCell cell = readCell(fis);
-                readCells.put(new Integer(pos), cell);
-
-                hiveDataReadCount += cell.getSize();
-                pos += cell.getSize();
+    private int read(long position, byte[] dst) throws IOException {
+        int len = (int) Math.max(0, Math.min(dst.length, fileLength - position));
+        if (mappedFile != null) {
+            ByteBuffer dup = mappedFile.duplicate();
+            dup.position((int) position);
+            dup.get(dst, 0, len);
+        } else {
+            ByteBuffer bb = ByteBuffer.wrap(dst, 0, len);
+            while (bb.hasRemaining()) {
+                if (channel.read(bb, position + bb.position()) < 0) {
+                    break;
+                }
             }
+            len = bb.position();
         }
-
-        fis.close();
+        return len;
     }
 
-    public HiveCell readCell(InputStream fis) throws IOException {
+    private HiveCell readCell(int offset) throws IOException {
+        long position = HIVE_BINS_OFFSET + (long) offset;
+        if (offset < 0 || position + 4 > fileLength) {
+            return null;
+        }
         HiveCell cell = new HiveCell();
 
         byte[] buffer = new byte[4];
-        fis.read(buffer);
+        read(position, buffer);
         cell.setSize(buffer);
+        if (cell.getSize() < 4 || position + cell.getSize() > fileLength) {
+            return null;
+        }
         buffer = new byte[cell.getSize() - 4];
-        fis.read(buffer);
+        read(position + 4, buffer);
 
         String celltype = new String(Arrays.copyOf(buffer, 2));
         switch (celltype) {
@@ -112,8 +161,24 @@ public HiveCell readCell(InputStream fis) throws IOException {
         return cell;
     }
 
+    /**
+     * @param offset
+     *            cell offset, relative to the first hive bin
+     * @return the decoded cell or null if there is no valid cell at offset
+     */
     public HiveCell getCell(int offset) {
-        return readCells.get(new Integer(offset));
+        HiveCell cell = cellCache.get(offset);
+        if (cell == null) {
+            try {
+                cell = readCell(offset);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            if (cell != null) {
+                cellCache.put(offset, cell);
+            }
+        }
+        return cell;
     }
 
     public HiveCell getRootCell() {
@@ -128,14 +193,11 @@ public KeyNode findKeyNode(String path) {
         try {
             while (true) {
                 String tok = st.nextToken();
-                ArrayList<KeyNode> ks = k.getSubKeys();
                 achou = false;
-                for (int i = 0; i < ks.size(); i++) {
-                    KeyNode sub = ks.get(i);
-
+                for (KeyNode sub : k.iterateSubKeys()) {
                     if (tok.equals(sub.getKeyName())) {
                         achou = true;
-                        k = ks.get(i);
+                        k = sub;
                         break;
                     }
                 }
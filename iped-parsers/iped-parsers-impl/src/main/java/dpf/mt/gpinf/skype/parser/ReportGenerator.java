@@ -14,6 +14,7 @@
 import dpf.mt.gpinf.skype.parser.v8.SkypeContactV8;
 import dpf.mt.gpinf.skype.parser.v8.SkypeConversationV14;
 import dpf.mt.gpinf.skype.parser.v8.SkypeMessageV12;
+import dpf.sp.gpinf.indexer.parsers.util.ChatReportPage;
 import dpf.sp.gpinf.indexer.parsers.util.ChildPornHashLookup;
 import dpf.sp.gpinf.indexer.parsers.util.Messages;
 import dpf.sp.gpinf.indexer.parsers.util.Util;
@@ -73,9 +74,8 @@ public void endDocument(PrintWriter out) {
         out.println("</BODY></HTML>"); //$NON-NLS-1$
     }
 
-    public byte[] generateSkypeConversationHtml(SkypeConversation c) throws UnsupportedEncodingException {
-        ByteArrayOutputStream bout = new ByteArrayOutputStream();
-        PrintWriter out = new PrintWriter(new OutputStreamWriter(bout, "UTF-8")); //$NON-NLS-1$
+    public void generateSkypeConversationHtml(SkypeConversation c, ChatReportPage page) {
+        PrintWriter out = page.getWriter();
 
         startDocument(out);
         out.println("<TABLE>"); //$NON-NLS-1$
@@ -182,7 +182,6 @@ public byte[] generateSkypeConversationHtml(SkypeConversation c) throws Unsuppor
         endDocument(out);
 
         out.flush();
-        return bout.toByteArray();
     }
 
     public byte[] generateSkypeContactHtml(SkypeContact c) throws UnsupportedEncodingException {
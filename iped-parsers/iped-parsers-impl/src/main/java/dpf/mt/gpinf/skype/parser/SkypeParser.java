@@ -29,6 +29,7 @@
 
 import dpf.sp.gpinf.indexer.parsers.IndexerDefaultParser;
 import dpf.sp.gpinf.indexer.parsers.jdbc.SQLite3Parser;
+import dpf.sp.gpinf.indexer.parsers.util.ChatReportPage;
 import dpf.sp.gpinf.indexer.parsers.util.ChildPornHashLookup;
 import dpf.sp.gpinf.indexer.parsers.util.ItemInfo;
 import dpf.sp.gpinf.indexer.parsers.util.Messages;
@@ -187,9 +188,12 @@ public void parse(InputStream stream, ContentHandler handler, Metadata metadata,
                     storeSharedHashes(conv, chatMetadata);
 
                     if (extractor.shouldParseEmbedded(chatMetadata)) {
-                        ByteArrayInputStream chatStream = new ByteArrayInputStream(
-                                r.generateSkypeConversationHtml(conv));
-                        extractor.parseEmbedded(chatStream, handler, chatMetadata, false);
+                        try (ChatReportPage page = new ChatReportPage()) {
+                            r.generateSkypeConversationHtml(conv, page);
+                            try (InputStream chatStream = page.getInputStream()) {
+                                extractor.parseEmbedded(chatStream, handler, chatMetadata, false);
+                            }
+                        }
                     }
 
                     int msgNum = 0;
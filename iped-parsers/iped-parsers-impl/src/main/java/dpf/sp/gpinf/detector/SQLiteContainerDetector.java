@@ -29,7 +29,9 @@
 import dpf.inc.sepinf.winx.parsers.WinXTimelineParser;
 import dpf.mg.udi.gpinf.whatsappextractor.WhatsAppParser;
 import dpf.mt.gpinf.skype.parser.SkypeParser;
-import dpf.sp.gpinf.indexer.util.IOUtil;
+import dpf.sp.gpinf.indexer.parsers.util.ItemContentStream;
+import dpf.sp.gpinf.indexer.parsers.util.MaterializedFile;
+import iped3.io.IItemBase;
 
 /**
  * Detects subtypes of SQLite based on table names.
@@ -71,7 +73,7 @@ public MediaType detect(InputStream input, Metadata metadata) throws IOException
             return MediaType.OCTET_STREAM;
 
         TemporaryResources tmp = new TemporaryResources();
-        File dbFile = null;
+        MaterializedFile dbFile = null;
         try {
             TikaInputStream tis = TikaInputStream.get(input, tmp);
 
@@ -84,15 +86,16 @@ public MediaType detect(InputStream input, Metadata metadata) throws IOException
                 if (prefix[i] != header[i])
                     return MediaType.OCTET_STREAM;
 
-            dbFile = tis.getFile();
-            return detectSQLiteFormat(dbFile);
+            // shares the local file of the item being detected with its parsers
+            IItemBase item = ItemContentStream.getItem(input, ItemContentStream.getDetectionContext());
+            dbFile = item != null ? MaterializedFile.acquire(item) : MaterializedFile.acquire(tis, tmp, null);
+            return detectSQLiteFormat(dbFile.getFile());
 
         } finally {
+            // wal and shm files created by sqlite are deleted by the last consumer
+            if (dbFile != null)
+                dbFile.close();
             tmp.close();
-            if (dbFile != null && IOUtil.isTemporaryFile(dbFile)) {
-                new File(dbFile.getAbsolutePath() + "-wal").delete();
-                new File(dbFile.getAbsolutePath() + "-shm").delete();
-            }
         }
 
     }
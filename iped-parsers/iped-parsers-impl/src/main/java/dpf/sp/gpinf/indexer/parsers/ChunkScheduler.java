@@ -0,0 +1,118 @@
+package dpf.sp.gpinf.indexer.parsers;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.tika.exception.TikaException;
+
+/**
+ * Splits work in numbered chunks among the calling thread and helper tasks
+ * submitted to a shared pool. Workers take the next free chunk until none is
+ * left, so each chunk is processed once whatever the number of workers and
+ * results stored by chunk number do not depend on it. Helper tasks still
+ * queued when the caller is done are skipped, and running ones are always
+ * waited for before returning, also on failures, so callers can clean up what
+ * helpers produced.
+ */
+class ChunkScheduler {
+
+    interface Worker {
+
+        /**
+         * Processes chunks taken with {@link ChunkScheduler#nextChunk()} until it
+         * returns -1.
+         */
+        void process(ChunkScheduler chunks) throws IOException, TikaException;
+    }
+
+    private static final int QUEUED = 0;
+    private static final int RUNNING = 1;
+    private static final int SKIPPED = 2;
+
+    private final int numChunks;
+    private final AtomicInteger next = new AtomicInteger();
+
+    ChunkScheduler(int numChunks) {
+        this.numChunks = numChunks;
+    }
+
+    /**
+     * @return the next chunk to process or -1 if all chunks were taken
+     */
+    int nextChunk() {
+        int chunk = next.getAndIncrement();
+        return chunk < numChunks ? chunk : -1;
+    }
+
+    /**
+     * Runs the caller worker on the current thread and up to numWorkers - 1
+     * helper workers in the executor.
+     */
+    void run(ExecutorService executor, int numWorkers, Worker caller, Worker helper)
+            throws IOException, TikaException {
+        List<AtomicInteger> states = new ArrayList<>();
+        List<Future<Void>> futures = new ArrayList<>();
+        try {
+            for (int i = 1; i < numWorkers; i++) {
+                AtomicInteger state = new AtomicInteger(QUEUED);
+                states.add(state);
+                futures.add(executor.submit(() -> {
+                    if (state.compareAndSet(QUEUED, RUNNING) && next.get() < numChunks) {
+                        helper.process(this);
+                    }
+                    return null;
+                }));
+            }
+            caller.process(this);
+            for (int i = 0; i < futures.size(); i++) {
+                // not started tasks will find nothing to do
+                if (!states.get(i).compareAndSet(QUEUED, SKIPPED)) {
+                    futures.get(i).get();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TikaException("Interrupted waiting helper tasks", e); //$NON-NLS-1$
+
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException)
+                throw (IOException) e.getCause();
+            if (e.getCause() instanceof TikaException)
+                throw (TikaException) e.getCause();
+            throw new TikaException("Error in helper task", e.getCause()); //$NON-NLS-1$
+
+        } finally {
+            // helpers stop after their current chunk, they are not interrupted
+            next.set(numChunks);
+            for (int i = 0; i < futures.size(); i++) {
+                if (!states.get(i).compareAndSet(QUEUED, SKIPPED) && states.get(i).get() == RUNNING) {
+                    awaitQuietly(futures.get(i));
+                }
+            }
+        }
+    }
+
+    private static void awaitQuietly(Future<?> future) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                future.get();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            } catch (ExecutionException | CancellationException e) {
+                break;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
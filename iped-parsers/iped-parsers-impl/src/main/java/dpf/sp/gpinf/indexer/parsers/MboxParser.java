@@ -18,19 +18,23 @@
  */
 package dpf.sp.gpinf.indexer.parsers;
 
-import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.Date;
 import java.util.Set;
 
+import org.apache.commons.io.input.CloseShieldInputStream;
+
 import org.apache.tika.exception.TikaException;
 import org.apache.tika.extractor.EmbeddedDocumentExtractor;
 import org.apache.tika.extractor.ParsingEmbeddedDocumentExtractor;
+import org.apache.tika.io.TemporaryResources;
+import org.apache.tika.io.TikaInputStream;
 import org.apache.tika.metadata.Metadata;
 import org.apache.tika.metadata.TikaCoreProperties;
 import org.apache.tika.mime.MediaType;
@@ -42,8 +46,14 @@
 import org.xml.sax.ContentHandler;
 import org.xml.sax.SAXException;
 
+import dpf.sp.gpinf.indexer.parsers.util.EmbeddedRangeExtractor;
 import dpf.sp.gpinf.indexer.parsers.util.IgnoreContentHandler;
+import dpf.sp.gpinf.indexer.parsers.util.ItemContentStream;
 import dpf.sp.gpinf.indexer.parsers.util.Messages;
+import dpf.sp.gpinf.indexer.util.FileContentSource;
+import dpf.sp.gpinf.indexer.util.LimitedSeekableInputStream;
+import iped3.io.IStreamSource;
+import iped3.io.SeekableInputStream;
 import iped3.util.ExtraProperties;
 
 /**
@@ -62,7 +72,8 @@ public class MboxParser extends AbstractParser {
 
     public static final String MBOX_MIME_TYPE = "application/mbox"; //$NON-NLS-1$
     public static final String MBOX_RECORD_DIVIDER = "From "; //$NON-NLS-1$
-    private static int MAIL_MAX_SIZE = 50000000;
+    private static final byte[] DIVIDER = MBOX_RECORD_DIVIDER.getBytes(StandardCharsets.ISO_8859_1);
+    private static final int MAX_HEADER_SIZE = 1 << 20;
 
     @Override
     public Set<MediaType> getSupportedTypes(ParseContext context) {
@@ -79,53 +90,191 @@ public void parse(InputStream stream, ContentHandler handler, Metadata metadata,
         XHTMLContentHandler xhtml = new XHTMLContentHandler(handler, metadata);
         xhtml.startDocument();
 
-        String charsetName = "windows-1252"; //$NON-NLS-1$
-        InputStreamReader isr = new InputStreamReader(stream, charsetName);
-        BufferedReader reader = new BufferedReader(isr, 100000);
         String name = metadata.get(Metadata.RESOURCE_NAME_KEY);
 
-        String line;
-        int count = 0;
-        if (extractor.shouldParseEmbedded(metadata))
-            do {
-                line = reader.readLine();
+        TemporaryResources tmp = new TemporaryResources();
+        try {
+            // messages are read from the item only if the stream is its content
+            IStreamSource source = ItemContentStream.getItem(stream, context);
+            // and emitted as ranges of it only if the extractor creates them that way
+            boolean emitRanges = source != null && extractor instanceof EmbeddedRangeExtractor;
+            if (source == null) {
+                TikaInputStream tis = TikaInputStream.get(stream, tmp);
+                source = new FileContentSource(tis.getFile());
+                stream = tis;
+            }
+
+            if (extractor.shouldParseEmbedded(metadata)) {
+                // first pass only finds the messages, they are emitted as ranges of the mbox
+                long[] ranges = new MessageIndexer(stream).index();
+
+                try (SeekableInputStream sis = source.getStream()) {
+                    for (int i = 0; i < ranges.length && !Thread.currentThread().isInterrupted(); i += 2) {
+                        int count = i / 2 + 1;
+                        long offset = ranges[i];
+                        long length = ranges[i + 1] - offset;
+                        try {
+                            Metadata mailMetadata = getMailMetadata(
+                                    new CloseShieldInputStream(new LimitedSeekableInputStream(sis, offset, length)),
+                                    count);
+                            if (emitRanges) {
+                                mailMetadata.set(ExtraProperties.EMBEDDED_OFFSET, Long.toString(offset));
+                                mailMetadata.set(ExtraProperties.EMBEDDED_LENGTH, Long.toString(length));
+                            }
+
+                            if (extractor.shouldParseEmbedded(mailMetadata))
+                                extractor.parseEmbedded(
+                                        new CloseShieldInputStream(new LimitedSeekableInputStream(sis, offset, length)),
+                                        xhtml, mailMetadata, true);
+
+                        } catch (Throwable t) {
+                            if (count == 1)
+                                throw new TikaException("MboxParser Exception", t); //$NON-NLS-1$
+
+                            LOGGER.warn("Error extracting email {} from {}\t{}", count, name, t.toString()); //$NON-NLS-1$
+                        }
+                    }
+                }
+            }
 
-                if (!line.startsWith(MBOX_RECORD_DIVIDER)) {
-                    try {
-                        count++;
-                        ByteArrayOutputStream message = new ByteArrayOutputStream(100000);
-                        do {
+        } finally {
+            tmp.close();
+        }
 
-                            message.write(line.getBytes(charsetName));
-                            message.write(0x0A);
-                            line = reader.readLine();
+        xhtml.endDocument();
 
-                        } while (line != null && !line.startsWith(MBOX_RECORD_DIVIDER)
-                                && message.size() < MAIL_MAX_SIZE);
+    }
 
-                        ByteArrayInputStream messageStream = new ByteArrayInputStream(message.toByteArray());
-                        message = null;
+    /**
+     * Finds the byte ranges of the messages, which are the content between
+     * "From " lines, scanning for line feeds 8 bytes at a time.
+     */
+    private static class MessageIndexer {
+
+        private static final long ONES = 0x0101010101010101L;
+        private static final long HIGH_BITS = 0x8080808080808080L;
+        private static final long LF_WORD = ONES * '\n';
+
+        private final InputStream in;
+        private final byte[] buf = new byte[1 << 20];
+        private final ByteBuffer words = ByteBuffer.wrap(buf).order(ByteOrder.LITTLE_ENDIAN);
+        // stream position of buf[0]
+        private long base = 0;
+        private int len = 0;
+        private boolean eof = false;
+
+        private long[] ranges = new long[1024];
+        private int numRanges = 0;
+
+        private MessageIndexer(InputStream in) {
+            this.in = in;
+        }
 
-                        Metadata mailMetadata = getMailMetadata(messageStream, count);
-                        messageStream.reset();
+        /**
+         * @return start and end offsets of each message
+         */
+        private long[] index() throws IOException {
+            long msgStart = -1;
+            int pos = ensure(0, DIVIDER.length);
+            while (pos < len) {
+                long lineStart = base + pos;
+                if (startsWithDivider(pos)) {
+                    if (msgStart != -1)
+                        addRange(msgStart, lineStart);
+                    msgStart = -1;
+
+                } else if (msgStart == -1) {
+                    msgStart = lineStart;
+                }
 
-                        if (extractor.shouldParseEmbedded(mailMetadata))
-                            extractor.parseEmbedded(messageStream, xhtml, mailMetadata, true);
+                int lf = indexOfLF(pos);
+                while (lf == -1 && !eof) {
+                    lf = indexOfLF(ensure(len, 1));
+                }
+                if (lf == -1)
+                    break;
 
-                    } catch (Throwable t) {
-                        if (count == 1)
-                            throw new TikaException("MboxParser Exception", t); //$NON-NLS-1$
+                pos = ensure(lf + 1, DIVIDER.length);
+            }
+            if (msgStart != -1 && base + len > msgStart)
+                addRange(msgStart, base + len);
 
-                        LOGGER.warn("Error extracting email {} from {}\t{}", count, name, t.toString()); //$NON-NLS-1$
-                    }
+            return Arrays.copyOf(ranges, numRanges);
+        }
 
+        /**
+         * Makes n bytes from pos available in the buffer, unless the end was reached.
+         * 
+         * @return the new buffer position of pos
+         */
+        private int ensure(int pos, int n) throws IOException {
+            if (pos + n <= len || eof)
+                return pos;
+            System.arraycopy(buf, pos, buf, 0, len - pos);
+            base += pos;
+            len -= pos;
+            while (len < buf.length) {
+                int i = in.read(buf, len, buf.length - len);
+                if (i == -1) {
+                    eof = true;
+                    break;
                 }
+                len += i;
+            }
+            return 0;
+        }
 
-            } while (line != null && !Thread.currentThread().isInterrupted());
+        private int indexOfLF(int pos) {
+            for (; pos + 8 <= len; pos += 8) {
+                long x = words.getLong(pos) ^ LF_WORD;
+                long found = (x - ONES) & ~x & HIGH_BITS;
+                if (found != 0)
+                    return pos + (Long.numberOfTrailingZeros(found) >>> 3);
+            }
+            for (; pos < len; pos++)
+                if (buf[pos] == '\n')
+                    return pos;
+            return -1;
+        }
 
-        reader.close();
-        xhtml.endDocument();
+        private boolean startsWithDivider(int pos) {
+            if (pos + DIVIDER.length > len)
+                return false;
+            for (int i = 0; i < DIVIDER.length; i++)
+                if (buf[pos + i] != DIVIDER[i])
+                    return false;
+            return true;
+        }
 
+        private void addRange(long start, long end) {
+            if (numRanges == ranges.length)
+                ranges = Arrays.copyOf(ranges, ranges.length * 2);
+            ranges[numRanges++] = start;
+            ranges[numRanges++] = end;
+        }
+    }
+
+    /**
+     * Reads the message header, the body is not needed to get subject and date.
+     */
+    private static byte[] readHeader(InputStream stream) throws IOException {
+        byte[] header = new byte[8192];
+        int len = 0, i;
+        while (len < MAX_HEADER_SIZE) {
+            if (len == header.length)
+                header = Arrays.copyOf(header, len * 2);
+            if ((i = stream.read(header, len, header.length - len)) == -1)
+                break;
+            int j = Math.max(0, len - 2);
+            len += i;
+            for (; j + 1 < len; j++) {
+                // a blank line ends the header
+                if (header[j] == '\n' && (header[j + 1] == '\n'
+                        || (header[j + 1] == '\r' && j + 2 < len && header[j + 2] == '\n')))
+                    return Arrays.copyOf(header, j + 1);
+            }
+        }
+        return Arrays.copyOf(header, len);
     }
 
     private Metadata getMailMetadata(InputStream stream, int count) throws Exception {
@@ -135,7 +284,8 @@ private Metadata getMailMetadata(InputStream stream, int count) throws Exception
 
         try {
             RFC822Parser parser = new RFC822Parser();
-            parser.parse(stream, new IgnoreContentHandler(), mailMetadata, new ParseContext());
+            parser.parse(new ByteArrayInputStream(readHeader(stream)), new IgnoreContentHandler(), mailMetadata,
+                    new ParseContext());
 
         } catch (Exception e) {
             if (count == 1)
@@ -29,12 +29,15 @@
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -42,6 +45,9 @@
 import java.util.Map;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.imageio.ImageIO;
@@ -113,6 +119,8 @@ public class OCRParser extends AbstractParser {
     public static final String PAGE_SEGMODE_PROP = "ocr.pageSegMode"; //$NON-NLS-1$
     public static final String MIN_SIZE_PROP = "ocr.minFileSize"; //$NON-NLS-1$
     public static final String MAX_SIZE_PROP = "ocr.maxFileSize"; //$NON-NLS-1$
+    public static final String MAX_PROCESSES_PROP = "ocr.maxProcesses"; //$NON-NLS-1$
+    public static final String PAGES_PER_BATCH_PROP = "ocr.pagesPerBatch"; //$NON-NLS-1$
     public static final String SUBSET_TO_OCR = "subsetToOcr"; //$NON-NLS-1$
     public static final String SUBSET_SEPARATOR = "_#_"; //$NON-NLS-1$
     public static final String TEXT_DIR = "text"; //$NON-NLS-1$
@@ -123,12 +131,23 @@ public class OCRParser extends AbstractParser {
     private String PAGESEGMODE = System.getProperty(PAGE_SEGMODE_PROP, "1"); //$NON-NLS-1$
     private int MIN_SIZE = Integer.valueOf(System.getProperty(MIN_SIZE_PROP, "10000")); //$NON-NLS-1$
     private long MAX_SIZE = Integer.valueOf(System.getProperty(MAX_SIZE_PROP, "100000000")); //$NON-NLS-1$
+    private int PAGES_PER_BATCH = Math.max(1, Integer.valueOf(System.getProperty(PAGES_PER_BATCH_PROP, "10"))); //$NON-NLS-1$
     private List<String> bookmarksToOCR = Arrays
             .asList(System.getProperty(SUBSET_TO_OCR, SUBSET_SEPARATOR).split(SUBSET_SEPARATOR)); // $NON-NLS-1$;
 
     private static AtomicBoolean checked = new AtomicBoolean();
     private static String tessVersion = "";
 
+    // tesseract >= 4 accepts a list of images and separates their texts with form feeds
+    private static boolean batchSupported = false;
+
+    // limits running tesseract processes, regardless of how many threads are parsing
+    private static Semaphore processPermits;
+    private static int maxProcesses;
+
+    // shared by all parsers to render PDF pages in parallel
+    private static ExecutorService pdfRenderExecutor;
+
     private static HashMap<File, Connection> connMap = new HashMap<>();
 
     // Root folder to store ocr results
@@ -175,6 +194,10 @@ public OCRParser() {
                     tessVersion = checkVersion(cmd[0], "-v"); //$NON-NLS-1$
                     LOGGER = LoggerFactory.getLogger(OCRParser.class);
                     LOGGER.info("Detected Tesseract " + tessVersion); //$NON-NLS-1$
+                    batchSupported = getMajorVersion(tessVersion) >= 4;
+                    maxProcesses = Math.max(1, Integer.valueOf(System.getProperty(MAX_PROCESSES_PROP,
+                            String.valueOf(Runtime.getRuntime().availableProcessors()))));
+                    processPermits = new Semaphore(maxProcesses);
                 }
             }
             if (ENABLED && Integer.valueOf(tessVersion.charAt(0)) >= 4) { // $NON-NLS-1$
@@ -414,6 +437,7 @@ private void parseTiff(XHTMLContentHandler xhtml, TemporaryResources tmp, File i
             reader.setInput(iis, false, true);
             int numPages = reader.getNumImages(true);
             if (numPages > 3) {
+                List<File> pages = new ArrayList<>();
                 for (int page = 0; page < numPages; page++) {
                     File imageFile = null;
                     try {
@@ -430,13 +454,10 @@ private void parseTiff(XHTMLContentHandler xhtml, TemporaryResources tmp, File i
                         image = getCompatibleImage(image);
                         imageFile = File.createTempFile("iped-ocr", "." + PDFToImage.EXT); //$NON-NLS-1$ //$NON-NLS-2$
                         ImageIO.write(image, PDFToImage.EXT, imageFile);
-                        File imageText = new File(imageFile.getAbsolutePath() + ".txt"); //$NON-NLS-1$
-                        parse(xhtml, imageFile, imageText);
-                        if (imageText.exists()) {
-                            if (outputBase != null)
-                                IOUtil.copiaArquivo(imageText, output, true);
-                            imageText.delete();
-                        }
+                        pages.add(imageFile);
+                        imageFile = null;
+                        if (pages.size() >= PAGES_PER_BATCH)
+                            ocrPages(xhtml, pages, output);
                     } catch (IOException e) {
                         // ignore and try next page
                     } finally {
@@ -444,6 +465,11 @@ private void parseTiff(XHTMLContentHandler xhtml, TemporaryResources tmp, File i
                             imageFile.delete();
                     }
                 }
+                try {
+                    ocrPages(xhtml, pages, output);
+                } catch (IOException e) {
+                    // ignore
+                }
             } else
                 parse(xhtml, input, output);
 
@@ -457,29 +483,105 @@ private void parsePDF(XHTMLContentHandler xhtml, TemporaryResources tmp, File in
             throws IOException, SAXException, TikaException {
 
         PDFToImage pdfConverter = new PDFToImage();
+        File[] texts = null;
         try {
             pdfConverter.load(input);
-            for (int page = 0; page < pdfConverter.getNumPages(); page++) {
-                File imageFile = null;
+            int numChunks = (pdfConverter.getNumPages() + PAGES_PER_BATCH - 1) / PAGES_PER_BATCH;
+            texts = new File[numChunks];
+            int numWorkers = Math.min(numChunks, getMaxPdfRenderers(pdfConverter.getResolution()));
+            new PDFChunkOCR(input, pdfConverter, texts).run(numWorkers);
+
+            // texts are emitted in page order, so the result is the same of sequential OCR
+            for (int i = 0; i < texts.length; i++) {
+                appendOutput(xhtml, texts[i], output);
+                texts[i].delete();
+            }
+        } finally {
+            pdfConverter.close();
+            if (texts != null)
+                for (File text : texts)
+                    if (text != null)
+                        text.delete();
+        }
+    }
+
+    /**
+     * Limits renderers of the same PDF by the number of tesseract processes and
+     * by a quarter of the heap, estimating the memory used by each renderer as
+     * the PDFBox main memory buffer plus an A4 page rendered as ARGB.
+     */
+    private static int getMaxPdfRenderers(int resolution) {
+        long pageMem = 4L * (long) (8.27 * resolution) * (long) (11.69 * resolution);
+        long rendererMem = PDFToImage.MAIN_MEMORY_BUFFER + pageMem;
+        long maxByHeap = Runtime.getRuntime().maxMemory() / 4 / rendererMem;
+        return (int) Math.max(1, Math.min(maxProcesses, maxByHeap));
+    }
+
+    private static synchronized ExecutorService getPdfRenderExecutor() {
+        if (pdfRenderExecutor == null) {
+            pdfRenderExecutor = Executors.newFixedThreadPool(maxProcesses, r -> {
+                Thread t = new Thread(r, "OCRPdfRenderer"); //$NON-NLS-1$
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        return pdfRenderExecutor;
+    }
+
+    /**
+     * Renders and OCRs chunks of PAGES_PER_BATCH pages of a PDF. The parsing
+     * thread works on chunks with the already loaded document, while helper
+     * tasks in a shared bounded pool load their own document, as PDFBox documents
+     * are not thread safe. See {@link ChunkScheduler}.
+     */
+    private class PDFChunkOCR {
+
+        private final File input;
+        private final PDFToImage loadedConverter;
+        private final File[] texts;
+
+        private PDFChunkOCR(File input, PDFToImage loadedConverter, File[] texts) {
+            this.input = input;
+            this.loadedConverter = loadedConverter;
+            this.texts = texts;
+        }
+
+        private void run(int numWorkers) throws IOException, TikaException {
+            ChunkScheduler scheduler = new ChunkScheduler(texts.length);
+            scheduler.run(getPdfRenderExecutor(), numWorkers, chunks -> processChunks(loadedConverter, chunks),
+                    chunks -> {
+                        PDFToImage converter = new PDFToImage();
+                        try {
+                            converter.load(input);
+                            processChunks(converter, chunks);
+                        } finally {
+                            converter.close();
+                        }
+                    });
+        }
+
+        private void processChunks(PDFToImage converter, ChunkScheduler chunks) throws IOException, TikaException {
+            int chunk;
+            while ((chunk = chunks.nextChunk()) != -1) {
+                int start = chunk * PAGES_PER_BATCH;
+                int end = Math.min(start + PAGES_PER_BATCH, converter.getNumPages());
+                List<File> pages = new ArrayList<>();
                 try {
-                    imageFile = File.createTempFile("iped-ocr", "." + PDFToImage.EXT); //$NON-NLS-1$ //$NON-NLS-2$
-                    boolean success = pdfConverter.convert(page, imageFile);
-                    if (!success || !imageFile.exists())
-                        continue;
-                    File imageText = new File(imageFile.getAbsolutePath() + ".txt"); //$NON-NLS-1$
-                    parse(xhtml, imageFile, imageText);
-                    if (imageText.exists()) {
-                        if (outputBase != null)
-                            IOUtil.copiaArquivo(imageText, output, true);
-                        imageText.delete();
+                    for (int page = start; page < end; page++) {
+                        File imageFile = File.createTempFile("iped-ocr", "." + PDFToImage.EXT); //$NON-NLS-1$ //$NON-NLS-2$
+                        pages.add(imageFile);
+                        boolean success = converter.convert(page, imageFile);
+                        if (!success || !imageFile.exists()) {
+                            pages.remove(imageFile);
+                            imageFile.delete();
+                        }
                     }
+                    texts[chunk] = ocrPages(pages);
                 } finally {
-                    if (imageFile != null)
-                        imageFile.delete();
+                    for (File page : pages)
+                        page.delete();
                 }
             }
-        } finally {
-            pdfConverter.close();
         }
     }
 
@@ -516,9 +618,104 @@ private void parsePDF(XHTMLContentHandler xhtml, TemporaryResources tmp, File in
      * //} }
      */
 
+    /**
+     * OCRs rendered pages, deleting them, and appends their text to the handler and
+     * to the output file.
+     */
+    private void ocrPages(XHTMLContentHandler xhtml, List<File> pages, File output)
+            throws IOException, SAXException, TikaException {
+        File text = ocrPages(pages);
+        try {
+            appendOutput(xhtml, text, output);
+        } finally {
+            text.delete();
+        }
+    }
+
+    /**
+     * OCRs rendered pages and deletes them. If supported, all pages are submitted
+     * to the same tesseract process, so languages are loaded once per batch. The
+     * batch text is the same of concatenating each page text, as tesseract ends
+     * every page with a form feed. If the batch fails, pages are retried one by
+     * one.
+     * 
+     * @return a temp file with the OCR text of the pages
+     */
+    private File ocrPages(List<File> pages) throws IOException, TikaException {
+        File result = File.createTempFile("iped-ocr", ".txt"); //$NON-NLS-1$ //$NON-NLS-2$
+        if (pages.isEmpty())
+            return result;
+        try {
+            if (batchSupported && pages.size() > 1) {
+                File listFile = File.createTempFile("iped-ocr", ".lst"); //$NON-NLS-1$ //$NON-NLS-2$
+                File batchText = new File(listFile.getAbsolutePath() + ".txt"); //$NON-NLS-1$
+                try {
+                    List<String> paths = new ArrayList<>();
+                    for (File page : pages)
+                        paths.add(page.getAbsolutePath());
+                    Files.write(listFile.toPath(), paths, StandardCharsets.UTF_8);
+                    boolean success = false;
+                    try {
+                        runTesseract(listFile, batchText);
+                        success = true;
+                    } catch (TikaException e) {
+                        if (Thread.currentThread().isInterrupted())
+                            throw e;
+                        LOGGER.debug("OCR batch of " + filePath + " failed, trying page by page: " + e.toString()); //$NON-NLS-1$ //$NON-NLS-2$
+                    }
+                    if (success) {
+                        if (batchText.exists())
+                            Files.move(batchText.toPath(), result.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                        return result;
+                    }
+                } finally {
+                    listFile.delete();
+                    batchText.delete();
+                }
+            }
+            for (File page : pages) {
+                File imageText = new File(page.getAbsolutePath() + ".txt"); //$NON-NLS-1$
+                try {
+                    runTesseract(page, imageText);
+                    if (imageText.exists())
+                        IOUtil.copiaArquivo(imageText, result, true);
+                } finally {
+                    imageText.delete();
+                }
+            }
+            return result;
+
+        } catch (IOException | TikaException | RuntimeException e) {
+            result.delete();
+            throw e;
+
+        } finally {
+            for (File page : pages)
+                page.delete();
+            pages.clear();
+        }
+    }
+
+    private void appendOutput(XHTMLContentHandler xhtml, File text, File output) throws IOException, SAXException {
+        if (text.exists()) {
+            extractOutput(new FileInputStream(text), xhtml);
+            if (outputBase != null)
+                IOUtil.copiaArquivo(text, output, true);
+        }
+    }
+
     private void parse(XHTMLContentHandler xhtml, File input, File output)
             throws IOException, SAXException, TikaException {
 
+        runTesseract(input, output);
+
+        if (output.exists())
+            extractOutput(new FileInputStream(output), xhtml);
+
+    }
+
+    private void runTesseract(File input, File output) throws IOException, TikaException {
+
         // Build our command
         String[] cmd = new String[command.length];
         System.arraycopy(command, 0, cmd, 0, command.length);
@@ -537,32 +734,39 @@ private void parse(XHTMLContentHandler xhtml, File input, File output)
         // try to disable OpenMP
         env.put("OMP_THREAD_LIMIT", "1"); //$NON-NLS-1$ //$NON-NLS-2$
 
-        Process process = pb.start();
-
-        process.getOutputStream().close();
-
-        InputStream out = process.getInputStream();
-        InputStream err = process.getErrorStream();
-
-        logStream("OCR MSG", out); //$NON-NLS-1$
-        logStream("OCR ERROR", err); //$NON-NLS-1$
-
         try {
-            int status = process.waitFor();
-            if (status != 0) {
-                throw new TikaException("tesseract returned error code " + status);
-            }
+            processPermits.acquire();
         } catch (InterruptedException e) {
-            // System.out.println(new Date() + "\t[AVISO]\t" +
-            // "Interrompendo OCRParsing of " + input.getPath());
-            process.destroyForcibly();
             Thread.currentThread().interrupt();
             throw new TikaException(this.getClass().getSimpleName() + " interrupted", e); //$NON-NLS-1$
-
         }
-        if (output.exists())
-            extractOutput(new FileInputStream(output), xhtml);
+        try {
+            Process process = pb.start();
+
+            process.getOutputStream().close();
+
+            InputStream out = process.getInputStream();
+            InputStream err = process.getErrorStream();
+
+            logStream("OCR MSG", out); //$NON-NLS-1$
+            logStream("OCR ERROR", err); //$NON-NLS-1$
+
+            try {
+                int status = process.waitFor();
+                if (status != 0) {
+                    throw new TikaException("tesseract returned error code " + status);
+                }
+            } catch (InterruptedException e) {
+                // System.out.println(new Date() + "\t[AVISO]\t" +
+                // "Interrompendo OCRParsing of " + input.getPath());
+                process.destroyForcibly();
+                Thread.currentThread().interrupt();
+                throw new TikaException(this.getClass().getSimpleName() + " interrupted", e); //$NON-NLS-1$
 
+            }
+        } finally {
+            processPermits.release();
+        }
     }
 
     /**
@@ -641,6 +845,13 @@ public static String checkVersion(String... checkCmd) throws IOException, Interr
         }
     }
 
+    private static int getMajorVersion(String version) {
+        int i = 0;
+        while (i < version.length() && Character.isDigit(version.charAt(i)))
+            i++;
+        return i == 0 ? 0 : Integer.parseInt(version.substring(0, i));
+    }
+
     private static String extractVersion(InputStream is) throws IOException {
         String version = IOUtils.readLines(is).get(0).replace("tesseract", "").trim(); //$NON-NLS-1$ //$NON-NLS-2$
         if (version.startsWith("v")) {
@@ -72,6 +72,7 @@
 import dpf.sp.gpinf.indexer.parsers.util.ItemInfo;
 import dpf.sp.gpinf.indexer.parsers.util.Messages;
 import dpf.sp.gpinf.indexer.parsers.util.Util;
+import dpf.sp.gpinf.indexer.util.IOUtil;
 import dpf.sp.gpinf.indexer.util.SimpleHTMLEncoder;
 import iped3.util.ExtraProperties;
 
@@ -101,9 +102,15 @@ public class OutlookPSTParser extends AbstractParser {
 
     private boolean recoverDeleted = true;
     private boolean useLibpffParser = true;
+    private boolean useMappedFile = true;
 
     private int numEmails = 0;
 
+    @Field
+    public void setUseMappedFile(boolean value) {
+        this.useMappedFile = value;
+    }
+
     @Override
     public Set<MediaType> getSupportedTypes(ParseContext arg0) {
         return SUPPORTED_TYPES;
@@ -126,6 +133,7 @@ public void parse(InputStream stream, ContentHandler handler, Metadata metadata,
         OutlookPSTParser pstParser = new OutlookPSTParser();
         pstParser.setRecoverDeleted(recoverDeleted);
         pstParser.setUseLibpffParser(useLibpffParser);
+        pstParser.setUseMappedFile(useMappedFile);
         pstParser.safeParse(stream, handler, metadata, context);
     }
 
@@ -150,7 +158,7 @@ private void safeParse(InputStream stream, ContentHandler handler, Metadata meta
         try {
             tis = TikaInputStream.get(stream, tmp);
             tmpFile = tis.getFile();
-            pstFile = new PSTFile(tmpFile);
+            pstFile = new PSTFile(tmpFile, useMappedFile && IOUtil.canMapFile(tmpFile));
 
             if (extractor.shouldParseEmbedded(metadata))
                 walkFolder(pstFile.getRootFolder(), "", -1); //$NON-NLS-1$
@@ -188,8 +196,8 @@ private void safeParse(InputStream stream, ContentHandler handler, Metadata meta
             }
 
         } finally {
-            if (pstFile != null && pstFile.getFileHandle() != null)
-                pstFile.getFileHandle().close();
+            if (pstFile != null)
+                pstFile.close();
             tmp.close();
         }
 
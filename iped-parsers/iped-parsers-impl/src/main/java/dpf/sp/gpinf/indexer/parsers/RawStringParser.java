@@ -25,6 +25,8 @@
 import java.io.StringWriter;
 import java.io.UnsupportedEncodingException;
 import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.Set;
@@ -46,6 +48,8 @@
  * Parser que extrai strings brutas de um arquivo qualquer. Útil para binários,
  * tipos desconhecidos e drivefreespace. É utilizada uma heurística para
  * detectar codificações ISO-8859-1, UTF-8 e UTF-16 mescladas num mesmo arquivo.
+ * Palavras de 8 bytes com zeros, ASCII ou UTF-16 ASCII são classificadas de uma
+ * só vez, os demais bytes são tratados um a um.
  */
 public class RawStringParser extends AbstractParser {
 
@@ -112,6 +116,36 @@ private static final boolean isChar(byte c) {
         return isChar[c & 0xFF];
     }
 
+    private static final long ONES = 0x0101010101010101L;
+    private static final long HIGH_BITS = 0x8080808080808080L;
+    private static final long UTF16_LE_HIGH_BYTES = 0xFF00FF00FF00FF00L;
+    private static final long UTF16_BE_HIGH_BYTES = 0x00FF00FF00FF00FFL;
+
+    /**
+     * @return true if all 8 bytes are in the range 0x20-0x7E, which are always
+     *         appended to the current string.
+     */
+    private static final boolean isPrintableAscii(long w) {
+        long hasLess = (w - ONES * 0x20) & ~w & HIGH_BITS;
+        long hasMore = ((w + ONES * (127 - 0x7E)) | w) & HIGH_BITS;
+        return (hasLess | hasMore) == 0;
+    }
+
+    /**
+     * Zeros between UTF-16 chars are ignored only if the bytes two positions
+     * before and after them are not chars, so the neighbours of the word are
+     * checked too.
+     */
+    private static final boolean isUTF16LE(long w, byte[] input, int inPos, int inSize) {
+        return (w & UTF16_LE_HIGH_BYTES) == 0 && isPrintableAscii(w | (ONES * 0x41 & UTF16_LE_HIGH_BYTES))
+                && !(inPos >= 1 && isChar(input[inPos - 1])) && !(inPos + 9 < inSize && isChar(input[inPos + 9]));
+    }
+
+    private static final boolean isUTF16BE(long w, byte[] input, int inPos, int inSize) {
+        return (w & UTF16_BE_HIGH_BYTES) == 0 && isPrintableAscii(w | (ONES * 0x41 & UTF16_BE_HIGH_BYTES))
+                && !(inPos >= 2 && isChar(input[inPos - 2])) && !(inPos + 8 < inSize && isChar(input[inPos + 8]));
+    }
+
     private void flushBuffer() throws SAXException {
         if (tmpPos - bufPos >= MIN_SIZE)
             bufPos = tmpPos - MIN_SIZE;
@@ -137,6 +171,7 @@ public Set<MediaType> getSupportedTypes(ParseContext arg0) {
     int tmpPos = 0, bufPos = 0;
     byte[] buf = new byte[BUF_SIZE];
     byte[] input = new byte[BUF_SIZE];
+    ByteBuffer inputWords = ByteBuffer.wrap(input).order(ByteOrder.LITTLE_ENDIAN);
     ContentHandler handler;
     // int zeros = 0;
 
@@ -176,6 +211,35 @@ private void safeParse(InputStream stream, ContentHandler handler, Metadata meta
             }
             int inPos = 0;
             while (inPos < inSize) {
+                if (inPos + 8 <= inSize) {
+                    // classifies 8 bytes at a time, falling back to the byte by byte path below
+                    long w = inputWords.getLong(inPos);
+                    if (w == 0 && tmpPos == bufPos && MIN_SIZE > 0) {
+                        // zeros are ignored when there is no pending string
+                        inPos += 8;
+                        continue;
+                    }
+                    if (isPrintableAscii(w) && tmpPos + 8 <= BUF_SIZE) {
+                        System.arraycopy(input, inPos, buf, tmpPos, 8);
+                        inPos += 8;
+                        tmpPos += 8;
+                        if (tmpPos == BUF_SIZE)
+                            flushBuffer();
+                        continue;
+                    }
+                    if (tmpPos + 4 <= BUF_SIZE
+                            && (isUTF16LE(w, input, inPos, inSize) || isUTF16BE(w, input, inPos, inSize))) {
+                        int k = (w & UTF16_LE_HIGH_BYTES) == 0 ? inPos : inPos + 1;
+                        buf[tmpPos++] = input[k];
+                        buf[tmpPos++] = input[k + 2];
+                        buf[tmpPos++] = input[k + 4];
+                        buf[tmpPos++] = input[k + 6];
+                        inPos += 8;
+                        if (tmpPos == BUF_SIZE)
+                            flushBuffer();
+                        continue;
+                    }
+                }
                 byte c = input[inPos++];
                 boolean utf8 = false;
                 if (c == (byte) 0xC3) {
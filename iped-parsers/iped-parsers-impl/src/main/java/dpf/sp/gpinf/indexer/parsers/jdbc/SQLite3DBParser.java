@@ -19,8 +19,6 @@
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.nio.file.Files;
-import java.nio.file.StandardCopyOption;
 import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
@@ -31,14 +29,14 @@
 
 import org.apache.tika.io.IOExceptionWithCause;
 import org.apache.tika.io.TemporaryResources;
-import org.apache.tika.io.TikaInputStream;
 import org.apache.tika.metadata.Metadata;
 import org.apache.tika.mime.MediaType;
 import org.apache.tika.parser.ParseContext;
 import org.sqlite.SQLiteConfig;
 
 import dpf.sp.gpinf.indexer.parsers.util.DelegatingConnection;
-import dpf.sp.gpinf.indexer.util.IOUtil;
+import dpf.sp.gpinf.indexer.parsers.util.ItemContentStream;
+import dpf.sp.gpinf.indexer.parsers.util.MaterializedFile;
 import iped3.io.IItemBase;
 import iped3.search.IItemSearcher;
 import iped3.util.BasicProps;
@@ -54,6 +52,8 @@ public class SQLite3DBParser extends AbstractDBParser {
 
     protected static final String SQLITE_CLASS_NAME = "org.sqlite.JDBC"; //$NON-NLS-1$
 
+    private static final String WAL_SUFFIX = "-wal"; //$NON-NLS-1$
+
     /**
      *
      * @param context
@@ -74,58 +74,67 @@ protected Connection getConnection(InputStream stream, Metadata metadata, ParseC
             throw new IOExceptionWithCause(e);
         }
         TemporaryResources tmp = new TemporaryResources();
+        MaterializedFile dbFile = null;
+        boolean success = false;
         try {
-            File dbFile = TikaInputStream.get(stream, tmp).getFile();
-            boolean isTempDb = IOUtil.isTemporaryFile(dbFile);
-            if (isTempDb)
-                exportWalLog(dbFile, context);
+            dbFile = MaterializedFile.acquire(stream, tmp, context);
+            if (dbFile.isTemporary() && !dbFile.hasCompanion(WAL_SUFFIX))
+                exportWalLog(dbFile, stream, context);
 
             SQLiteConfig config = new SQLiteConfig();
             config.setReadOnly(true);
 
-            String connectionString = getConnectionString(dbFile);
+            String connectionString = getConnectionString(dbFile.getFile());
             connection = config.createConnection(connectionString);
 
+            final MaterializedFile sharedDbFile = dbFile;
             connection = new DelegatingConnection(connection) {
                 @Override
                 public void close() throws SQLException {
-                    super.close();
                     try {
-                        tmp.close();
-                        if (isTempDb) {
-                            // these files may be created by sqlite, even if wal was not exported
-                            new File(dbFile.getAbsolutePath() + "-wal").delete();
-                            new File(dbFile.getAbsolutePath() + "-shm").delete();
+                        super.close();
+                    } finally {
+                        // wal and shm files may be created by sqlite, they are deleted by the last
+                        // consumer of the shared db file
+                        sharedDbFile.close();
+                        try {
+                            tmp.close();
+                        } catch (IOException e) {
+                            throw new SQLException(e);
                         }
-                    } catch (IOException e) {
-                        throw new SQLException(e);
                     }
                 }
             };
+            success = true;
 
         } catch (SQLException e) {
             throw new IOException(e.getMessage());
+
+        } finally {
+            if (!success) {
+                if (dbFile != null)
+                    dbFile.close();
+                tmp.close();
+            }
         }
         return connection;
     }
 
-    private File exportWalLog(File dbFile, ParseContext context) {
+    private File exportWalLog(MaterializedFile dbFile, InputStream stream, ParseContext context) {
         IItemSearcher searcher = context.get(IItemSearcher.class);
         if (searcher != null) {
-            IItemBase dbItem = context.get(IItemBase.class);
+            // the wal is looked up by the item path, only if the db is the item content
+            IItemBase dbItem = ItemContentStream.getItem(stream, context);
             if (dbItem != null) {
                 String dbPath = dbItem.getPath();
-                String walQuery = BasicProps.PATH + ":\"" + searcher.escapeQuery(dbPath + "-wal") + "\"";
+                String walQuery = BasicProps.PATH + ":\"" + searcher.escapeQuery(dbPath + WAL_SUFFIX) + "\"";
                 List<IItemBase> items = searcher.search(walQuery);
                 if (items.size() > 0) {
-                    IItemBase wal = items.get(0);
-                    File walTemp = new File(dbFile.getAbsolutePath() + "-wal");
-                    try (InputStream in = wal.getBufferedStream()) {
-                        Files.copy(in, walTemp.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                    try {
+                        return dbFile.attachCompanion(WAL_SUFFIX, items.get(0));
                     } catch (IOException e) {
                         e.printStackTrace();
                     }
-                    return walTemp;
                 }
             }
         }
@@ -0,0 +1,69 @@
+package dpf.sp.gpinf.indexer.parsers.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.commons.io.output.DeferredFileOutputStream;
+import org.apache.tika.io.TikaInputStream;
+
+/**
+ * A chat report page kept in memory while small and written to a temp file
+ * after MAX_MEMORY_SIZE bytes, so huge chats are rendered with bounded memory
+ * without touching the disk for the usual small pages. The written size is
+ * tracked to let report generators decide where to split the chat.
+ */
+public class ChatReportPage implements Closeable {
+
+    private static final int MAX_MEMORY_SIZE = 1 << 20;
+
+    private final DeferredFileOutputStream output;
+    private final PrintWriter writer;
+
+    public ChatReportPage() {
+        output = new DeferredFileOutputStream(MAX_MEMORY_SIZE, "chatreport", ".html", null); //$NON-NLS-1$ //$NON-NLS-2$
+        writer = new PrintWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+    }
+
+    public PrintWriter getWriter() {
+        return writer;
+    }
+
+    /**
+     * @return bytes written so far, not counting the few chars still buffered
+     *         by the writer encoder
+     */
+    public long size() {
+        return output.getByteCount();
+    }
+
+    /**
+     * Finishes the page and returns a stream over its content. The stream is
+     * valid until this page is closed.
+     */
+    public InputStream getInputStream() throws IOException {
+        writer.close();
+        if (writer.checkError()) {
+            throw new IOException("Error writing chat report to " + output.getFile()); //$NON-NLS-1$
+        }
+        if (output.isInMemory()) {
+            return new ByteArrayInputStream(output.getData());
+        }
+        return TikaInputStream.get(output.getFile().toPath());
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+        File file = output.getFile();
+        if (file != null && file.exists() && !file.delete()) {
+            file.deleteOnExit();
+        }
+    }
+
+}
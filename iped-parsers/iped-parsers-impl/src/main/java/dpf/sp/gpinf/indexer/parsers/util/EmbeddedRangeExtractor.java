@@ -0,0 +1,18 @@
+package dpf.sp.gpinf.indexer.parsers.util;
+
+import org.apache.tika.extractor.EmbeddedDocumentExtractor;
+
+import iped3.util.ExtraProperties;
+
+/**
+ * Extractor which creates a subitem as a range of the item being parsed, instead
+ * of copying its content, if the subitem metadata has
+ * {@link ExtraProperties#EMBEDDED_OFFSET} and
+ * {@link ExtraProperties#EMBEDDED_LENGTH}. Other extractors would keep them as
+ * plain metadata, so parsers must only set them if the extractor implements
+ * this and the stream being parsed is the item content, see
+ * {@link ItemContentStream}.
+ */
+public interface EmbeddedRangeExtractor extends EmbeddedDocumentExtractor {
+
+}
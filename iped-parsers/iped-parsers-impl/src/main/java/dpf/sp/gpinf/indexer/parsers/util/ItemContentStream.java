@@ -0,0 +1,67 @@
+package dpf.sp.gpinf.indexer.parsers.util;
+
+import java.io.InputStream;
+
+import org.apache.tika.parser.ParseContext;
+
+import iped3.io.IItemBase;
+
+/**
+ * Stream with the content of the item configured in the parsing context, set by
+ * the task parsing the item. Subitems parsed inline share the context of their
+ * container, so parsers must check they are parsing this stream before reading
+ * the content from the item in the context, like its local file or random
+ * access to its stream.
+ *
+ * Detectors do not get a parsing context, so the task detecting the type of an
+ * item sets a context with it for the current thread, see
+ * {@link #startDetection(IItemBase, InputStream)}.
+ */
+public class ItemContentStream {
+
+    private static final ThreadLocal<ParseContext> detectionContext = new ThreadLocal<>();
+
+    private final InputStream stream;
+
+    public ItemContentStream(InputStream stream) {
+        this.stream = stream;
+    }
+
+    /**
+     * @return the item in the context, if stream is its content, null otherwise.
+     */
+    public static IItemBase getItem(InputStream stream, ParseContext context) {
+        if (context == null || stream == null) {
+            return null;
+        }
+        IItemBase item = context.get(IItemBase.class);
+        ItemContentStream itemStream = context.get(ItemContentStream.class);
+        if (item != null && itemStream != null && itemStream.stream == stream) {
+            return item;
+        }
+        return null;
+    }
+
+    /**
+     * Sets the item whose stream is being passed to the detectors by this thread,
+     * until {@link #endDetection()} is called.
+     */
+    public static void startDetection(IItemBase item, InputStream stream) {
+        ParseContext context = new ParseContext();
+        context.set(IItemBase.class, item);
+        context.set(ItemContentStream.class, new ItemContentStream(stream));
+        detectionContext.set(context);
+    }
+
+    public static void endDetection() {
+        detectionContext.remove();
+    }
+
+    /**
+     * @return the context with the item being detected by this thread, or null.
+     */
+    public static ParseContext getDetectionContext() {
+        return detectionContext.get();
+    }
+
+}
@@ -0,0 +1,176 @@
+package dpf.sp.gpinf.indexer.parsers.util;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import org.apache.tika.io.TemporaryResources;
+import org.apache.tika.io.TikaInputStream;
+import org.apache.tika.parser.ParseContext;
+
+import dpf.sp.gpinf.indexer.util.IOUtil;
+import iped3.IItem;
+import iped3.io.IItemBase;
+import iped3.io.IStreamSource;
+
+/**
+ * Reference counted local file with the content of an item, shared by parsers
+ * and detectors that need a File instead of a stream, like the sqlite based
+ * ones. The file is the item original file or its temp file, so the content is
+ * materialized at most once and the copy is deleted with the item. Companion
+ * files (eg sqlite -wal and -journal) can be attached beside temporary copies
+ * and are deleted when the last consumer closes its reference.
+ */
+public class MaterializedFile implements Closeable {
+
+    /**
+     * Companion files sqlite may create beside a database, even if not attached.
+     */
+    private static final String[] SQLITE_COMPANIONS = { "-wal", "-shm", "-journal" }; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+
+    private static final String ITEM_ATTR = MaterializedFile.class.getName();
+
+    /**
+     * State shared by the references to the same file, all accesses are
+     * synchronized on it.
+     */
+    private static class Entry {
+
+        private final File file;
+        private final boolean temporary;
+        private final Set<String> companions = new LinkedHashSet<>();
+        private int refs = 0;
+        private boolean released = false;
+
+        private Entry(File file) {
+            this.file = file;
+            this.temporary = IOUtil.isTemporaryFile(file);
+        }
+    }
+
+    private final Entry entry;
+    private boolean closed = false;
+
+    private MaterializedFile(Entry entry) {
+        this.entry = entry;
+    }
+
+    /**
+     * Gets a reference to a local file with the stream content. If the stream is
+     * the content of the item in the context, the item file is shared. Otherwise,
+     * if the stream is not backed by a file, it is spooled into a temp file
+     * managed by tmp.
+     */
+    public static MaterializedFile acquire(InputStream stream, TemporaryResources tmp, ParseContext context)
+            throws IOException {
+        IItemBase item = ItemContentStream.getItem(stream, context);
+        if (item != null) {
+            return acquire(item);
+        }
+        Entry entry = new Entry(TikaInputStream.get(stream, tmp).getFile());
+        entry.refs = 1;
+        return new MaterializedFile(entry);
+    }
+
+    /**
+     * Gets a reference to a local file with the item content, reusing the item
+     * original file or its (single) temp file, which is deleted with the item.
+     */
+    public static MaterializedFile acquire(IItemBase item) throws IOException {
+        if (!(item instanceof IItem)) {
+            Entry entry = new Entry(item.getTempFile());
+            entry.refs = 1;
+            return new MaterializedFile(entry);
+        }
+        IItem sharedItem = (IItem) item;
+        synchronized (sharedItem) {
+            Entry entry = (Entry) sharedItem.getTempAttribute(ITEM_ATTR);
+            if (entry != null) {
+                synchronized (entry) {
+                    if (!entry.released) {
+                        entry.refs++;
+                        return new MaterializedFile(entry);
+                    }
+                }
+            }
+            entry = new Entry(item.getTempFile());
+            entry.refs = 1;
+            sharedItem.setTempAttribute(ITEM_ATTR, entry);
+            return new MaterializedFile(entry);
+        }
+    }
+
+    public File getFile() {
+        return entry.file;
+    }
+
+    /**
+     * @return true if the file is a temporary copy, so companion files can be
+     *         created beside it.
+     */
+    public boolean isTemporary() {
+        return entry.temporary;
+    }
+
+    public boolean hasCompanion(String suffix) {
+        synchronized (entry) {
+            return entry.companions.contains(suffix);
+        }
+    }
+
+    /**
+     * Copies the source content beside the materialized file, with the same name
+     * plus suffix, if not attached yet. Nothing is written beside original
+     * evidence files.
+     *
+     * @return the companion file, or null if it could not be attached.
+     */
+    public File attachCompanion(String suffix, IStreamSource source) throws IOException {
+        if (!entry.temporary) {
+            return null;
+        }
+        File companion = new File(entry.file.getAbsolutePath() + suffix);
+        synchronized (entry) {
+            if (entry.released) {
+                return null;
+            }
+            if (!entry.companions.contains(suffix)) {
+                try (InputStream in = source.getStream()) {
+                    Files.copy(in, companion.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                }
+                entry.companions.add(suffix);
+            }
+        }
+        return companion;
+    }
+
+    @Override
+    public void close() {
+        synchronized (entry) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (--entry.refs > 0) {
+                return;
+            }
+            // deleted under the lock, so a new reference does not see them
+            entry.released = true;
+            if (entry.temporary) {
+                Set<String> suffixes = new LinkedHashSet<>(entry.companions);
+                for (String suffix : SQLITE_COMPANIONS) {
+                    suffixes.add(suffix);
+                }
+                for (String suffix : suffixes) {
+                    new File(entry.file.getAbsolutePath() + suffix).delete();
+                }
+            }
+        }
+    }
+
+}
@@ -64,6 +64,11 @@ public class PDFToImage implements Closeable {
     public static final String EXTERNAL_CONV_PROP = "pdfToImg.externalConv"; //$NON-NLS-1$
     public static final String EXTERNAL_CONV_MAXMEM_PROP = "pdfToImg.maxMem"; //$NON-NLS-1$
 
+    /**
+     * Main memory used by each loaded document, the rest is kept in temp files.
+     */
+    public static final long MAIN_MEMORY_BUFFER = 10000000;
+
     private String PDFLIB = System.getProperty(PDFLIB_PROP, PDFBOX);
     private int RESOLUTION = Integer.valueOf(System.getProperty(RESOLUTION_PROP, "250")); //$NON-NLS-1$
     private boolean externalConversion = Boolean.valueOf(System.getProperty(EXTERNAL_CONV_PROP, "false")); //$NON-NLS-1$
@@ -102,11 +107,15 @@ public int getNumPages() {
         return numPages;
     }
 
+    public int getResolution() {
+        return RESOLUTION;
+    }
+
     public void load(File pdfFile) throws TikaException, IOException {
         input = pdfFile;
         try {
             if (PDFLIB.equals(PDFBOX)) {
-                document = PDDocument.load(pdfFile, MemoryUsageSetting.setupMixed(10000000));
+                document = PDDocument.load(pdfFile, MemoryUsageSetting.setupMixed(MAIN_MEMORY_BUFFER));
                 document.setResourceCache(new NoResourceCache());
                 pdfRenderer = new PDFRenderer(document);
                 pdfRenderer.setSubsamplingAllowed(true);
@@ -0,0 +1,125 @@
+package dpf.inc.sepinf.UsnJrnl;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import dpf.sp.gpinf.indexer.util.SeekableFileInputStream;
+import iped3.io.IStreamSource;
+import iped3.io.SeekableInputStream;
+
+/**
+ * Parses a synthetic sparse $J with 1 and N threads, checking both results are
+ * equal. Usage: UsnJrnlParserBenchmark [sizeInGB] [threads]. All entries are
+ * collected in memory to be compared, so multi-GB journals need a large heap
+ * (eg -Xmx8g).
+ */
+public class UsnJrnlParserBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        long size = (args.length > 0 ? Long.parseLong(args[0]) : 4) << 30;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+
+        File file = File.createTempFile("UsnJrnl", ".bin"); //$NON-NLS-1$ //$NON-NLS-2$
+        file.deleteOnExit();
+        long start = createJournal(file, size);
+        System.out.println("Journal size " + size + " first record at " + start); //$NON-NLS-1$ //$NON-NLS-2$
+
+        IStreamSource source = new IStreamSource() {
+            @Override
+            public SeekableInputStream getStream() throws IOException {
+                return new SeekableFileInputStream(file);
+            }
+
+            @Override
+            public SeekableByteChannel getSeekableByteChannel() throws IOException {
+                return Files.newByteChannel(file.toPath(), StandardOpenOption.READ);
+            }
+
+            @Override
+            public File getFile() {
+                return file;
+            }
+        };
+
+        List<UsnJrnlEntry> expected = null;
+        for (int numThreads : new int[] { 1, threads }) {
+            long t = System.currentTimeMillis();
+            long first;
+            try (SeekableInputStream sis = source.getStream()) {
+                first = new UsnJrnlParser().jumpZeros(sis, 0, size);
+            }
+            List<UsnJrnlEntry> entries = new ArrayList<>();
+            new UsnJrnlSegmentParser(source, size).parse(first, numThreads, 10000, batch -> entries.addAll(batch));
+            t = System.currentTimeMillis() - t;
+            System.out.println(numThreads + " threads: " + entries.size() + " entries in " + t + "ms"); //$NON-NLS-1$ //$NON-NLS-2$
+
+            if (expected == null) {
+                expected = entries;
+            } else if (!sameEntries(expected, entries)) {
+                throw new AssertionError("Results differ from sequential parsing"); //$NON-NLS-1$
+            }
+        }
+    }
+
+    private static boolean sameEntries(List<UsnJrnlEntry> a, List<UsnJrnlEntry> b) {
+        if (a.size() != b.size()) {
+            return false;
+        }
+        for (int i = 0; i < a.size(); i++) {
+            if (a.get(i).getOffset() != b.get(i).getOffset() || a.get(i).getUSN() != b.get(i).getUSN()
+                    || !a.get(i).getFileName().equals(b.get(i).getFileName())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Writes v2 records in the last quarter of a sparse file, with some zeroed
+     * gaps and records not aligned to the segment boundaries.
+     */
+    private static long createJournal(File file, long size) throws IOException {
+        long start = size - size / 4;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) { //$NON-NLS-1$
+            raf.setLength(size);
+            raf.seek(start);
+            ByteBuffer bb = ByteBuffer.allocate(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+            long pos = start, usn = 0;
+            while (pos < size - 4096) {
+                byte[] name = ("file_" + usn + ".txt").getBytes(StandardCharsets.UTF_16LE); //$NON-NLS-1$ //$NON-NLS-2$
+                int tam = (60 + name.length + 7) & ~7;
+                if (bb.remaining() < tam + 4096) {
+                    bb.flip();
+                    pos += raf.getChannel().write(bb, pos);
+                    bb.clear();
+                    Arrays.fill(bb.array(), (byte) 0);
+                }
+                if (usn % 100000 == 0) {
+                    // zeroed gap between records
+                    bb.position(bb.position() + 4096);
+                }
+                int recordStart = bb.position();
+                bb.putInt(tam).putShort((short) 2).putShort((short) 0);
+                bb.putLong(usn + 1000).putLong(5);
+                bb.putLong(usn).putLong(132000000000000000L + usn);
+                bb.putInt(0x100).putInt(0).putInt(0).putInt(0x20);
+                bb.putShort((short) name.length).putShort((short) 60);
+                bb.put(name);
+                bb.position(recordStart + tam);
+                usn++;
+            }
+        }
+        return start;
+    }
+
+}
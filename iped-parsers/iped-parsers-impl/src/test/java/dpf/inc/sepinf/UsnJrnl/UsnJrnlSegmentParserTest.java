@@ -0,0 +1,172 @@
+package dpf.inc.sepinf.UsnJrnl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.xml.sax.SAXException;
+
+import dpf.sp.gpinf.indexer.util.FileContentSource;
+import iped3.io.IStreamSource;
+import iped3.io.SeekableInputStream;
+
+/**
+ * Compares the segmented parser with the record by record sequential reader on
+ * a small journal split in segments smaller than the records around them.
+ */
+public class UsnJrnlSegmentParserTest {
+
+    private static final int SEGMENT_SIZE = 1000;
+
+    private File file;
+    private IStreamSource source;
+    private long size;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("UsnJrnl", ".bin"); //$NON-NLS-1$ //$NON-NLS-2$
+        Files.write(file.toPath(), createJournal());
+        source = new FileContentSource(file);
+        size = file.length();
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void testSegmentedEqualsSequential() throws IOException, SAXException {
+        UsnJrnlParser parser = new UsnJrnlParser();
+        List<UsnJrnlEntry> expected = new ArrayList<>();
+        long start;
+        try (SeekableInputStream sis = source.getStream()) {
+            start = parser.jumpZeros(sis, 0, size);
+            while (parser.findNextEntry(sis)) {
+                UsnJrnlEntry u = parser.readEntry(sis);
+                if (u != null) {
+                    expected.add(u);
+                }
+            }
+        }
+        assertEquals(300, expected.size());
+
+        boolean straddles = false;
+        for (UsnJrnlEntry u : expected) {
+            long first = (u.getOffset() - start) / SEGMENT_SIZE;
+            long last = (u.getOffset() + u.getTam() - 1 - start) / SEGMENT_SIZE;
+            straddles |= first != last;
+        }
+        assertTrue(straddles);
+
+        for (int threads : new int[] { 1, 4 }) {
+            List<List<UsnJrnlEntry>> batches = new ArrayList<>();
+            new UsnJrnlSegmentParser(source, size, SEGMENT_SIZE).parse(start, threads, 7,
+                    batch -> batches.add(batch));
+
+            List<UsnJrnlEntry> entries = new ArrayList<>();
+            for (int i = 0; i < batches.size(); i++) {
+                if (i < batches.size() - 1) {
+                    assertEquals(7, batches.get(i).size());
+                }
+                entries.addAll(batches.get(i));
+            }
+            assertEquals(expected.size(), entries.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertSameEntry(expected.get(i), entries.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void testConsumerErrorStopsParsing() throws SAXException {
+        for (int threads : new int[] { 1, 4 }) {
+            try {
+                new UsnJrnlSegmentParser(source, size, SEGMENT_SIZE).parse(0, threads, 7, batch -> {
+                    throw new IOException("test"); //$NON-NLS-1$
+                });
+                fail();
+            } catch (IOException e) {
+                assertEquals("test", e.getMessage()); //$NON-NLS-1$
+            }
+        }
+    }
+
+    private static void assertSameEntry(UsnJrnlEntry expected, UsnJrnlEntry u) {
+        assertEquals(expected.getOffset(), u.getOffset());
+        assertEquals(expected.getTam(), u.getTam());
+        assertEquals(expected.getMajorVersion(), u.getMajorVersion());
+        assertEquals(expected.getUSN(), u.getUSN());
+        assertEquals(expected.getFileName(), u.getFileName());
+        assertEquals(expected.getFileTime(), u.getFileTime());
+        assertEquals(expected.getReasonFlag(), u.getReasonFlag());
+        assertEquals(expected.getFileAttributes(), u.getFileAttributes());
+        assertArrayEquals(expected.getMftRef(), u.getMftRef());
+        assertArrayEquals(expected.getParentMftRef(), u.getParentMftRef());
+    }
+
+    /**
+     * Zeroed leading region followed by v2 and v3 records with names of varying
+     * length, zeroed gaps, some garbage and invalid records.
+     */
+    private static byte[] createJournal() {
+        ByteBuffer bb = ByteBuffer.allocate(3 * 4096 + 300 * 200).order(ByteOrder.LITTLE_ENDIAN);
+        bb.position(3 * 4096);
+        for (int usn = 0; usn < 300; usn++) {
+            if (usn % 50 == 10) {
+                bb.position(bb.position() + 64);
+            }
+            if (usn % 70 == 20) {
+                // garbage not aligned to 8 bytes
+                bb.put(new byte[] { 0x11, 0x22, 0x33 });
+                bb.position(bb.position() + 13);
+            }
+            if (usn % 90 == 30) {
+                // name beyond the record size
+                bb.putInt(64).putShort((short) 2).putShort((short) 0);
+                bb.position(bb.position() + 48);
+                bb.putShort((short) 200).putShort((short) 60);
+                bb.position(bb.position() + 4);
+            }
+            int major = usn % 3 == 0 ? 3 : 2;
+            int refLen = major == 3 ? 16 : 8;
+            byte[] name = ("file_" + usn + "_" + "abcdefghij".substring(usn % 10) + ".txt") //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+                    .getBytes(StandardCharsets.UTF_16LE);
+            int headerLen = 60 + 2 * (refLen - 8);
+            int tam = (headerLen + name.length + 7) & ~7;
+            int recordStart = bb.position();
+            bb.putInt(tam).putShort((short) major).putShort((short) 0);
+            bb.putLong(usn + 1000);
+            if (major == 3) {
+                bb.putLong(0);
+            }
+            bb.putLong(5);
+            if (major == 3) {
+                bb.putLong(0);
+            }
+            bb.putLong(usn).putLong(132000000000000000L + usn * 10000000L);
+            bb.putInt(0x100 | usn).putInt(0).putInt(0).putInt(0x20);
+            bb.putShort((short) name.length).putShort((short) headerLen);
+            bb.put(name);
+            bb.position(recordStart + tam);
+        }
+        bb.position(bb.position() + 64);
+        byte[] journal = new byte[bb.position()];
+        System.arraycopy(bb.array(), 0, journal, 0, journal.length);
+        return journal;
+    }
+
+}
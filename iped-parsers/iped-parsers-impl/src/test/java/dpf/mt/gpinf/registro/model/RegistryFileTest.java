@@ -0,0 +1,387 @@
+package dpf.mt.gpinf.registro.model;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Compares the lazy hive reader with the previous reader, which decoded all
+ * cells of all hive bins up front, on a small synthetic hive.
+ */
+public class RegistryFileTest {
+
+    private File hive;
+
+    @Before
+    public void setUp() throws IOException {
+        hive = File.createTempFile("registry", ".dat"); //$NON-NLS-1$ //$NON-NLS-2$
+        Files.write(hive.toPath(), buildHive());
+    }
+
+    @After
+    public void tearDown() {
+        hive.delete();
+    }
+
+    @Test
+    public void testLazyCellsEqualEagerCells() throws IOException {
+        EagerRegistryFile eager = new EagerRegistryFile(hive);
+        eager.load();
+        assertTrue(eager.cells.size() > 10);
+
+        for (boolean mapped : new boolean[] { true, false }) {
+            try (RegistryFile lazy = new RegistryFile(hive)) {
+                lazy.setUseMappedFile(mapped);
+                lazy.load();
+                assertEquals(eager.rootCellOffset, lazy.rootCellOffset);
+                for (Map.Entry<Integer, HiveCell> e : eager.cells.entrySet()) {
+                    HiveCell expected = e.getValue();
+                    HiveCell cell = lazy.getCell(e.getKey());
+                    assertNotNull(cell);
+                    assertEquals(expected.getSize(), cell.getSize());
+                    assertEquals(expected.isAllocated(), cell.isAllocated());
+                    assertEquals(expected.getCellContent().getClass(), cell.getCellContent().getClass());
+                    assertArrayEquals(expected.getCellContent().data, cell.getCellContent().data);
+                }
+                assertNull(lazy.getCell(-8));
+                assertNull(lazy.getCell((int) hive.length()));
+            }
+        }
+    }
+
+    @Test
+    public void testLazyTreeEqualsEagerTree() throws IOException {
+        EagerRegistryFile eager = new EagerRegistryFile(hive);
+        eager.load();
+        List<String> expected = new ArrayList<>();
+        dumpEager(eager.findKeyNode("/"), "ROOT", expected); //$NON-NLS-1$ //$NON-NLS-2$
+
+        assertTrue(expected.contains("ROOT/Software/B")); //$NON-NLS-1$
+        assertTrue(expected.contains("ROOT/Software/C|Text|1|first value")); //$NON-NLS-1$
+        assertTrue(expected.contains("ROOT|Count|4|42")); //$NON-NLS-1$
+        assertTrue(expected.stream().anyMatch(s -> s.startsWith("ROOT/System|LastWrite|4|1500000000 ("))); //$NON-NLS-1$
+        assertTrue(expected.stream().anyMatch(s -> s.startsWith("ROOT/Software/A|Big|3| - 0x03 0x0A"))); //$NON-NLS-1$
+
+        for (boolean mapped : new boolean[] { true, false }) {
+            try (RegistryFile lazy = new RegistryFile(hive)) {
+                lazy.setUseMappedFile(mapped);
+                lazy.load();
+                List<String> result = new ArrayList<>();
+                dumpLazy(lazy.findKeyNode("/"), "ROOT", result); //$NON-NLS-1$ //$NON-NLS-2$
+                assertEquals(expected, result);
+
+                KeyNode c = lazy.findKeyNode("/Software/C"); //$NON-NLS-1$
+                assertEquals("C", c.getKeyName()); //$NON-NLS-1$
+                assertFalse(c.hasSubKeys());
+                assertNull(c.getSubKeys());
+                assertNull(lazy.findKeyNode("/Software/D")); //$NON-NLS-1$
+                assertEquals(3, lazy.findKeyNode("/Software").getSubKeyOffsets().length); //$NON-NLS-1$
+            }
+        }
+    }
+
+    private static void dumpEager(KeyNode kn, String path, List<String> out) {
+        dumpKey(kn, path, out);
+        List<KeyNode> subs = kn.getSubKeys();
+        if (subs != null) {
+            for (KeyNode sub : subs) {
+                dumpEager(sub, path + "/" + sub.getKeyName(), out); //$NON-NLS-1$
+            }
+        }
+    }
+
+    private static void dumpLazy(KeyNode kn, String path, List<String> out) {
+        dumpKey(kn, path, out);
+        for (KeyNode sub : kn.iterateSubKeys()) {
+            dumpLazy(sub, path + "/" + sub.getKeyName(), out); //$NON-NLS-1$
+        }
+    }
+
+    private static void dumpKey(KeyNode kn, String path, List<String> out) {
+        out.add(path);
+        out.add(path + "|" + kn.getLastWrittenAsDate().getTime() + "|" + kn.hasSubKeys()); //$NON-NLS-1$ //$NON-NLS-2$
+        for (KeyValue kv : kn.getValues()) {
+            out.add(path + "|" + kv.getValueName() + "|" + kv.getValueDatatype() + "|" //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+                    + kv.getValueDataAsString());
+        }
+    }
+
+    /**
+     * Previous reader: all cells of all hive bins decoded sequentially into a map
+     * keyed by their offset.
+     */
+    private static class EagerRegistryFile extends RegistryFile {
+
+        private final Map<Integer, HiveCell> cells = new LinkedHashMap<>();
+
+        private EagerRegistryFile(File file) {
+            super(file);
+        }
+
+        @Override
+        public void load() throws IOException {
+            try (InputStream fis = new FileInputStream(file)) {
+                int pos = 0;
+                Registry reg = new Registry();
+                fis.read(reg.fileHeader);
+                rootCellOffset = ByteBuffer.wrap(reg.fileHeader, 36, 4).order(ByteOrder.LITTLE_ENDIAN).getInt();
+                while (true) {
+                    HiveBin hb = new HiveBin();
+                    pos += fis.read(hb.header);
+                    if (!new String(Arrays.copyOf(hb.header, 4)).equals("hbin")) { //$NON-NLS-1$
+                        break;
+                    }
+                    hb.size = ByteBuffer.wrap(hb.header, 8, 4).order(ByteOrder.LITTLE_ENDIAN).getInt();
+                    int hiveDataReadCount = 32;
+                    while (hiveDataReadCount < hb.size) {
+                        HiveCell cell = readCell(fis);
+                        cells.put(pos, cell);
+                        hiveDataReadCount += cell.getSize();
+                        pos += cell.getSize();
+                    }
+                }
+            }
+        }
+
+        private HiveCell readCell(InputStream fis) throws IOException {
+            HiveCell cell = new HiveCell();
+            byte[] buffer = new byte[4];
+            fis.read(buffer);
+            cell.setSize(buffer);
+            buffer = new byte[cell.getSize() - 4];
+            fis.read(buffer);
+            switch (new String(Arrays.copyOf(buffer, 2))) {
+                case "nk": //$NON-NLS-1$
+                    cell.cellContent = new KeyNode(this, buffer);
+                    break;
+                case "vk": //$NON-NLS-1$
+                    cell.cellContent = new KeyValue(this, buffer);
+                    break;
+                case "db": //$NON-NLS-1$
+                    cell.cellContent = new BigData(this, buffer);
+                    break;
+                case "lf": //$NON-NLS-1$
+                case "lh": //$NON-NLS-1$
+                    cell.cellContent = new SubKeysList(this, buffer);
+                    break;
+                case "ri": //$NON-NLS-1$
+                    cell.cellContent = new IndexRoot(this, buffer);
+                    break;
+                default:
+                    cell.cellContent = new DataCell(this, buffer);
+                    break;
+            }
+            return cell;
+        }
+
+        @Override
+        public HiveCell getCell(int offset) {
+            return cells.get(offset);
+        }
+    }
+
+    /**
+     * Hive with two bins, an index root, a big data value, inline and out of line
+     * values and a free cell.
+     */
+    private static byte[] buildHive() {
+        HiveBuilder b = new HiveBuilder();
+        b.startBin();
+        int big = b.value("Big", KeyValue.REG_BINARY, b.bigData(bytes(20, 3)), 20); //$NON-NLS-1$
+        int a = b.key("A", 0, -1, 1, b.values(big)); //$NON-NLS-1$
+        int bKey = b.key("B", 0, -1, 0, -1); //$NON-NLS-1$
+        byte[] text = utf16("first value"); //$NON-NLS-1$
+        int textValue = b.value("Text", KeyValue.REG_SZ, b.data(text), text.length); //$NON-NLS-1$
+        int c = b.key("C", 0, -1, 1, b.values(textValue)); //$NON-NLS-1$
+        int software = b.key("Software", 3, b.indexRoot(b.subKeys(a, bKey), b.subKeys(c)), 0, -1); //$NON-NLS-1$
+        b.freeCell(64);
+        b.endBin();
+
+        b.startBin();
+        int lastWrite = b.inlineValue("LastWrite", KeyValue.REG_DWORD, 1500000000); //$NON-NLS-1$
+        int system = b.key("System", 0, -1, 1, b.values(lastWrite)); //$NON-NLS-1$
+        text = utf16("Root value"); //$NON-NLS-1$
+        int rootValues = b.values(b.value("Name", KeyValue.REG_SZ, b.data(text), text.length), //$NON-NLS-1$
+                b.inlineValue("Count", KeyValue.REG_DWORD, 42)); //$NON-NLS-1$
+        int root = b.key("ROOT", 2, b.subKeys(software, system), 2, rootValues); //$NON-NLS-1$
+        b.endBin();
+        return b.toByteArray(root);
+    }
+
+    private static byte[] utf16(String s) {
+        return (s + "\0").getBytes(StandardCharsets.UTF_16LE); //$NON-NLS-1$
+    }
+
+    private static byte[] bytes(int len, int seed) {
+        byte[] data = new byte[len];
+        for (int i = 0; i < len; i++) {
+            data[i] = (byte) (seed + i * 7);
+        }
+        return data;
+    }
+
+    private static class HiveBuilder {
+
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        private int binStart;
+        private long lastWritten = 131000000000000000L;
+
+        private HiveBuilder() {
+            out.write(new byte[4096], 0, 4096);
+        }
+
+        private int offset() {
+            return out.size() - 4096;
+        }
+
+        private void startBin() {
+            binStart = out.size();
+            ByteBuffer header = le(32);
+            header.put("hbin".getBytes(StandardCharsets.US_ASCII)); //$NON-NLS-1$
+            header.putInt(binStart - 4096);
+            out.write(header.array(), 0, 32);
+        }
+
+        private void endBin() {
+            byte[] data = out.toByteArray();
+            ByteBuffer.wrap(data, binStart + 8, 4).order(ByteOrder.LITTLE_ENDIAN).putInt(data.length - binStart);
+            out.reset();
+            out.write(data, 0, data.length);
+        }
+
+        private int cell(byte[] content, boolean allocated) {
+            int offset = offset();
+            int size = (4 + content.length + 7) & ~7;
+            ByteBuffer cell = le(size);
+            cell.putInt(allocated ? -size : size);
+            cell.put(content);
+            out.write(cell.array(), 0, size);
+            return offset;
+        }
+
+        private void freeCell(int size) {
+            cell(new byte[size - 4], false);
+        }
+
+        private int key(String name, int subKeys, int subKeysList, int values, int valuesList) {
+            ByteBuffer nk = le(76 + name.length());
+            nk.put("nk".getBytes(StandardCharsets.US_ASCII)); //$NON-NLS-1$
+            nk.putLong(4, lastWritten += 10000000L * 3600);
+            nk.putInt(20, subKeys);
+            nk.putInt(28, subKeysList);
+            nk.putInt(36, values);
+            nk.putInt(40, valuesList);
+            nk.putShort(72, (short) name.length());
+            nk.position(76);
+            nk.put(name.getBytes(StandardCharsets.US_ASCII));
+            return cell(nk.array(), true);
+        }
+
+        private int values(int... offsets) {
+            ByteBuffer list = le(offsets.length * 4);
+            for (int offset : offsets) {
+                list.putInt(offset);
+            }
+            return cell(list.array(), true);
+        }
+
+        private int data(byte[] data) {
+            return cell(data, true);
+        }
+
+        private int value(String name, int type, int dataOffset, int dataLength) {
+            return vk(name, type, dataLength, dataOffset);
+        }
+
+        /**
+         * Data up to 4 bytes is stored in the data offset field.
+         */
+        private int inlineValue(String name, int type, int data) {
+            return vk(name, type, 0x80000004, data);
+        }
+
+        private int vk(String name, int type, int dataLength, int data) {
+            ByteBuffer vk = le(20 + name.length());
+            vk.put("vk".getBytes(StandardCharsets.US_ASCII)); //$NON-NLS-1$
+            vk.putShort((short) name.length());
+            vk.putInt(dataLength);
+            vk.putInt(data);
+            vk.putInt(type);
+            vk.position(20);
+            vk.put(name.getBytes(StandardCharsets.US_ASCII));
+            return cell(vk.array(), true);
+        }
+
+        /**
+         * Data split in two segments, referenced by a db cell.
+         */
+        private int bigData(byte[] data) {
+            int half = data.length / 2;
+            int first = cell(Arrays.copyOfRange(data, 0, half), true);
+            int second = cell(Arrays.copyOfRange(data, half, data.length), true);
+            ByteBuffer list = le(8);
+            list.putInt(first).putInt(second);
+            int listOffset = cell(list.array(), true);
+            ByteBuffer db = le(8);
+            db.put("db".getBytes(StandardCharsets.US_ASCII)); //$NON-NLS-1$
+            db.putShort((short) 2);
+            db.putInt(listOffset);
+            return cell(db.array(), true);
+        }
+
+        private int subKeys(int... offsets) {
+            ByteBuffer lf = le(4 + offsets.length * 8);
+            lf.put("lf".getBytes(StandardCharsets.US_ASCII)); //$NON-NLS-1$
+            lf.putShort((short) offsets.length);
+            for (int offset : offsets) {
+                lf.putInt(offset).putInt(0);
+            }
+            return cell(lf.array(), true);
+        }
+
+        private int indexRoot(int... lists) {
+            ByteBuffer ri = le(4 + lists.length * 4);
+            ri.put("ri".getBytes(StandardCharsets.US_ASCII)); //$NON-NLS-1$
+            ri.putShort((short) lists.length);
+            for (int list : lists) {
+                ri.putInt(list);
+            }
+            return cell(ri.array(), true);
+        }
+
+        private byte[] toByteArray(int root) {
+            byte[] data = out.toByteArray();
+            ByteBuffer header = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+            header.put("regf".getBytes(StandardCharsets.US_ASCII)); //$NON-NLS-1$
+            header.putInt(36, root);
+            return data;
+        }
+
+        private static ByteBuffer le(int size) {
+            return ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        }
+    }
+
+}
@@ -0,0 +1,150 @@
+package dpf.sp.gpinf.indexer.parsers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.apache.tika.exception.TikaException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks the chunk scheduling of the PDF OCR: texts joined in chunk order must
+ * be identical to the sequential OCR whatever the number of workers, and
+ * helpers must be finished when run returns, as the caller deletes their
+ * results.
+ */
+public class ChunkSchedulerTest {
+
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() {
+        executor = Executors.newFixedThreadPool(3);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testSameTextAsSequential() throws IOException, TikaException {
+        int numChunks = 40;
+        String expected = ocr(numChunks, 1);
+        for (int numWorkers : new int[] { 2, 3, 8 }) {
+            assertEquals(expected, ocr(numChunks, numWorkers));
+        }
+    }
+
+    @Test
+    public void testHelpersFinishedOnCallerError() throws TikaException {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger processed = new AtomicInteger();
+        ChunkScheduler scheduler = new ChunkScheduler(100);
+        ChunkScheduler.Worker helper = chunks -> {
+            running.incrementAndGet();
+            try {
+                while (chunks.nextChunk() != -1) {
+                    sleep(5);
+                    processed.incrementAndGet();
+                }
+            } finally {
+                running.decrementAndGet();
+            }
+        };
+        IOException error = new IOException("test"); //$NON-NLS-1$
+        try {
+            scheduler.run(executor, 4, chunks -> {
+                chunks.nextChunk();
+                sleep(10);
+                throw error;
+            }, helper);
+            fail();
+        } catch (IOException e) {
+            assertSame(error, e);
+        }
+        assertEquals(0, running.get());
+        int processedOnReturn = processed.get();
+        sleep(50);
+        assertEquals(processedOnReturn, processed.get());
+        assertEquals(-1, scheduler.nextChunk());
+    }
+
+    @Test
+    public void testHelperErrorIsThrown() throws TikaException {
+        IOException error = new IOException("test"); //$NON-NLS-1$
+        AtomicInteger processed = new AtomicInteger();
+        CountDownLatch helperStarted = new CountDownLatch(1);
+        try {
+            new ChunkScheduler(20).run(executor, 2, chunks -> {
+                await(helperStarted);
+                while (chunks.nextChunk() != -1) {
+                    processed.incrementAndGet();
+                    sleep(5);
+                }
+            }, chunks -> {
+                chunks.nextChunk();
+                helperStarted.countDown();
+                throw error;
+            });
+            fail();
+        } catch (IOException e) {
+            assertSame(error, e);
+        }
+        // the caller goes on with the remaining chunks
+        assertEquals(19, processed.get());
+    }
+
+    /**
+     * Simulates the PDF OCR with random processing times: each chunk text goes
+     * to its slot and texts are joined in chunk order.
+     */
+    private String ocr(int numChunks, int numWorkers) throws IOException, TikaException {
+        String[] texts = new String[numChunks];
+        AtomicIntegerArray counts = new AtomicIntegerArray(numChunks);
+        ChunkScheduler.Worker worker = chunks -> {
+            Random random = new Random();
+            int chunk;
+            while ((chunk = chunks.nextChunk()) != -1) {
+                sleep(random.nextInt(4));
+                counts.incrementAndGet(chunk);
+                texts[chunk] = "text of pages " + chunk * 10 + " to " + (chunk * 10 + 9) + "\f"; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+            }
+        };
+        new ChunkScheduler(numChunks).run(executor, numWorkers, worker, worker);
+
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < numChunks; i++) {
+            assertEquals(1, counts.get(i));
+            sb.append(texts[i]);
+        }
+        return sb.toString();
+    }
+
+    private static void await(CountDownLatch latch) throws TikaException {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            throw new TikaException("interrupted", e); //$NON-NLS-1$
+        }
+    }
+
+    private static void sleep(long millis) throws TikaException {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            throw new TikaException("interrupted", e); //$NON-NLS-1$
+        }
+    }
+
+}
@@ -0,0 +1,169 @@
+package dpf.sp.gpinf.indexer.parsers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.tika.exception.TikaException;
+import org.apache.tika.extractor.EmbeddedDocumentExtractor;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.parser.ParseContext;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+import dpf.sp.gpinf.indexer.parsers.util.EmbeddedRangeExtractor;
+import dpf.sp.gpinf.indexer.parsers.util.ItemContentStream;
+import dpf.sp.gpinf.indexer.util.SeekableFileInputStream;
+import iped3.io.IItemBase;
+import iped3.util.ExtraProperties;
+
+public class MboxParserTest {
+
+    private static final String[] MESSAGES = { "From: a@example.com\nSubject: first\n\nbody one\n", //$NON-NLS-1$
+            "From: b@example.com\r\nSubject: second\r\n\r\nbody two\r\n>From the body\r\n", //$NON-NLS-1$
+            "Subject: third\n\nbody three" }; //$NON-NLS-1$
+
+    private static final String MBOX = "From a@example.com Mon Jan  6 10:00:00 2020\n" + MESSAGES[0] //$NON-NLS-1$
+            + "From b@example.com Mon Jan  6 11:00:00 2020\r\n" + MESSAGES[1] //$NON-NLS-1$
+            + "From c@example.com Mon Jan  6 12:00:00 2020\n" + MESSAGES[2]; //$NON-NLS-1$
+
+    private File itemFile;
+    private IItemBase item;
+
+    /**
+     * Item whose content is another mbox, so reading the wrong source is detected.
+     */
+    @Before
+    public void setUp() throws IOException {
+        itemFile = File.createTempFile("item", ".mbox"); //$NON-NLS-1$ //$NON-NLS-2$
+        Files.write(itemFile.toPath(), ("From x@example.com Mon Jan  6 10:00:00 2020\nSubject: other\n\nother\n") //$NON-NLS-1$
+                .getBytes(StandardCharsets.ISO_8859_1));
+        item = (IItemBase) Proxy.newProxyInstance(IItemBase.class.getClassLoader(), new Class<?>[] { IItemBase.class },
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getStream": //$NON-NLS-1$
+                            return new SeekableFileInputStream(itemFile);
+                        case "hashCode": //$NON-NLS-1$
+                            return System.identityHashCode(proxy);
+                        case "equals": //$NON-NLS-1$
+                            return proxy == args[0];
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    @After
+    public void tearDown() {
+        itemFile.delete();
+    }
+
+    @Test
+    public void testMessagesWithoutItem() throws Exception {
+        RecordingExtractor extractor = new RangeRecordingExtractor();
+        ParseContext context = new ParseContext();
+        context.set(EmbeddedDocumentExtractor.class, extractor);
+        parse(new ByteArrayInputStream(MBOX.getBytes(StandardCharsets.ISO_8859_1)), context);
+
+        assertEquals(Arrays.asList(MESSAGES), extractor.contents);
+        assertEquals(Arrays.asList("first", "second", "third"), extractor.subjects); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+        for (Metadata m : extractor.metadatas) {
+            assertNull(m.get(ExtraProperties.EMBEDDED_OFFSET));
+        }
+    }
+
+    @Test
+    public void testOtherStreamIsNotReadFromItem() throws Exception {
+        // eg a mbox inside an archive parsed inline with the context of the archive item
+        RecordingExtractor extractor = new RangeRecordingExtractor();
+        ParseContext context = new ParseContext();
+        context.set(EmbeddedDocumentExtractor.class, extractor);
+        context.set(IItemBase.class, item);
+        try (InputStream itemStream = new SeekableFileInputStream(itemFile)) {
+            context.set(ItemContentStream.class, new ItemContentStream(itemStream));
+            parse(new ByteArrayInputStream(MBOX.getBytes(StandardCharsets.ISO_8859_1)), context);
+        }
+
+        assertEquals(Arrays.asList(MESSAGES), extractor.contents);
+        for (Metadata m : extractor.metadatas) {
+            assertNull(m.get(ExtraProperties.EMBEDDED_OFFSET));
+        }
+    }
+
+    @Test
+    public void testRangesOnlyForRangeExtractor() throws Exception {
+        byte[] mbox = MBOX.getBytes(StandardCharsets.ISO_8859_1);
+        Files.write(itemFile.toPath(), mbox);
+
+        for (RecordingExtractor extractor : new RecordingExtractor[] { new RangeRecordingExtractor(),
+                new RecordingExtractor() }) {
+            try (InputStream stream = new SeekableFileInputStream(itemFile)) {
+                ParseContext context = new ParseContext();
+                context.set(EmbeddedDocumentExtractor.class, extractor);
+                context.set(IItemBase.class, item);
+                context.set(ItemContentStream.class, new ItemContentStream(stream));
+                parse(stream, context);
+            }
+            assertEquals(Arrays.asList(MESSAGES), extractor.contents);
+
+            boolean ranges = extractor instanceof EmbeddedRangeExtractor;
+            for (int i = 0; i < MESSAGES.length; i++) {
+                Metadata m = extractor.metadatas.get(i);
+                if (!ranges) {
+                    assertNull(m.get(ExtraProperties.EMBEDDED_OFFSET));
+                    assertNull(m.get(ExtraProperties.EMBEDDED_LENGTH));
+                    continue;
+                }
+                int offset = Integer.parseInt(m.get(ExtraProperties.EMBEDDED_OFFSET));
+                int length = Integer.parseInt(m.get(ExtraProperties.EMBEDDED_LENGTH));
+                assertEquals(MESSAGES[i], new String(mbox, offset, length, StandardCharsets.ISO_8859_1));
+            }
+        }
+    }
+
+    private static void parse(InputStream stream, ParseContext context)
+            throws IOException, SAXException, TikaException {
+        Metadata metadata = new Metadata();
+        metadata.set(Metadata.RESOURCE_NAME_KEY, "test.mbox"); //$NON-NLS-1$
+        new MboxParser().parse(stream, new DefaultHandler(), metadata, context);
+    }
+
+    private static class RecordingExtractor implements EmbeddedDocumentExtractor {
+
+        private final List<String> contents = new ArrayList<>();
+        private final List<String> subjects = new ArrayList<>();
+        private final List<Metadata> metadatas = new ArrayList<>();
+
+        @Override
+        public boolean shouldParseEmbedded(Metadata metadata) {
+            return true;
+        }
+
+        @Override
+        public void parseEmbedded(InputStream stream, ContentHandler handler, Metadata metadata, boolean outputHtml)
+                throws SAXException, IOException {
+            contents.add(new String(IOUtils.toByteArray(stream), StandardCharsets.ISO_8859_1));
+            subjects.add(metadata.get(ExtraProperties.MESSAGE_SUBJECT));
+            metadatas.add(metadata);
+        }
+    }
+
+    private static class RangeRecordingExtractor extends RecordingExtractor implements EmbeddedRangeExtractor {
+    }
+
+}
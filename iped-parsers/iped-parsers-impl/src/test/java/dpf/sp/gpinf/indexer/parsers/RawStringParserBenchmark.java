@@ -0,0 +1,64 @@
+package dpf.sp.gpinf.indexer.parsers;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.parser.ParseContext;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Measures raw string extraction over synthetic unallocated-like data: zeroed
+ * areas, random bytes, ASCII and UTF-16 LE/BE text. Usage:
+ * RawStringParserBenchmark [sizeInMB] [iterations]
+ */
+public class RawStringParserBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int size = (args.length > 0 ? Integer.parseInt(args[0]) : 256) << 20;
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+        byte[] data = createData(size);
+        for (int i = 0; i < iterations; i++) {
+            long t = System.nanoTime();
+            new RawStringParser().parse(new ByteArrayInputStream(data), new DefaultHandler(), new Metadata(),
+                    new ParseContext());
+            t = System.nanoTime() - t;
+            System.out.println("Iteration " + i + ": " + (size * 1000L / t) + " MB/s"); //$NON-NLS-1$ //$NON-NLS-2$
+        }
+    }
+
+    private static byte[] createData(int size) {
+        Random random = new Random(0);
+        byte[] text = ("The quick brown fox jumps over the lazy dog. 0123456789 " //$NON-NLS-1$
+                + "C:\\Windows\\System32\\drivers\\etc\\hosts http://example.com/index.html ").getBytes( //$NON-NLS-1$
+                        StandardCharsets.ISO_8859_1);
+        byte[] data = new byte[size];
+        int pos = 0;
+        while (pos < size) {
+            int len = Math.min(size - pos, 512 + random.nextInt(8192));
+            switch (random.nextInt(5)) {
+                case 0:
+                    // zeros
+                    break;
+                case 1:
+                    for (int i = 0; i < len; i++)
+                        data[pos + i] = (byte) random.nextInt(256);
+                    break;
+                case 2:
+                    for (int i = 0; i < len; i++)
+                        data[pos + i] = text[i % text.length];
+                    break;
+                default:
+                    // UTF-16 LE or BE
+                    int shift = random.nextInt(2);
+                    for (int i = 0; i + 1 < len; i += 2)
+                        data[pos + i + shift] = text[(i / 2) % text.length];
+            }
+            pos += len;
+        }
+        return data;
+    }
+
+}
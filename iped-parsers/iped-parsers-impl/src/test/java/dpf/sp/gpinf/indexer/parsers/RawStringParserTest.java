@@ -0,0 +1,220 @@
+package dpf.sp.gpinf.indexer.parsers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import org.apache.tika.exception.TikaException;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.parser.ParseContext;
+import org.junit.Test;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Compares the word at a time extraction with the previous byte by byte
+ * implementation, kept here as reference.
+ */
+public class RawStringParserTest {
+
+    private static final int BUF_SIZE = 128 * 1024;
+    private static final int MIN_SIZE = 4;
+
+    @Test
+    public void testSameStringsAsByteByByte() throws IOException, SAXException, TikaException {
+        Random random = new Random(0);
+        for (int n = 0; n < 300; n++) {
+            // some inputs cross the 128 KB buffer boundary
+            int size = n % 10 == 0 ? BUF_SIZE + random.nextInt(BUF_SIZE) : random.nextInt(4096);
+            byte[] data = createData(random, size);
+            assertEquals("input " + n, referenceStrings(data), parse(data)); //$NON-NLS-1$
+        }
+    }
+
+    @Test
+    public void testUTF16AndAscii() throws IOException, SAXException, TikaException {
+        byte[] ascii = "some ascii text".getBytes(StandardCharsets.ISO_8859_1); //$NON-NLS-1$
+        byte[] le = "utf16 little endian".getBytes(StandardCharsets.UTF_16LE); //$NON-NLS-1$
+        byte[] be = "utf16 big endian".getBytes(StandardCharsets.UTF_16BE); //$NON-NLS-1$
+        byte[] data = new byte[ascii.length + le.length + be.length + 48];
+        System.arraycopy(ascii, 0, data, 3, ascii.length);
+        System.arraycopy(le, 0, data, ascii.length + 16, le.length);
+        System.arraycopy(be, 0, data, ascii.length + le.length + 33, be.length);
+
+        String text = parse(data);
+        assertTrue(text.contains("some ascii text")); //$NON-NLS-1$
+        assertTrue(text.contains("utf16 little endian")); //$NON-NLS-1$
+        assertTrue(text.contains("utf16 big endian")); //$NON-NLS-1$
+        assertEquals(referenceStrings(data), text);
+    }
+
+    private static String parse(byte[] data) throws IOException, SAXException, TikaException {
+        StringBuilder sb = new StringBuilder();
+        new RawStringParser().parse(new ByteArrayInputStream(data), new DefaultHandler() {
+            @Override
+            public void characters(char[] ch, int start, int length) {
+                sb.append(ch, start, length);
+            }
+        }, new Metadata(), new ParseContext());
+        return sb.toString();
+    }
+
+    private static byte[] createData(Random random, int size) {
+        byte[] text = ("The quick brown fox, 0123456789 C:\\Windows\\hosts http://example.com/ \t\r\n") //$NON-NLS-1$
+                .getBytes(StandardCharsets.ISO_8859_1);
+        byte[] data = new byte[size];
+        int pos = 0;
+        while (pos < size) {
+            int len = Math.min(size - pos, 1 + random.nextInt(600));
+            int off = random.nextInt(text.length);
+            switch (random.nextInt(7)) {
+                case 0:
+                    // zeros
+                    break;
+                case 1:
+                    for (int i = 0; i < len; i++)
+                        data[pos + i] = (byte) random.nextInt(256);
+                    break;
+                case 2:
+                    for (int i = 0; i < len; i++)
+                        data[pos + i] = text[(off + i) % text.length];
+                    break;
+                case 3:
+                    // text with latin1 and utf-8 accented chars and isolated zeros
+                    for (int i = 0; i < len; i++) {
+                        int r = random.nextInt(12);
+                        data[pos + i] = r == 0 ? (byte) (0xC2 + random.nextInt(2))
+                                : r == 1 ? (byte) (0x80 + random.nextInt(0x40))
+                                        : r == 2 ? (byte) (0xC0 + random.nextInt(0x3D))
+                                                : r == 3 ? 0 : text[(off + i) % text.length];
+                    }
+                    break;
+                default:
+                    // UTF-16 LE or BE, sometimes with non ascii chars
+                    int shift = random.nextInt(2);
+                    for (int i = 0; i + 1 < len; i += 2) {
+                        data[pos + i + shift] = random.nextInt(40) == 0 ? (byte) 0xE9
+                                : text[(off + i / 2) % text.length];
+                    }
+            }
+            pos += len;
+        }
+        return data;
+    }
+
+    /**
+     * Previous byte by byte extraction.
+     */
+    private static String referenceStrings(byte[] data) throws IOException {
+        return new ByteByByteExtractor().extract(new ByteArrayInputStream(data));
+    }
+
+    private static class ByteByByteExtractor {
+
+        private final boolean[] isChar = new boolean[256];
+        private final char[] byteToChar = new char[256];
+        private final byte[] buf = new byte[BUF_SIZE];
+        private final byte[] input = new byte[BUF_SIZE];
+        private final StringBuilder out = new StringBuilder();
+        private int tmpPos = 0, bufPos = 0;
+
+        private ByteByByteExtractor() {
+            byte[] bytes = new byte[256];
+            for (int i = 0; i < 256; i++) {
+                bytes[i] = (byte) i;
+                int c = (byte) i;
+                isChar[i] = (c >= 0x20 && c <= 0x7E) || (c >= (byte) 0xC0 && c <= (byte) 0xFC) || c == 0x0A
+                        || c == 0x0D || c == 0x09;
+            }
+            new String(bytes, Charset.forName("windows-1252")).getChars(0, 256, byteToChar, 0); //$NON-NLS-1$
+        }
+
+        private boolean isChar(byte c) {
+            return isChar[c & 0xFF];
+        }
+
+        private void flushBuffer() {
+            if (tmpPos - bufPos >= MIN_SIZE)
+                bufPos = tmpPos - MIN_SIZE;
+            for (int i = 0; i < bufPos; i++)
+                out.append(byteToChar[buf[i] & 0xFF]);
+            for (int k = 0; k < tmpPos - bufPos; k++)
+                buf[k] = buf[bufPos + k];
+            tmpPos = tmpPos - bufPos;
+            bufPos = 0;
+        }
+
+        private String extract(InputStream stream) throws IOException {
+            int i = 0;
+            do {
+                int inSize = 0;
+                while ((i = stream.read(input, inSize, BUF_SIZE - inSize)) > 0) {
+                    inSize += i;
+                }
+                int inPos = 0;
+                while (inPos < inSize) {
+                    byte c = input[inPos++];
+                    boolean utf8 = false;
+                    if (c == (byte) 0xC3) {
+                        byte c_ = inPos < inSize ? input[inPos++] : (byte) stream.read();
+                        if (c_ >= (byte) 0x80 && c_ <= (byte) 0xBC) {
+                            utf8 = true;
+                            buf[tmpPos++] = (byte) (c_ + 0x40);
+                        } else {
+                            buf[tmpPos++] = c;
+                            c = c_;
+                        }
+                        if (tmpPos == BUF_SIZE)
+                            flushBuffer();
+
+                    } else if (c == (byte) 0xC2) {
+                        byte c_ = inPos < inSize ? input[inPos++] : (byte) stream.read();
+                        if (c_ >= (byte) 0xA0 && c_ <= (byte) 0xBF) {
+                            utf8 = true;
+                            buf[tmpPos++] = c_;
+                        } else {
+                            buf[tmpPos++] = c;
+                            c = c_;
+                        }
+                        if (tmpPos == BUF_SIZE)
+                            flushBuffer();
+                    }
+                    if (!utf8)
+                        if (isChar(c)) {
+                            buf[tmpPos++] = c;
+                            if (tmpPos == BUF_SIZE)
+                                flushBuffer();
+                        } else {
+                            if (c != 0 || (inPos >= 3 && isChar(input[inPos - 3]))
+                                    || (inPos + 1 < inSize && isChar(input[inPos + 1]))) {
+
+                                if (tmpPos - bufPos >= MIN_SIZE) {
+                                    buf[tmpPos++] = 0x0A;
+                                    bufPos = tmpPos;
+
+                                    if (tmpPos == BUF_SIZE)
+                                        flushBuffer();
+                                } else
+                                    tmpPos = bufPos;
+                            }
+                        }
+                }
+            } while (i != -1);
+
+            if (tmpPos - bufPos >= MIN_SIZE) {
+                buf[tmpPos++] = 0x0A;
+                bufPos = tmpPos;
+            }
+            for (i = 0; i < bufPos; i++)
+                out.append(byteToChar[buf[i] & 0xFF]);
+            return out.toString();
+        }
+    }
+
+}
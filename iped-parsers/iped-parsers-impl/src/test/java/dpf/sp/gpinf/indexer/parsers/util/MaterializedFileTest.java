@@ -0,0 +1,174 @@
+package dpf.sp.gpinf.indexer.parsers.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.tika.io.TemporaryResources;
+import org.apache.tika.parser.ParseContext;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import dpf.sp.gpinf.indexer.util.FileContentSource;
+import iped3.IItem;
+import iped3.io.IItemBase;
+
+public class MaterializedFileTest {
+
+    private static final byte[] CONTENT = "SQLite format 3\0 database content".getBytes(StandardCharsets.ISO_8859_1); //$NON-NLS-1$
+    private static final byte[] WAL = "wal content".getBytes(StandardCharsets.ISO_8859_1); //$NON-NLS-1$
+
+    private final AtomicInteger copies = new AtomicInteger();
+    private Path itemTempFile;
+    private IItem item;
+
+    /**
+     * Item whose temp file is created once, like Item.getTempFile(), and deleted
+     * with the item in tearDown.
+     */
+    @Before
+    public void setUp() {
+        Map<String, Object> tempAttributes = new HashMap<>();
+        item = (IItem) Proxy.newProxyInstance(IItem.class.getClassLoader(), new Class<?>[] { IItem.class },
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getTempFile": //$NON-NLS-1$
+                            synchronized (this) {
+                                if (itemTempFile == null) {
+                                    itemTempFile = Files.createTempFile("iped", ".db"); //$NON-NLS-1$ //$NON-NLS-2$
+                                    Files.write(itemTempFile, CONTENT);
+                                    copies.incrementAndGet();
+                                }
+                                return itemTempFile.toFile();
+                            }
+                        case "getTempAttribute": //$NON-NLS-1$
+                            return tempAttributes.get(args[0]);
+                        case "setTempAttribute": //$NON-NLS-1$
+                            tempAttributes.put((String) args[0], args[1]);
+                            return null;
+                        case "hashCode": //$NON-NLS-1$
+                            return System.identityHashCode(proxy);
+                        case "equals": //$NON-NLS-1$
+                            return proxy == args[0];
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        if (itemTempFile != null) {
+            Files.deleteIfExists(itemTempFile);
+        }
+    }
+
+    private ParseContext contextOf(InputStream itemStream) {
+        ParseContext context = new ParseContext();
+        context.set(IItemBase.class, item);
+        context.set(ItemContentStream.class, new ItemContentStream(itemStream));
+        return context;
+    }
+
+    @Test
+    public void testConsumersShareOneCopy() throws IOException {
+        InputStream itemStream = new ByteArrayInputStream(CONTENT);
+        ParseContext context = contextOf(itemStream);
+        try (TemporaryResources tmp = new TemporaryResources()) {
+            MaterializedFile first = MaterializedFile.acquire(itemStream, tmp, context);
+            MaterializedFile second = MaterializedFile.acquire(item);
+
+            assertEquals(first.getFile(), second.getFile());
+            assertEquals(1, copies.get());
+            assertTrue(first.isTemporary());
+            assertArrayEquals(CONTENT, Files.readAllBytes(first.getFile().toPath()));
+
+            Path walSource = Files.createTempFile("iped", ".wal"); //$NON-NLS-1$ //$NON-NLS-2$
+            Files.write(walSource, WAL);
+            tmp.addResource(() -> Files.delete(walSource));
+            File wal = first.attachCompanion("-wal", new FileContentSource(walSource.toFile())); //$NON-NLS-1$
+            assertTrue(second.hasCompanion("-wal")); //$NON-NLS-1$
+            assertArrayEquals(WAL, Files.readAllBytes(wal.toPath()));
+
+            // the companion is kept while the other consumer is using the file
+            first.close();
+            first.close();
+            assertTrue(wal.exists());
+            assertTrue(second.getFile().exists());
+
+            second.close();
+            assertFalse(wal.exists());
+            // the copy itself belongs to the item
+            assertTrue(second.getFile().exists());
+
+            // a new consumer after the last one closed gets a fresh entry on the same copy
+            try (MaterializedFile third = MaterializedFile.acquire(item)) {
+                assertEquals(second.getFile(), third.getFile());
+                assertFalse(third.hasCompanion("-wal")); //$NON-NLS-1$
+                assertEquals(1, copies.get());
+            }
+        }
+    }
+
+    @Test
+    public void testDetectionSharesItemCopy() throws IOException {
+        InputStream itemStream = new ByteArrayInputStream(CONTENT);
+        File detectedFile;
+        ItemContentStream.startDetection(item, itemStream);
+        try {
+            // like SQLiteContainerDetector
+            IItemBase detectedItem = ItemContentStream.getItem(itemStream, ItemContentStream.getDetectionContext());
+            assertEquals(item, detectedItem);
+            assertNull(ItemContentStream.getItem(new ByteArrayInputStream(CONTENT),
+                    ItemContentStream.getDetectionContext()));
+            try (MaterializedFile detected = MaterializedFile.acquire(detectedItem)) {
+                detectedFile = detected.getFile();
+            }
+        } finally {
+            ItemContentStream.endDetection();
+        }
+        assertNull(ItemContentStream.getDetectionContext());
+
+        // the parser gets the copy made for the detector
+        try (TemporaryResources tmp = new TemporaryResources();
+                MaterializedFile parsed = MaterializedFile.acquire(itemStream, tmp, contextOf(itemStream))) {
+            assertEquals(detectedFile, parsed.getFile());
+            assertEquals(1, copies.get());
+        }
+    }
+
+    @Test
+    public void testOtherStreamIsNotShared() throws IOException {
+        ParseContext context = contextOf(new ByteArrayInputStream(CONTENT));
+        // eg a subitem parsed inline with the context of its container
+        InputStream subitemStream = new ByteArrayInputStream(WAL);
+        File subitemFile;
+        try (TemporaryResources tmp = new TemporaryResources()) {
+            try (MaterializedFile shared = MaterializedFile.acquire(item);
+                    MaterializedFile other = MaterializedFile.acquire(subitemStream, tmp, context)) {
+                subitemFile = other.getFile();
+                assertNotEquals(shared.getFile(), subitemFile);
+                assertArrayEquals(WAL, Files.readAllBytes(subitemFile.toPath()));
+                assertEquals(1, copies.get());
+            }
+        }
+        assertFalse(subitemFile.exists());
+    }
+
+}
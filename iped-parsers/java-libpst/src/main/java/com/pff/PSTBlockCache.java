@@ -0,0 +1,43 @@
+package com.pff;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Thread safe LRU cache of raw PST pages and blocks, keyed by file offset and
+ * bounded by the total size of the cached data.
+ */
+class PSTBlockCache {
+
+    private final long maxBytes;
+    private long bytes = 0;
+    private final LinkedHashMap<Long, byte[]> map = new LinkedHashMap<Long, byte[]>(16, 0.75f, true);
+
+    PSTBlockCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    synchronized byte[] get(long offset) {
+        return map.get(offset);
+    }
+
+    synchronized void put(long offset, byte[] data) {
+        byte[] previous = map.put(offset, data);
+        if (previous != null) {
+            bytes -= previous.length;
+        }
+        bytes += data.length;
+        Iterator<Map.Entry<Long, byte[]>> it = map.entrySet().iterator();
+        while (bytes > maxBytes && it.hasNext()) {
+            bytes -= it.next().getValue().length;
+            it.remove();
+        }
+    }
+
+    synchronized void clear() {
+        map.clear();
+        bytes = 0;
+    }
+
+}
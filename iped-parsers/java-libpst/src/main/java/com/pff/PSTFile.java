@@ -37,10 +37,14 @@
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.RandomAccessFile;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
+import java.util.Map;
 import java.util.Properties;
 import java.util.UUID;
 
@@ -107,7 +111,46 @@ public class PSTFile {
 
     private int itemCount = 0;
 
-    private RandomAccessFile in;
+    /**
+     * Max size of the cache of decoded b-tree pages, per PST file.
+     */
+    private static final long BTREE_PAGE_CACHE_SIZE = 4 * 1024 * 1024;
+
+    /**
+     * Max size of the cache of raw data blocks, per PST file.
+     */
+    private static final long BLOCK_CACHE_SIZE = 16 * 1024 * 1024;
+
+    /**
+     * Blocks bigger than this are not cached.
+     */
+    private static final int MAX_CACHED_BLOCK_SIZE = 64 * 1024;
+
+    private static final int BTREE_PAGE_SIZE = 512;
+
+    private PSTFileContent in;
+
+    /**
+     * Reader of the current thread, if it is not the one that opened the file.
+     */
+    private final ThreadLocal<PSTFileContent> readers = new ThreadLocal<PSTFileContent>();
+
+    /**
+     * Readers not closed yet and the threads using them. Readers of threads that
+     * ended are closed when a new one is created, the others with the file.
+     */
+    private final Map<PSTFileContent, WeakReference<Thread>> openReaders = //
+            new IdentityHashMap<PSTFileContent, WeakReference<Thread>>();
+
+    private boolean closed = false;
+
+    private final Thread ownerThread = Thread.currentThread();
+
+    private final PSTBlockCache btreePageCache = new PSTBlockCache(BTREE_PAGE_CACHE_SIZE);
+
+    private final PSTBlockCache blockCache = new PSTBlockCache(BLOCK_CACHE_SIZE);
+
+    private long offsetBtreeRoot = -1, descriptorBtreeRoot = -1;
 
     /**
      * constructor
@@ -122,8 +165,32 @@ public PSTFile(String fileName) throws FileNotFoundException, PSTException, IOEx
     }
 
     public PSTFile(File fileName) throws FileNotFoundException, PSTException, IOException {
+        this(fileName, false);
+    }
+
+    /**
+     * @param useMappedFile
+     *            if the file should be memory mapped instead of accessed through
+     *            a RandomAccessFile. Falls back to the latter if mapping fails.
+     */
+    public PSTFile(File fileName, boolean useMappedFile) throws FileNotFoundException, PSTException, IOException {
+        this(openContent(fileName, useMappedFile));
+    }
+
+    private static PSTFileContent openContent(File fileName, boolean useMappedFile) throws IOException {
+        if (useMappedFile) {
+            try {
+                return new PSTMappedFileContent(fileName);
+            } catch (IOException e) {
+                // eg no address space left to map the file
+            }
+        }
+        return new PSTRAFileContent(fileName);
+    }
+
+    public PSTFile(PSTFileContent content) throws FileNotFoundException, PSTException, IOException {
         // attempt to open the file.
-        in = new RandomAccessFile(fileName, "r");
+        in = content;
 
         // get the first 4 bytes, should be !BDN
         try {
@@ -161,7 +228,7 @@ public PSTFile(File fileName) throws FileNotFoundException, PSTException, IOExce
             }
 
             // build out name to id map.
-            processNameToIdMap(in);
+            processNameToIdMap();
 
         } catch (IOException err) {
             throw new PSTException("Unable to read PST Sig", err);
@@ -182,7 +249,7 @@ public int getPSTFileType() {
      * @throws IOException
      * @throws PSTException
      */
-    private void processNameToIdMap(RandomAccessFile in) throws IOException, PSTException {
+    private void processNameToIdMap() throws IOException, PSTException {
 
         // Create our guid map
         for (int i = 0; i < guidStrings.length; ++i) {
@@ -432,7 +499,24 @@ static String getPropertyDescription(int entryType, int entryValueType) {
      */
     @Override
     protected void finalize() throws IOException {
+        close();
+    }
+
+    /**
+     * closes the file handles used by all threads and clears the caches
+     */
+    public void close() throws IOException {
         in.close();
+        synchronized (openReaders) {
+            closed = true;
+            for (PSTFileContent reader : openReaders.keySet()) {
+                reader.close();
+            }
+            openReaders.clear();
+        }
+        readers.remove();
+        btreePageCache.clear();
+        blockCache.clear();
     }
 
     /**
@@ -445,10 +529,102 @@ public int getEncryptionType() {
     }
 
     /**
-     * get the handle to the file we are currently accessing
+     * get the handle to the file we are currently accessing. Each thread gets its
+     * own handle, so items can be read concurrently.
      */
-    public RandomAccessFile getFileHandle() {
-        return this.in;
+    public PSTFileContent getFileHandle() throws IOException {
+        if (Thread.currentThread() == ownerThread) {
+            return this.in;
+        }
+        PSTFileContent reader = readers.get();
+        if (reader == null) {
+            reader = newReader();
+            readers.set(reader);
+        }
+        return reader;
+    }
+
+    private PSTFileContent newReader() throws IOException {
+        synchronized (openReaders) {
+            if (closed) {
+                throw new IOException("PST file already closed");
+            }
+            Iterator<Map.Entry<PSTFileContent, WeakReference<Thread>>> iterator = openReaders.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<PSTFileContent, WeakReference<Thread>> entry = iterator.next();
+                Thread thread = entry.getValue().get();
+                if (thread == null || !thread.isAlive()) {
+                    entry.getKey().close();
+                    iterator.remove();
+                }
+            }
+            PSTFileContent reader = this.in.newReader();
+            openReaders.put(reader, new WeakReference<Thread>(Thread.currentThread()));
+            return reader;
+        }
+    }
+
+    /**
+     * read a whole block, using the block cache for small blocks. Returned arrays
+     * are shared and must not be modified.
+     */
+    byte[] readBlock(OffsetIndexItem offsetItem) throws IOException {
+        boolean cacheable = offsetItem.size <= MAX_CACHED_BLOCK_SIZE;
+        if (cacheable) {
+            byte[] data = blockCache.get(offsetItem.fileOffset);
+            if (data != null && data.length == offsetItem.size) {
+                return data;
+            }
+        }
+        PSTFileContent in = getFileHandle();
+        byte[] data = new byte[offsetItem.size];
+        in.seek(offsetItem.fileOffset);
+        in.readCompletely(data);
+        if (cacheable) {
+            blockCache.put(offsetItem.fileOffset, data);
+        }
+        return data;
+    }
+
+    /**
+     * read a b-tree page, using the page cache. Returned arrays are shared and
+     * must not be modified.
+     */
+    private byte[] readBtreePage(long pageOffset) throws IOException {
+        byte[] page = btreePageCache.get(pageOffset);
+        if (page == null) {
+            PSTFileContent in = getFileHandle();
+            page = new byte[BTREE_PAGE_SIZE];
+            in.seek(pageOffset);
+            in.readCompletely(page);
+            btreePageCache.put(pageOffset, page);
+        }
+        return page;
+    }
+
+    /**
+     * read a file offset (4 bytes in ANSI files, 8 bytes otherwise) from a page
+     */
+    private long extractLEFileOffset(byte[] page, int startOffset) {
+        if (this.getPSTFileType() == PSTFile.PST_TYPE_ANSI) {
+            return PSTObject.convertLittleEndianBytesToLong(page, startOffset, startOffset + 4);
+        } else {
+            return PSTObject.convertLittleEndianBytesToLong(page, startOffset, startOffset + 8);
+        }
+    }
+
+    private long getBtreeRoot(boolean descTree) throws IOException {
+        if (descTree) {
+            if (descriptorBtreeRoot == -1) {
+                descriptorBtreeRoot = this.extractLEFileOffset(this.getPSTFileType() == PST_TYPE_ANSI ? 188 : 224);
+            }
+            return descriptorBtreeRoot;
+        } else {
+            if (offsetBtreeRoot == -1) {
+                offsetBtreeRoot = this.extractLEFileOffset(this.getPSTFileType() == PST_TYPE_ANSI ? 196 : 240);
+            }
+            return offsetBtreeRoot;
+        }
     }
 
     /**
@@ -496,6 +672,7 @@ public int getLeafSize(long bid) throws IOException, PSTException {
         }
 
         // we only need the first 8 bytes
+        PSTFileContent in = getFileHandle();
         byte[] data = new byte[8];
         in.seek(offsetItem.fileOffset);
         in.read(data);
@@ -517,6 +694,7 @@ public int getLeafSize(long bid) throws IOException, PSTException {
      * @throws IOException
      */
     protected long extractLEFileOffset(long startOffset) throws IOException {
+        PSTFileContent in = getFileHandle();
         long offset = 0;
         if (this.getPSTFileType() == PSTFile.PST_TYPE_ANSI) {
             in.seek(startOffset);
@@ -547,158 +725,78 @@ protected long extractLEFileOffset(long startOffset) throws IOException {
 
     /**
      * Generic function used by getOffsetIndexNode and getDescriptorIndexNode for
-     * navigating the PST B-Trees
+     * navigating the PST B-Trees. Pages are decoded from the page cache instead of
+     * being read field by field from the file.
      * 
-     * @param in
      * @param index
      * @param descTree
      * @return
      * @throws IOException
      * @throws PSTException
      */
-    private byte[] findBtreeItem(RandomAccessFile in, long index, boolean descTree) throws IOException, PSTException {
+    private byte[] findBtreeItem(long index, boolean descTree) throws IOException, PSTException {
+
+        boolean ansi = this.getPSTFileType() == PST_TYPE_ANSI;
+        int pageTypeOffset = ansi ? 500 : 496;
+        int numberOfItemsOffset = ansi ? 496 : 488;
+        int branchItemSize = ansi ? 12 : 24;
+        int childOffset = ansi ? 8 : 16;
+        int leafItemSize = descTree ? (ansi ? 16 : 32) : (ansi ? 12 : 24);
+        byte pageType = descTree ? (byte) 0x81 : (byte) 0x80;
 
-        long btreeStartOffset;
         // first find the starting point for the offset index
-        if (this.getPSTFileType() == PST_TYPE_ANSI) {
-            btreeStartOffset = this.extractLEFileOffset(196);
-            if (descTree) {
-                btreeStartOffset = this.extractLEFileOffset(188);
-            }
-        } else {
-            btreeStartOffset = this.extractLEFileOffset(240);
-            if (descTree) {
-                btreeStartOffset = this.extractLEFileOffset(224);
-            }
-        }
+        long btreeStartOffset = getBtreeRoot(descTree);
 
         // okay, what we want to do is navigate the tree until you reach the
         // bottom....
         // try and read the index b-tree
-        byte[] temp = new byte[2];
-        if (this.getPSTFileType() == PST_TYPE_ANSI) {
-            in.seek(btreeStartOffset + 500);
-        } else {
-            in.seek(btreeStartOffset + 496);
-        }
-        in.read(temp);
-        while ((temp[0] == 0xffffff80 && temp[1] == 0xffffff80 && !descTree)
-                || (temp[0] == 0xffffff81 && temp[1] == 0xffffff81 && descTree)) {
-
-            // get the rest of the data....
-            byte[] branchNodeItems;
-            if (this.getPSTFileType() == PST_TYPE_ANSI) {
-                branchNodeItems = new byte[496];
-            } else {
-                branchNodeItems = new byte[488];
+        byte[] page = readBtreePage(btreeStartOffset);
+        while (page[pageTypeOffset] == pageType && page[pageTypeOffset + 1] == pageType) {
+
+            int numberOfItems = page[numberOfItemsOffset] & 0xff;
+            int levelsToLeaf = page[numberOfItemsOffset + 3] & 0xff;
+            int itemSize = levelsToLeaf > 0 ? branchItemSize : leafItemSize;
+            if (numberOfItems * itemSize > numberOfItemsOffset) {
+                throw new PSTException("Invalid b-tree page at " + btreeStartOffset);
             }
-            in.seek(btreeStartOffset);
-            in.read(branchNodeItems);
-
-            int numberOfItems = in.read();
-            in.read(); // maxNumberOfItems
-            in.read(); // itemSize
-            int levelsToLeaf = in.read();
 
             if (levelsToLeaf > 0) {
-                boolean found = false;
+                int childItem = numberOfItems - 1;
                 for (int x = 0; x < numberOfItems; x++) {
-                    if (this.getPSTFileType() == PST_TYPE_ANSI) {
-                        long indexIdOfFirstChildNode = extractLEFileOffset(btreeStartOffset + (x * 12));
-                        if (indexIdOfFirstChildNode > index) {
-                            // get the address for the child first node in this
-                            // group
-                            btreeStartOffset = extractLEFileOffset(btreeStartOffset + ((x - 1) * 12) + 8);
-                            in.seek(btreeStartOffset + 500);
-                            in.read(temp);
-                            found = true;
-                            break;
-                        }
-                    } else {
-                        long indexIdOfFirstChildNode = extractLEFileOffset(btreeStartOffset + (x * 24));
-                        if (indexIdOfFirstChildNode > index) {
-                            // get the address for the child first node in this
-                            // group
-                            btreeStartOffset = extractLEFileOffset(btreeStartOffset + ((x - 1) * 24) + 16);
-                            in.seek(btreeStartOffset + 496);
-                            in.read(temp);
-                            found = true;
-                            break;
-                        }
+                    long indexIdOfFirstChildNode = extractLEFileOffset(page, x * branchItemSize);
+                    if (indexIdOfFirstChildNode > index) {
+                        // get the address for the child first node in this
+                        // group
+                        childItem = x - 1;
+                        break;
                     }
                 }
-                if (!found) {
-                    // it must be in the very last branch...
-                    if (this.getPSTFileType() == PST_TYPE_ANSI) {
-                        btreeStartOffset = extractLEFileOffset(btreeStartOffset + ((numberOfItems - 1) * 12) + 8);
-                        in.seek(btreeStartOffset + 500);
-                        in.read(temp);
-                    } else {
-                        btreeStartOffset = extractLEFileOffset(btreeStartOffset + ((numberOfItems - 1) * 24) + 16);
-                        in.seek(btreeStartOffset + 496);
-                        in.read(temp);
-                    }
+                // it must be in the very last branch if not found
+                int childPos = childItem * branchItemSize + childOffset;
+                if (childPos >= 0) {
+                    btreeStartOffset = extractLEFileOffset(page, childPos);
+                } else {
+                    // corrupted tree, keep the old behavior of reading before the page
+                    btreeStartOffset = extractLEFileOffset(btreeStartOffset + childPos);
                 }
+                page = readBtreePage(btreeStartOffset);
+
             } else {
                 // we are at the bottom of the tree...
                 // we want to get our file offset!
                 for (int x = 0; x < numberOfItems; x++) {
-
-                    if (this.getPSTFileType() == PSTFile.PST_TYPE_ANSI) {
-                        if (descTree) {
-                            // The 32-bit descriptor index b-tree leaf node item
-                            in.seek(btreeStartOffset + (x * 16));
-                            temp = new byte[4];
-                            in.read(temp);
-                            if (PSTObject.convertLittleEndianBytesToLong(temp) == index) {
-                                // give me the offset index please!
-                                in.seek(btreeStartOffset + (x * 16));
-                                temp = new byte[16];
-                                in.read(temp);
-                                return temp;
-                            }
-                        } else {
-                            // The 32-bit (file) offset index item
-                            long indexIdOfFirstChildNode = extractLEFileOffset(btreeStartOffset + (x * 12));
-
-                            if (indexIdOfFirstChildNode == index) {
-                                // we found it!!!! OMG
-                                // System.out.println("item found as item #"+x);
-                                in.seek(btreeStartOffset + (x * 12));
-
-                                temp = new byte[12];
-                                in.read(temp);
-                                return temp;
-                            }
-                        }
+                    int itemPos = x * leafItemSize;
+                    long id;
+                    if (descTree) {
+                        // descriptor index b-tree leaf node item
+                        id = PSTObject.convertLittleEndianBytesToLong(page, itemPos, itemPos + 4);
                     } else {
-                        if (descTree) {
-                            // The 64-bit descriptor index b-tree leaf node item
-                            in.seek(btreeStartOffset + (x * 32));
-
-                            temp = new byte[4];
-                            in.read(temp);
-                            if (PSTObject.convertLittleEndianBytesToLong(temp) == index) {
-                                // give me the offset index please!
-                                in.seek(btreeStartOffset + (x * 32));
-                                temp = new byte[32];
-                                in.read(temp);
-                                return temp;
-                            }
-                        } else {
-                            // The 64-bit (file) offset index item
-                            long indexIdOfFirstChildNode = extractLEFileOffset(btreeStartOffset + (x * 24));
-
-                            if (indexIdOfFirstChildNode == index) {
-                                // we found it!!!! OMG
-                                // System.out.println("item found as item #"+x);
-                                in.seek(btreeStartOffset + (x * 24));
-
-                                temp = new byte[24];
-                                in.read(temp);
-                                return temp;
-                            }
-                        }
+                        // (file) offset index item
+                        id = extractLEFileOffset(page, itemPos);
+                    }
+                    if (id == index) {
+                        // we found it!!!! OMG
+                        return Arrays.copyOfRange(page, itemPos, itemPos + leafItemSize);
                     }
                 }
                 throw new PSTException("Unable to find " + index);
@@ -718,7 +816,7 @@ private byte[] findBtreeItem(RandomAccessFile in, long index, boolean descTree)
      * @throws PSTException
      */
     DescriptorIndexNode getDescriptorIndexNode(long identifier) throws IOException, PSTException {
-        return new DescriptorIndexNode(findBtreeItem(in, identifier, true), this.getPSTFileType());
+        return new DescriptorIndexNode(findBtreeItem(identifier, true), this.getPSTFileType());
     }
 
     /**
@@ -731,7 +829,7 @@ DescriptorIndexNode getDescriptorIndexNode(long identifier) throws IOException,
      * @throws PSTException
      */
     OffsetIndexItem getOffsetIndexNode(long identifier) throws IOException, PSTException {
-        return new OffsetIndexItem(findBtreeItem(in, identifier, false), this.getPSTFileType());
+        return new OffsetIndexItem(findBtreeItem(identifier, false), this.getPSTFileType());
     }
 
     /**
@@ -785,14 +883,10 @@ HashMap<Integer, PSTDescriptorItem> getPSTDescriptorItems(PSTNodeInputStream in)
      * @throws IOException
      * @throws PSTException
      */
-    LinkedHashMap<Integer, LinkedList<DescriptorIndexNode>> getChildDescriptorTree() throws IOException, PSTException {
+    synchronized LinkedHashMap<Integer, LinkedList<DescriptorIndexNode>> getChildDescriptorTree()
+            throws IOException, PSTException {
         if (this.childrenDescriptorTree == null) {
-            long btreeStartOffset = 0;
-            if (this.getPSTFileType() == PST_TYPE_ANSI) {
-                btreeStartOffset = this.extractLEFileOffset(188);
-            } else {
-                btreeStartOffset = this.extractLEFileOffset(224);
-            }
+            long btreeStartOffset = getBtreeRoot(true);
             this.childrenDescriptorTree = new LinkedHashMap<Integer, LinkedList<DescriptorIndexNode>>();
             processDescriptorBTree(btreeStartOffset);
         }
@@ -809,36 +903,28 @@ LinkedHashMap<Integer, LinkedList<DescriptorIndexNode>> getChildDescriptorTree()
      * @throws PSTException
      */
     private void processDescriptorBTree(long btreeStartOffset) throws IOException, PSTException {
-        byte[] temp = new byte[2];
-        if (this.getPSTFileType() == PST_TYPE_ANSI) {
-            in.seek(btreeStartOffset + 500);
-        } else {
-            in.seek(btreeStartOffset + 496);
-        }
-        in.read(temp);
+        boolean ansi = this.getPSTFileType() == PST_TYPE_ANSI;
+        byte[] page = readBtreePage(btreeStartOffset);
+        int pageTypeOffset = ansi ? 500 : 496;
+        byte[] temp = new byte[] { page[pageTypeOffset], page[pageTypeOffset + 1] };
 
         if ((temp[0] == 0xffffff81 && temp[1] == 0xffffff81)) {
 
-            if (this.getPSTFileType() == PST_TYPE_ANSI) {
-                in.seek(btreeStartOffset + 496);
-            } else {
-                in.seek(btreeStartOffset + 488);
+            int numberOfItemsOffset = ansi ? 496 : 488;
+            int numberOfItems = page[numberOfItemsOffset] & 0xff;
+            int levelsToLeaf = page[numberOfItemsOffset + 3] & 0xff;
+            int itemSize = levelsToLeaf > 0 ? (ansi ? 12 : 24) : (ansi ? 16 : 32);
+            if (numberOfItems * itemSize > numberOfItemsOffset) {
+                throw new PSTException("Invalid descriptor b-tree page at " + btreeStartOffset);
             }
 
-            int numberOfItems = in.read();
-            in.read(); // maxNumberOfItems
-            in.read(); // itemSize
-            int levelsToLeaf = in.read();
-
             if (levelsToLeaf > 0) {
                 for (int x = 0; x < numberOfItems; x++) {
-                    if (this.getPSTFileType() == PST_TYPE_ANSI) {
-                        long branchNodeItemStartIndex = (btreeStartOffset + (12 * x));
-                        long nextLevelStartsAt = this.extractLEFileOffset(branchNodeItemStartIndex + 8);
+                    if (ansi) {
+                        long nextLevelStartsAt = extractLEFileOffset(page, 12 * x + 8);
                         processDescriptorBTree(nextLevelStartsAt);
                     } else {
-                        long branchNodeItemStartIndex = (btreeStartOffset + (24 * x));
-                        long nextLevelStartsAt = this.extractLEFileOffset(branchNodeItemStartIndex + 16);
+                        long nextLevelStartsAt = extractLEFileOffset(page, 24 * x + 16);
                         processDescriptorBTree(nextLevelStartsAt);
                     }
                 }
@@ -846,14 +932,10 @@ private void processDescriptorBTree(long btreeStartOffset) throws IOException, P
                 for (int x = 0; x < numberOfItems; x++) {
                     // The 64-bit descriptor index b-tree leaf node item
                     // give me the offset index please!
-                    if (this.getPSTFileType() == PSTFile.PST_TYPE_ANSI) {
-                        in.seek(btreeStartOffset + (x * 16));
-                        temp = new byte[16];
-                        in.read(temp);
+                    if (ansi) {
+                        temp = Arrays.copyOfRange(page, x * 16, x * 16 + 16);
                     } else {
-                        in.seek(btreeStartOffset + (x * 32));
-                        temp = new byte[32];
-                        in.read(temp);
+                        temp = Arrays.copyOfRange(page, x * 32, x * 32 + 32);
                     }
 
                     DescriptorIndexNode tempNode = new DescriptorIndexNode(temp, this.getPSTFileType());
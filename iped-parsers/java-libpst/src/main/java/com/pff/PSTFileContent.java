@@ -0,0 +1,58 @@
+package com.pff;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+
+/**
+ * Random access to the bytes of a PST file. Each instance keeps its own
+ * position, use {@link #newReader()} to get another reader over the same
+ * content, so several threads can read the same PST concurrently.
+ */
+public abstract class PSTFileContent implements Closeable {
+
+    public abstract void seek(long index) throws IOException;
+
+    public abstract long getFilePointer() throws IOException;
+
+    public abstract long length() throws IOException;
+
+    public abstract int read() throws IOException;
+
+    public abstract int read(byte[] target, int offset, int length) throws IOException;
+
+    public int read(byte[] target) throws IOException {
+        return read(target, 0, target.length);
+    }
+
+    public byte readByte() throws IOException {
+        int value = read();
+        if (value < 0) {
+            throw new EOFException();
+        }
+        return (byte) value;
+    }
+
+    /**
+     * Fills the target array, unless the end of the file is reached.
+     * 
+     * @return the number of bytes read
+     */
+    public int readCompletely(byte[] target) throws IOException {
+        int total = 0;
+        while (total < target.length) {
+            int read = read(target, total, target.length - total);
+            if (read <= 0) {
+                break;
+            }
+            total += read;
+        }
+        return total;
+    }
+
+    /**
+     * @return a new reader, with its own position, over the same content
+     */
+    public abstract PSTFileContent newReader() throws IOException;
+
+}
@@ -0,0 +1,124 @@
+package com.pff;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+
+/**
+ * PST content read from memory mapped windows of a local file, avoiding a
+ * system call per seek and read. Readers created by {@link #newReader()} share
+ * the same mappings. Mappings are released by the garbage collector, so on
+ * Windows the file can not be deleted while they are reachable.
+ */
+public class PSTMappedFileContent extends PSTFileContent {
+
+    private static final int WINDOW_SHIFT = 30;
+    private static final long WINDOW_SIZE = 1L << WINDOW_SHIFT;
+    private static final long WINDOW_MASK = WINDOW_SIZE - 1;
+
+    private ByteBuffer[] mappings;
+    private ByteBuffer[] windows;
+    private final long length;
+    private long position = 0;
+
+    public PSTMappedFileContent(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+            length = channel.size();
+            mappings = new ByteBuffer[(int) ((length + WINDOW_SIZE - 1) >>> WINDOW_SHIFT)];
+            for (int i = 0; i < mappings.length; i++) {
+                long start = i * WINDOW_SIZE;
+                mappings[i] = channel.map(MapMode.READ_ONLY, start, Math.min(WINDOW_SIZE, length - start));
+            }
+        }
+        windows = duplicate(mappings);
+    }
+
+    private PSTMappedFileContent(ByteBuffer[] mappings, long length) {
+        this.mappings = mappings;
+        this.windows = duplicate(mappings);
+        this.length = length;
+    }
+
+    private static ByteBuffer[] duplicate(ByteBuffer[] mappings) {
+        // each reader needs its own buffer positions
+        ByteBuffer[] windows = new ByteBuffer[mappings.length];
+        for (int i = 0; i < mappings.length; i++) {
+            windows[i] = mappings[i].duplicate();
+        }
+        return windows;
+    }
+
+    @Override
+    public void seek(long index) throws IOException {
+        position = index;
+    }
+
+    @Override
+    public long getFilePointer() throws IOException {
+        return position;
+    }
+
+    @Override
+    public long length() throws IOException {
+        return length;
+    }
+
+    private void checkOpen() throws IOException {
+        if (windows == null) {
+            throw new IOException("PST file content already closed");
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        checkOpen();
+        if (position < 0 || position >= length) {
+            return -1;
+        }
+        ByteBuffer window = windows[(int) (position >>> WINDOW_SHIFT)];
+        int value = window.get((int) (position & WINDOW_MASK)) & 0xff;
+        position++;
+        return value;
+    }
+
+    @Override
+    public int read(byte[] target, int offset, int len) throws IOException {
+        checkOpen();
+        if (len == 0) {
+            return 0;
+        }
+        if (position < 0 || position >= length) {
+            return -1;
+        }
+        int total = 0;
+        while (len > 0 && position < length) {
+            ByteBuffer window = windows[(int) (position >>> WINDOW_SHIFT)];
+            int posInWindow = (int) (position & WINDOW_MASK);
+            int n = Math.min(len, window.limit() - posInWindow);
+            window.position(posInWindow);
+            window.get(target, offset, n);
+            position += n;
+            offset += n;
+            len -= n;
+            total += n;
+        }
+        return total;
+    }
+
+    @Override
+    public PSTFileContent newReader() throws IOException {
+        checkOpen();
+        return new PSTMappedFileContent(mappings, length);
+    }
+
+    @Override
+    public void close() throws IOException {
+        // mappings are released when garbage collected, so references are dropped here
+        mappings = null;
+        windows = null;
+    }
+
+}
@@ -36,7 +36,6 @@
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.RandomAccessFile;
 import java.util.LinkedList;
 import java.util.TreeSet;
 
@@ -48,7 +47,7 @@
  */
 public class PSTNodeInputStream extends InputStream {
 
-    private RandomAccessFile in;
+    private PSTFileContent in;
     private PSTFile pstFile;
     private LinkedList<Long> skipPoints = new LinkedList<Long>();
     private TreeSet<Long> skipPointsSet;
@@ -104,9 +103,8 @@ public class PSTNodeInputStream extends InputStream {
     private void loadFromOffsetItem(OffsetIndexItem offsetItem) throws IOException, PSTException {
         boolean bInternal = (offsetItem.indexIdentifier & 0x02) != 0;
 
-        in.seek(offsetItem.fileOffset);
-        byte[] data = new byte[offsetItem.size];
-        in.read(data);
+        // shared with the block cache, must not be modified
+        byte[] data = pstFile.readBlock(offsetItem);
 
         if (bInternal) {
             // All internal blocks are at least 8 bytes long...
@@ -156,9 +154,7 @@ private void getBlockSkipPoints(byte[] data) throws IOException, PSTException {
                 bid &= 0xfffffffe;
                 // get the details in this block and
                 OffsetIndexItem offsetItem = this.pstFile.getOffsetIndexNode(bid);
-                in.seek(offsetItem.fileOffset);
-                byte[] blockData = new byte[offsetItem.size];
-                in.read(blockData);
+                byte[] blockData = this.pstFile.readBlock(offsetItem);
                 this.getBlockSkipPoints(blockData);
                 offset += arraySize;
             }
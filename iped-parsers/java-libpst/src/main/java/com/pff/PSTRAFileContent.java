@@ -0,0 +1,64 @@
+package com.pff;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * PST content read through a RandomAccessFile.
+ */
+public class PSTRAFileContent extends PSTFileContent {
+
+    private final File file;
+    private final RandomAccessFile in;
+
+    public PSTRAFileContent(File file) throws IOException {
+        this.file = file;
+        this.in = new RandomAccessFile(file, "r");
+    }
+
+    public RandomAccessFile getFile() {
+        return in;
+    }
+
+    @Override
+    public void seek(long index) throws IOException {
+        in.seek(index);
+    }
+
+    @Override
+    public long getFilePointer() throws IOException {
+        return in.getFilePointer();
+    }
+
+    @Override
+    public long length() throws IOException {
+        return in.length();
+    }
+
+    @Override
+    public int read() throws IOException {
+        return in.read();
+    }
+
+    @Override
+    public int read(byte[] target, int offset, int length) throws IOException {
+        return in.read(target, offset, length);
+    }
+
+    @Override
+    public byte readByte() throws IOException {
+        return in.readByte();
+    }
+
+    @Override
+    public PSTFileContent newReader() throws IOException {
+        return new PSTRAFileContent(file);
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+}
@@ -265,4 +265,13 @@ public static boolean isTemporaryFile(File file) {
         return tmpDir.compareTo(filePath) == 0;
     }
 
+    /**
+     * Mapped files can not be deleted on Windows until the mapping is garbage
+     * collected, so temp files should not be mapped there.
+     */
+    public static boolean canMapFile(File file) {
+        boolean isWindows = System.getProperty("os.name").toLowerCase().startsWith("windows"); //$NON-NLS-1$ //$NON-NLS-2$
+        return !isWindows || !isTemporaryFile(file);
+    }
+
 }